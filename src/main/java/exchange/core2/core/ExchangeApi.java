@@ -29,14 +29,17 @@ import exchange.core2.core.common.api.reports.ReportResult;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.gateway.GatewayCodec;
 import exchange.core2.core.orderbook.OrderBookEventsHelper;
 import exchange.core2.core.processors.BinaryCommandsProcessor;
 import exchange.core2.core.utils.SerializationUtils;
+import exchange.core2.core.utils.SlotCorrelationTable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.jpountz.lz4.LZ4Compressor;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import net.openhft.chronicle.wire.Wire;
+import org.agrona.DirectBuffer;
 import org.agrona.collections.LongLongConsumer;
 import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
 
@@ -385,6 +388,76 @@ public final class ExchangeApi {
         }
     }
 
+    /**
+     * Decodes gateway protocol requests (see {@link GatewayCodec}) directly into ring buffer slots.
+     * All complete messages of the buffer are published using one claim per batch (max quarter of ring buffer),
+     * no objects are allocated.
+     *
+     * @param buffer       - buffer containing messages
+     * @param offset       - offset of the first message
+     * @param length       - number of available bytes
+     * @param correlations - receives correlation id of each published command (optional)
+     * @return number of consumed bytes (incomplete message at the end is not consumed),
+     * message that can not be decoded is consumed and published as NOP with GATEWAY_MESSAGE_INVALID result
+     */
+    public int submitGatewayMessages(final DirectBuffer buffer,
+                                     final int offset,
+                                     final int length,
+                                     final SlotCorrelationTable correlations) {
+
+        final int end = offset + length;
+        final int maxBatchSize = ringBuffer.getBufferSize() / 4;
+
+        int ptr = offset;
+        while (true) {
+
+            // count complete messages
+            int num = 0;
+            int scan = ptr;
+            while (num < maxBatchSize && end - scan >= GatewayCodec.HEADER_LENGTH) {
+                final int msgLength = GatewayCodec.messageLength(buffer, scan);
+                if (end - scan < msgLength) {
+                    break;
+                }
+                scan += msgLength;
+                num++;
+            }
+
+            if (num == 0) {
+                return ptr - offset;
+            }
+
+            final long highSeq = ringBuffer.next(num);
+            final long lowSeq = highSeq - num + 1;
+            try {
+                for (long seq = lowSeq; seq <= highSeq; seq++) {
+                    final long correlationId = decodeGatewayMessage(buffer, ptr, ringBuffer.get(seq));
+                    if (correlations != null) {
+                        correlations.put(seq, correlationId);
+                    }
+                    ptr += GatewayCodec.messageLength(buffer, ptr);
+                }
+            } finally {
+                ringBuffer.publish(lowSeq, highSeq);
+            }
+        }
+    }
+
+    private static long decodeGatewayMessage(final DirectBuffer buffer, final int offset, final OrderCommand cmd) {
+        try {
+            return GatewayCodec.decodeCommand(buffer, offset, cmd);
+        } catch (final IllegalArgumentException ex) {
+            // claimed slot can not be returned - reject single message, following messages are processed as usual
+            log.warn("Invalid gateway message rejected: {}", ex.getMessage());
+            cmd.command = OrderCommandType.NOP;
+            cmd.orderId = 0;
+            cmd.symbol = -1;
+            cmd.uid = 0;
+            cmd.resultCode = CommandResultCode.GATEWAY_MESSAGE_INVALID;
+            return GatewayCodec.correlationId(buffer, offset);
+        }
+    }
+
     private void publishPersistCmd(final ApiPersistState api,
                                    final LongLongConsumer seqConsumer) {
 
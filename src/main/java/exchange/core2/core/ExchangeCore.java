@@ -15,32 +15,49 @@
  */
 package exchange.core2.core;
 
+import com.lmax.disruptor.BatchEventProcessor;
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventProcessor;
 import com.lmax.disruptor.EventTranslator;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
 import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.EventHandlerGroup;
 import com.lmax.disruptor.dsl.ProducerType;
 import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.L2MarketData;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.common.config.OrdersProcessingConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
+import exchange.core2.core.ipc.IpcGateway;
+import exchange.core2.core.metrics.PipelineMetricsMonitor;
+import exchange.core2.core.metrics.StageLatencyMetrics;
 import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.processors.*;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.utils.PlannedAffinityThreadFactory;
+import exchange.core2.core.utils.ThreadPlacementPlan;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -61,6 +78,18 @@ public final class ExchangeCore {
 
     private final ExchangeConfiguration exchangeConfiguration;
 
+    private final List<ResultsFanOutProcessor> resultsFanOutProcessors;
+
+    private final IpcGateway ipcGateway;
+
+    private final StageLatencyMetrics stageLatencyMetrics;
+
+    private final PipelineMetricsMonitor metricsMonitor;
+
+    private final List<RiskEngine> riskEngines;
+
+    private final MarginCallScanner marginCallScanner;
+
     // core can be started and stopped only once
     private boolean started = false;
     private boolean stopped = false;
@@ -72,10 +101,14 @@ public final class ExchangeCore {
      * Exchange core constructor.
      *  @param resultsConsumer       - custom consumer of processed commands
      * @param exchangeConfiguration - exchange configuration
+     * @param resultsFanOut         - optional additional results consumers, each has own thread and back-pressure policy
+     * @param ipcCfg                - optional shared memory IPC gateway (commands from other processes)
      */
     @Builder
     public ExchangeCore(final ObjLongConsumer<OrderCommand> resultsConsumer,
-                        final ExchangeConfiguration exchangeConfiguration) {
+                        final ExchangeConfiguration exchangeConfiguration,
+                        final List<ResultsConsumerConfiguration> resultsFanOut,
+                        final IpcConfiguration ipcCfg) {
 
         log.debug("Building exchange core from configuration: {}", exchangeConfiguration);
 
@@ -89,23 +122,48 @@ public final class ExchangeCore {
 
         final CoreWaitStrategy coreWaitStrategy = perfCfg.getWaitStrategy();
 
-        this.disruptor = new Disruptor<>(
+        // per-stage thresholds, only for phased backoff wait strategy
+        final WaitBackoffConfiguration backoffCfg = coreWaitStrategy == CoreWaitStrategy.PHASED_BACKOFF ? perfCfg.getWaitBackoffCfg() : null;
+
+        final int matchingEnginesNum = perfCfg.getMatchingEnginesNum();
+        final int riskEnginesNum = perfCfg.getRiskEnginesNum();
+        final int riskPreCheckWorkersNum = Math.max(1, perfCfg.getRiskPreCheckWorkersNum());
+
+        final SerializationConfiguration serializationCfg = exchangeConfiguration.getSerializationCfg();
+
+        // topology aware placement - stages are known before building pipeline
+        final PlannedAffinityThreadFactory placement = threadFactory instanceof PlannedAffinityThreadFactory
+                ? (PlannedAffinityThreadFactory) threadFactory
+                : null;
+
+        if (placement != null) {
+            final int fanOutNum = (resultsFanOut == null ? 0 : resultsFanOut.size()) + (ipcCfg == null ? 0 : 1);
+            placement.createPlan(
+                    pipelineStages(matchingEnginesNum, riskEnginesNum, riskPreCheckWorkersNum, serializationCfg.isEnableJournaling(), fanOutNum),
+                    IntStream.range(0, riskEnginesNum).boxed().collect(Collectors.toMap(i -> "R2_" + i, i -> "R1_" + i)));
+        }
+
+        final Supplier<Disruptor<OrderCommand>> disruptorFactory = () -> new Disruptor<>(
                 OrderCommand::new,
                 ringBufferSize,
                 threadFactory,
                 ProducerType.MULTI, // multiple gateway threads are writing
                 coreWaitStrategy.getDisruptorWaitStrategyFactory().get());
 
+        // ring buffer entries are preallocated, so touching them from ring CPU places memory on its NUMA node
+        this.disruptor = placement != null ? placement.allocateOnRingNode(disruptorFactory) : disruptorFactory.get();
+
         this.ringBuffer = disruptor.getRingBuffer();
 
         this.api = new ExchangeApi(ringBuffer, perfCfg.getBinaryCommandsLz4CompressorFactory().get());
 
-        final IOrderBook.OrderBookFactory orderBookFactory = perfCfg.getOrderBookFactory();
+        this.ipcGateway = ipcCfg == null ? null : new IpcGateway(ipcCfg, ringBuffer, threadFactory);
 
-        final int matchingEnginesNum = perfCfg.getMatchingEnginesNum();
-        final int riskEnginesNum = perfCfg.getRiskEnginesNum();
+        this.stageLatencyMetrics = perfCfg.isStageLatencyMetricsEnabled()
+                ? new StageLatencyMetrics(ringBufferSize, riskEnginesNum, matchingEnginesNum)
+                : null;
 
-        final SerializationConfiguration serializationCfg = exchangeConfiguration.getSerializationCfg();
+        final IOrderBook.OrderBookFactory orderBookFactory = perfCfg.getOrderBookFactory();
 
         // creating serialization processor
         serializationProcessor = serializationCfg.getSerializationProcessorFactory().apply(exchangeConfiguration);
@@ -115,6 +173,17 @@ public final class ExchangeCore {
         final int chainLength = EVENTS_POOLING ? 1024 : 1;
         final SharedPool sharedPool = new SharedPool(poolInitialSize * 4, poolInitialSize, chainLength);
 
+        // margin calls scanner (own thread) publishes MARGIN_CALL commands
+        final OrdersProcessingConfiguration ordersProcCfg = exchangeConfiguration.getOrdersProcessingCfg();
+        this.marginCallScanner = ordersProcCfg.getMarginTradingMode() == OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED
+                && ordersProcCfg.getMarginCallsMode() == OrdersProcessingConfiguration.MarginCallsMode.MARGIN_CALLS_ENABLED
+                ? new MarginCallScanner(
+                ordersProcCfg.getMarginCallsChannelCapacity(),
+                ordersProcCfg.getMarginCallsScanBudget(),
+                sharedPool::getChain,
+                MarginCallScanner.ringBufferPublisher(ringBuffer))
+                : null;
+
         // creating and attaching exceptions handler
         final DisruptorExceptionHandler<OrderCommand> exceptionHandler = new DisruptorExceptionHandler<>("main", (ex, seq) -> {
             log.error("Exception thrown on sequence={}", seq, ex);
@@ -145,71 +214,255 @@ public final class ExchangeCore {
                 .collect(Collectors.toMap(
                         shardId -> shardId,
                         shardId -> CompletableFuture.supplyAsync(
-                                () -> new RiskEngine(shardId, riskEnginesNum, serializationProcessor, sharedPool, exchangeConfiguration),
+                                () -> new RiskEngine(shardId, riskEnginesNum, serializationProcessor, sharedPool, exchangeConfiguration, marginCallScanner),
                                 loaderExecutor)));
 
-        final EventHandler<OrderCommand>[] matchingEngineHandlers = matchingEngineFutures.values().stream()
-                .map(CompletableFuture::join)
-                .map(mer -> (EventHandler<OrderCommand>) (cmd, seq, eob) -> mer.processOrder(seq, cmd))
+        final EventHandler<OrderCommand>[] matchingEngineHandlers = IntStream.range(0, matchingEnginesNum)
+                .mapToObj(shardId -> {
+                    final MatchingEngineRouter mer = matchingEngineFutures.get(shardId).join();
+                    final EventHandler<OrderCommand> handler = (cmd, seq, eob) -> mer.processOrder(seq, cmd);
+                    if (stageLatencyMetrics == null) {
+                        return handler;
+                    } else if (perfCfg.isCancelFastLaneEnabled()) {
+                        // fast lane commands are not waiting for R1
+                        final StageLatencyMetrics.StageProbe probe = stageLatencyMetrics.matchingEngineProbe(shardId);
+                        final StageLatencyMetrics.StageProbe fastLaneProbe = stageLatencyMetrics.matchingEngineFastLaneProbe(shardId);
+                        return (EventHandler<OrderCommand>) (cmd, seq, eob) -> {
+                            handler.onEvent(cmd, seq, eob);
+                            (FastLaneSequenceBarrier.isFastLaneCommand(cmd.command) ? fastLaneProbe : probe).record(seq);
+                        };
+                    } else {
+                        return StageLatencyMetrics.withProbe(handler, stageLatencyMetrics.matchingEngineProbe(shardId));
+                    }
+                })
+                .map(handler -> withStageBackoff(handler, backoffCfg, WaitBackoffConfiguration::getMatchingEngine))
                 .toArray(ExchangeCore::newEventHandlersArray);
 
+        for (int i = 0; i < matchingEngineHandlers.length; i++) {
+            registerStage(placement, matchingEngineHandlers[i], "ME_" + i);
+        }
+
         final Map<Integer, RiskEngine> riskEngines = riskEngineFutures.entrySet().stream()
                 .collect(Collectors.toMap(
                         Map.Entry::getKey,
                         entry -> entry.getValue().join()));
+        this.riskEngines = new ArrayList<>(riskEngines.values());
 
 
         final List<TwoStepMasterProcessor> procR1 = new ArrayList<>(riskEnginesNum);
         final List<TwoStepSlaveProcessor> procR2 = new ArrayList<>(riskEnginesNum);
+        final List<List<TwoStepWorkerProcessor>> procR1Workers = new ArrayList<>(riskEnginesNum);
+
+        final StageBackoff r1Backoff = backoffCfg != null ? backoffCfg.getRiskPreProcess() : null;
+        final StageBackoff r2Backoff = backoffCfg != null ? backoffCfg.getRiskRelease() : null;
 
         // 1. grouping processor (G)
+        final List<GroupingProcessor> procG = new ArrayList<>(1);
         final EventHandlerGroup<OrderCommand> afterGrouping =
-                disruptor.handleEventsWith((rb, bs) -> new GroupingProcessor(rb, rb.newBarrier(bs), perfCfg, coreWaitStrategy, sharedPool));
+                disruptor.handleEventsWith((rb, bs) -> {
+                    final GroupingProcessor g = new GroupingProcessor(rb, rb.newBarrier(bs), perfCfg, coreWaitStrategy, sharedPool, stageLatencyMetrics);
+                    procG.add(g);
+                    return registerStage(placement, g, "G");
+                });
 
         // 2. [journaling (J)] in parallel with risk hold (R1) + matching engine (ME)
 
         boolean enableJournaling = serializationCfg.isEnableJournaling();
-        final EventHandler<OrderCommand> jh = enableJournaling ? serializationProcessor::writeToJournal : null;
+        final EventHandler<OrderCommand> jh = enableJournaling
+                ? withStageBackoff(
+                stageLatencyMetrics != null
+                        ? StageLatencyMetrics.withProbe(serializationProcessor::writeToJournal, stageLatencyMetrics.journalingProbe())
+                        : serializationProcessor::writeToJournal,
+                backoffCfg,
+                WaitBackoffConfiguration::getJournaling)
+                : null;
 
         if (enableJournaling) {
-            afterGrouping.handleEventsWith(jh);
+            afterGrouping.handleEventsWith(registerStage(placement, jh, ThreadPlacementPlan.JOURNAL_STAGE));
         }
 
-        riskEngines.forEach((idx, riskEngine) -> afterGrouping.handleEventsWith(
-                (rb, bs) -> {
-                    final TwoStepMasterProcessor r1 = new TwoStepMasterProcessor(rb, rb.newBarrier(bs), riskEngine::preProcessCommand, exceptionHandler, coreWaitStrategy, "R1_" + idx);
-                    procR1.add(r1);
-                    return r1;
-                }));
+        riskEngines.forEach((idx, riskEngine) -> {
+            final SimpleEventHandler r1Handler = stageLatencyMetrics != null
+                    ? StageLatencyMetrics.withProbe(riskEngine::preProcessCommand, stageLatencyMetrics.riskPreProcessProbe(idx))
+                    : riskEngine::preProcessCommand;
+            afterGrouping.handleEventsWith(
+                    (rb, bs) -> {
+                        final TwoStepMasterProcessor r1 = riskPreCheckWorkersNum == 1
+                                ? new TwoStepMasterProcessor(rb, rb.newBarrier(bs), r1Handler, null, exceptionHandler, coreWaitStrategy, r1Backoff, "R1_" + idx)
+                                : new TwoStepMasterProcessor(rb, rb.newBarrier(bs), r1Handler, riskEngine::preProcessStripe, exceptionHandler, coreWaitStrategy, r1Backoff, "R1_" + idx);
+                        procR1.add(r1);
+                        return registerStage(placement, r1, "R1_" + idx);
+                    });
+
+            // additional R1 workers (stripes 1..N-1) are processing commands released by R1 master
+            final TwoStepMasterProcessor master = procR1.get(procR1.size() - 1);
+            final List<TwoStepWorkerProcessor> workers = new ArrayList<>(riskPreCheckWorkersNum - 1);
+            for (int i = 1; i < riskPreCheckWorkersNum; i++) {
+                final int stripe = i;
+                final SimpleEventHandler r1StripeHandler = (seq, cmd) -> {
+                    riskEngine.preProcessCommandStripe(cmd, stripe);
+                    return false;
+                };
+                afterGrouping.handleEventsWith(
+                        (rb, bs) -> {
+                            final TwoStepWorkerProcessor w = new TwoStepWorkerProcessor(
+                                    rb,
+                                    rb.newBarrier(master.getReleasedSequence()),
+                                    stageLatencyMetrics != null
+                                            ? StageLatencyMetrics.withProbe(r1StripeHandler, stageLatencyMetrics.riskPreProcessProbe(idx))
+                                            : r1StripeHandler,
+                                    riskEngine::preProcessStripe,
+                                    stripe,
+                                    exceptionHandler,
+                                    coreWaitStrategy,
+                                    r1Backoff,
+                                    "R1_" + idx + "_" + stripe);
+                            workers.add(w);
+                            return registerStage(placement, w, "R1_" + idx + "_" + stripe);
+                        });
+            }
+            master.setWorkerProcessors(workers);
+            procR1Workers.add(workers);
+        });
 
-        disruptor.after(procR1.toArray(new TwoStepMasterProcessor[0])).handleEventsWith(matchingEngineHandlers);
+        final List<EventProcessor> procR1All = new ArrayList<>(procR1);
+        procR1Workers.forEach(procR1All::addAll);
+
+        final EventHandlerGroup<OrderCommand> afterMatchingEngine;
+        final LongSupplier[] matchingEngineSequences = new LongSupplier[matchingEnginesNum];
+
+        if (perfCfg.isCancelFastLaneEnabled()) {
+            // cancel/move/reduce commands are available to ME right after grouping (R1 stays gating sequence)
+            final Sequence[] riskSequences = procR1All.stream().map(EventProcessor::getSequence).toArray(Sequence[]::new);
+            final Sequence groupingSequence = procG.get(0).getSequence();
+            final EventProcessor[] procME = new EventProcessor[matchingEnginesNum];
+            for (int i = 0; i < matchingEnginesNum; i++) {
+                final BatchEventProcessor<OrderCommand> me = new BatchEventProcessor<>(
+                        ringBuffer,
+                        new FastLaneSequenceBarrier(ringBuffer, groupingSequence, riskSequences),
+                        matchingEngineHandlers[i]);
+                me.setExceptionHandler(exceptionHandler);
+                procME[i] = registerStage(placement, me, "ME_" + i);
+                matchingEngineSequences[i] = me.getSequence()::get;
+            }
+            disruptor.handleEventsWith(procME);
+            afterMatchingEngine = disruptor.after(procME);
+        } else {
+            disruptor.after(procR1All.toArray(new EventProcessor[0])).handleEventsWith(matchingEngineHandlers);
+            afterMatchingEngine = disruptor.after(matchingEngineHandlers);
+            for (int i = 0; i < matchingEnginesNum; i++) {
+                final EventHandler<OrderCommand> meHandler = matchingEngineHandlers[i];
+                matchingEngineSequences[i] = () -> disruptor.getSequenceValueFor(meHandler);
+            }
+        }
 
         // 3. risk release (R2) after matching engine (ME)
-        final EventHandlerGroup<OrderCommand> afterMatchingEngine = disruptor.after(matchingEngineHandlers);
 
-        riskEngines.forEach((idx, riskEngine) -> afterMatchingEngine.handleEventsWith(
-                (rb, bs) -> {
-                    final TwoStepSlaveProcessor r2 = new TwoStepSlaveProcessor(rb, rb.newBarrier(bs), riskEngine::handlerRiskRelease, exceptionHandler, "R2_" + idx);
-                    procR2.add(r2);
-                    return r2;
-                }));
+        riskEngines.forEach((idx, riskEngine) -> {
+            final SimpleEventHandler r2Handler = stageLatencyMetrics != null
+                    ? StageLatencyMetrics.withProbe(riskEngine::handlerRiskRelease, stageLatencyMetrics.riskReleaseProbe())
+                    : riskEngine::handlerRiskRelease;
+            afterMatchingEngine.handleEventsWith(
+                    (rb, bs) -> {
+                        final TwoStepSlaveProcessor r2 = new TwoStepSlaveProcessor(rb, rb.newBarrier(bs), r2Handler, exceptionHandler, r2Backoff, "R2_" + idx);
+                        procR2.add(r2);
+                        return r2;
+                    });
+        });
 
 
         // 4. results handler (E) after matching engine (ME) + [journaling (J)]
         final EventHandlerGroup<OrderCommand> mainHandlerGroup = enableJournaling
-                ? disruptor.after(arraysAddHandler(matchingEngineHandlers, jh))
+                ? afterMatchingEngine.and(disruptor.after(jh))
                 : afterMatchingEngine;
 
-        final ResultsHandler resultsHandler = new ResultsHandler(resultsConsumer);
+        // strict durability - acknowledgements are waiting for journal durable sequence
+        final ResultsHandler resultsHandler = enableJournaling && serializationProcessor.isDurableAckRequired()
+                ? new ResultsHandler(resultsConsumer, serializationProcessor)
+                : new ResultsHandler(resultsConsumer);
+
+        final EventHandler<OrderCommand> eh;
+        if (stageLatencyMetrics != null) {
+            final StageLatencyMetrics.StageProbe resultsProbe = stageLatencyMetrics.resultsProbe(enableJournaling);
+            final StageLatencyMetrics.StageProbe totalProbe = stageLatencyMetrics.totalProbe();
+            eh = (cmd, seq, eob) -> {
+                resultsHandler.onEvent(cmd, seq, eob);
+                api.processResult(seq, cmd);
+                final long t = System.nanoTime();
+                resultsProbe.record(seq, t);
+                totalProbe.record(seq, t);
+            };
+        } else {
+            eh = (cmd, seq, eob) -> {
+                resultsHandler.onEvent(cmd, seq, eob);
+                api.processResult(seq, cmd); // TODO SLOW ?(volatile operations)
+            };
+        }
+        final EventHandler<OrderCommand> resultsStage = withStageBackoff(eh, backoffCfg, WaitBackoffConfiguration::getResults);
+        mainHandlerGroup.handleEventsWith(registerStage(placement, resultsStage, "E"));
+
+        // 5. [fan-out results consumers (F)] in parallel with results handler (E), so they never delay acknowledgements
+        //    IPC egress (if enabled) is the last fan-out consumer
+        final List<ResultsConsumerConfiguration> fanOutCfgs = new ArrayList<>(resultsFanOut == null ? List.of() : resultsFanOut);
+        if (ipcGateway != null) {
+            fanOutCfgs.add(ResultsConsumerConfiguration.builder().name("IPC").consumer(ipcGateway::onResult).build());
+        }
+        this.resultsFanOutProcessors = fanOutCfgs.stream()
+                .map(cfg -> new ResultsFanOutProcessor(cfg, threadFactory, perfCfg.getOffHeapResultsBufferEvents(),
+                        Math.min(perfCfg.getL2RefreshDepth(), L2MarketData.L2_SIZE), perfCfg.getWaitBackoffCfg().getResults()))
+                .collect(Collectors.toList());
 
-        mainHandlerGroup.handleEventsWith((cmd, seq, eob) -> {
-            resultsHandler.onEvent(cmd, seq, eob);
-            api.processResult(seq, cmd); // TODO SLOW ?(volatile operations)
-        });
+        final EventHandler<OrderCommand>[] fanOutHandlers = resultsFanOutProcessors.stream()
+                .map(handler -> withStageBackoff(handler, backoffCfg, WaitBackoffConfiguration::getResults))
+                .toArray(ExchangeCore::newEventHandlersArray);
+
+        if (fanOutHandlers.length != 0) {
+            for (int i = 0; i < fanOutHandlers.length; i++) {
+                registerStage(placement, fanOutHandlers[i], "F_" + i);
+            }
+            mainHandlerGroup.handleEventsWith(fanOutHandlers);
+        }
 
         // attach slave processors to master processor
         IntStream.range(0, riskEnginesNum).forEach(i -> procR1.get(i).setSlaveProcessor(procR2.get(i)));
 
+        // 6. [metrics monitor] samples sequences of all stages in pipeline order
+        if (perfCfg.getMetricsSamplingIntervalUs() > 0) {
+            final Map<String, LongSupplier> stageSequences = new LinkedHashMap<>();
+            stageSequences.put("G", procG.get(0).getSequence()::get);
+            if (enableJournaling) {
+                stageSequences.put("J", () -> disruptor.getSequenceValueFor(jh));
+            }
+            for (int i = 0; i < riskEnginesNum; i++) {
+                stageSequences.put("R1_" + i, procR1.get(i).getSequence()::get);
+                final List<TwoStepWorkerProcessor> workers = procR1Workers.get(i);
+                for (int stripe = 1; stripe <= workers.size(); stripe++) {
+                    stageSequences.put("R1_" + i + "_" + stripe, workers.get(stripe - 1).getSequence()::get);
+                }
+            }
+            for (int i = 0; i < matchingEnginesNum; i++) {
+                stageSequences.put("ME_" + i, matchingEngineSequences[i]);
+            }
+            for (int i = 0; i < riskEnginesNum; i++) {
+                stageSequences.put("R2_" + i, procR2.get(i).getSequence()::get);
+            }
+            stageSequences.put("E", () -> disruptor.getSequenceValueFor(resultsStage));
+            for (int i = 0; i < fanOutHandlers.length; i++) {
+                final EventHandler<OrderCommand> fanOutHandler = fanOutHandlers[i];
+                stageSequences.put("F_" + i, () -> disruptor.getSequenceValueFor(fanOutHandler));
+            }
+            this.metricsMonitor = new PipelineMetricsMonitor(
+                    ringBuffer,
+                    stageSequences,
+                    procG.get(0).getGroupSizeRecorder(),
+                    sharedPool,
+                    serializationProcessor,
+                    perfCfg.getMetricsSamplingIntervalUs(),
+                    threadFactory);
+        } else {
+            this.metricsMonitor = null;
+        }
+
         try {
             loaderExecutor.shutdown();
             loaderExecutor.awaitTermination(1, TimeUnit.SECONDS);
@@ -220,11 +473,26 @@ public final class ExchangeCore {
 
     public synchronized void startup() {
         if (!started) {
+            // margin positions are sent before risk engines start processing commands
+            if (marginCallScanner != null) {
+                marginCallScanner.start(exchangeConfiguration.getPerformanceCfg().getThreadFactory());
+                riskEngines.forEach(RiskEngine::sendMarginPositions);
+            }
+
             log.debug("Starting disruptor...");
             disruptor.start();
             started = true;
 
             serializationProcessor.replayJournalFullAndThenEnableJouraling(exchangeConfiguration.getInitStateCfg(), api);
+
+            // IPC commands are accepted after journal replay
+            if (ipcGateway != null) {
+                ipcGateway.start();
+            }
+
+            if (metricsMonitor != null) {
+                metricsMonitor.start();
+            }
         }
     }
 
@@ -237,6 +505,62 @@ public final class ExchangeCore {
         return api;
     }
 
+    /**
+     * Provides risk engines of all shards (for consistency checks in tests, engines state is not threadsafe)
+     *
+     * @return risk engines
+     */
+    List<RiskEngine> getRiskEngines() {
+        return riskEngines;
+    }
+
+    /**
+     * Provides margin calls scanner (for monitoring counters).
+     *
+     * @return margin calls scanner, or null if margin calls are disabled
+     */
+    public MarginCallScanner getMarginCallScanner() {
+        return marginCallScanner;
+    }
+
+    /**
+     * Provides fan-out results processors (for monitoring overflowed/dropped counters).
+     *
+     * @return fan-out processors, in the same order as configured (IPC egress processor is the last one)
+     */
+    public List<ResultsFanOutProcessor> getResultsFanOutProcessors() {
+        return resultsFanOutProcessors;
+    }
+
+    /**
+     * Provides per-stage latency metrics (enabled by PerformanceConfiguration.stageLatencyMetricsEnabled).
+     * Snapshot can be taken from any thread while exchange core is running.
+     *
+     * @return stage latency metrics, or null if disabled
+     */
+    public StageLatencyMetrics getStageLatencyMetrics() {
+        return stageLatencyMetrics;
+    }
+
+    /**
+     * Provides ring buffer occupancy and back-pressure metrics monitor
+     * (enabled by PerformanceConfiguration.metricsSamplingIntervalUs).
+     *
+     * @return metrics monitor, or null if disabled
+     */
+    public PipelineMetricsMonitor getMetricsMonitor() {
+        return metricsMonitor;
+    }
+
+    /**
+     * Provides shared memory IPC gateway (enabled by ipcCfg).
+     *
+     * @return IPC gateway, or null if disabled
+     */
+    public IpcGateway getIpcGateway() {
+        return ipcGateway;
+    }
+
     private static final EventTranslator<OrderCommand> SHUTDOWN_SIGNAL_TRANSLATOR = (cmd, seq) -> {
         cmd.command = OrderCommandType.SHUTDOWN_SIGNAL;
         cmd.resultCode = CommandResultCode.NEW;
@@ -260,20 +584,66 @@ public final class ExchangeCore {
             stopped = true;
             // TODO stop accepting new events first
             try {
+                if (ipcGateway != null) {
+                    ipcGateway.stop();
+                }
+                if (metricsMonitor != null) {
+                    metricsMonitor.stop();
+                }
+                if (marginCallScanner != null) {
+                    marginCallScanner.stop();
+                }
                 log.info("Shutdown disruptor...");
                 ringBuffer.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
                 disruptor.shutdown(timeout, timeUnit);
                 log.info("Disruptor stopped");
+                riskEngines.forEach(RiskEngine::close);
+                if (ipcGateway != null) {
+                    ipcGateway.close();
+                }
             } catch (TimeoutException e) {
                 throw new IllegalStateException("could not stop a disruptor gracefully. Not all events may be executed.");
             }
         }
     }
 
-    private static EventHandler<OrderCommand>[] arraysAddHandler(EventHandler<OrderCommand>[] handlers, EventHandler<OrderCommand> extraHandler) {
-        final EventHandler<OrderCommand>[] result = Arrays.copyOf(handlers, handlers.length + 1);
-        result[handlers.length] = extraHandler;
-        return result;
+    private static EventHandler<OrderCommand> withStageBackoff(final EventHandler<OrderCommand> handler,
+                                                               final WaitBackoffConfiguration backoffCfg,
+                                                               final Function<WaitBackoffConfiguration, StageBackoff> stage) {
+        return backoffCfg == null ? handler : BackoffWaitStrategy.withStageBackoff(handler, stage.apply(backoffCfg));
+    }
+
+    private static <T> T registerStage(final PlannedAffinityThreadFactory placement, final T stage, final String name) {
+        return placement == null ? stage : placement.registerStage(stage, name);
+    }
+
+    /*
+     * Stage thread names in pipeline order (communicating stages are neighbours), R2 stages are running in R1 threads
+     */
+    private static List<String> pipelineStages(final int matchingEnginesNum,
+                                               final int riskEnginesNum,
+                                               final int riskPreCheckWorkersNum,
+                                               final boolean enableJournaling,
+                                               final int fanOutNum) {
+        final List<String> stages = new ArrayList<>();
+        stages.add("G");
+        for (int i = 0; i < riskEnginesNum; i++) {
+            stages.add("R1_" + i);
+            for (int w = 1; w < riskPreCheckWorkersNum; w++) {
+                stages.add("R1_" + i + "_" + w);
+            }
+        }
+        for (int i = 0; i < matchingEnginesNum; i++) {
+            stages.add("ME_" + i);
+        }
+        stages.add("E");
+        for (int i = 0; i < fanOutNum; i++) {
+            stages.add("F_" + i);
+        }
+        if (enableJournaling) {
+            stages.add(ThreadPlacementPlan.JOURNAL_STAGE);
+        }
+        return stages;
     }
 
     @SuppressWarnings(value = {"unchecked"})
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Garbage-free alternative of SimpleEventsProcessor.
+ * Delivers same events in the same order, but using reusable views (see IFlyweightEventsHandler).
+ * Additionally reports results of commands SimpleEventsProcessor skips (suspend/resume user, reset, persist state,
+ * binary queries and rejected gateway messages), command type is available from the view.
+ */
+@RequiredArgsConstructor
+@Getter
+@Slf4j
+public class FlyweightEventsProcessor implements ObjLongConsumer<OrderCommand> {
+
+    private final IFlyweightEventsHandler eventsHandler;
+
+    private final IFlyweightEventsHandler.CommandResultView commandResultView = new IFlyweightEventsHandler.CommandResultView();
+    private final IFlyweightEventsHandler.TradeEventView tradeEventView = new IFlyweightEventsHandler.TradeEventView();
+    private final IFlyweightEventsHandler.OrderEventView orderEventView = new IFlyweightEventsHandler.OrderEventView();
+    private final IFlyweightEventsHandler.OrderBookView orderBookView = new IFlyweightEventsHandler.OrderBookView();
+    private final IFlyweightEventsHandler.MarginCallView marginCallView = new IFlyweightEventsHandler.MarginCallView();
+
+    @Override
+    public void accept(OrderCommand cmd, long seq) {
+        try {
+            sendCommandResult(cmd, seq);
+            sendTradeEvents(cmd);
+            sendMarketData(cmd);
+        } catch (Exception ex) {
+            log.error("Exception when handling command result data", ex);
+        }
+    }
+
+    private void sendTradeEvents(OrderCommand cmd) {
+        MatcherTradeEvent firstEvent = cmd.matcherEvent;
+
+        // margin calls are published as separate MARGIN_CALL commands (no other events attached)
+        while (firstEvent != null && firstEvent.eventType == MatcherEventType.MARGIN_CALL) {
+            eventsHandler.marginCall(marginCallView.wrap(cmd, firstEvent));
+            firstEvent = firstEvent.nextEvent;
+        }
+
+        if (firstEvent == null) {
+            return;
+        }
+
+        if (firstEvent.eventType == MatcherEventType.REDUCE) {
+
+            eventsHandler.reduceEvent(orderEventView.wrap(cmd, firstEvent));
+
+            if (firstEvent.nextEvent != null) {
+                throw new IllegalStateException("Only single REDUCE event is expected");
+            }
+
+            return;
+        }
+
+        sendTradeEvent(cmd);
+    }
+
+    private void sendTradeEvent(OrderCommand cmd) {
+
+        // single pass for totals, trades are iterated by handler directly over events chain
+        boolean hasTrades = false;
+        boolean takerOrderCompleted = false;
+        long totalVolume = 0L;
+        MatcherTradeEvent rejectEvent = null;
+
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            if (evt.eventType == MatcherEventType.TRADE) {
+                hasTrades = true;
+                totalVolume += evt.size;
+                if (evt.activeOrderCompleted) {
+                    takerOrderCompleted = true;
+                }
+            } else if (evt.eventType == MatcherEventType.REJECT) {
+                rejectEvent = evt;
+            }
+        }
+
+        if (hasTrades) {
+            eventsHandler.tradeEvent(tradeEventView.wrap(cmd, totalVolume, takerOrderCompleted));
+        }
+
+        if (rejectEvent != null) {
+            eventsHandler.rejectEvent(orderEventView.wrap(cmd, rejectEvent));
+        }
+    }
+
+    private void sendMarketData(OrderCommand cmd) {
+        if (cmd.marketData != null) {
+            eventsHandler.orderBook(orderBookView.wrap(cmd));
+        }
+    }
+
+    private void sendCommandResult(OrderCommand cmd, long seq) {
+
+        switch (cmd.command) {
+            case PLACE_ORDER:
+            case MOVE_ORDER:
+            case CANCEL_ORDER:
+            case REDUCE_ORDER:
+            case ORDER_BOOK_REQUEST:
+            case ADD_USER:
+            case BALANCE_ADJUSTMENT:
+            case SUSPEND_USER:
+            case RESUME_USER:
+            case RESET:
+                eventsHandler.commandResult(commandResultView.wrap(cmd, seq));
+                break;
+
+            // multi-frame and multi-step commands - only final result is reported
+            case BINARY_DATA_COMMAND:
+            case BINARY_DATA_QUERY:
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                if (cmd.resultCode != CommandResultCode.ACCEPTED) {
+                    eventsHandler.commandResult(commandResultView.wrap(cmd, seq));
+                }
+                break;
+
+            // NOP is only reported if it replaced rejected message (for example invalid gateway message)
+            case NOP:
+                if (cmd.resultCode != CommandResultCode.SUCCESS) {
+                    eventsHandler.commandResult(commandResultView.wrap(cmd, seq));
+                }
+                break;
+
+            // internal service commands (margin calls are delivered as events)
+            case MARGIN_CALL:
+            case GROUPING_CONTROL:
+            case SHUTDOWN_SIGNAL:
+            case RESERVED_COMPRESSED:
+                break;
+        }
+    }
+}
@@ -57,6 +57,15 @@ public interface IEventsHandler {
      */
     void orderBook(OrderBook orderBook);
 
+    /**
+     * Method is called when margin calls scanner detected that account equity became negative (margin call).
+     * Only sent if margin calls detection is enabled, default implementation ignores event.
+     *
+     * @param marginCallEvent - immutable object describing event details
+     */
+    default void marginCall(MarginCallEvent marginCallEvent) {
+    }
+
     @Data
     class ApiCommandResult {
         public final ApiCommand command;
@@ -96,6 +105,17 @@ public interface IEventsHandler {
         public final long timestamp;
     }
 
+    @Data
+    class MarginCallEvent {
+        public final int symbol; // position which triggered margin call
+        public final long uid;
+        public final int currency;
+        public final long price; // last price used for evaluation
+        public final long positionVolume;
+        public final long equity; // negative
+        public final long timestamp;
+    }
+
     @Data
     class RejectEvent {
         public final int symbol;
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Garbage-free events handler interface for latency-critical applications.<br>
+ * Custom handler implementation should be attached to FlyweightEventsProcessor.<br>
+ * Methods are invoked in the same order as for IEventsHandler, but instead of immutable objects
+ * handler receives reusable views over the command being processed.<br>
+ * Views are valid only during the method call - copy required data if it should be retained.
+ */
+public interface IFlyweightEventsHandler {
+
+    /**
+     * Method is called after each commands execution.
+     *
+     * @param commandResult - view of original command, result code, and assigned sequence number.
+     */
+    void commandResult(CommandResultView commandResult);
+
+    /**
+     * Method is called if order execution was resulted to one or more trades.
+     *
+     * @param tradeEvent - view of event details, trades can be iterated using {@link TradeEventView#nextTrade()}
+     */
+    void tradeEvent(TradeEventView tradeEvent);
+
+    /**
+     * Method is called if IoC order was not possible to match with provided price limit.
+     *
+     * @param rejectEvent - view of event details
+     */
+    void rejectEvent(OrderEventView rejectEvent);
+
+    /**
+     * Method is called if Cancel or Reduce command was successfully executed.
+     *
+     * @param reduceEvent - view of event details
+     */
+    void reduceEvent(OrderEventView reduceEvent);
+
+    /**
+     * Method is called when order book snapshot (L2MarketData) was attached to commands by matching engine.
+     *
+     * @param orderBook - view of L2 OrderBook snapshot
+     */
+    void orderBook(OrderBookView orderBook);
+
+    /**
+     * Method is called when margin calls scanner detected that account equity became negative (margin call).
+     * Only sent if margin calls detection is enabled, default implementation ignores event.
+     *
+     * @param marginCall - view of event details
+     */
+    default void marginCall(MarginCallView marginCall) {
+    }
+
+    final class CommandResultView {
+
+        private OrderCommand cmd;
+        private long seq;
+
+        CommandResultView wrap(final OrderCommand cmd, final long seq) {
+            this.cmd = cmd;
+            this.seq = seq;
+            return this;
+        }
+
+        public OrderCommandType command() {
+            return cmd.command;
+        }
+
+        public CommandResultCode resultCode() {
+            return cmd.resultCode;
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public long orderId() {
+            return cmd.orderId;
+        }
+
+        public long uid() {
+            return cmd.uid;
+        }
+
+        // symbol, or currency for BALANCE_ADJUSTMENT
+        public int symbol() {
+            return cmd.symbol;
+        }
+
+        // price, or amount for BALANCE_ADJUSTMENT
+        public long price() {
+            return cmd.price;
+        }
+
+        // size, reduce size for REDUCE_ORDER, or depth for ORDER_BOOK_REQUEST
+        public long size() {
+            return cmd.size;
+        }
+
+        public long reserveBidPrice() {
+            return cmd.reserveBidPrice;
+        }
+
+        public OrderAction action() {
+            return cmd.action;
+        }
+
+        public OrderType orderType() {
+            return cmd.orderType;
+        }
+
+        public int userCookie() {
+            return cmd.userCookie;
+        }
+
+        public long timestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    /**
+     * Trade event view with trades iterator over matcher events chain
+     */
+    final class TradeEventView {
+
+        private OrderCommand cmd;
+        private long totalVolume;
+        private boolean takerOrderCompleted;
+
+        private MatcherTradeEvent next;
+        private MatcherTradeEvent trade;
+
+        TradeEventView wrap(final OrderCommand cmd, final long totalVolume, final boolean takerOrderCompleted) {
+            this.cmd = cmd;
+            this.totalVolume = totalVolume;
+            this.takerOrderCompleted = takerOrderCompleted;
+            resetTrades();
+            return this;
+        }
+
+        public int symbol() {
+            return cmd.symbol;
+        }
+
+        public long totalVolume() {
+            return totalVolume;
+        }
+
+        public long takerOrderId() {
+            return cmd.orderId;
+        }
+
+        public long takerUid() {
+            return cmd.uid;
+        }
+
+        public OrderAction takerAction() {
+            return cmd.action;
+        }
+
+        public boolean takerOrderCompleted() {
+            return takerOrderCompleted;
+        }
+
+        public long timestamp() {
+            return cmd.timestamp;
+        }
+
+        /**
+         * Rewind trades iterator to the first trade
+         */
+        public void resetTrades() {
+            this.next = cmd.matcherEvent;
+            this.trade = null;
+        }
+
+        /**
+         * Move to the next trade
+         *
+         * @return false if there are no more trades
+         */
+        public boolean nextTrade() {
+            while (next != null) {
+                final MatcherTradeEvent evt = next;
+                next = evt.nextEvent;
+                if (evt.eventType == MatcherEventType.TRADE) {
+                    trade = evt;
+                    return true;
+                }
+            }
+            trade = null;
+            return false;
+        }
+
+        public long makerOrderId() {
+            return trade.matchedOrderId;
+        }
+
+        public long makerUid() {
+            return trade.matchedOrderUid;
+        }
+
+        public boolean makerOrderCompleted() {
+            return trade.matchedOrderCompleted;
+        }
+
+        public long price() {
+            return trade.price;
+        }
+
+        public long volume() {
+            return trade.size;
+        }
+    }
+
+    /**
+     * Reduce or reject event view
+     */
+    final class OrderEventView {
+
+        private OrderCommand cmd;
+        private MatcherTradeEvent evt;
+
+        OrderEventView wrap(final OrderCommand cmd, final MatcherTradeEvent evt) {
+            this.cmd = cmd;
+            this.evt = evt;
+            return this;
+        }
+
+        public int symbol() {
+            return cmd.symbol;
+        }
+
+        // reduced or rejected volume
+        public long volume() {
+            return evt.size;
+        }
+
+        // always true for reject event
+        public boolean orderCompleted() {
+            return evt.activeOrderCompleted;
+        }
+
+        public long price() {
+            return evt.price;
+        }
+
+        public long orderId() {
+            return cmd.orderId;
+        }
+
+        public long uid() {
+            return cmd.uid;
+        }
+
+        public long timestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class MarginCallView {
+
+        private OrderCommand cmd;
+        private MatcherTradeEvent evt;
+
+        MarginCallView wrap(final OrderCommand cmd, final MatcherTradeEvent evt) {
+            this.cmd = cmd;
+            this.evt = evt;
+            return this;
+        }
+
+        // position which triggered margin call
+        public int symbol() {
+            return (int) evt.matchedOrderId;
+        }
+
+        public long uid() {
+            return evt.matchedOrderUid;
+        }
+
+        public int currency() {
+            return evt.section;
+        }
+
+        // last price used for evaluation
+        public long price() {
+            return evt.price;
+        }
+
+        public long positionVolume() {
+            return evt.size;
+        }
+
+        // negative
+        public long equity() {
+            return evt.bidderHoldPrice;
+        }
+
+        public long timestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class OrderBookView {
+
+        private OrderCommand cmd;
+
+        OrderBookView wrap(final OrderCommand cmd) {
+            this.cmd = cmd;
+            return this;
+        }
+
+        private L2MarketData data() {
+            return cmd.marketData;
+        }
+
+        public int symbol() {
+            return cmd.symbol;
+        }
+
+        public long timestamp() {
+            return cmd.timestamp;
+        }
+
+        public int askSize() {
+            return data().askSize;
+        }
+
+        public long askPrice(final int idx) {
+            return data().askPrices[idx];
+        }
+
+        public long askVolume(final int idx) {
+            return data().askVolumes[idx];
+        }
+
+        public int askOrders(final int idx) {
+            return (int) data().askOrders[idx];
+        }
+
+        public int bidSize() {
+            return data().bidSize;
+        }
+
+        public long bidPrice(final int idx) {
+            return data().bidPrices[idx];
+        }
+
+        public long bidVolume(final int idx) {
+            return data().bidVolumes[idx];
+        }
+
+        public int bidOrders(final int idx) {
+            return (int) data().bidOrders[idx];
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.api.binary.BatchAddAccountsCommand;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.binary.BinaryDataCommand;
+import exchange.core2.core.common.api.reports.ReportQuery;
+import exchange.core2.core.common.api.reports.ReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Thin sequencer of sharded exchange: routes API commands to shards.
+ * <p>
+ * Routing is a pure function of the command: orders and order book requests go to the shard of the symbol,
+ * balance adjustments go to the funding shard, user management, reset, persist and nop commands are broadcast to all shards.
+ * Commands submitted from the same thread reach every shard in submission order, so each shard input
+ * (and its state) is deterministic if sequencer input is deterministic.
+ * <p>
+ * Shards interact only through balance transfer protocol, transfer legs are ordered by completion of the previous leg.
+ */
+@Slf4j
+public final class ShardedExchangeApi {
+
+    private static final int ALL_SHARDS = -1;
+
+    private final List<ExchangeApi> shardApis;
+    private final IntUnaryOperator symbolToShard;
+    private final int fundingShard;
+
+    public ShardedExchangeApi(final List<ExchangeApi> shardApis, final IntUnaryOperator symbolToShard, final int fundingShard) {
+        this.shardApis = shardApis;
+        this.symbolToShard = symbolToShard;
+        this.fundingShard = fundingShard;
+    }
+
+    public int shardOf(final int symbol) {
+        return symbolToShard.applyAsInt(symbol);
+    }
+
+    public ExchangeApi getShardApi(final int shard) {
+        return shardApis.get(shard);
+    }
+
+    public int getShardsNum() {
+        return shardApis.size();
+    }
+
+    public int getFundingShard() {
+        return fundingShard;
+    }
+
+    public void submitCommand(final ApiCommand cmd) {
+
+        if (cmd instanceof ApiBinaryDataCommand) {
+            submitBinaryDataAsync(((ApiBinaryDataCommand) cmd).data);
+            return;
+        }
+
+        final int shard = route(cmd);
+        if (shard == ALL_SHARDS) {
+            shardApis.forEach(api -> api.submitCommand(cmd));
+        } else {
+            shardApis.get(shard).submitCommand(cmd);
+        }
+    }
+
+    public CompletableFuture<CommandResultCode> submitCommandAsync(final ApiCommand cmd) {
+
+        if (cmd instanceof ApiBinaryDataCommand) {
+            return submitBinaryDataAsync(((ApiBinaryDataCommand) cmd).data);
+        }
+
+        final int shard = route(cmd);
+        if (shard == ALL_SHARDS) {
+            return mergeResults(shardApis.stream().map(api -> api.submitCommandAsync(cmd)).collect(Collectors.toList()));
+        } else {
+            return shardApis.get(shard).submitCommandAsync(cmd);
+        }
+    }
+
+    /**
+     * Submits commands and waits until all shards processed them
+     *
+     * @param cmds - commands
+     */
+    public void submitCommandsSync(final List<? extends ApiCommand> cmds) {
+        cmds.forEach(this::submitCommand);
+        submitCommandAsync(ApiNop.builder().build()).join();
+    }
+
+    /**
+     * Submits binary data command.
+     * Symbols are split by shards, accounts with initial balances are created in the funding shard (other shards get empty accounts).
+     *
+     * @param data - binary data command
+     * @return future with merged result
+     */
+    public CompletableFuture<CommandResultCode> submitBinaryDataAsync(final BinaryDataCommand data) {
+
+        if (data instanceof BatchAddSymbolsCommand) {
+
+            final TreeMap<Integer, List<CoreSymbolSpecification>> symbolsByShard = new TreeMap<>();
+            ((BatchAddSymbolsCommand) data).getSymbols().forEachValue(
+                    spec -> symbolsByShard.computeIfAbsent(shardOf(spec.symbolId), k -> new ArrayList<>()).add(spec));
+
+            return mergeResults(symbolsByShard.entrySet().stream()
+                    .map(e -> shardApis.get(e.getKey()).submitBinaryDataAsync(new BatchAddSymbolsCommand(e.getValue())))
+                    .collect(Collectors.toList()));
+
+        } else if (data instanceof BatchAddAccountsCommand) {
+
+            final LongObjectHashMap<IntLongHashMap> emptyAccounts = new LongObjectHashMap<>();
+            ((BatchAddAccountsCommand) data).getUsers().forEachKey(uid -> emptyAccounts.put(uid, new IntLongHashMap()));
+            final BatchAddAccountsCommand emptyAccountsCmd = new BatchAddAccountsCommand(emptyAccounts);
+
+            final List<CompletableFuture<CommandResultCode>> futures = new ArrayList<>(shardApis.size());
+            for (int shard = 0; shard < shardApis.size(); shard++) {
+                futures.add(shardApis.get(shard).submitBinaryDataAsync(shard == fundingShard ? data : emptyAccountsCmd));
+            }
+            return mergeResults(futures);
+
+        } else {
+            throw new IllegalArgumentException("Binary command can not be routed: " + data.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Transfers funds between sub-accounts of the user in different shards.
+     * <p>
+     * Protocol: debit source sub-account (BALANCE_ADJUSTMENT with transactionId), then credit target sub-account
+     * (BALANCE_ADJUSTMENT with the same transactionId). If credit fails, source sub-account is refunded
+     * using transactionId + 1, so next transaction id of the user should be at least transactionId + 2.
+     * Double settlement protection of each leg is provided by risk engine (transaction id should increment only).
+     *
+     * @param uid           - user id
+     * @param currency      - currency
+     * @param amount        - amount to transfer (positive)
+     * @param fromShard     - source shard
+     * @param toShard       - target shard
+     * @param transactionId - transaction id
+     * @return future with result code of the first failed leg, or SUCCESS
+     */
+    public CompletableFuture<CommandResultCode> transferBalance(final long uid,
+                                                                final int currency,
+                                                                final long amount,
+                                                                final int fromShard,
+                                                                final int toShard,
+                                                                final long transactionId) {
+
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Transfer amount should be positive: " + amount);
+        }
+        if (fromShard == toShard) {
+            throw new IllegalArgumentException("Source and target shards are same: " + fromShard);
+        }
+
+        final ExchangeApi fromApi = shardApis.get(fromShard);
+        final ExchangeApi toApi = shardApis.get(toShard);
+
+        // next legs are published from common pool, not from results thread of the shard completed previous leg
+        return fromApi.submitCommandAsync(adjustment(uid, currency, -amount, transactionId))
+                .thenComposeAsync(debitResult -> {
+                    if (debitResult != CommandResultCode.SUCCESS) {
+                        return CompletableFuture.completedFuture(debitResult);
+                    }
+                    return toApi.submitCommandAsync(adjustment(uid, currency, amount, transactionId))
+                            .thenComposeAsync(creditResult -> {
+                                if (creditResult == CommandResultCode.SUCCESS) {
+                                    return CompletableFuture.completedFuture(CommandResultCode.SUCCESS);
+                                }
+                                log.warn("Transfer {} of uid={} to shard {} failed: {}, refunding", transactionId, uid, toShard, creditResult);
+                                return fromApi.submitCommandAsync(adjustment(uid, currency, amount, transactionId + 1))
+                                        .thenApply(refundResult -> {
+                                            if (refundResult != CommandResultCode.SUCCESS) {
+                                                log.error("Transfer {} of uid={} refund failed: {}", transactionId, uid, refundResult);
+                                            }
+                                            return creditResult;
+                                        });
+                            });
+                });
+    }
+
+    public CompletableFuture<L2MarketData> requestOrderBookAsync(final int symbol, final int depth) {
+        return shardApis.get(shardOf(symbol)).requestOrderBookAsync(symbol, depth);
+    }
+
+    /**
+     * Executes report query on all shards
+     *
+     * @param query      - report query
+     * @param transferId - transfer id
+     * @return future with results of each shard
+     */
+    public <Q extends ReportQuery<R>, R extends ReportResult> CompletableFuture<List<R>> processReport(final Q query, final int transferId) {
+        final List<CompletableFuture<R>> futures = shardApis.stream()
+                .map(api -> api.processReport(query, transferId))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignore -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    private int route(final ApiCommand cmd) {
+        if (cmd instanceof ApiMoveOrder) {
+            return shardOf(((ApiMoveOrder) cmd).symbol);
+        } else if (cmd instanceof ApiPlaceOrder) {
+            return shardOf(((ApiPlaceOrder) cmd).symbol);
+        } else if (cmd instanceof ApiCancelOrder) {
+            return shardOf(((ApiCancelOrder) cmd).symbol);
+        } else if (cmd instanceof ApiReduceOrder) {
+            return shardOf(((ApiReduceOrder) cmd).symbol);
+        } else if (cmd instanceof ApiOrderBookRequest) {
+            return shardOf(((ApiOrderBookRequest) cmd).symbol);
+        } else if (cmd instanceof ApiAdjustUserBalance) {
+            return fundingShard;
+        } else if (cmd instanceof ApiAddUser
+                || cmd instanceof ApiResumeUser
+                || cmd instanceof ApiSuspendUser
+                || cmd instanceof ApiPersistState
+                || cmd instanceof ApiReset
+                || cmd instanceof ApiNop) {
+            return ALL_SHARDS;
+        } else {
+            throw new IllegalArgumentException("Command can not be routed: " + cmd.getClass().getSimpleName());
+        }
+    }
+
+    private static ApiAdjustUserBalance adjustment(final long uid, final int currency, final long amount, final long transactionId) {
+        return ApiAdjustUserBalance.builder()
+                .uid(uid)
+                .currency(currency)
+                .amount(amount)
+                .transactionId(transactionId)
+                .build();
+    }
+
+    private static CompletableFuture<CommandResultCode> mergeResults(final List<CompletableFuture<CommandResultCode>> futures) {
+        if (futures.isEmpty()) {
+            return CompletableFuture.completedFuture(CommandResultCode.SUCCESS);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignore -> CommandResultCode.mergeToFirstFailed(futures.stream().map(CompletableFuture::join).toArray(CommandResultCode[]::new)));
+    }
+}
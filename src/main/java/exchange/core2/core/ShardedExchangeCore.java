@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Partitioned deployment of several independent exchange core instances (shards) in one JVM.
+ * <p>
+ * Each shard has own ring buffer, grouping processor, matching and risk engines, and processes only symbols assigned to it.
+ * Users exist in every shard, each shard keeps own sub-account balances of the user.
+ * Funds are deposited into the funding shard and moved between sub-accounts with transfer protocol (see ShardedExchangeApi).
+ * <p>
+ * Shards do not share any state, so aggregate throughput grows with number of shards (as long as there are enough CPU cores).
+ */
+@Slf4j
+public final class ShardedExchangeCore {
+
+    private final List<ExchangeCore> shards;
+
+    private final ShardedExchangeApi api;
+
+    /**
+     * Sharded exchange core constructor.
+     *
+     * @param shardsNum                    - number of exchange core instances
+     * @param exchangeConfigurationFactory - configuration of each shard (exchangeId should be unique if shards are persisted)
+     * @param resultsConsumerFactory       - optional custom consumer of processed commands for each shard (called from shard results thread)
+     * @param symbolToShard                - optional symbol routing function (default: symbol id modulo number of shards)
+     * @param fundingShard                 - shard receiving balance adjustments (deposits and withdrawals)
+     */
+    @Builder
+    public ShardedExchangeCore(final int shardsNum,
+                               final IntFunction<ExchangeConfiguration> exchangeConfigurationFactory,
+                               final IntFunction<ObjLongConsumer<OrderCommand>> resultsConsumerFactory,
+                               final IntUnaryOperator symbolToShard,
+                               final int fundingShard) {
+
+        if (shardsNum < 1) {
+            throw new IllegalArgumentException("At least one shard required, shardsNum=" + shardsNum);
+        }
+        if (fundingShard < 0 || fundingShard >= shardsNum) {
+            throw new IllegalArgumentException("Invalid funding shard " + fundingShard + " (shardsNum=" + shardsNum + ")");
+        }
+
+        log.debug("Building {} exchange core shards", shardsNum);
+
+        this.shards = Collections.unmodifiableList(IntStream.range(0, shardsNum)
+                .mapToObj(shard -> ExchangeCore.builder()
+                        .resultsConsumer(resultsConsumerFactory != null ? resultsConsumerFactory.apply(shard) : (cmd, seq) -> {
+                        })
+                        .exchangeConfiguration(exchangeConfigurationFactory.apply(shard))
+                        .build())
+                .collect(Collectors.toList()));
+
+        this.api = new ShardedExchangeApi(
+                shards.stream().map(ExchangeCore::getApi).collect(Collectors.toList()),
+                symbolToShard != null ? symbolToShard : symbol -> Math.floorMod(symbol, shardsNum),
+                fundingShard);
+    }
+
+    public synchronized void startup() {
+        shards.forEach(ExchangeCore::startup);
+    }
+
+    /**
+     * Provides ShardedExchangeApi instance.
+     *
+     * @return ShardedExchangeApi instance (always same object)
+     */
+    public ShardedExchangeApi getApi() {
+        return api;
+    }
+
+    public ExchangeCore getShard(final int shard) {
+        return shards.get(shard);
+    }
+
+    public int getShardsNum() {
+        return shards.size();
+    }
+
+    /**
+     * shut down all shards
+     */
+    public synchronized void shutdown() {
+        shutdown(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Will throw IllegalStateException if any shard can not stop gracefully.
+     *
+     * @param timeout  the amount of time to wait for each shard. <code>-1</code> will give an infinite timeout
+     * @param timeUnit the unit the timeOut is specified in
+     */
+    public synchronized void shutdown(final long timeout, final TimeUnit timeUnit) {
+        shards.forEach(shard -> shard.shutdown(timeout, timeUnit));
+    }
+}
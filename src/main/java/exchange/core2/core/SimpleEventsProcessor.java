@@ -36,7 +36,21 @@ public class SimpleEventsProcessor implements ObjLongConsumer<OrderCommand> {
     }
 
     private void sendTradeEvents(OrderCommand cmd) {
-        final MatcherTradeEvent firstEvent = cmd.matcherEvent;
+        MatcherTradeEvent firstEvent = cmd.matcherEvent;
+
+        // margin calls are published as separate MARGIN_CALL commands (no other events attached)
+        while (firstEvent != null && firstEvent.eventType == MatcherEventType.MARGIN_CALL) {
+            eventsHandler.marginCall(new IEventsHandler.MarginCallEvent(
+                    (int) firstEvent.matchedOrderId,
+                    firstEvent.matchedOrderUid,
+                    firstEvent.section,
+                    firstEvent.price,
+                    firstEvent.size,
+                    firstEvent.bidderHoldPrice,
+                    cmd.timestamp));
+            firstEvent = firstEvent.nextEvent;
+        }
+
         if (firstEvent == null) {
             return;
         }
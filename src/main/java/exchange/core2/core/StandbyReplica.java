@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessor;
+import exchange.core2.core.processors.journaling.JournalTailer;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Hot-standby exchange core replica.
+ * <p>
+ * Standby core is started from the same state as primary (snapshot or clean start), then replication thread
+ * follows primary journal (JournalTailer) and continuously applies journaled commands through standby own pipeline.
+ * Same as journal replay, grouping is disabled during replication: journaled events groups and service flags are
+ * preserved, and results are not published to results consumers (including fan-out consumers).
+ * Standby journals replicated commands as usual (if journaling is enabled), so it has own durable copy of the state.
+ * <p>
+ * Promotion stops replication at exact journal sequence and enables grouping and results publishing -
+ * standby becomes primary without loading snapshot and replaying journal.
+ * Failure detection and fencing of the old primary are out of scope (caller decides when to promote).
+ */
+@Slf4j
+public final class StandbyReplica {
+
+    private static final long POLL_INTERVAL_NS = 100_000L;
+
+    private final ExchangeCore exchangeCore;
+    private final ExchangeApi api;
+    private final JournalTailer journalTailer;
+    private final ExchangeConfiguration exchangeConfiguration;
+
+    // replication stops after applying command with this journal sequence
+    private volatile long stopSeq = Long.MAX_VALUE;
+
+    // replication stops when no more commands available
+    private volatile boolean drainRequested = false;
+
+    private volatile long lastAppliedSeq;
+    private volatile Throwable replicationError = null;
+    private volatile boolean promoted = false;
+
+    private Thread replicator;
+
+    /**
+     * Standby replica constructor.
+     *
+     * @param resultsConsumer       - custom consumer of processed commands (receives results only after promotion)
+     * @param exchangeConfiguration - exchange configuration, initial state should be the starting point of journal tailer
+     * @param resultsFanOut         - optional additional results consumers (receive results only after promotion)
+     * @param journalTailer         - primary journal source
+     */
+    @Builder
+    public StandbyReplica(final ObjLongConsumer<OrderCommand> resultsConsumer,
+                          final ExchangeConfiguration exchangeConfiguration,
+                          final List<ResultsConsumerConfiguration> resultsFanOut,
+                          final JournalTailer journalTailer) {
+
+        this.exchangeConfiguration = exchangeConfiguration;
+        this.journalTailer = journalTailer;
+        this.lastAppliedSeq = journalTailer.getLastSeq();
+
+        this.exchangeCore = ExchangeCore.builder()
+                .resultsConsumer(resultsConsumer)
+                .exchangeConfiguration(exchangeConfiguration)
+                .resultsFanOut(resultsFanOut)
+                .build();
+
+        this.api = exchangeCore.getApi();
+    }
+
+    /**
+     * Starts standby core and replication thread
+     */
+    public synchronized void start() {
+        exchangeCore.startup();
+        api.groupingControl(0, 0);
+        startReplication();
+        log.info("Standby replica started, replicating after seq={}", lastAppliedSeq);
+    }
+
+    /**
+     * Promotes standby to primary after applying all commands available in primary journal (primary is stopped).
+     *
+     * @return journal sequence of the last replicated command
+     */
+    public synchronized long promote() {
+        checkNotPromoted();
+        final long t = System.nanoTime();
+        drainRequested = true;
+        stopReplication();
+        return goLive(t);
+    }
+
+    /**
+     * Promotes standby to primary at exact journal sequence (waits until command with this sequence is replicated).
+     * <p>
+     * If replication has already passed requested sequence, promotion is refused and standby keeps replicating.
+     *
+     * @param seq - journal sequence of the last command to replicate
+     * @return journal sequence of the last replicated command (always equal to seq)
+     */
+    public synchronized long promote(final long seq) {
+        checkNotPromoted();
+        if (lastAppliedSeq > seq) {
+            throw new IllegalStateException("Can not promote at seq=" + seq + ", already replicated up to seq=" + lastAppliedSeq);
+        }
+
+        final long t = System.nanoTime();
+        stopSeq = seq;
+        stopReplication();
+
+        final long lastSeq = lastAppliedSeq;
+        if (lastSeq != seq) {
+            // replication passed requested sequence before it was stopped - continue following primary journal
+            stopSeq = Long.MAX_VALUE;
+            startReplication();
+            throw new IllegalStateException("Can not promote at seq=" + seq + ", already replicated up to seq=" + lastSeq);
+        }
+
+        return goLive(t);
+    }
+
+    private void checkNotPromoted() {
+        if (promoted) {
+            throw new IllegalStateException("Already promoted");
+        }
+    }
+
+    private void startReplication() {
+        replicator = exchangeConfiguration.getPerformanceCfg().getThreadFactory().newThread(this::replicationLoop);
+        replicator.setName("Standby-" + replicator.getName());
+        replicator.start();
+    }
+
+    private void stopReplication() {
+        try {
+            replicator.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping replication", ex);
+        }
+
+        if (replicationError != null) {
+            throw new IllegalStateException("Replication failed", replicationError);
+        }
+    }
+
+    private long goLive(final long t) {
+        api.groupingControl(0, 1);
+        promoted = true;
+
+        log.info("Standby promoted to primary at seq={} in {}us", lastAppliedSeq, (System.nanoTime() - t) / 1000);
+        return lastAppliedSeq;
+    }
+
+    private void replicationLoop() {
+        try {
+            while (true) {
+
+                // commands written before drain request should be read by the following poll
+                final boolean drain = drainRequested;
+
+                final int applied = journalTailer.poll((seq, cmd) -> {
+                    DiskSerializationProcessor.replayCommand(cmd, api);
+                    lastAppliedSeq = seq;
+                    return seq < stopSeq;
+                });
+
+                if (lastAppliedSeq >= stopSeq || (applied == 0 && drain)) {
+                    return;
+                }
+
+                if (applied == 0) {
+                    LockSupport.parkNanos(POLL_INTERVAL_NS);
+                }
+            }
+        } catch (final Throwable ex) {
+            log.error("Replication failed at seq={}", lastAppliedSeq, ex);
+            replicationError = ex;
+        }
+    }
+
+    /**
+     * @return journal sequence of the last replicated command
+     */
+    public long getLastAppliedSeq() {
+        return lastAppliedSeq;
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * Provides standby exchange core (API calls are allowed before promotion, but results are not published).
+     *
+     * @return exchange core
+     */
+    public ExchangeCore getExchangeCore() {
+        return exchangeCore;
+    }
+
+    /**
+     * Stops replication (if not promoted) and shuts down standby core
+     */
+    public synchronized void shutdown() {
+        if (!promoted && replicator != null) {
+            stopSeq = Long.MIN_VALUE;
+            try {
+                replicator.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchangeCore.shutdown();
+    }
+}
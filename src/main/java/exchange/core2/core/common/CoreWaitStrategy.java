@@ -19,6 +19,7 @@ import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.YieldingWaitStrategy;
+import exchange.core2.core.processors.BackoffWaitStrategy;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -33,6 +34,9 @@ public enum CoreWaitStrategy {
 
     BLOCKING(BlockingWaitStrategy::new, false, true),
 
+    // spin - yield - park - block, thresholds are configured per stage (see WaitBackoffConfiguration)
+    PHASED_BACKOFF(BackoffWaitStrategy::new, false, false),
+
     // special case
     SECOND_STEP_NO_WAIT(null, false, false);
 
@@ -31,5 +31,9 @@ public enum MatcherEventType {
     REDUCE,
 
     // Custom binary data attached
-    BINARY_EVENT
+    BINARY_EVENT,
+
+    // Margin call detected by risk engine (attached to command carrying market data)
+    // Always inserted before matcher events, should be skipped by risk engine
+    MARGIN_CALL
 }
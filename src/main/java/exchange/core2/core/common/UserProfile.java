@@ -44,6 +44,15 @@ public final class UserProfile implements WriteBytesMarshallable, StateHash {
 
     public UserStatus userStatus;
 
+    // recently used profiles list, maintained by UserProfileService when cold tier is enabled (not a part of state)
+    public UserProfile lruPrev;
+    public UserProfile lruNext;
+    public long lastAccessTick;
+
+    // currency -> free margin aggregate, up to date for matching price epoch, maintained by FreeMarginCache (not a part of state)
+    public IntLongHashMap marginAggregates;
+    public long marginAggregatesEpoch = -1;
+
     public UserProfile(long uid, UserStatus userStatus) {
         //log.debug("New {}", uid);
         this.uid = uid;
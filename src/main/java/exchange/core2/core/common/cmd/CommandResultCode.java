@@ -18,6 +18,8 @@ package exchange.core2.core.common.cmd;
 import lombok.Getter;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Getter
 public enum CommandResultCode {
@@ -67,6 +69,7 @@ public enum CommandResultCode {
     SYMBOL_MGMT_SYMBOL_ALREADY_EXISTS(-5001),
 
     BINARY_COMMAND_FAILED(-8001),
+    GATEWAY_MESSAGE_INVALID(-8002),
     REPORT_QUERY_UNKNOWN_TYPE(-8003),
     STATE_PERSIST_RISK_ENGINE_FAILED(-8010),
     STATE_PERSIST_MATCHING_ENGINE_FAILED(-8020),
@@ -82,6 +85,17 @@ public enum CommandResultCode {
         this.code = code;
     }
 
+    public static CommandResultCode of(int code) {
+        final CommandResultCode result = codes.get(code);
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown result code:" + code);
+        }
+        return result;
+    }
+
+    private static final Map<Integer, CommandResultCode> codes = Arrays.stream(values())
+            .collect(Collectors.toMap(CommandResultCode::getCode, x -> x));
+
     public static CommandResultCode mergeToFirstFailed(CommandResultCode... results) {
 
         return Arrays.stream(results)
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.cmd;
+
+import lombok.Getter;
+import org.agrona.BitUtil;
+import org.agrona.BufferUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Contiguous off-heap storage of fixed-size OrderCommand records (see {@link OrderCommandFlyweight}).
+ * <p>
+ * Slot is addressed by sequence, same way as disruptor ring buffer does.
+ * Records do not reference heap objects, so the ring is invisible for GC, and neighbour slots are adjacent in memory.
+ * <p>
+ * Ring does not track sequences itself, publishing and gating is up to the owner.
+ * Flyweights are not threadsafe - every thread should use its own instance, see {@link #newFlyweight()}.
+ * <p>
+ * Used as own buffer of asynchronous fan-out results consumers (see ResultsFanOutProcessor).
+ * Main disruptor ring still holds heap OrderCommand events: all pipeline stages (grouping, risk engines,
+ * matching engines, journaling, results handlers) access command fields, trade events chains and market data
+ * objects directly, so off-heap main ring would require flyweight-based implementation of every stage.
+ */
+public final class OffHeapOrderCommandRing {
+
+    @Getter
+    private final AtomicBuffer buffer;
+
+    @Getter
+    private final int slotsNum;
+
+    @Getter
+    private final int maxEventsPerSlot;
+
+    @Getter
+    private final int maxL2DepthPerSlot;
+
+    @Getter
+    private final int slotSize;
+
+    private final int indexMask;
+
+    /**
+     * Allocate cache-aligned direct memory ring
+     *
+     * @param slotsNum         - number of slots, power of 2
+     * @param maxEventsPerSlot - maximum number of trade events per command
+     */
+    public OffHeapOrderCommandRing(final int slotsNum, final int maxEventsPerSlot) {
+        this(slotsNum, maxEventsPerSlot, 0);
+    }
+
+    /**
+     * Allocate cache-aligned direct memory ring with market data section in every slot
+     *
+     * @param slotsNum          - number of slots, power of 2
+     * @param maxEventsPerSlot  - maximum number of trade events per command
+     * @param maxL2DepthPerSlot - maximum market data depth (per side) per command, 0 - market data is not stored
+     */
+    public OffHeapOrderCommandRing(final int slotsNum, final int maxEventsPerSlot, final int maxL2DepthPerSlot) {
+        this(new UnsafeBuffer(BufferUtil.allocateDirectAligned(
+                        requiredCapacity(slotsNum, maxEventsPerSlot, maxL2DepthPerSlot), BitUtil.CACHE_LINE_LENGTH)),
+                slotsNum, maxEventsPerSlot, maxL2DepthPerSlot);
+    }
+
+    /**
+     * Create ring on top of provided memory (for example memory-mapped file)
+     *
+     * @param buffer           - memory region, at least requiredCapacity bytes
+     * @param slotsNum         - number of slots, power of 2
+     * @param maxEventsPerSlot - maximum number of trade events per command
+     */
+    public OffHeapOrderCommandRing(final AtomicBuffer buffer, final int slotsNum, final int maxEventsPerSlot) {
+        this(buffer, slotsNum, maxEventsPerSlot, 0);
+    }
+
+    /**
+     * Create ring with market data section in every slot on top of provided memory
+     *
+     * @param buffer            - memory region, at least requiredCapacity bytes
+     * @param slotsNum          - number of slots, power of 2
+     * @param maxEventsPerSlot  - maximum number of trade events per command
+     * @param maxL2DepthPerSlot - maximum market data depth (per side) per command, 0 - market data is not stored
+     */
+    public OffHeapOrderCommandRing(final AtomicBuffer buffer, final int slotsNum, final int maxEventsPerSlot, final int maxL2DepthPerSlot) {
+        if (!BitUtil.isPowerOfTwo(slotsNum)) {
+            throw new IllegalArgumentException("Number of slots must be a power of 2: " + slotsNum);
+        }
+        final int capacity = requiredCapacity(slotsNum, maxEventsPerSlot, maxL2DepthPerSlot);
+        if (buffer.capacity() < capacity) {
+            throw new IllegalArgumentException("Buffer is too small: " + buffer.capacity() + " < " + capacity);
+        }
+
+        this.buffer = buffer;
+        this.slotsNum = slotsNum;
+        this.maxEventsPerSlot = maxEventsPerSlot;
+        this.maxL2DepthPerSlot = maxL2DepthPerSlot;
+        this.slotSize = OrderCommandFlyweight.recordSize(maxEventsPerSlot, maxL2DepthPerSlot);
+        this.indexMask = slotsNum - 1;
+    }
+
+    public static int requiredCapacity(final int slotsNum, final int maxEventsPerSlot) {
+        return requiredCapacity(slotsNum, maxEventsPerSlot, 0);
+    }
+
+    public static int requiredCapacity(final int slotsNum, final int maxEventsPerSlot, final int maxL2DepthPerSlot) {
+        return Math.multiplyExact(slotsNum, OrderCommandFlyweight.recordSize(maxEventsPerSlot, maxL2DepthPerSlot));
+    }
+
+    public OrderCommandFlyweight newFlyweight() {
+        return new OrderCommandFlyweight(maxEventsPerSlot, maxL2DepthPerSlot);
+    }
+
+    /**
+     * Point flyweight to the slot of provided sequence
+     *
+     * @param flyweight - flyweight owned by the caller
+     * @param sequence  - sequence
+     * @return same flyweight
+     */
+    public OrderCommandFlyweight wrap(final OrderCommandFlyweight flyweight, final long sequence) {
+        return flyweight.wrap(buffer, slotOffset(sequence));
+    }
+
+    public int slotOffset(final long sequence) {
+        return ((int) sequence & indexMask) * slotSize;
+    }
+}
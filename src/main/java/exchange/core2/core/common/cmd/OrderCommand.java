@@ -16,55 +16,34 @@
 package exchange.core2.core.common.cmd;
 
 import exchange.core2.core.common.*;
-import lombok.*;
+import lombok.Builder;
+import lombok.Getter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
-@ToString
-public final class OrderCommand implements IOrder {
-
-    public OrderCommandType command;
-
-    @Getter
-    public long orderId;
-
-    public int symbol;
-
-    @Getter
-    public long price;
+/**
+ * Ring buffer event.
+ * <p>
+ * Fields are grouped by the stage writing them, and groups are separated with padding using class hierarchy
+ * (JVM does not reorder fields across classes, superclass fields always come first):
+ * <ul>
+ * <li>input section - written by publisher (ExchangeApi) and grouping processor, then only read by R1, ME, R2, journaling and results handler;</li>
+ * <li>result section - written concurrently by R1 and ME stages (resultCode, trade events, market data, original order action).</li>
+ * </ul>
+ * Left padding also separates result section from input section of the next ring buffer slot
+ * (disruptor pre-allocates all events sequentially, so neighbour slots are normally adjacent in the heap).
+ */
+public final class OrderCommand extends OrderCommandMidPadding implements IOrder {
 
-    @Getter
-    public long size;
+    // ---- result section (written by R1/ME) ------
 
-    @Getter
-    // new orders INPUT - reserved price for fast moves of GTC bid orders in exchange mode
-    public long reserveBidPrice;
-
-    // required for PLACE_ORDER only;
-    // for CANCEL/MOVE contains original order action (filled by orderbook)
+    // required for PLACE_ORDER only (written by publisher);
+    // for CANCEL/MOVE/REDUCE contains original order action (filled by orderbook)
     @Getter
     public OrderAction action;
 
-    public OrderType orderType;
-
-    @Getter
-    public long uid;
-
-    @Getter
-    public long timestamp;
-
-    public int userCookie;
-
-    // filled by grouping processor:
-
-    public long eventsGroup;
-    public int serviceFlags;
-
     // result code of command execution - can also be used for saving intermediate state
     public CommandResultCode resultCode;
 
@@ -74,9 +53,43 @@ public final class OrderCommand implements IOrder {
     // optional market data
     public L2MarketData marketData;
 
-    // sequence of last available for this command
-    //public long matcherEventSequence;
-    // ---- potential false sharing section ------
+    public OrderCommand() {
+    }
+
+    @Builder
+    public OrderCommand(OrderCommandType command,
+                        long orderId,
+                        int symbol,
+                        long price,
+                        long size,
+                        long reserveBidPrice,
+                        OrderAction action,
+                        OrderType orderType,
+                        long uid,
+                        long timestamp,
+                        int userCookie,
+                        long eventsGroup,
+                        int serviceFlags,
+                        CommandResultCode resultCode,
+                        MatcherTradeEvent matcherEvent,
+                        L2MarketData marketData) {
+        this.command = command;
+        this.orderId = orderId;
+        this.symbol = symbol;
+        this.price = price;
+        this.size = size;
+        this.reserveBidPrice = reserveBidPrice;
+        this.action = action;
+        this.orderType = orderType;
+        this.uid = uid;
+        this.timestamp = timestamp;
+        this.userCookie = userCookie;
+        this.eventsGroup = eventsGroup;
+        this.serviceFlags = serviceFlags;
+        this.resultCode = resultCode;
+        this.matcherEvent = matcherEvent;
+        this.marketData = marketData;
+    }
 
     public static OrderCommand newOrder(OrderType orderType, long orderId, long uid, long price, long reserveBidPrice, long size, OrderAction action) {
         OrderCommand cmd = new OrderCommand();
@@ -203,6 +216,28 @@ public final class OrderCommand implements IOrder {
         return newCmd;
     }
 
+    @Override
+    public String toString() {
+        return "OrderCommand(" +
+                "command=" + command +
+                ", orderId=" + orderId +
+                ", symbol=" + symbol +
+                ", price=" + price +
+                ", size=" + size +
+                ", reserveBidPrice=" + reserveBidPrice +
+                ", action=" + action +
+                ", orderType=" + orderType +
+                ", uid=" + uid +
+                ", timestamp=" + timestamp +
+                ", userCookie=" + userCookie +
+                ", eventsGroup=" + eventsGroup +
+                ", serviceFlags=" + serviceFlags +
+                ", resultCode=" + resultCode +
+                ", matcherEvent=" + matcherEvent +
+                ", marketData=" + marketData +
+                ')';
+    }
+
     @Override
     public long getFilled() {
         return 0;
@@ -213,3 +248,51 @@ public final class OrderCommand implements IOrder {
         throw new UnsupportedOperationException("Command does not represents state");
     }
 }
+
+// int fillers occupy alignment gaps, otherwise JVM (15+) can place subclass fields into those gaps
+abstract class OrderCommandLhsPadding {
+    protected int p0;
+    protected long p1, p2, p3, p4, p5, p6, p7, p8;
+}
+
+abstract class OrderCommandInput extends OrderCommandLhsPadding {
+
+    // ---- input section (written by publisher) ------
+
+    public OrderCommandType command;
+
+    @Getter
+    public long orderId;
+
+    public int symbol;
+
+    @Getter
+    public long price;
+
+    @Getter
+    public long size;
+
+    @Getter
+    // new orders INPUT - reserved price for fast moves of GTC bid orders in exchange mode
+    public long reserveBidPrice;
+
+    public OrderType orderType;
+
+    @Getter
+    public long uid;
+
+    @Getter
+    public long timestamp;
+
+    public int userCookie;
+
+    // filled by grouping processor (before any other stage can read the slot):
+
+    public long eventsGroup;
+    public int serviceFlags;
+}
+
+abstract class OrderCommandMidPadding extends OrderCommandInput {
+    protected int p9;
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.cmd;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import lombok.Getter;
+import org.agrona.concurrent.AtomicBuffer;
+
+/**
+ * Flyweight over fixed-size OrderCommand record.
+ * <p>
+ * Record layout follows OrderCommand sections:
+ * <ul>
+ * <li>input section (first cache line) - written by publisher and grouping processor;</li>
+ * <li>result section (from second cache line) - result code and trade events, appended into the same record;</li>
+ * <li>optional market data section (after trade events) - L2 snapshot attached to the command.</li>
+ * </ul>
+ * Number of trade events and market data depth are limited by record capacity (see {@link #recordSize(int, int)}).
+ * <p>
+ * Enums are stored as codes (command, action, order type) or ordinals (result code, event type), null is stored as -1.
+ */
+public final class OrderCommandFlyweight {
+
+    // ---- input section ------
+    public static final int ORDER_ID_OFFSET = 0;
+    public static final int PRICE_OFFSET = 8;
+    public static final int SIZE_OFFSET = 16;
+    public static final int RESERVE_BID_PRICE_OFFSET = 24;
+    public static final int UID_OFFSET = 32;
+    public static final int TIMESTAMP_OFFSET = 40;
+    public static final int EVENTS_GROUP_OFFSET = 48;
+    public static final int SYMBOL_OFFSET = 56;
+    public static final int USER_COOKIE_OFFSET = 60;
+    public static final int SERVICE_FLAGS_OFFSET = 64;
+    public static final int COMMAND_OFFSET = 68;
+    public static final int ACTION_OFFSET = 69;
+    public static final int ORDER_TYPE_OFFSET = 70;
+
+    // ---- result section ------
+    public static final int RESULT_CODE_OFFSET = 128;
+    public static final int EVENTS_COUNT_OFFSET = 132;
+    public static final int EVENTS_OFFSET = 136;
+
+    // ---- trade event (relative to event start) ------
+    public static final int EVENT_TYPE_OFFSET = 0;
+    public static final int EVENT_FLAGS_OFFSET = 1;
+    public static final int EVENT_SECTION_OFFSET = 4;
+    public static final int EVENT_MATCHED_ORDER_ID_OFFSET = 8;
+    public static final int EVENT_MATCHED_ORDER_UID_OFFSET = 16;
+    public static final int EVENT_PRICE_OFFSET = 24;
+    public static final int EVENT_SIZE_OFFSET = 32;
+    public static final int EVENT_BIDDER_HOLD_PRICE_OFFSET = 40;
+    public static final int EVENT_SIZE = 48;
+
+    // ---- market data (relative to market data section start) ------
+    public static final int MD_ASK_SIZE_OFFSET = 0;
+    public static final int MD_BID_SIZE_OFFSET = 4;
+    public static final int MD_TIMESTAMP_OFFSET = 8;
+    public static final int MD_REFERENCE_SEQ_OFFSET = 16;
+    public static final int MD_LEVELS_OFFSET = 24;
+    public static final int MD_LEVEL_SIZE = 24; // price, volume, orders
+
+    private static final byte FLAG_ACTIVE_ORDER_COMPLETED = 1;
+    private static final byte FLAG_MATCHED_ORDER_COMPLETED = 2;
+
+    private static final int CACHE_LINE_SIZE = 64;
+
+    private static final CommandResultCode[] RESULT_CODES = CommandResultCode.values();
+    private static final MatcherEventType[] EVENT_TYPES = MatcherEventType.values();
+
+    @Getter
+    private final int maxEvents;
+
+    @Getter
+    private final int maxL2Depth;
+
+    // market data section offset relative to record start
+    private final int marketDataOffset;
+
+    private AtomicBuffer buffer;
+    private int offset;
+
+    public OrderCommandFlyweight(final int maxEvents) {
+        this(maxEvents, 0);
+    }
+
+    /**
+     * @param maxEvents  - maximum number of trade events in the record
+     * @param maxL2Depth - maximum market data depth (per side) in the record, 0 - no market data section
+     */
+    public OrderCommandFlyweight(final int maxEvents, final int maxL2Depth) {
+        this.maxEvents = maxEvents;
+        this.maxL2Depth = maxL2Depth;
+        this.marketDataOffset = EVENTS_OFFSET + maxEvents * EVENT_SIZE;
+    }
+
+    /**
+     * Record size without market data section, aligned to cache line size
+     *
+     * @param maxEvents - maximum number of trade events in the record
+     * @return record size in bytes
+     */
+    public static int recordSize(final int maxEvents) {
+        return recordSize(maxEvents, 0);
+    }
+
+    /**
+     * Record size, aligned to cache line size
+     *
+     * @param maxEvents  - maximum number of trade events in the record
+     * @param maxL2Depth - maximum market data depth (per side) in the record, 0 - no market data section
+     * @return record size in bytes
+     */
+    public static int recordSize(final int maxEvents, final int maxL2Depth) {
+        final int marketDataSize = maxL2Depth == 0 ? 0 : MD_LEVELS_OFFSET + 2 * maxL2Depth * MD_LEVEL_SIZE;
+        final int size = EVENTS_OFFSET + maxEvents * EVENT_SIZE + marketDataSize;
+        return (size + CACHE_LINE_SIZE - 1) & -CACHE_LINE_SIZE;
+    }
+
+    public OrderCommandFlyweight wrap(final AtomicBuffer buffer, final int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public OrderCommandType command() {
+        return OrderCommandType.fromCode(buffer.getByte(offset + COMMAND_OFFSET));
+    }
+
+    public OrderCommandFlyweight command(final OrderCommandType command) {
+        buffer.putByte(offset + COMMAND_OFFSET, command.getCode());
+        return this;
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + ORDER_ID_OFFSET);
+    }
+
+    public OrderCommandFlyweight orderId(final long orderId) {
+        buffer.putLong(offset + ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public int symbol() {
+        return buffer.getInt(offset + SYMBOL_OFFSET);
+    }
+
+    public OrderCommandFlyweight symbol(final int symbol) {
+        buffer.putInt(offset + SYMBOL_OFFSET, symbol);
+        return this;
+    }
+
+    public long price() {
+        return buffer.getLong(offset + PRICE_OFFSET);
+    }
+
+    public OrderCommandFlyweight price(final long price) {
+        buffer.putLong(offset + PRICE_OFFSET, price);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public OrderCommandFlyweight size(final long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+
+    public long reserveBidPrice() {
+        return buffer.getLong(offset + RESERVE_BID_PRICE_OFFSET);
+    }
+
+    public OrderCommandFlyweight reserveBidPrice(final long reserveBidPrice) {
+        buffer.putLong(offset + RESERVE_BID_PRICE_OFFSET, reserveBidPrice);
+        return this;
+    }
+
+    public OrderAction action() {
+        final byte code = buffer.getByte(offset + ACTION_OFFSET);
+        return code == -1 ? null : OrderAction.of(code);
+    }
+
+    public OrderCommandFlyweight action(final OrderAction action) {
+        buffer.putByte(offset + ACTION_OFFSET, action == null ? -1 : action.getCode());
+        return this;
+    }
+
+    public OrderType orderType() {
+        final byte code = buffer.getByte(offset + ORDER_TYPE_OFFSET);
+        return code == -1 ? null : OrderType.of(code);
+    }
+
+    public OrderCommandFlyweight orderType(final OrderType orderType) {
+        buffer.putByte(offset + ORDER_TYPE_OFFSET, orderType == null ? -1 : orderType.getCode());
+        return this;
+    }
+
+    public long uid() {
+        return buffer.getLong(offset + UID_OFFSET);
+    }
+
+    public OrderCommandFlyweight uid(final long uid) {
+        buffer.putLong(offset + UID_OFFSET, uid);
+        return this;
+    }
+
+    public long timestamp() {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    public OrderCommandFlyweight timestamp(final long timestamp) {
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        return this;
+    }
+
+    public int userCookie() {
+        return buffer.getInt(offset + USER_COOKIE_OFFSET);
+    }
+
+    public OrderCommandFlyweight userCookie(final int userCookie) {
+        buffer.putInt(offset + USER_COOKIE_OFFSET, userCookie);
+        return this;
+    }
+
+    public long eventsGroup() {
+        return buffer.getLong(offset + EVENTS_GROUP_OFFSET);
+    }
+
+    public OrderCommandFlyweight eventsGroup(final long eventsGroup) {
+        buffer.putLong(offset + EVENTS_GROUP_OFFSET, eventsGroup);
+        return this;
+    }
+
+    public int serviceFlags() {
+        return buffer.getInt(offset + SERVICE_FLAGS_OFFSET);
+    }
+
+    public OrderCommandFlyweight serviceFlags(final int serviceFlags) {
+        buffer.putInt(offset + SERVICE_FLAGS_OFFSET, serviceFlags);
+        return this;
+    }
+
+    public CommandResultCode resultCode() {
+        final int ordinal = buffer.getIntVolatile(offset + RESULT_CODE_OFFSET);
+        return ordinal == -1 ? null : RESULT_CODES[ordinal];
+    }
+
+    public OrderCommandFlyweight resultCode(final CommandResultCode resultCode) {
+        buffer.putIntOrdered(offset + RESULT_CODE_OFFSET, resultCode == null ? -1 : resultCode.ordinal());
+        return this;
+    }
+
+    public int eventsCount() {
+        return buffer.getInt(offset + EVENTS_COUNT_OFFSET);
+    }
+
+    public OrderCommandFlyweight clearEvents() {
+        buffer.putInt(offset + EVENTS_COUNT_OFFSET, 0);
+        return this;
+    }
+
+    public MatcherEventType eventType(final int idx) {
+        return EVENT_TYPES[buffer.getByte(eventOffset(idx) + EVENT_TYPE_OFFSET)];
+    }
+
+    public int eventSection(final int idx) {
+        return buffer.getInt(eventOffset(idx) + EVENT_SECTION_OFFSET);
+    }
+
+    public boolean eventActiveOrderCompleted(final int idx) {
+        return (buffer.getByte(eventOffset(idx) + EVENT_FLAGS_OFFSET) & FLAG_ACTIVE_ORDER_COMPLETED) != 0;
+    }
+
+    public boolean eventMatchedOrderCompleted(final int idx) {
+        return (buffer.getByte(eventOffset(idx) + EVENT_FLAGS_OFFSET) & FLAG_MATCHED_ORDER_COMPLETED) != 0;
+    }
+
+    public long eventMatchedOrderId(final int idx) {
+        return buffer.getLong(eventOffset(idx) + EVENT_MATCHED_ORDER_ID_OFFSET);
+    }
+
+    public long eventMatchedOrderUid(final int idx) {
+        return buffer.getLong(eventOffset(idx) + EVENT_MATCHED_ORDER_UID_OFFSET);
+    }
+
+    public long eventPrice(final int idx) {
+        return buffer.getLong(eventOffset(idx) + EVENT_PRICE_OFFSET);
+    }
+
+    public long eventSize(final int idx) {
+        return buffer.getLong(eventOffset(idx) + EVENT_SIZE_OFFSET);
+    }
+
+    public long eventBidderHoldPrice(final int idx) {
+        return buffer.getLong(eventOffset(idx) + EVENT_BIDDER_HOLD_PRICE_OFFSET);
+    }
+
+    /**
+     * Append trade event to the record
+     *
+     * @param evt - trade event (nextEvent reference is ignored)
+     */
+    public void appendEvent(final MatcherTradeEvent evt) {
+        final int idx = eventsCount();
+        if (idx == maxEvents) {
+            throw new IllegalStateException("Too many trade events for off-heap record, max=" + maxEvents);
+        }
+
+        final int evtOffset = eventOffset(idx);
+        final int flags = (evt.activeOrderCompleted ? FLAG_ACTIVE_ORDER_COMPLETED : 0)
+                | (evt.matchedOrderCompleted ? FLAG_MATCHED_ORDER_COMPLETED : 0);
+        buffer.putByte(evtOffset + EVENT_TYPE_OFFSET, (byte) evt.eventType.ordinal());
+        buffer.putByte(evtOffset + EVENT_FLAGS_OFFSET, (byte) flags);
+        buffer.putInt(evtOffset + EVENT_SECTION_OFFSET, evt.section);
+        buffer.putLong(evtOffset + EVENT_MATCHED_ORDER_ID_OFFSET, evt.matchedOrderId);
+        buffer.putLong(evtOffset + EVENT_MATCHED_ORDER_UID_OFFSET, evt.matchedOrderUid);
+        buffer.putLong(evtOffset + EVENT_PRICE_OFFSET, evt.price);
+        buffer.putLong(evtOffset + EVENT_SIZE_OFFSET, evt.size);
+        buffer.putLong(evtOffset + EVENT_BIDDER_HOLD_PRICE_OFFSET, evt.bidderHoldPrice);
+
+        buffer.putInt(offset + EVENTS_COUNT_OFFSET, idx + 1);
+    }
+
+    /**
+     * Read trade event into provided object
+     *
+     * @param idx - event index
+     * @param evt - event to overwrite (nextEvent reference is not changed)
+     */
+    public void readEvent(final int idx, final MatcherTradeEvent evt) {
+        evt.eventType = eventType(idx);
+        evt.section = eventSection(idx);
+        evt.activeOrderCompleted = eventActiveOrderCompleted(idx);
+        evt.matchedOrderId = eventMatchedOrderId(idx);
+        evt.matchedOrderUid = eventMatchedOrderUid(idx);
+        evt.matchedOrderCompleted = eventMatchedOrderCompleted(idx);
+        evt.price = eventPrice(idx);
+        evt.size = eventSize(idx);
+        evt.bidderHoldPrice = eventBidderHoldPrice(idx);
+    }
+
+    /**
+     * @param marketData - market data snapshot (can be null)
+     * @return true if market data can be stored in the record
+     */
+    public boolean canHoldMarketData(final L2MarketData marketData) {
+        return marketData == null || (maxL2Depth != 0 && marketData.askSize <= maxL2Depth && marketData.bidSize <= maxL2Depth);
+    }
+
+    public boolean hasMarketData() {
+        return maxL2Depth != 0 && buffer.getInt(offset + marketDataOffset + MD_ASK_SIZE_OFFSET) != -1;
+    }
+
+    /**
+     * Write market data snapshot into the record
+     *
+     * @param marketData - market data snapshot, null - no market data
+     */
+    public void writeMarketData(final L2MarketData marketData) {
+        if (!canHoldMarketData(marketData)) {
+            throw new IllegalStateException("Market data is too deep for off-heap record, max=" + maxL2Depth);
+        }
+        if (maxL2Depth == 0) {
+            return;
+        }
+
+        final int mdOffset = offset + marketDataOffset;
+        if (marketData == null) {
+            buffer.putInt(mdOffset + MD_ASK_SIZE_OFFSET, -1);
+            return;
+        }
+
+        buffer.putInt(mdOffset + MD_ASK_SIZE_OFFSET, marketData.askSize);
+        buffer.putInt(mdOffset + MD_BID_SIZE_OFFSET, marketData.bidSize);
+        buffer.putLong(mdOffset + MD_TIMESTAMP_OFFSET, marketData.timestamp);
+        buffer.putLong(mdOffset + MD_REFERENCE_SEQ_OFFSET, marketData.referenceSeq);
+        for (int i = 0; i < marketData.askSize; i++) {
+            final int levelOffset = askLevelOffset(i);
+            buffer.putLong(levelOffset, marketData.askPrices[i]);
+            buffer.putLong(levelOffset + 8, marketData.askVolumes[i]);
+            buffer.putLong(levelOffset + 16, marketData.askOrders[i]);
+        }
+        for (int i = 0; i < marketData.bidSize; i++) {
+            final int levelOffset = bidLevelOffset(i);
+            buffer.putLong(levelOffset, marketData.bidPrices[i]);
+            buffer.putLong(levelOffset + 8, marketData.bidVolumes[i]);
+            buffer.putLong(levelOffset + 16, marketData.bidOrders[i]);
+        }
+    }
+
+    /**
+     * Read market data snapshot from the record
+     *
+     * @param marketData - snapshot to overwrite, arrays should fit maxL2Depth
+     * @return same snapshot, or null if record has no market data
+     */
+    public L2MarketData readMarketData(final L2MarketData marketData) {
+        if (!hasMarketData()) {
+            return null;
+        }
+
+        final int mdOffset = offset + marketDataOffset;
+        marketData.askSize = buffer.getInt(mdOffset + MD_ASK_SIZE_OFFSET);
+        marketData.bidSize = buffer.getInt(mdOffset + MD_BID_SIZE_OFFSET);
+        marketData.timestamp = buffer.getLong(mdOffset + MD_TIMESTAMP_OFFSET);
+        marketData.referenceSeq = buffer.getLong(mdOffset + MD_REFERENCE_SEQ_OFFSET);
+        for (int i = 0; i < marketData.askSize; i++) {
+            final int levelOffset = askLevelOffset(i);
+            marketData.askPrices[i] = buffer.getLong(levelOffset);
+            marketData.askVolumes[i] = buffer.getLong(levelOffset + 8);
+            marketData.askOrders[i] = buffer.getLong(levelOffset + 16);
+        }
+        for (int i = 0; i < marketData.bidSize; i++) {
+            final int levelOffset = bidLevelOffset(i);
+            marketData.bidPrices[i] = buffer.getLong(levelOffset);
+            marketData.bidVolumes[i] = buffer.getLong(levelOffset + 8);
+            marketData.bidOrders[i] = buffer.getLong(levelOffset + 16);
+        }
+        return marketData;
+    }
+
+    /**
+     * Write command data, result code, trade events and market data (if record has market data section)
+     *
+     * @param cmd - source command
+     */
+    public void writeFrom(final OrderCommand cmd) {
+        command(cmd.command);
+        orderId(cmd.orderId);
+        symbol(cmd.symbol);
+        price(cmd.price);
+        size(cmd.size);
+        reserveBidPrice(cmd.reserveBidPrice);
+        action(cmd.action);
+        orderType(cmd.orderType);
+        uid(cmd.uid);
+        timestamp(cmd.timestamp);
+        userCookie(cmd.userCookie);
+        eventsGroup(cmd.eventsGroup);
+        serviceFlags(cmd.serviceFlags);
+        resultCode(cmd.resultCode);
+
+        clearEvents();
+        MatcherTradeEvent evt = cmd.matcherEvent;
+        while (evt != null) {
+            appendEvent(evt);
+            evt = evt.nextEvent;
+        }
+
+        writeMarketData(cmd.marketData);
+    }
+
+    /**
+     * Read command data, result code, trade events and market data (if record has market data section).
+     * Existing trade events chain and market data object of the target command are reused, missing objects are allocated.
+     *
+     * @param cmd - command to overwrite
+     */
+    public void readTo(final OrderCommand cmd) {
+        readFieldsTo(cmd);
+
+        if (maxL2Depth != 0) {
+            final L2MarketData md = cmd.marketData;
+            final boolean reusable = md != null && md.askPrices.length >= maxL2Depth && md.bidPrices.length >= maxL2Depth;
+            cmd.marketData = readMarketData(reusable ? md : new L2MarketData(maxL2Depth, maxL2Depth));
+        }
+
+        final int eventsCount = eventsCount();
+        if (eventsCount == 0) {
+            cmd.matcherEvent = null;
+            return;
+        }
+
+        if (cmd.matcherEvent == null) {
+            cmd.matcherEvent = new MatcherTradeEvent();
+        }
+        MatcherTradeEvent evt = cmd.matcherEvent;
+        for (int i = 0; i < eventsCount; i++) {
+            readEvent(i, evt);
+            if (i < eventsCount - 1) {
+                if (evt.nextEvent == null) {
+                    evt.nextEvent = new MatcherTradeEvent();
+                }
+                evt = evt.nextEvent;
+            }
+        }
+        evt.nextEvent = null;
+    }
+
+    /**
+     * Read command data and result code, trade events and market data of the target command are not changed.
+     *
+     * @param cmd - command to overwrite
+     */
+    public void readFieldsTo(final OrderCommand cmd) {
+        cmd.command = command();
+        cmd.orderId = orderId();
+        cmd.symbol = symbol();
+        cmd.price = price();
+        cmd.size = size();
+        cmd.reserveBidPrice = reserveBidPrice();
+        cmd.action = action();
+        cmd.orderType = orderType();
+        cmd.uid = uid();
+        cmd.timestamp = timestamp();
+        cmd.userCookie = userCookie();
+        cmd.eventsGroup = eventsGroup();
+        cmd.serviceFlags = serviceFlags();
+        cmd.resultCode = resultCode();
+    }
+
+    private int eventOffset(final int idx) {
+        return offset + EVENTS_OFFSET + idx * EVENT_SIZE;
+    }
+
+    private int askLevelOffset(final int idx) {
+        return offset + marketDataOffset + MD_LEVELS_OFFSET + idx * MD_LEVEL_SIZE;
+    }
+
+    private int bidLevelOffset(final int idx) {
+        return offset + marketDataOffset + MD_LEVELS_OFFSET + (maxL2Depth + idx) * MD_LEVEL_SIZE;
+    }
+}
@@ -43,6 +43,7 @@ public enum OrderCommandType {
 
     GROUPING_CONTROL((byte) 118, false),
     NOP((byte) 120, false),
+    MARGIN_CALL((byte) 121, false), // published by margin calls scanner, carries MARGIN_CALL events
     RESET((byte) 124, true),
     SHUTDOWN_SIGNAL((byte) 127, false),
 
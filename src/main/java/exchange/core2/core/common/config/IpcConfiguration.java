@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Shared memory IPC gateway configuration.
+ * <p>
+ * Channel consists of two memory-mapped ring files: ingress (commands from gateway processes) and egress (results and trade events).
+ */
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public final class IpcConfiguration {
+
+    public static final String DEFAULT_FOLDER = "/dev/shm/exchange-core";
+
+    /*
+     * Folder for ring files, should be on tmpfs (no disk writes)
+     */
+    @Builder.Default
+    private final String folder = DEFAULT_FOLDER;
+
+    /*
+     * Channel name (ring files prefix)
+     */
+    @Builder.Default
+    private final String channelName = "gateway";
+
+    /*
+     * Ingress ring capacity in bytes (power of 2)
+     */
+    @Builder.Default
+    private final int ingressCapacity = 1024 * 1024;
+
+    /*
+     * Egress ring capacity in bytes (power of 2), results and trade events are bigger than commands
+     */
+    @Builder.Default
+    private final int egressCapacity = 4 * 1024 * 1024;
+
+    /*
+     * Maximum number of commands translated into ring buffer slots at once
+     */
+    @Builder.Default
+    private final int pollBatchSize = 256;
+
+    /*
+     * Maximum time results handler waits for free egress ring space (0 - does not wait).
+     * When exceeded, gateway is considered disconnected: results are dropped until gateway drains egress ring.
+     */
+    @Builder.Default
+    private final int egressTimeoutMs = 1000;
+
+    public static IpcConfiguration.IpcConfigurationBuilder defaultBuilder() {
+        return IpcConfiguration.builder();
+    }
+}
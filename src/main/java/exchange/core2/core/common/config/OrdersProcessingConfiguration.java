@@ -24,6 +24,23 @@ public final class OrdersProcessingConfiguration {
     private final RiskProcessingMode riskProcessingMode;
     private final MarginTradingMode marginTradingMode;
 
+    // free margin calculation for placing margin orders
+    @Builder.Default
+    private final MarginOrderCheckMode marginOrderCheckMode = MarginOrderCheckMode.MARGIN_CHECK_LEGACY;
+
+    // margin calls detection (requires margin trading)
+    @Builder.Default
+    private final MarginCallsMode marginCallsMode = MarginCallsMode.MARGIN_CALLS_DISABLED;
+
+    // max number of positions processed by margin calls scanner per cycle (also max margin calls per MARGIN_CALL command),
+    // risk engine shards re-evaluate 1/8 of it per market data update (sweep)
+    @Builder.Default
+    private final int marginCallsScanBudget = 256;
+
+    // capacity (bytes, power of 2) of the channel from risk engines to margin calls scanner
+    @Builder.Default
+    private final int marginCallsChannelCapacity = 1 << 20;
+
     public enum RiskProcessingMode {
         // risk processing is on, every currency/asset account is checked independently
         FULL_PER_CURRENCY,
@@ -36,4 +53,27 @@ public final class OrdersProcessingConfiguration {
         MARGIN_TRADING_DISABLED,
         MARGIN_TRADING_ENABLED
     }
+
+    /**
+     * Changing mode changes risk decisions for users having several futures positions in the same quote currency,
+     * so journal must be replayed (and followed by standby replica) in the mode it was written with.
+     * Migration: persist state in the current mode, then start from that snapshot in the new mode.
+     */
+    public enum MarginOrderCheckMode {
+        // compatible with previous versions: running free margin is replaced by P&L of the order symbol position,
+        // so P&L and margin of same currency positions iterated before it (hash map order) are not counted
+        MARGIN_CHECK_LEGACY,
+
+        // P&L and margin of all same currency positions are counted (cached aggregates),
+        // margin of the order symbol position is replaced by its new required margin
+        MARGIN_CHECK_ALL_POSITIONS
+    }
+
+    public enum MarginCallsMode {
+        MARGIN_CALLS_DISABLED,
+
+        // positions are indexed by liquidation price in separate scanner thread,
+        // MARGIN_CALL events are published as separate MARGIN_CALL commands
+        MARGIN_CALLS_ENABLED
+    }
 }
@@ -40,6 +40,13 @@ public final class PerformanceConfiguration {
      */
     private final int riskEnginesNum;
 
+    /*
+     * Number of threads performing risk pre-check (R1) for each risk engine. Must be power of 2.
+     * Each risk engine splits commands between its threads by uid stripes, groups boundaries are used as barriers.
+     * Every extra thread requires extra CPU core. Can not be combined with userProfilesIdleEvictionThreshold.
+     */
+    private final int riskPreCheckWorkersNum;
+
     /*
      * max number of messages not processed by R2 stage. Must be less than quarter of ringBufferSize.
      * Lower values, like 100, provide better mean latency.
@@ -84,6 +91,11 @@ public final class PerformanceConfiguration {
      */
     private final CoreWaitStrategy waitStrategy;
 
+    /*
+     * Per-stage thresholds for PHASED_BACKOFF wait strategy (ignored by other strategies)
+     */
+    private final WaitBackoffConfiguration waitBackoffCfg;
+
     /*
      * Order books factory
      */
@@ -94,23 +106,78 @@ public final class PerformanceConfiguration {
      */
     private final Supplier<LZ4Compressor> binaryCommandsLz4CompressorFactory;
 
+    /*
+     * Number of commands after which not accessed user profile is evicted from memory
+     * into memory-mapped cold store file (one per risk engine). Profile is loaded back on first access.
+     * Set 0 to keep all user profiles in memory.
+     */
+    private final long userProfilesIdleEvictionThreshold;
+
+    /*
+     * Symbols with id below this limit are looked up in flat arrays indexed by symbol id (specifications, last prices, order books),
+     * instead of hash maps. Arrays grow up to the highest added symbol id below the limit.
+     * Set 0 to use hash maps only.
+     */
+    private final int symbolsDenseIdLimit;
+
+    /*
+     * Record per-stage latency histograms (G->R1->ME->R2, G->J, ME+J->E), see ExchangeCore.getStageLatencyMetrics().
+     * Adds System.nanoTime() call per command for every stage.
+     */
+    private final boolean stageLatencyMetricsEnabled;
+
+    /*
+     * Ring occupancy and back-pressure metrics sampling interval (microseconds), see ExchangeCore.getMetricsMonitor().
+     * Low-priority monitor thread samples sequences of all stages, hot path only counts groups sizes.
+     * Set 0 to disable monitor.
+     */
+    private final int metricsSamplingIntervalUs;
+
+    /*
+     * Cancel, move and reduce commands are processed by matching engines right after grouping,
+     * without waiting for risk pre-processing (R1) batch they belong to. Commands order is preserved.
+     */
+    private final boolean cancelFastLaneEnabled;
+
+    /*
+     * Fan-out results consumers with OVERFLOW and SAMPLE policies keep their buffers in off-heap command rings
+     * (fixed-size records with trade events and market data, not scanned by GC) instead of heap command copies.
+     * Value is the maximum number of trade events per buffered command. Market data depth per record is l2RefreshDepth
+     * (limited by L2MarketData.L2_SIZE). Commands with more events or deeper market data are handled as if buffer was full.
+     * Set 0 to use heap buffers.
+     * NOTE: main disruptor ring always uses heap commands.
+     */
+    private final int offHeapResultsBufferEvents;
+
     @Override
     public String toString() {
         return "PerformanceConfiguration{" +
                 "ringBufferSize=" + ringBufferSize +
                 ", matchingEnginesNum=" + matchingEnginesNum +
                 ", riskEnginesNum=" + riskEnginesNum +
+                ", riskPreCheckWorkersNum=" + riskPreCheckWorkersNum +
                 ", msgsInGroupLimit=" + msgsInGroupLimit +
                 ", maxGroupDurationNs=" + maxGroupDurationNs +
                 ", sendL2ForEveryCmd=" + sendL2ForEveryCmd +
                 ", l2RefreshDepth=" + l2RefreshDepth +
                 ", threadFactory=" + (threadFactory == null ? null : threadFactory.getClass().getSimpleName()) +
                 ", waitStrategy=" + waitStrategy +
+                ", waitBackoffCfg=" + waitBackoffCfg +
                 ", orderBookFactory=" + (orderBookFactory == null ? null : orderBookFactory.getClass().getSimpleName()) +
                 ", binaryCommandsLz4CompressorFactory=" + (binaryCommandsLz4CompressorFactory == null ? null : binaryCommandsLz4CompressorFactory.getClass().getSimpleName()) +
+                ", userProfilesIdleEvictionThreshold=" + userProfilesIdleEvictionThreshold +
+                ", symbolsDenseIdLimit=" + symbolsDenseIdLimit +
+                ", stageLatencyMetricsEnabled=" + stageLatencyMetricsEnabled +
+                ", metricsSamplingIntervalUs=" + metricsSamplingIntervalUs +
+                ", cancelFastLaneEnabled=" + cancelFastLaneEnabled +
+                ", offHeapResultsBufferEvents=" + offHeapResultsBufferEvents +
                 '}';
     }
 
+    public WaitBackoffConfiguration getWaitBackoffCfg() {
+        return waitBackoffCfg != null ? waitBackoffCfg : WaitBackoffConfiguration.DEFAULT;
+    }
+
     // TODO add expected number of users and symbols
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder baseBuilder() {
@@ -119,14 +186,22 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(16 * 1024)
                 .matchingEnginesNum(1)
                 .riskEnginesNum(1)
+                .riskPreCheckWorkersNum(1)
                 .msgsInGroupLimit(256)
                 .maxGroupDurationNs(10_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
                 .threadFactory(Thread::new)
                 .waitStrategy(CoreWaitStrategy.BLOCKING)
+                .waitBackoffCfg(WaitBackoffConfiguration.DEFAULT)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookNaiveImpl::new);
+                .orderBookFactory(OrderBookNaiveImpl::new)
+                .userProfilesIdleEvictionThreshold(0)
+                .symbolsDenseIdLimit(0)
+                .stageLatencyMetricsEnabled(false)
+                .metricsSamplingIntervalUs(0)
+                .cancelFastLaneEnabled(false)
+                .offHeapResultsBufferEvents(0);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder latencyPerformanceBuilder() {
@@ -135,14 +210,22 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(2 * 1024)
                 .matchingEnginesNum(1)
                 .riskEnginesNum(1)
+                .riskPreCheckWorkersNum(1)
                 .msgsInGroupLimit(256)
                 .maxGroupDurationNs(10_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
+                .waitBackoffCfg(WaitBackoffConfiguration.DEFAULT)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .userProfilesIdleEvictionThreshold(0)
+                .symbolsDenseIdLimit(200_000)
+                .stageLatencyMetricsEnabled(false)
+                .metricsSamplingIntervalUs(0)
+                .cancelFastLaneEnabled(true)
+                .offHeapResultsBufferEvents(0);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder throughputPerformanceBuilder() {
@@ -151,13 +234,21 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(64 * 1024)
                 .matchingEnginesNum(4)
                 .riskEnginesNum(2)
+                .riskPreCheckWorkersNum(1)
                 .msgsInGroupLimit(4_096)
                 .maxGroupDurationNs(4_000_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
+                .waitBackoffCfg(WaitBackoffConfiguration.DEFAULT)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .userProfilesIdleEvictionThreshold(0)
+                .symbolsDenseIdLimit(200_000)
+                .stageLatencyMetricsEnabled(false)
+                .metricsSamplingIntervalUs(0)
+                .cancelFastLaneEnabled(false)
+                .offHeapResultsBufferEvents(0);
     }
 }
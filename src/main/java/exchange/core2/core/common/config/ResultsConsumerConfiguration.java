@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.config;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Additional results consumer configuration (fan-out stage).
+ * <p>
+ * Each consumer runs in its own thread in parallel with main results consumer,
+ * so slow consumer does not delay commands acknowledgement.
+ */
+@AllArgsConstructor
+@Getter
+@Builder
+public final class ResultsConsumerConfiguration {
+
+    /*
+     * Consumer name (used for thread naming and logging)
+     */
+    private final String name;
+
+    /*
+     * Results consumer, invoked from dedicated thread
+     */
+    private final ObjLongConsumer<OrderCommand> consumer;
+
+    /*
+     * Optional filter, evaluated in disruptor thread - only accepted commands are passed to the consumer
+     */
+    @Builder.Default
+    private final Predicate<OrderCommand> filter = cmd -> true;
+
+    /*
+     * What to do when consumer can not keep up
+     */
+    @Builder.Default
+    private final BackPressurePolicy backPressurePolicy = BackPressurePolicy.BLOCK;
+
+    /*
+     * Size of consumer own buffer (power of 2), not used for BLOCK policy
+     */
+    @Builder.Default
+    private final int bufferSize = 4096;
+
+    @Override
+    public String toString() {
+        return "ResultsConsumerConfiguration{" +
+                "name='" + name + '\'' +
+                ", backPressurePolicy=" + backPressurePolicy +
+                ", bufferSize=" + bufferSize +
+                '}';
+    }
+
+    public enum BackPressurePolicy {
+
+        // consume directly from main ring buffer - slow consumer eventually blocks publishers (but not acknowledgements)
+        BLOCK,
+
+        // copy into own buffer, spill into unbounded overflow queue if buffer is full - no events are lost
+        OVERFLOW,
+
+        // copy into own buffer, drop events if buffer is full - suitable for market data sampling
+        SAMPLE
+    }
+}
@@ -2,7 +2,9 @@ package exchange.core2.core.common.config;
 
 import exchange.core2.core.processors.journaling.DiskSerializationProcessor;
 import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode;
 import exchange.core2.core.processors.journaling.DummySerializationProcessor;
+import exchange.core2.core.processors.journaling.IJournalIoBackend;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -10,6 +12,7 @@ import lombok.Getter;
 import lombok.ToString;
 
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 @AllArgsConstructor
 @Getter
@@ -35,6 +38,34 @@ public class SerializationConfiguration {
             .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg, DiskSerializationProcessorConfiguration.createDefaultConfig()))
             .build();
 
+    // snapshots and journaling, journal is written by separate writer thread (acknowledgements are not waiting for disk)
+    public static final SerializationConfiguration DISK_JOURNALING_PIPELINED = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createConfig(JournalDurabilityMode.PIPELINED_ASYNC)))
+            .build();
+
+    // snapshots and journaling, journal is written by separate writer thread, acknowledgements are waiting for durable sequence
+    public static final SerializationConfiguration DISK_JOURNALING_DURABLE_ACK = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createConfig(JournalDurabilityMode.PIPELINED_DURABLE_ACK)))
+            .build();
+
+    // same as DISK_JOURNALING_DURABLE_ACK, journal files are written through io_uring (AsynchronousFileChannel if not supported)
+    public static final SerializationConfiguration DISK_JOURNALING_DURABLE_ACK_IO_URING = diskJournaling(
+            JournalDurabilityMode.PIPELINED_DURABLE_ACK,
+            DiskSerializationProcessorConfiguration.IO_URING);
+
+    public static SerializationConfiguration diskJournaling(final JournalDurabilityMode durabilityMode,
+                                                            final Supplier<IJournalIoBackend> ioBackendFactory) {
+        return SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg,
+                        DiskSerializationProcessorConfiguration.createConfig(durabilityMode, ioBackendFactory)))
+                .build();
+    }
+
     /*
      * Enables journaling.
      * Set to false for analytics instances.
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Per-stage thresholds for CoreWaitStrategy.PHASED_BACKOFF
+ * <p>
+ * Idle stage thread is spinning first, then yielding, then parking for short periods, then blocking until new command is published.
+ * Thresholds are counted from the beginning of idle period.
+ */
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public final class WaitBackoffConfiguration {
+
+    /*
+     * Spin 20us, yield up to 200us, park (50us) up to 5ms, then block.
+     * Commands arriving more often than every 20us are not affected by wake-up latency.
+     */
+    public static final StageBackoff BALANCED = new StageBackoff(20_000, 200_000, 5_000_000, 50_000);
+
+    /*
+     * Spin 2us, yield up to 20us, park (100us) up to 1ms, then block.
+     */
+    public static final StageBackoff LOW_CPU = new StageBackoff(2_000, 20_000, 1_000_000, 100_000);
+
+    /*
+     * Never stop spinning (for dedicated cores).
+     */
+    public static final StageBackoff SPIN = new StageBackoff(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, 0);
+
+    public static final WaitBackoffConfiguration DEFAULT = allStages(BALANCED).build();
+
+    /*
+     * Grouping processor (G)
+     */
+    private final StageBackoff grouping;
+
+    /*
+     * Risk engines pre-process (R1), including additional R1 workers
+     */
+    private final StageBackoff riskPreProcess;
+
+    /*
+     * Matching engines (ME)
+     */
+    private final StageBackoff matchingEngine;
+
+    /*
+     * Risk engines release (R2), waiting for matching engines
+     */
+    private final StageBackoff riskRelease;
+
+    /*
+     * Journaling (J)
+     */
+    private final StageBackoff journaling;
+
+    /*
+     * Results handler (E) and fan-out results consumers, including their worker threads
+     */
+    private final StageBackoff results;
+
+    public static WaitBackoffConfiguration.WaitBackoffConfigurationBuilder allStages(final StageBackoff stageBackoff) {
+        return builder()
+                .grouping(stageBackoff)
+                .riskPreProcess(stageBackoff)
+                .matchingEngine(stageBackoff)
+                .riskRelease(stageBackoff)
+                .journaling(stageBackoff)
+                .results(stageBackoff);
+    }
+
+    @AllArgsConstructor
+    @Getter
+    @Builder
+    @ToString
+    public static final class StageBackoff {
+
+        // spinning while idle for less than spinNs
+        private final long spinNs;
+
+        // then yielding while idle for less than yieldNs
+        private final long yieldNs;
+
+        // then parking while idle for less than parkNs, blocking afterwards
+        private final long parkNs;
+
+        // single park duration
+        private final long parkPeriodNs;
+    }
+}
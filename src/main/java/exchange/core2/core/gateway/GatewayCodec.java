@@ -0,0 +1,480 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.gateway;
+
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-layout binary gateway protocol (SBE-like, little-endian).
+ * <p>
+ * Every message starts with 8-bytes header: block length, template id, schema id and version (uint16 each),
+ * followed by fixed-size block of the template. Field offsets are relative to block start. Decoder uses block length
+ * from the header, so messages of newer schema versions with extended blocks are still decoded (extra fields are skipped).
+ * <p>
+ * Requests (place/move/cancel/reduce/adjust balance) are decoded directly into ring buffer slot,
+ * results are encoded from processed OrderCommand as result message followed by its trade event messages.
+ * No objects are allocated by decoding and encoding methods (except ApiCommand based convenience encoder).
+ */
+public final class GatewayCodec {
+
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int SCHEMA_ID = 2020;
+    public static final int SCHEMA_VERSION = 1;
+
+    // message header
+    public static final int HDR_BLOCK_LENGTH = 0;
+    public static final int HDR_TEMPLATE_ID = 2;
+    public static final int HDR_SCHEMA_ID = 4;
+    public static final int HDR_VERSION = 6;
+    public static final int HEADER_LENGTH = 8;
+
+    // inbound templates
+    public static final int TEMPLATE_PLACE_ORDER = 1;
+    public static final int TEMPLATE_MOVE_ORDER = 2;
+    public static final int TEMPLATE_CANCEL_ORDER = 3;
+    public static final int TEMPLATE_REDUCE_ORDER = 4;
+    public static final int TEMPLATE_ADJUST_BALANCE = 5;
+
+    // outbound templates
+    public static final int TEMPLATE_RESULT = 101;
+    public static final int TEMPLATE_TRADE_EVENT = 102;
+
+    // common prefix of request blocks
+    public static final int REQ_CORRELATION_ID = 0;
+    public static final int REQ_TIMESTAMP = 8;
+    public static final int REQ_UID = 16;
+
+    // place order block
+    public static final int PLACE_ORDER_ID = 24;
+    public static final int PLACE_PRICE = 32;
+    public static final int PLACE_RESERVE_PRICE = 40;
+    public static final int PLACE_SIZE = 48;
+    public static final int PLACE_SYMBOL = 56;
+    public static final int PLACE_USER_COOKIE = 60;
+    public static final int PLACE_ACTION = 64;
+    public static final int PLACE_ORDER_TYPE = 65;
+    public static final int PLACE_BLOCK_LENGTH = 72;
+
+    // move order block
+    public static final int MOVE_ORDER_ID = 24;
+    public static final int MOVE_NEW_PRICE = 32;
+    public static final int MOVE_SYMBOL = 40;
+    public static final int MOVE_BLOCK_LENGTH = 48;
+
+    // cancel order block
+    public static final int CANCEL_ORDER_ID = 24;
+    public static final int CANCEL_SYMBOL = 32;
+    public static final int CANCEL_BLOCK_LENGTH = 40;
+
+    // reduce order block
+    public static final int REDUCE_ORDER_ID = 24;
+    public static final int REDUCE_SIZE = 32;
+    public static final int REDUCE_SYMBOL = 40;
+    public static final int REDUCE_BLOCK_LENGTH = 48;
+
+    // adjust balance block
+    public static final int ADJUST_TRANSACTION_ID = 24;
+    public static final int ADJUST_AMOUNT = 32;
+    public static final int ADJUST_CURRENCY = 40;
+    public static final int ADJUST_TYPE = 44;
+    public static final int ADJUST_BLOCK_LENGTH = 48;
+
+    // result block
+    public static final int RES_CORRELATION_ID = 0;
+    public static final int RES_UID = 8;
+    public static final int RES_ORDER_ID = 16;
+    public static final int RES_RESULT_CODE = 24;
+    public static final int RES_SYMBOL = 28;
+    public static final int RES_EVENTS_NUM = 32;
+    public static final int RES_COMMAND = 36;
+    public static final int RES_BLOCK_LENGTH = 40;
+
+    // trade event block
+    public static final int EVT_CORRELATION_ID = 0;
+    public static final int EVT_MATCHED_ORDER_ID = 8;
+    public static final int EVT_MATCHED_ORDER_UID = 16;
+    public static final int EVT_PRICE = 24;
+    public static final int EVT_SIZE = 32;
+    public static final int EVT_BIDDER_HOLD_PRICE = 40;
+    public static final int EVT_EVENT_TYPE = 48;
+    public static final int EVT_ACTIVE_ORDER_COMPLETED = 49;
+    public static final int EVT_MATCHED_ORDER_COMPLETED = 50;
+    public static final int EVT_BLOCK_LENGTH = 56;
+
+    public static final int MAX_REQUEST_LENGTH = HEADER_LENGTH + PLACE_BLOCK_LENGTH;
+    public static final int RESULT_LENGTH = HEADER_LENGTH + RES_BLOCK_LENGTH;
+    public static final int TRADE_EVENT_LENGTH = HEADER_LENGTH + EVT_BLOCK_LENGTH;
+
+    private static final MatcherEventType[] EVENT_TYPES = MatcherEventType.values();
+
+    private GatewayCodec() {
+    }
+
+    /**
+     * @return total message length (header and block), buffer should contain at least HEADER_LENGTH bytes
+     */
+    public static int messageLength(final DirectBuffer buffer, final int offset) {
+        return HEADER_LENGTH + (buffer.getShort(offset + HDR_BLOCK_LENGTH, BYTE_ORDER) & 0xFFFF);
+    }
+
+    public static int templateId(final DirectBuffer buffer, final int offset) {
+        return buffer.getShort(offset + HDR_TEMPLATE_ID, BYTE_ORDER) & 0xFFFF;
+    }
+
+    /**
+     * Reads correlation id of request message without decoding it (used for rejecting invalid messages)
+     *
+     * @return correlation id, or 0 if message block is too short
+     */
+    public static long correlationId(final DirectBuffer buffer, final int offset) {
+        return messageLength(buffer, offset) - HEADER_LENGTH >= REQ_CORRELATION_ID + 8
+                ? buffer.getLong(offset + HEADER_LENGTH + REQ_CORRELATION_ID, BYTE_ORDER)
+                : 0L;
+    }
+
+    // ------------------------------- requests ------------------------------------------
+
+    /**
+     * Decodes request message directly into ring buffer slot (same fields mapping as ExchangeApi translators).
+     *
+     * @param buffer - buffer containing complete message
+     * @param offset - message offset
+     * @param cmd    - claimed ring buffer slot
+     * @return correlation id of the request
+     * @throws IllegalArgumentException if message schema, template or enum codes are unknown (slot can be partially written)
+     */
+    public static long decodeCommand(final DirectBuffer buffer, final int offset, final OrderCommand cmd) {
+
+        final int templateId = templateId(buffer, offset);
+        final int blockLength = messageLength(buffer, offset) - HEADER_LENGTH;
+        final int schemaId = buffer.getShort(offset + HDR_SCHEMA_ID, BYTE_ORDER) & 0xFFFF;
+        if (schemaId != SCHEMA_ID) {
+            throw new IllegalArgumentException("Unknown schema id: " + schemaId);
+        }
+
+        final int block = offset + HEADER_LENGTH;
+
+        switch (templateId) {
+            case TEMPLATE_PLACE_ORDER:
+                checkBlockLength(templateId, blockLength, PLACE_BLOCK_LENGTH);
+                cmd.command = OrderCommandType.PLACE_ORDER;
+                cmd.orderId = buffer.getLong(block + PLACE_ORDER_ID, BYTE_ORDER);
+                cmd.price = buffer.getLong(block + PLACE_PRICE, BYTE_ORDER);
+                cmd.reserveBidPrice = buffer.getLong(block + PLACE_RESERVE_PRICE, BYTE_ORDER);
+                cmd.size = buffer.getLong(block + PLACE_SIZE, BYTE_ORDER);
+                cmd.symbol = buffer.getInt(block + PLACE_SYMBOL, BYTE_ORDER);
+                cmd.userCookie = buffer.getInt(block + PLACE_USER_COOKIE, BYTE_ORDER);
+                cmd.action = OrderAction.of(buffer.getByte(block + PLACE_ACTION));
+                cmd.orderType = OrderType.of(buffer.getByte(block + PLACE_ORDER_TYPE));
+                break;
+
+            case TEMPLATE_MOVE_ORDER:
+                checkBlockLength(templateId, blockLength, MOVE_BLOCK_LENGTH);
+                cmd.command = OrderCommandType.MOVE_ORDER;
+                cmd.orderId = buffer.getLong(block + MOVE_ORDER_ID, BYTE_ORDER);
+                cmd.price = buffer.getLong(block + MOVE_NEW_PRICE, BYTE_ORDER);
+                cmd.symbol = buffer.getInt(block + MOVE_SYMBOL, BYTE_ORDER);
+                break;
+
+            case TEMPLATE_CANCEL_ORDER:
+                checkBlockLength(templateId, blockLength, CANCEL_BLOCK_LENGTH);
+                cmd.command = OrderCommandType.CANCEL_ORDER;
+                cmd.orderId = buffer.getLong(block + CANCEL_ORDER_ID, BYTE_ORDER);
+                cmd.symbol = buffer.getInt(block + CANCEL_SYMBOL, BYTE_ORDER);
+                break;
+
+            case TEMPLATE_REDUCE_ORDER:
+                checkBlockLength(templateId, blockLength, REDUCE_BLOCK_LENGTH);
+                cmd.command = OrderCommandType.REDUCE_ORDER;
+                cmd.orderId = buffer.getLong(block + REDUCE_ORDER_ID, BYTE_ORDER);
+                cmd.size = buffer.getLong(block + REDUCE_SIZE, BYTE_ORDER);
+                cmd.symbol = buffer.getInt(block + REDUCE_SYMBOL, BYTE_ORDER);
+                break;
+
+            case TEMPLATE_ADJUST_BALANCE:
+                checkBlockLength(templateId, blockLength, ADJUST_BLOCK_LENGTH);
+                cmd.command = OrderCommandType.BALANCE_ADJUSTMENT;
+                cmd.orderId = buffer.getLong(block + ADJUST_TRANSACTION_ID, BYTE_ORDER);
+                cmd.price = buffer.getLong(block + ADJUST_AMOUNT, BYTE_ORDER);
+                cmd.symbol = buffer.getInt(block + ADJUST_CURRENCY, BYTE_ORDER);
+                cmd.orderType = OrderType.of(BalanceAdjustmentType.of(buffer.getByte(block + ADJUST_TYPE)).getCode());
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown request template id: " + templateId);
+        }
+
+        cmd.uid = buffer.getLong(block + REQ_UID, BYTE_ORDER);
+        cmd.timestamp = buffer.getLong(block + REQ_TIMESTAMP, BYTE_ORDER);
+        cmd.resultCode = CommandResultCode.NEW;
+        return buffer.getLong(block + REQ_CORRELATION_ID, BYTE_ORDER);
+    }
+
+    private static void checkBlockLength(final int templateId, final int blockLength, final int expectedLength) {
+        if (blockLength < expectedLength) {
+            throw new IllegalArgumentException("Template " + templateId + " block is too short: " + blockLength);
+        }
+    }
+
+    public static int encodePlaceOrder(final MutableDirectBuffer buffer,
+                                       final int offset,
+                                       final long correlationId,
+                                       final long timestamp,
+                                       final long uid,
+                                       final long orderId,
+                                       final int symbol,
+                                       final long price,
+                                       final long reservePrice,
+                                       final long size,
+                                       final OrderAction action,
+                                       final OrderType orderType,
+                                       final int userCookie) {
+
+        final int block = encodeRequestPrefix(buffer, offset, TEMPLATE_PLACE_ORDER, PLACE_BLOCK_LENGTH, correlationId, timestamp, uid);
+        buffer.putLong(block + PLACE_ORDER_ID, orderId, BYTE_ORDER);
+        buffer.putLong(block + PLACE_PRICE, price, BYTE_ORDER);
+        buffer.putLong(block + PLACE_RESERVE_PRICE, reservePrice, BYTE_ORDER);
+        buffer.putLong(block + PLACE_SIZE, size, BYTE_ORDER);
+        buffer.putInt(block + PLACE_SYMBOL, symbol, BYTE_ORDER);
+        buffer.putInt(block + PLACE_USER_COOKIE, userCookie, BYTE_ORDER);
+        buffer.putByte(block + PLACE_ACTION, action.getCode());
+        buffer.putByte(block + PLACE_ORDER_TYPE, orderType.getCode());
+        return HEADER_LENGTH + PLACE_BLOCK_LENGTH;
+    }
+
+    public static int encodeMoveOrder(final MutableDirectBuffer buffer,
+                                      final int offset,
+                                      final long correlationId,
+                                      final long timestamp,
+                                      final long uid,
+                                      final long orderId,
+                                      final int symbol,
+                                      final long newPrice) {
+
+        final int block = encodeRequestPrefix(buffer, offset, TEMPLATE_MOVE_ORDER, MOVE_BLOCK_LENGTH, correlationId, timestamp, uid);
+        buffer.putLong(block + MOVE_ORDER_ID, orderId, BYTE_ORDER);
+        buffer.putLong(block + MOVE_NEW_PRICE, newPrice, BYTE_ORDER);
+        buffer.putInt(block + MOVE_SYMBOL, symbol, BYTE_ORDER);
+        return HEADER_LENGTH + MOVE_BLOCK_LENGTH;
+    }
+
+    public static int encodeCancelOrder(final MutableDirectBuffer buffer,
+                                        final int offset,
+                                        final long correlationId,
+                                        final long timestamp,
+                                        final long uid,
+                                        final long orderId,
+                                        final int symbol) {
+
+        final int block = encodeRequestPrefix(buffer, offset, TEMPLATE_CANCEL_ORDER, CANCEL_BLOCK_LENGTH, correlationId, timestamp, uid);
+        buffer.putLong(block + CANCEL_ORDER_ID, orderId, BYTE_ORDER);
+        buffer.putInt(block + CANCEL_SYMBOL, symbol, BYTE_ORDER);
+        return HEADER_LENGTH + CANCEL_BLOCK_LENGTH;
+    }
+
+    public static int encodeReduceOrder(final MutableDirectBuffer buffer,
+                                        final int offset,
+                                        final long correlationId,
+                                        final long timestamp,
+                                        final long uid,
+                                        final long orderId,
+                                        final int symbol,
+                                        final long reduceSize) {
+
+        final int block = encodeRequestPrefix(buffer, offset, TEMPLATE_REDUCE_ORDER, REDUCE_BLOCK_LENGTH, correlationId, timestamp, uid);
+        buffer.putLong(block + REDUCE_ORDER_ID, orderId, BYTE_ORDER);
+        buffer.putLong(block + REDUCE_SIZE, reduceSize, BYTE_ORDER);
+        buffer.putInt(block + REDUCE_SYMBOL, symbol, BYTE_ORDER);
+        return HEADER_LENGTH + REDUCE_BLOCK_LENGTH;
+    }
+
+    public static int encodeAdjustBalance(final MutableDirectBuffer buffer,
+                                          final int offset,
+                                          final long correlationId,
+                                          final long timestamp,
+                                          final long uid,
+                                          final long transactionId,
+                                          final int currency,
+                                          final long amount,
+                                          final BalanceAdjustmentType adjustmentType) {
+
+        final int block = encodeRequestPrefix(buffer, offset, TEMPLATE_ADJUST_BALANCE, ADJUST_BLOCK_LENGTH, correlationId, timestamp, uid);
+        buffer.putLong(block + ADJUST_TRANSACTION_ID, transactionId, BYTE_ORDER);
+        buffer.putLong(block + ADJUST_AMOUNT, amount, BYTE_ORDER);
+        buffer.putInt(block + ADJUST_CURRENCY, currency, BYTE_ORDER);
+        buffer.putByte(block + ADJUST_TYPE, adjustmentType.getCode());
+        return HEADER_LENGTH + ADJUST_BLOCK_LENGTH;
+    }
+
+    /**
+     * Encodes API command as request message (convenience method for tests and bridges)
+     *
+     * @return message length
+     */
+    public static int encodeCommand(final ApiCommand cmd, final long correlationId, final MutableDirectBuffer buffer, final int offset) {
+
+        if (cmd instanceof ApiPlaceOrder) {
+            final ApiPlaceOrder c = (ApiPlaceOrder) cmd;
+            return encodePlaceOrder(buffer, offset, correlationId, c.timestamp, c.uid, c.orderId, c.symbol, c.price, c.reservePrice, c.size, c.action, c.orderType, c.userCookie);
+        } else if (cmd instanceof ApiMoveOrder) {
+            final ApiMoveOrder c = (ApiMoveOrder) cmd;
+            return encodeMoveOrder(buffer, offset, correlationId, c.timestamp, c.uid, c.orderId, c.symbol, c.newPrice);
+        } else if (cmd instanceof ApiCancelOrder) {
+            final ApiCancelOrder c = (ApiCancelOrder) cmd;
+            return encodeCancelOrder(buffer, offset, correlationId, c.timestamp, c.uid, c.orderId, c.symbol);
+        } else if (cmd instanceof ApiReduceOrder) {
+            final ApiReduceOrder c = (ApiReduceOrder) cmd;
+            return encodeReduceOrder(buffer, offset, correlationId, c.timestamp, c.uid, c.orderId, c.symbol, c.reduceSize);
+        } else if (cmd instanceof ApiAdjustUserBalance) {
+            final ApiAdjustUserBalance c = (ApiAdjustUserBalance) cmd;
+            return encodeAdjustBalance(buffer, offset, correlationId, c.timestamp, c.uid, c.transactionId, c.currency, c.amount, c.adjustmentType);
+        } else {
+            throw new IllegalArgumentException("Unsupported gateway command type: " + cmd.getClass().getSimpleName());
+        }
+    }
+
+    private static int encodeRequestPrefix(final MutableDirectBuffer buffer,
+                                           final int offset,
+                                           final int templateId,
+                                           final int blockLength,
+                                           final long correlationId,
+                                           final long timestamp,
+                                           final long uid) {
+
+        encodeHeader(buffer, offset, templateId, blockLength);
+        final int block = offset + HEADER_LENGTH;
+        buffer.putLong(block + REQ_CORRELATION_ID, correlationId, BYTE_ORDER);
+        buffer.putLong(block + REQ_TIMESTAMP, timestamp, BYTE_ORDER);
+        buffer.putLong(block + REQ_UID, uid, BYTE_ORDER);
+        return block;
+    }
+
+    private static void encodeHeader(final MutableDirectBuffer buffer, final int offset, final int templateId, final int blockLength) {
+        buffer.putShort(offset + HDR_BLOCK_LENGTH, (short) blockLength, BYTE_ORDER);
+        buffer.putShort(offset + HDR_TEMPLATE_ID, (short) templateId, BYTE_ORDER);
+        buffer.putShort(offset + HDR_SCHEMA_ID, (short) SCHEMA_ID, BYTE_ORDER);
+        buffer.putShort(offset + HDR_VERSION, (short) SCHEMA_VERSION, BYTE_ORDER);
+    }
+
+    // ------------------------------- results ------------------------------------------
+
+    /**
+     * @return length of result message and all its trade event messages
+     */
+    public static int resultLength(final OrderCommand cmd) {
+        int length = RESULT_LENGTH;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            length += TRADE_EVENT_LENGTH;
+        }
+        return length;
+    }
+
+    /**
+     * Encodes result of processed command followed by its trade events
+     *
+     * @param cmd           - processed command
+     * @param correlationId - correlation id of the request
+     * @param buffer        - outbound buffer, should have at least {@link #resultLength(OrderCommand)} bytes available
+     * @param offset        - offset
+     * @return total length of encoded messages
+     */
+    public static int encodeResult(final OrderCommand cmd, final long correlationId, final MutableDirectBuffer buffer, final int offset) {
+
+        int ptr = offset + RESULT_LENGTH;
+        int eventsNum = 0;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            encodeHeader(buffer, ptr, TEMPLATE_TRADE_EVENT, EVT_BLOCK_LENGTH);
+            final int block = ptr + HEADER_LENGTH;
+            buffer.putLong(block + EVT_CORRELATION_ID, correlationId, BYTE_ORDER);
+            buffer.putLong(block + EVT_MATCHED_ORDER_ID, evt.matchedOrderId, BYTE_ORDER);
+            buffer.putLong(block + EVT_MATCHED_ORDER_UID, evt.matchedOrderUid, BYTE_ORDER);
+            buffer.putLong(block + EVT_PRICE, evt.price, BYTE_ORDER);
+            buffer.putLong(block + EVT_SIZE, evt.size, BYTE_ORDER);
+            buffer.putLong(block + EVT_BIDDER_HOLD_PRICE, evt.bidderHoldPrice, BYTE_ORDER);
+            buffer.putByte(block + EVT_EVENT_TYPE, (byte) evt.eventType.ordinal());
+            buffer.putByte(block + EVT_ACTIVE_ORDER_COMPLETED, (byte) (evt.activeOrderCompleted ? 1 : 0));
+            buffer.putByte(block + EVT_MATCHED_ORDER_COMPLETED, (byte) (evt.matchedOrderCompleted ? 1 : 0));
+            ptr += TRADE_EVENT_LENGTH;
+            eventsNum++;
+        }
+
+        encodeHeader(buffer, offset, TEMPLATE_RESULT, RES_BLOCK_LENGTH);
+        final int block = offset + HEADER_LENGTH;
+        buffer.putLong(block + RES_CORRELATION_ID, correlationId, BYTE_ORDER);
+        buffer.putLong(block + RES_UID, cmd.uid, BYTE_ORDER);
+        buffer.putLong(block + RES_ORDER_ID, cmd.orderId, BYTE_ORDER);
+        buffer.putInt(block + RES_RESULT_CODE, cmd.resultCode.getCode(), BYTE_ORDER);
+        buffer.putInt(block + RES_SYMBOL, cmd.symbol, BYTE_ORDER);
+        buffer.putInt(block + RES_EVENTS_NUM, eventsNum, BYTE_ORDER);
+        buffer.putByte(block + RES_COMMAND, cmd.command.getCode());
+
+        return ptr - offset;
+    }
+
+    /**
+     * Decodes one outbound message (result or trade event) - same handler as used by IPC client
+     *
+     * @param buffer  - buffer containing complete message
+     * @param offset  - message offset
+     * @param handler - results handler
+     * @return message length
+     */
+    public static int decodeResponse(final DirectBuffer buffer, final int offset, final IIpcResultsHandler handler) {
+
+        final int templateId = templateId(buffer, offset);
+        final int block = offset + HEADER_LENGTH;
+
+        if (templateId == TEMPLATE_RESULT) {
+            handler.onResult(
+                    buffer.getLong(block + RES_CORRELATION_ID, BYTE_ORDER),
+                    OrderCommandType.fromCode(buffer.getByte(block + RES_COMMAND)),
+                    CommandResultCode.of(buffer.getInt(block + RES_RESULT_CODE, BYTE_ORDER)),
+                    buffer.getLong(block + RES_UID, BYTE_ORDER),
+                    buffer.getLong(block + RES_ORDER_ID, BYTE_ORDER),
+                    buffer.getInt(block + RES_SYMBOL, BYTE_ORDER),
+                    buffer.getInt(block + RES_EVENTS_NUM, BYTE_ORDER));
+        } else if (templateId == TEMPLATE_TRADE_EVENT) {
+            handler.onTradeEvent(
+                    buffer.getLong(block + EVT_CORRELATION_ID, BYTE_ORDER),
+                    EVENT_TYPES[buffer.getByte(block + EVT_EVENT_TYPE)],
+                    buffer.getLong(block + EVT_MATCHED_ORDER_ID, BYTE_ORDER),
+                    buffer.getLong(block + EVT_MATCHED_ORDER_UID, BYTE_ORDER),
+                    buffer.getByte(block + EVT_ACTIVE_ORDER_COMPLETED) != 0,
+                    buffer.getByte(block + EVT_MATCHED_ORDER_COMPLETED) != 0,
+                    buffer.getLong(block + EVT_PRICE, BYTE_ORDER),
+                    buffer.getLong(block + EVT_SIZE, BYTE_ORDER),
+                    buffer.getLong(block + EVT_BIDDER_HOLD_PRICE, BYTE_ORDER));
+        } else {
+            throw new IllegalArgumentException("Unknown response template id: " + templateId);
+        }
+
+        return messageLength(buffer, offset);
+    }
+}
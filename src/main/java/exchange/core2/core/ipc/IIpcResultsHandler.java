@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Gateway side handler of IPC egress messages.
+ * Trade events of the command are delivered right after its result.
+ */
+public interface IIpcResultsHandler {
+
+    void onResult(long correlationId,
+                  OrderCommandType command,
+                  CommandResultCode resultCode,
+                  long uid,
+                  long orderId,
+                  int symbol,
+                  int eventsNum);
+
+    void onTradeEvent(long correlationId,
+                      MatcherEventType eventType,
+                      long matchedOrderId,
+                      long matchedOrderUid,
+                      boolean activeOrderCompleted,
+                      boolean matchedOrderCompleted,
+                      long price,
+                      long size,
+                      long bidderHoldPrice);
+}
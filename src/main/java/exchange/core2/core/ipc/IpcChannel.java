@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import exchange.core2.core.common.config.IpcConfiguration;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Pair of memory-mapped ring files shared between exchange core and gateway process:
+ * <ul>
+ * <li>ingress - many-to-one ring, gateway threads are writing commands, IPC poller of exchange core is reading;</li>
+ * <li>egress - one-to-one ring, results handler of exchange core is writing results and trade events, gateway is reading.</li>
+ * </ul>
+ * Exchange core creates the files, gateway attaches to existing files.
+ */
+@Slf4j
+public final class IpcChannel implements AutoCloseable {
+
+    private final MappedByteBuffer ingressMapping;
+    private final MappedByteBuffer egressMapping;
+
+    @Getter
+    private final RingBuffer ingress;
+
+    @Getter
+    private final RingBuffer egress;
+
+    private IpcChannel(final MappedByteBuffer ingressMapping, final MappedByteBuffer egressMapping) {
+        this.ingressMapping = ingressMapping;
+        this.egressMapping = egressMapping;
+        this.ingress = new ManyToOneRingBuffer(new UnsafeBuffer(ingressMapping));
+        this.egress = new OneToOneRingBuffer(new UnsafeBuffer(egressMapping));
+    }
+
+    /**
+     * Creates new ring files (existing files are replaced)
+     *
+     * @param cfg - IPC configuration
+     * @return channel
+     */
+    public static IpcChannel create(final IpcConfiguration cfg) {
+        final File ingressFile = ingressPath(cfg).toFile();
+        final File egressFile = egressPath(cfg).toFile();
+        IoUtil.ensureDirectoryExists(ingressFile.getParentFile(), "IPC folder");
+        IoUtil.deleteIfExists(ingressFile);
+        IoUtil.deleteIfExists(egressFile);
+        log.info("Creating IPC channel {} in {}", cfg.getChannelName(), cfg.getFolder());
+        return new IpcChannel(
+                IoUtil.mapNewFile(ingressFile, cfg.getIngressCapacity() + (long) RingBufferDescriptor.TRAILER_LENGTH),
+                IoUtil.mapNewFile(egressFile, cfg.getEgressCapacity() + (long) RingBufferDescriptor.TRAILER_LENGTH));
+    }
+
+    /**
+     * Attaches to ring files created by exchange core
+     *
+     * @param cfg - IPC configuration (only folder and channel name are used)
+     * @return channel
+     */
+    public static IpcChannel attach(final IpcConfiguration cfg) {
+        return new IpcChannel(
+                IoUtil.mapExistingFile(ingressPath(cfg).toFile(), "IPC ingress"),
+                IoUtil.mapExistingFile(egressPath(cfg).toFile(), "IPC egress"));
+    }
+
+    public static Path ingressPath(final IpcConfiguration cfg) {
+        return Paths.get(cfg.getFolder(), cfg.getChannelName() + ".ingress");
+    }
+
+    public static Path egressPath(final IpcConfiguration cfg) {
+        return Paths.get(cfg.getFolder(), cfg.getChannelName() + ".egress");
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(ingressMapping);
+        IoUtil.unmap(egressMapping);
+    }
+}
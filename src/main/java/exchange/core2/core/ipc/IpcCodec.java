@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Flat fixed-size binary layouts of IPC messages (little-endian, native for x86).
+ * <p>
+ * Command record is an image of OrderCommand input section, so it is translated into ring buffer slot without any branching.
+ * Result record is followed by its trade event records (written by single writer, so they are always adjacent).
+ */
+public final class IpcCodec {
+
+    public static final int MSG_COMMAND = 1;
+    public static final int MSG_RESULT = 2;
+    public static final int MSG_TRADE_EVENT = 3;
+
+    // command record
+    public static final int CMD_CORRELATION_ID = 0;
+    public static final int CMD_UID = 8;
+    public static final int CMD_ORDER_ID = 16;
+    public static final int CMD_PRICE = 24;
+    public static final int CMD_RESERVE_BID_PRICE = 32;
+    public static final int CMD_SIZE = 40;
+    public static final int CMD_TIMESTAMP = 48;
+    public static final int CMD_SYMBOL = 56;
+    public static final int CMD_USER_COOKIE = 60;
+    public static final int CMD_COMMAND = 64;
+    public static final int CMD_ACTION = 65;
+    public static final int CMD_ORDER_TYPE = 66;
+    public static final int COMMAND_LENGTH = 72;
+
+    // result record
+    public static final int RES_CORRELATION_ID = 0;
+    public static final int RES_UID = 8;
+    public static final int RES_ORDER_ID = 16;
+    public static final int RES_RESULT_CODE = 24;
+    public static final int RES_SYMBOL = 28;
+    public static final int RES_EVENTS_NUM = 32;
+    public static final int RES_COMMAND = 36;
+    public static final int RESULT_LENGTH = 40;
+
+    // trade event record
+    public static final int EVT_CORRELATION_ID = 0;
+    public static final int EVT_MATCHED_ORDER_ID = 8;
+    public static final int EVT_MATCHED_ORDER_UID = 16;
+    public static final int EVT_PRICE = 24;
+    public static final int EVT_SIZE = 32;
+    public static final int EVT_BIDDER_HOLD_PRICE = 40;
+    public static final int EVT_EVENT_TYPE = 48;
+    public static final int EVT_ACTIVE_ORDER_COMPLETED = 49;
+    public static final int EVT_MATCHED_ORDER_COMPLETED = 50;
+    public static final int TRADE_EVENT_LENGTH = 56;
+
+    private IpcCodec() {
+    }
+
+    /**
+     * Checks if command can be submitted through IPC gateway (fixed-size commands only)
+     *
+     * @param commandCode - command type code
+     * @return true if supported
+     */
+    public static boolean isSupportedCommand(final byte commandCode) {
+        return commandCode == OrderCommandType.PLACE_ORDER.getCode()
+                || commandCode == OrderCommandType.CANCEL_ORDER.getCode()
+                || commandCode == OrderCommandType.MOVE_ORDER.getCode()
+                || commandCode == OrderCommandType.REDUCE_ORDER.getCode()
+                || commandCode == OrderCommandType.ADD_USER.getCode()
+                || commandCode == OrderCommandType.BALANCE_ADJUSTMENT.getCode()
+                || commandCode == OrderCommandType.SUSPEND_USER.getCode()
+                || commandCode == OrderCommandType.RESUME_USER.getCode()
+                || commandCode == OrderCommandType.NOP.getCode();
+    }
+
+    /**
+     * Encodes API command into command record (same fields mapping as ExchangeApi translators)
+     */
+    public static void encodeCommand(final ApiCommand cmd, final long correlationId, final MutableDirectBuffer buffer, final int offset) {
+
+        // all fields are written, so stale data of the previous record never leaks into the command
+        long uid = 0;
+        long orderId = 0;
+        long price = 0;
+        long reserveBidPrice = 0;
+        long size = 0;
+        int symbol = 0;
+        int userCookie = 0;
+        byte action = 0;
+        byte orderType = 0;
+        final OrderCommandType type;
+
+        if (cmd instanceof ApiPlaceOrder) {
+            final ApiPlaceOrder c = (ApiPlaceOrder) cmd;
+            type = OrderCommandType.PLACE_ORDER;
+            uid = c.uid;
+            orderId = c.orderId;
+            price = c.price;
+            reserveBidPrice = c.reservePrice;
+            size = c.size;
+            symbol = c.symbol;
+            userCookie = c.userCookie;
+            action = c.action.getCode();
+            orderType = c.orderType.getCode();
+        } else if (cmd instanceof ApiMoveOrder) {
+            final ApiMoveOrder c = (ApiMoveOrder) cmd;
+            type = OrderCommandType.MOVE_ORDER;
+            uid = c.uid;
+            orderId = c.orderId;
+            price = c.newPrice;
+            symbol = c.symbol;
+        } else if (cmd instanceof ApiCancelOrder) {
+            final ApiCancelOrder c = (ApiCancelOrder) cmd;
+            type = OrderCommandType.CANCEL_ORDER;
+            uid = c.uid;
+            orderId = c.orderId;
+            symbol = c.symbol;
+        } else if (cmd instanceof ApiReduceOrder) {
+            final ApiReduceOrder c = (ApiReduceOrder) cmd;
+            type = OrderCommandType.REDUCE_ORDER;
+            uid = c.uid;
+            orderId = c.orderId;
+            size = c.reduceSize;
+            symbol = c.symbol;
+        } else if (cmd instanceof ApiAddUser) {
+            type = OrderCommandType.ADD_USER;
+            uid = ((ApiAddUser) cmd).uid;
+        } else if (cmd instanceof ApiAdjustUserBalance) {
+            final ApiAdjustUserBalance c = (ApiAdjustUserBalance) cmd;
+            type = OrderCommandType.BALANCE_ADJUSTMENT;
+            uid = c.uid;
+            orderId = c.transactionId;
+            price = c.amount;
+            symbol = c.currency;
+            orderType = c.adjustmentType.getCode();
+        } else if (cmd instanceof ApiSuspendUser) {
+            type = OrderCommandType.SUSPEND_USER;
+            uid = ((ApiSuspendUser) cmd).uid;
+        } else if (cmd instanceof ApiResumeUser) {
+            type = OrderCommandType.RESUME_USER;
+            uid = ((ApiResumeUser) cmd).uid;
+        } else if (cmd instanceof ApiNop) {
+            type = OrderCommandType.NOP;
+        } else {
+            throw new IllegalArgumentException("Unsupported IPC command type: " + cmd.getClass().getSimpleName());
+        }
+
+        buffer.putLong(offset + CMD_CORRELATION_ID, correlationId);
+        buffer.putLong(offset + CMD_UID, uid);
+        buffer.putLong(offset + CMD_ORDER_ID, orderId);
+        buffer.putLong(offset + CMD_PRICE, price);
+        buffer.putLong(offset + CMD_RESERVE_BID_PRICE, reserveBidPrice);
+        buffer.putLong(offset + CMD_SIZE, size);
+        buffer.putLong(offset + CMD_TIMESTAMP, cmd.timestamp);
+        buffer.putInt(offset + CMD_SYMBOL, symbol);
+        buffer.putInt(offset + CMD_USER_COOKIE, userCookie);
+        buffer.putByte(offset + CMD_COMMAND, type.getCode());
+        buffer.putByte(offset + CMD_ACTION, action);
+        buffer.putByte(offset + CMD_ORDER_TYPE, orderType);
+    }
+
+    /**
+     * Decodes command record into ring buffer slot
+     *
+     * @return correlation id
+     */
+    public static long decodeCommand(final DirectBuffer buffer, final int offset, final OrderCommand cmd) {
+        cmd.command = OrderCommandType.fromCode(buffer.getByte(offset + CMD_COMMAND));
+        cmd.uid = buffer.getLong(offset + CMD_UID);
+        cmd.orderId = buffer.getLong(offset + CMD_ORDER_ID);
+        cmd.price = buffer.getLong(offset + CMD_PRICE);
+        cmd.reserveBidPrice = buffer.getLong(offset + CMD_RESERVE_BID_PRICE);
+        cmd.size = buffer.getLong(offset + CMD_SIZE);
+        cmd.timestamp = buffer.getLong(offset + CMD_TIMESTAMP);
+        cmd.symbol = buffer.getInt(offset + CMD_SYMBOL);
+        cmd.userCookie = buffer.getInt(offset + CMD_USER_COOKIE);
+        cmd.action = OrderAction.of(buffer.getByte(offset + CMD_ACTION));
+        cmd.orderType = OrderType.of(buffer.getByte(offset + CMD_ORDER_TYPE));
+        return buffer.getLong(offset + CMD_CORRELATION_ID);
+    }
+
+    public static void encodeResult(final OrderCommand cmd, final long correlationId, final int eventsNum, final MutableDirectBuffer buffer, final int offset) {
+        buffer.putLong(offset + RES_CORRELATION_ID, correlationId);
+        buffer.putLong(offset + RES_UID, cmd.uid);
+        buffer.putLong(offset + RES_ORDER_ID, cmd.orderId);
+        buffer.putInt(offset + RES_RESULT_CODE, cmd.resultCode.getCode());
+        buffer.putInt(offset + RES_SYMBOL, cmd.symbol);
+        buffer.putInt(offset + RES_EVENTS_NUM, eventsNum);
+        buffer.putByte(offset + RES_COMMAND, cmd.command.getCode());
+    }
+
+    public static void encodeTradeEvent(final MatcherTradeEvent evt, final long correlationId, final MutableDirectBuffer buffer, final int offset) {
+        buffer.putLong(offset + EVT_CORRELATION_ID, correlationId);
+        buffer.putLong(offset + EVT_MATCHED_ORDER_ID, evt.matchedOrderId);
+        buffer.putLong(offset + EVT_MATCHED_ORDER_UID, evt.matchedOrderUid);
+        buffer.putLong(offset + EVT_PRICE, evt.price);
+        buffer.putLong(offset + EVT_SIZE, evt.size);
+        buffer.putLong(offset + EVT_BIDDER_HOLD_PRICE, evt.bidderHoldPrice);
+        buffer.putByte(offset + EVT_EVENT_TYPE, (byte) evt.eventType.ordinal());
+        buffer.putByte(offset + EVT_ACTIVE_ORDER_COMPLETED, (byte) (evt.activeOrderCompleted ? 1 : 0));
+        buffer.putByte(offset + EVT_MATCHED_ORDER_COMPLETED, (byte) (evt.matchedOrderCompleted ? 1 : 0));
+    }
+}
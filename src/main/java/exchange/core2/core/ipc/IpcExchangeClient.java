@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway process side of IPC channel.
+ * <p>
+ * Commands are encoded directly into ingress ring (no intermediate buffers), submitting is thread-safe.
+ * Results should be polled from a single thread, only one gateway process can read results of the channel.
+ */
+public final class IpcExchangeClient implements AutoCloseable {
+
+    private static final MatcherEventType[] EVENT_TYPES = MatcherEventType.values();
+
+    private final IpcChannel channel;
+    private final RingBuffer ingress;
+    private final RingBuffer egress;
+
+    private final AtomicLong correlationIdCounter = new AtomicLong();
+
+    private IIpcResultsHandler handler;
+    private final MessageHandler egressHandler = this::onEgressMessage;
+
+    private IpcExchangeClient(final IpcChannel channel) {
+        this.channel = channel;
+        this.ingress = channel.getIngress();
+        this.egress = channel.getEgress();
+    }
+
+    /**
+     * Attaches to IPC channel created by exchange core
+     *
+     * @param cfg - IPC configuration (folder and channel name)
+     * @return client
+     */
+    public static IpcExchangeClient attach(final IpcConfiguration cfg) {
+        return new IpcExchangeClient(IpcChannel.attach(cfg));
+    }
+
+    /**
+     * Submits command, spins while ingress ring is full
+     *
+     * @param cmd - API command (fixed-size commands only)
+     * @return correlation id of the command
+     */
+    public long submitCommand(final ApiCommand cmd) {
+        final long correlationId = correlationIdCounter.incrementAndGet();
+        int index;
+        while ((index = ingress.tryClaim(IpcCodec.MSG_COMMAND, IpcCodec.COMMAND_LENGTH)) == RingBuffer.INSUFFICIENT_CAPACITY) {
+            Thread.onSpinWait();
+        }
+        try {
+            IpcCodec.encodeCommand(cmd, correlationId, ingress.buffer(), index);
+        } catch (final RuntimeException ex) {
+            ingress.abort(index);
+            throw ex;
+        }
+        ingress.commit(index);
+        return correlationId;
+    }
+
+    /**
+     * Reads available results and trade events
+     *
+     * @param resultsHandler - handler
+     * @param limit          - maximum number of messages to read
+     * @return number of messages read
+     */
+    public int pollResults(final IIpcResultsHandler resultsHandler, final int limit) {
+        this.handler = resultsHandler;
+        return egress.read(egressHandler, limit);
+    }
+
+    private void onEgressMessage(final int msgTypeId, final MutableDirectBuffer buffer, final int index, final int length) {
+        if (msgTypeId == IpcCodec.MSG_RESULT) {
+            handler.onResult(
+                    buffer.getLong(index + IpcCodec.RES_CORRELATION_ID),
+                    OrderCommandType.fromCode(buffer.getByte(index + IpcCodec.RES_COMMAND)),
+                    CommandResultCode.of(buffer.getInt(index + IpcCodec.RES_RESULT_CODE)),
+                    buffer.getLong(index + IpcCodec.RES_UID),
+                    buffer.getLong(index + IpcCodec.RES_ORDER_ID),
+                    buffer.getInt(index + IpcCodec.RES_SYMBOL),
+                    buffer.getInt(index + IpcCodec.RES_EVENTS_NUM));
+        } else if (msgTypeId == IpcCodec.MSG_TRADE_EVENT) {
+            handler.onTradeEvent(
+                    buffer.getLong(index + IpcCodec.EVT_CORRELATION_ID),
+                    EVENT_TYPES[buffer.getByte(index + IpcCodec.EVT_EVENT_TYPE)],
+                    buffer.getLong(index + IpcCodec.EVT_MATCHED_ORDER_ID),
+                    buffer.getLong(index + IpcCodec.EVT_MATCHED_ORDER_UID),
+                    buffer.getByte(index + IpcCodec.EVT_ACTIVE_ORDER_COMPLETED) != 0,
+                    buffer.getByte(index + IpcCodec.EVT_MATCHED_ORDER_COMPLETED) != 0,
+                    buffer.getLong(index + IpcCodec.EVT_PRICE),
+                    buffer.getLong(index + IpcCodec.EVT_SIZE),
+                    buffer.getLong(index + IpcCodec.EVT_BIDDER_HOLD_PRICE));
+        }
+    }
+
+    @Override
+    public void close() {
+        channel.close();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.utils.SlotCorrelationTable;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RecordDescriptor;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.agrona.BitUtil.align;
+
+/**
+ * Exchange core side of IPC channel.
+ * <p>
+ * Poller thread reads commands from ingress ring and translates them into ring buffer slots in batches
+ * (one claim and one publish per batch). Correlation id of each command is remembered per ring buffer slot.
+ * Results handler (fan-out stage) writes results and trade events of IPC commands into egress ring.
+ * <p>
+ * Results handler waits for free egress ring space for limited time (slow gateway applies back-pressure same as BLOCK fan-out policy).
+ * If gateway does not read results within egress timeout (or exchange core is stopping), gateway is considered disconnected,
+ * and results of IPC commands are dropped until gateway drains egress ring. Result and its trade events
+ * are always written or dropped together.
+ */
+@Slf4j
+public final class IpcGateway {
+
+    private final IpcChannel channel;
+    private final RingBuffer<OrderCommand> ringBuffer;
+    private final ThreadFactory threadFactory;
+    private final int batchSize;
+    private final long egressTimeoutNs;
+
+    // correlation id of IPC command per ring buffer slot
+    private final SlotCorrelationTable correlations;
+
+    // poller thread state
+    private final UnsafeBuffer staging;
+    private final MessageHandler stagingHandler;
+    private int stagedNum;
+
+    private volatile boolean running = false;
+    private Thread poller;
+
+    // results handler thread state
+    private final IdleStrategy egressIdleStrategy = new BackoffIdleStrategy(100, 10, 1_000, 100_000);
+    private boolean egressDisconnected = false;
+    private volatile long egressDroppedCount = 0;
+
+    public IpcGateway(final IpcConfiguration cfg, final RingBuffer<OrderCommand> ringBuffer, final ThreadFactory threadFactory) {
+        this.channel = IpcChannel.create(cfg);
+        this.ringBuffer = ringBuffer;
+        this.threadFactory = threadFactory;
+        this.batchSize = Math.min(cfg.getPollBatchSize(), ringBuffer.getBufferSize());
+        this.egressTimeoutNs = cfg.getEgressTimeoutMs() * 1_000_000L;
+        this.correlations = new SlotCorrelationTable(ringBuffer.getBufferSize());
+
+        this.staging = new UnsafeBuffer(new byte[batchSize * IpcCodec.COMMAND_LENGTH]);
+        this.stagingHandler = (msgTypeId, buffer, index, length) -> {
+            if (msgTypeId == IpcCodec.MSG_COMMAND && length == IpcCodec.COMMAND_LENGTH) {
+                staging.putBytes(stagedNum++ * IpcCodec.COMMAND_LENGTH, buffer, index, IpcCodec.COMMAND_LENGTH);
+            } else {
+                log.warn("Ignored IPC message type={} length={}", msgTypeId, length);
+            }
+        };
+    }
+
+    public synchronized void start() {
+        if (poller == null) {
+            running = true;
+            poller = threadFactory.newThread(this::pollLoop);
+            poller.setName("IPC-" + poller.getName());
+            poller.start();
+        }
+    }
+
+    /**
+     * Stops poller thread (commands remaining in ingress ring are not processed)
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            running = false;
+            try {
+                poller.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            poller = null;
+        }
+    }
+
+    /**
+     * Releases ring files mapping, should be called after exchange core is stopped
+     */
+    public void close() {
+        channel.close();
+    }
+
+    private void pollLoop() {
+        final IdleStrategy idleStrategy = new BackoffIdleStrategy(100, 10, 1_000, 100_000);
+        final RingBuffer<OrderCommand> rb = ringBuffer;
+        while (running) {
+            stagedNum = 0;
+            channel.getIngress().read(stagingHandler, batchSize);
+            final int num = stagedNum;
+            if (num != 0) {
+                final long hi = rb.next(num);
+                final long lo = hi - num + 1;
+                try {
+                    for (int i = 0; i < num; i++) {
+                        final long seq = lo + i;
+                        final OrderCommand cmd = rb.get(seq);
+                        correlations.put(seq, IpcCodec.decodeCommand(staging, i * IpcCodec.COMMAND_LENGTH, cmd));
+                        if (!IpcCodec.isSupportedCommand(cmd.command.getCode())) {
+                            log.warn("Unsupported IPC command {} replaced with NOP", cmd.command);
+                            cmd.command = OrderCommandType.NOP;
+                        }
+                        cmd.resultCode = CommandResultCode.NEW;
+                    }
+                } finally {
+                    rb.publish(lo, hi);
+                }
+            }
+            idleStrategy.idle(num);
+        }
+    }
+
+    /**
+     * Writes result and trade events of IPC command into egress ring (called from results handler thread)
+     *
+     * @param cmd - processed command
+     * @param seq - ring buffer sequence
+     */
+    public void onResult(final OrderCommand cmd, final long seq) {
+
+        if (!correlations.contains(seq)) {
+            // not an IPC command
+            return;
+        }
+        final long correlationId = correlations.get(seq);
+
+        int eventsNum = 0;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            eventsNum++;
+        }
+
+        final org.agrona.concurrent.ringbuffer.RingBuffer egress = channel.getEgress();
+        if (!awaitEgressCapacity(egress, eventsNum)) {
+            egressDroppedCount++;
+            return;
+        }
+
+        final AtomicBuffer buffer = egress.buffer();
+
+        final int resIndex = claim(egress, IpcCodec.MSG_RESULT, IpcCodec.RESULT_LENGTH);
+        IpcCodec.encodeResult(cmd, correlationId, eventsNum, buffer, resIndex);
+        egress.commit(resIndex);
+
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            final int evtIndex = claim(egress, IpcCodec.MSG_TRADE_EVENT, IpcCodec.TRADE_EVENT_LENGTH);
+            IpcCodec.encodeTradeEvent(evt, correlationId, buffer, evtIndex);
+            egress.commit(evtIndex);
+        }
+    }
+
+    /**
+     * Waits (bounded) until result and all trade events can be written into egress ring.
+     *
+     * @return false if results should be dropped (gateway is disconnected or exchange core is stopping)
+     */
+    private boolean awaitEgressCapacity(final org.agrona.concurrent.ringbuffer.RingBuffer egress, final int eventsNum) {
+
+        // results handler is the only producer, so capacity can only grow while waiting;
+        // one padding record (shorter than the longest record) can be inserted when ring wraps
+        final long required = align(IpcCodec.RESULT_LENGTH + RecordDescriptor.HEADER_LENGTH, RecordDescriptor.ALIGNMENT)
+                + (long) eventsNum * align(IpcCodec.TRADE_EVENT_LENGTH + RecordDescriptor.HEADER_LENGTH, RecordDescriptor.ALIGNMENT)
+                + align(IpcCodec.TRADE_EVENT_LENGTH + RecordDescriptor.HEADER_LENGTH, RecordDescriptor.ALIGNMENT);
+
+        if (required > egress.capacity()) {
+            log.warn("IPC result with {} trade events does not fit into egress ring, dropped", eventsNum);
+            return false;
+        }
+
+        if (egressDisconnected) {
+            // reconnect when gateway has read everything written before disconnect
+            if (egress.size() != 0) {
+                return false;
+            }
+            egressDisconnected = false;
+            log.info("IPC gateway is reading egress ring again (dropped {} results)", egressDroppedCount);
+        }
+
+        if (egress.capacity() - egress.size() >= required) {
+            return true;
+        }
+
+        egressIdleStrategy.reset();
+        final long deadline = System.nanoTime() + egressTimeoutNs;
+        while (egress.capacity() - egress.size() < required) {
+            if (!running || System.nanoTime() > deadline) {
+                egressDisconnected = true;
+                log.warn("IPC gateway does not read egress ring, results are dropped until it drains the ring");
+                return false;
+            }
+            egressIdleStrategy.idle();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of IPC results dropped because of full egress ring
+     */
+    public long getEgressDroppedCount() {
+        return egressDroppedCount;
+    }
+
+    private static int claim(final org.agrona.concurrent.ringbuffer.RingBuffer ring, final int msgTypeId, final int length) {
+        final int index = ring.tryClaim(msgTypeId, length);
+        if (index == org.agrona.concurrent.ringbuffer.RingBuffer.INSUFFICIENT_CAPACITY) {
+            throw new IllegalStateException("Egress ring capacity was not reserved");
+        }
+        return index;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.processors.SharedPool;
+import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Ring buffer occupancy and back-pressure monitor.
+ * <p>
+ * Low-priority thread periodically samples ring buffer cursor and sequences of all stages (volatile reads only),
+ * and accumulates lags until next snapshot. Counters (groups sizes, shared pool misses, journal bytes and sync latency)
+ * are maintained by owning components outside of per-command path and are read at snapshot time.
+ * <p>
+ * Publishers are blocked inside disruptor sequencer when ring buffer has no capacity,
+ * so publisher waits are estimated as number of samples when ring buffer was full.
+ */
+@Slf4j
+public final class PipelineMetricsMonitor {
+
+    private final RingBuffer<?> ringBuffer;
+    private final String[] stageNames;
+    private final LongSupplier[] stageSequences;
+    private final SingleWriterRecorder groupSizeRecorder;
+    private final SharedPool sharedPool;
+    private final ISerializationProcessor serializationProcessor;
+    private final long samplingIntervalNs;
+    private final ThreadFactory threadFactory;
+
+    // accumulated since previous snapshot (guarded by this)
+    private final long[] lastLag;
+    private final long[] maxLag;
+    private final long[] sumLag;
+    private long samples;
+    private long ringFullSamples;
+    private long minRemainingCapacity;
+    private long cursor;
+    private long intervalStartNs;
+    private long intervalStartJournalBytes;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param ringBuffer             - main ring buffer
+     * @param stageSequences         - stage name to stage sequence supplier (in pipeline order)
+     * @param groupSizeRecorder      - grouping processor groups sizes recorder (nullable)
+     * @param sharedPool             - shared events pool
+     * @param serializationProcessor - serialization processor (journal counters)
+     * @param samplingIntervalUs     - sampling interval
+     * @param threadFactory          - thread factory for sampling thread
+     */
+    public PipelineMetricsMonitor(final RingBuffer<?> ringBuffer,
+                                  final Map<String, LongSupplier> stageSequences,
+                                  final SingleWriterRecorder groupSizeRecorder,
+                                  final SharedPool sharedPool,
+                                  final ISerializationProcessor serializationProcessor,
+                                  final int samplingIntervalUs,
+                                  final ThreadFactory threadFactory) {
+
+        if (samplingIntervalUs <= 0) {
+            throw new IllegalArgumentException("samplingIntervalUs should be positive");
+        }
+
+        this.ringBuffer = ringBuffer;
+        this.stageNames = stageSequences.keySet().toArray(new String[0]);
+        this.stageSequences = stageSequences.values().toArray(new LongSupplier[0]);
+        this.groupSizeRecorder = groupSizeRecorder;
+        this.sharedPool = sharedPool;
+        this.serializationProcessor = serializationProcessor;
+        this.samplingIntervalNs = samplingIntervalUs * 1000L;
+        this.threadFactory = threadFactory;
+
+        this.lastLag = new long[stageNames.length];
+        this.maxLag = new long[stageNames.length];
+        this.sumLag = new long[stageNames.length];
+
+        resetInterval(System.nanoTime());
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = threadFactory.newThread(this::samplingLoop);
+        thread.setName("Metrics-" + thread.getName());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public void stop() {
+        final Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void samplingLoop() {
+        while (running) {
+            sample();
+            LockSupport.parkNanos(samplingIntervalNs);
+        }
+    }
+
+    /**
+     * Takes single sample (called by monitor thread)
+     */
+    synchronized void sample() {
+
+        final long c = ringBuffer.getCursor();
+        cursor = c;
+
+        for (int i = 0; i < stageSequences.length; i++) {
+            final long lag = Math.max(0, c - stageSequences[i].getAsLong());
+            lastLag[i] = lag;
+            maxLag[i] = Math.max(maxLag[i], lag);
+            sumLag[i] += lag;
+        }
+
+        final long remainingCapacity = ringBuffer.remainingCapacity();
+        minRemainingCapacity = Math.min(minRemainingCapacity, remainingCapacity);
+        if (remainingCapacity == 0) {
+            ringFullSamples++;
+        }
+
+        samples++;
+    }
+
+    /**
+     * Provides metrics collected since previous snapshot and starts next interval.
+     * Can be called from any thread.
+     *
+     * @return metrics snapshot
+     */
+    public synchronized PipelineMetricsSnapshot snapshot() {
+
+        final long t = System.nanoTime();
+        final long intervalNs = Math.max(1, t - intervalStartNs);
+
+        final List<PipelineMetricsSnapshot.StageLag> stageLags = new ArrayList<>(stageNames.length);
+        for (int i = 0; i < stageNames.length; i++) {
+            stageLags.add(new PipelineMetricsSnapshot.StageLag(
+                    stageNames[i],
+                    lastLag[i],
+                    maxLag[i],
+                    samples == 0 ? 0 : (double) sumLag[i] / samples));
+        }
+
+        final long journalBytes = serializationProcessor.getJournalWrittenBytes();
+        final SingleWriterRecorder syncLatencyRecorder = serializationProcessor.getJournalSyncLatencyRecorder();
+
+        final PipelineMetricsSnapshot snapshot = new PipelineMetricsSnapshot(
+                intervalNs,
+                samples,
+                ringBuffer.getBufferSize(),
+                cursor,
+                minRemainingCapacity,
+                ringFullSamples,
+                stageLags,
+                groupSizeRecorder == null ? null : groupSizeRecorder.getIntervalHistogram(),
+                sharedPool.getChainMisses(),
+                sharedPool.getChainsDropped(),
+                journalBytes,
+                (journalBytes - intervalStartJournalBytes) * 1_000_000_000d / intervalNs,
+                syncLatencyRecorder == null ? null : syncLatencyRecorder.getIntervalHistogram());
+
+        resetInterval(t);
+        intervalStartJournalBytes = journalBytes;
+        return snapshot;
+    }
+
+    private void resetInterval(final long t) {
+        intervalStartNs = t;
+        samples = 0;
+        ringFullSamples = 0;
+        minRemainingCapacity = ringBuffer.getBufferSize();
+        for (int i = 0; i < stageNames.length; i++) {
+            maxLag[i] = 0;
+            sumLag[i] = 0;
+        }
+    }
+}
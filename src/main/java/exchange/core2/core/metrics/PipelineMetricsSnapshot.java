@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+
+import java.util.List;
+
+/**
+ * Ring buffer occupancy and back-pressure metrics collected by {@link PipelineMetricsMonitor} since previous snapshot.
+ * Plain immutable object, can be exported or logged from any thread.
+ */
+@Getter
+@AllArgsConstructor
+public final class PipelineMetricsSnapshot {
+
+    // snapshot interval
+    private final long intervalNs;
+
+    // number of samples taken during interval
+    private final long samples;
+
+    private final int ringBufferSize;
+
+    // ring buffer cursor (last claimed sequence) at the last sample
+    private final long cursor;
+
+    // minimal observed ring buffer remaining capacity
+    private final long minRemainingCapacity;
+
+    // samples when ring buffer was full - publishers were waiting for capacity
+    private final long ringFullSamples;
+
+    // sequence lag of every stage (in pipeline order)
+    private final List<StageLag> stageLags;
+
+    // sizes of closed groups (null if grouping processor is not instrumented)
+    private final Histogram groupSizes;
+
+    // shared pool totals
+    private final long sharedPoolChainMisses;
+    private final long sharedPoolChainsDropped;
+
+    // journal totals and rates (zero if journaling is disabled)
+    private final long journalWrittenBytes;
+    private final double journalBytesPerSec;
+
+    // journal sync latency in nanoseconds (null if journal is not synced)
+    private final Histogram journalSyncLatency;
+
+    public double getRingFullRatio() {
+        return samples == 0 ? 0 : (double) ringFullSamples / samples;
+    }
+
+    /**
+     * Number of commands published into ring buffer, but not processed yet by the stage
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class StageLag {
+
+        private final String stage;
+        private final long lastLag;
+        private final long maxLag;
+        private final double avgLag;
+
+        @Override
+        public String toString() {
+            return stage + "=" + lastLag + "/" + maxLag + "/" + String.format("%.1f", avgLag);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineMetricsSnapshot{" +
+                "intervalMs=" + intervalNs / 1_000_000 +
+                ", samples=" + samples +
+                ", cursor=" + cursor +
+                ", minRemainingCapacity=" + minRemainingCapacity + "/" + ringBufferSize +
+                ", ringFullSamples=" + ringFullSamples +
+                ", stageLags(last/max/avg)=" + stageLags +
+                ", groupSizes=" + (groupSizes == null ? null : "{n=" + groupSizes.getTotalCount() + " mean=" + String.format("%.1f", groupSizes.getMean()) + " max=" + groupSizes.getMaxValue() + "}") +
+                ", sharedPoolChainMisses=" + sharedPoolChainMisses +
+                ", sharedPoolChainsDropped=" + sharedPoolChainsDropped +
+                ", journalWrittenBytes=" + journalWrittenBytes +
+                ", journalBytesPerSec=" + String.format("%.0f", journalBytesPerSec) +
+                ", journalSyncLatency=" + (journalSyncLatency == null ? null : "{n=" + journalSyncLatency.getTotalCount() + " p50=" + journalSyncLatency.getValueAtPercentile(50) + "ns p99=" + journalSyncLatency.getValueAtPercentile(99) + "ns}") +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+/**
+ * Pipeline stages measured by {@link StageLatencyMetrics}.
+ * Stage latency is the time since its predecessor stage completed the command until this stage completed it,
+ * so it includes both queueing (waiting for the stage thread) and processing time.
+ */
+public enum PipelineStage {
+
+    // grouping (G) -> risk pre-process (R1)
+    RISK_PRE_PROCESS,
+
+    // R1 (latest of all risk engines) -> matching engine (ME)
+    MATCHING_ENGINE,
+
+    // ME (latest of all matching engines) -> risk release (R2)
+    RISK_RELEASE,
+
+    // G -> journaling (J)
+    JOURNALING,
+
+    // ME and J (latest of all) -> results handler (E)
+    RESULTS,
+
+    // G -> E
+    TOTAL
+}
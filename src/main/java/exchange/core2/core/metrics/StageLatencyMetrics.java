@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import com.lmax.disruptor.EventHandler;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.processors.SimpleEventHandler;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-stage latency instrumentation.
+ * <p>
+ * Each stage stores completion time of every command into side array indexed by sequence (column per stage instance,
+ * column-major layout - stages never write into the same cache lines). Next stage reads predecessors timestamps
+ * (disruptor sequence barrier guarantees visibility), and records the difference into own single-writer recorder.
+ * Stages that have no successors (R2, E) are not storing timestamps.
+ * <p>
+ * Snapshot swaps recorders (interval histograms) and merges instances of the same stage,
+ * so it can be called from any thread at any time without stopping the pipeline.
+ */
+public final class StageLatencyMetrics {
+
+    private static final long HIGHEST_TRACKABLE_VALUE = Integer.MAX_VALUE;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final int COLUMN_GROUPING = 0;
+
+    private final long[] timestamps;
+    private final int ringBufferSize;
+    private final int indexMask;
+
+    private final int riskEnginesNum;
+    private final int matchingEnginesNum;
+    private final int columnJournaling;
+
+    private final List<StageProbe> probes = new ArrayList<>();
+
+    public StageLatencyMetrics(final int ringBufferSize, final int riskEnginesNum, final int matchingEnginesNum) {
+        this.ringBufferSize = ringBufferSize;
+        this.indexMask = ringBufferSize - 1;
+        this.riskEnginesNum = riskEnginesNum;
+        this.matchingEnginesNum = matchingEnginesNum;
+        this.columnJournaling = 1 + riskEnginesNum + matchingEnginesNum;
+        this.timestamps = new long[(columnJournaling + 1) * ringBufferSize];
+    }
+
+    /**
+     * Stores time when grouping processor received the command (starting point for all stages)
+     *
+     * @param seq    - command sequence
+     * @param timeNs - System.nanoTime()
+     */
+    public void groupingTimestamp(final long seq, final long timeNs) {
+        timestamps[(int) (seq & indexMask)] = timeNs;
+    }
+
+    /**
+     * R1 master and each R1 stripe worker should use own probe: every command is pre-processed (and timestamped)
+     * by exactly one of them, so matching engines always measure from the current command R1 completion time.
+     *
+     * @param shardId - risk engine shard
+     * @return probe
+     */
+    public synchronized StageProbe riskPreProcessProbe(final int shardId) {
+        return newProbe(PipelineStage.RISK_PRE_PROCESS, 1 + shardId, new int[]{COLUMN_GROUPING});
+    }
+
+    public synchronized StageProbe matchingEngineProbe(final int shardId) {
+        return newProbe(PipelineStage.MATCHING_ENGINE, 1 + riskEnginesNum + shardId, range(1, riskEnginesNum));
+    }
+
+    /**
+     * Matching engine probe for fast lane commands (cancel/move/reduce): they are processed by matching engine
+     * before R1 completes, so R1 timestamp of the same slot is not written yet (left by the previous ring lap).
+     * Measuring from grouping instead. Writes the same column as matchingEngineProbe of the same shard.
+     *
+     * @param shardId - matching engine shard
+     * @return probe
+     */
+    public synchronized StageProbe matchingEngineFastLaneProbe(final int shardId) {
+        return newProbe(PipelineStage.MATCHING_ENGINE, 1 + riskEnginesNum + shardId, new int[]{COLUMN_GROUPING});
+    }
+
+    public synchronized StageProbe riskReleaseProbe() {
+        return newProbe(PipelineStage.RISK_RELEASE, -1, range(1 + riskEnginesNum, matchingEnginesNum));
+    }
+
+    public synchronized StageProbe journalingProbe() {
+        return newProbe(PipelineStage.JOURNALING, columnJournaling, new int[]{COLUMN_GROUPING});
+    }
+
+    public synchronized StageProbe resultsProbe(final boolean afterJournaling) {
+        return newProbe(PipelineStage.RESULTS, -1, range(1 + riskEnginesNum, matchingEnginesNum + (afterJournaling ? 1 : 0)));
+    }
+
+    public synchronized StageProbe totalProbe() {
+        return newProbe(PipelineStage.TOTAL, -1, new int[]{COLUMN_GROUPING});
+    }
+
+    /**
+     * Provides latency histograms recorded since previous snapshot (instances of the same stage are merged).
+     * Stages that are not instrumented (like journaling if disabled) are not included.
+     *
+     * @return latency histograms in nanoseconds
+     */
+    public synchronized Map<PipelineStage, Histogram> snapshot() {
+        final Map<PipelineStage, Histogram> result = new EnumMap<>(PipelineStage.class);
+        for (final StageProbe probe : probes) {
+            probe.intervalHistogram = probe.recorder.getIntervalHistogram(probe.intervalHistogram);
+            result.computeIfAbsent(probe.stage, stage -> new Histogram(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DIGITS))
+                    .add(probe.intervalHistogram);
+        }
+        return result;
+    }
+
+    private StageProbe newProbe(final PipelineStage stage, final int column, final int[] predecessorColumns) {
+        final StageProbe probe = new StageProbe(stage, column, predecessorColumns);
+        probes.add(probe);
+        return probe;
+    }
+
+    private static int[] range(final int from, final int num) {
+        final int[] columns = new int[num];
+        for (int i = 0; i < num; i++) {
+            columns[i] = from + i;
+        }
+        return columns;
+    }
+
+    public static EventHandler<OrderCommand> withProbe(final EventHandler<OrderCommand> handler, final StageProbe probe) {
+        return (cmd, seq, eob) -> {
+            handler.onEvent(cmd, seq, eob);
+            probe.record(seq);
+        };
+    }
+
+    public static SimpleEventHandler withProbe(final SimpleEventHandler handler, final StageProbe probe) {
+        return (seq, cmd) -> {
+            final boolean forcePublish = handler.onEvent(seq, cmd);
+            probe.record(seq);
+            return forcePublish;
+        };
+    }
+
+    /**
+     * Recording point of one stage instance, must be used by single thread only
+     */
+    public final class StageProbe {
+
+        private final PipelineStage stage;
+        private final int offset;
+        private final int[] predecessorOffsets;
+        private final SingleWriterRecorder recorder = new SingleWriterRecorder(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DIGITS);
+
+        // reader side
+        private Histogram intervalHistogram;
+
+        private StageProbe(final PipelineStage stage, final int column, final int[] predecessorColumns) {
+            this.stage = stage;
+            this.offset = column < 0 ? -1 : column * ringBufferSize;
+            this.predecessorOffsets = new int[predecessorColumns.length];
+            for (int i = 0; i < predecessorColumns.length; i++) {
+                predecessorOffsets[i] = predecessorColumns[i] * ringBufferSize;
+            }
+        }
+
+        public void record(final long seq) {
+            record(seq, System.nanoTime());
+        }
+
+        public void record(final long seq, final long timeNs) {
+
+            final int idx = (int) (seq & indexMask);
+
+            long startNs = 0;
+            for (final int predecessorOffset : predecessorOffsets) {
+                startNs = Math.max(startNs, timestamps[predecessorOffset + idx]);
+            }
+
+            if (offset >= 0) {
+                timestamps[offset + idx] = timeNs;
+            }
+
+            if (startNs != 0) {
+                recorder.recordValue(Math.min(Math.max(timeNs - startNs, 0), HIGHEST_TRACKABLE_VALUE));
+            }
+        }
+    }
+}
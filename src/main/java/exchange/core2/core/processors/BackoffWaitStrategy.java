@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.*;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Phased backoff wait strategy: spin - yield - park - block.
+ * <p>
+ * Thresholds are defined per pipeline stage (thread):
+ * Disruptor handlers threads are using backoff set by {@link #withStageBackoff(EventHandler, StageBackoff)},
+ * custom processors are using WaitSpinningHelper with explicit backoff,
+ * custom threads waiting for other threads (not for ring buffer) are using {@link IdleBackoff}.
+ * <p>
+ * Blocking is possible only when waiting for commands not published into ring buffer yet (publisher signals),
+ * processors waiting for other processors are parking instead.
+ */
+public final class BackoffWaitStrategy implements WaitStrategy {
+
+    private static final ThreadLocal<StageBackoff> THREAD_BACKOFF = new ThreadLocal<>();
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition processorNotifyCondition = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    private final StageBackoff defaultBackoff;
+
+    public BackoffWaitStrategy() {
+        this(WaitBackoffConfiguration.BALANCED);
+    }
+
+    public BackoffWaitStrategy(final StageBackoff defaultBackoff) {
+        this.defaultBackoff = defaultBackoff;
+    }
+
+    @Override
+    public long waitFor(final long sequence,
+                        final Sequence cursorSequence,
+                        final Sequence dependentSequence,
+                        final SequenceBarrier barrier) throws AlertException, InterruptedException {
+
+        long availableSequence = dependentSequence.get();
+        if (availableSequence >= sequence) {
+            return availableSequence;
+        }
+
+        final StageBackoff threadBackoff = THREAD_BACKOFF.get();
+        final StageBackoff backoff = threadBackoff != null ? threadBackoff : defaultBackoff;
+
+        final long startNs = System.nanoTime();
+        while ((availableSequence = dependentSequence.get()) < sequence) {
+            barrier.checkAlert();
+            idle(backoff, System.nanoTime() - startNs, sequence, cursorSequence, barrier);
+        }
+
+        return availableSequence;
+    }
+
+    /**
+     * Single idle step
+     *
+     * @param backoff        - stage backoff thresholds
+     * @param idleNs         - time since the beginning of idle period
+     * @param sequence       - awaited sequence
+     * @param cursorSequence - ring buffer cursor
+     * @param barrier        - barrier (for alerts)
+     * @throws AlertException       if barrier was alerted
+     * @throws InterruptedException if thread was interrupted while blocked
+     */
+    public void idle(final StageBackoff backoff,
+                     final long idleNs,
+                     final long sequence,
+                     final Sequence cursorSequence,
+                     final SequenceBarrier barrier) throws AlertException, InterruptedException {
+
+        if (idleNs < backoff.getSpinNs()) {
+            Thread.onSpinWait();
+        } else if (idleNs < backoff.getYieldNs()) {
+            Thread.yield();
+        } else if (idleNs < backoff.getParkNs() || cursorSequence.get() >= sequence) {
+            // waiting for another processor (it does not signal) - can not block
+            LockSupport.parkNanos(backoff.getParkPeriodNs());
+        } else {
+            lock.lock();
+            try {
+                signalNeeded.set(true);
+                if (cursorSequence.get() < sequence) {
+                    barrier.checkAlert();
+                    processorNotifyCondition.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        if (signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                processorNotifyCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wraps Disruptor handler, so its thread uses specified backoff thresholds while waiting.
+     *
+     * @param handler - handler
+     * @param backoff - stage backoff thresholds
+     * @param <T>     - event type
+     * @return wrapped handler
+     */
+    public static <T> EventHandler<T> withStageBackoff(final EventHandler<T> handler, final StageBackoff backoff) {
+        return new StageEventHandler<>(handler, backoff);
+    }
+
+    /**
+     * Backoff for custom loops waiting for other threads (buffers, flags), not for ring buffer sequences.
+     * Nobody signals such loops, so they never block - parking continues after parkNs threshold.
+     * Not threadsafe, one instance per waiting thread.
+     */
+    public static final class IdleBackoff {
+
+        private final StageBackoff backoff;
+        private boolean idle = false;
+        private long idleStartNs;
+
+        public IdleBackoff(final StageBackoff backoff) {
+            this.backoff = backoff;
+        }
+
+        /**
+         * Single idle step, idle period starts with first call after reset
+         */
+        public void idle() {
+            final long t = System.nanoTime();
+            if (!idle) {
+                idle = true;
+                idleStartNs = t;
+            }
+            final long idleNs = t - idleStartNs;
+            if (idleNs < backoff.getSpinNs()) {
+                Thread.onSpinWait();
+            } else if (idleNs < backoff.getYieldNs()) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(backoff.getParkPeriodNs());
+            }
+        }
+
+        /**
+         * End of idle period (some work was done)
+         */
+        public void reset() {
+            idle = false;
+        }
+    }
+
+    private static final class StageEventHandler<T> implements EventHandler<T>, LifecycleAware {
+
+        private final EventHandler<T> handler;
+        private final StageBackoff backoff;
+
+        private StageEventHandler(EventHandler<T> handler, StageBackoff backoff) {
+            this.handler = handler;
+            this.backoff = backoff;
+        }
+
+        @Override
+        public void onEvent(T event, long sequence, boolean endOfBatch) throws Exception {
+            handler.onEvent(event, sequence, endOfBatch);
+        }
+
+        @Override
+        public void onStart() {
+            THREAD_BACKOFF.set(backoff);
+            if (handler instanceof LifecycleAware) {
+                ((LifecycleAware) handler).onStart();
+            }
+        }
+
+        @Override
+        public void onShutdown() {
+            if (handler instanceof LifecycleAware) {
+                ((LifecycleAware) handler).onShutdown();
+            }
+            THREAD_BACKOFF.remove();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Symbol id -> object map with direct array lookup for dense symbol ids.
+ * <p>
+ * Symbols with id in range [0, denseIdLimit) are also stored in flat array indexed by symbol id,
+ * so per-command lookup does not require hashing. Array grows when symbols are added (not on lookup).
+ * Other symbols are looked up in the hash map.
+ * <p>
+ * Hash map remains the primary storage (iteration, serialization, state hash),
+ * all modifications must be done through this class to keep array in sync.
+ * <p>
+ * Not threadsafe.
+ *
+ * @param <V> value type
+ */
+public final class DenseSymbolMap<V> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final int denseIdLimit;
+    private final IntObjectHashMap<V> map;
+
+    private Object[] dense = EMPTY;
+
+    public DenseSymbolMap(final int denseIdLimit) {
+        this(denseIdLimit, new IntObjectHashMap<>());
+    }
+
+    public DenseSymbolMap(final int denseIdLimit, final IntObjectHashMap<V> map) {
+        if (denseIdLimit < 0) {
+            throw new IllegalArgumentException("denseIdLimit can not be negative: " + denseIdLimit);
+        }
+        this.denseIdLimit = denseIdLimit;
+        this.map = map;
+        map.forEachKeyValue(this::putDense);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(final int symbol) {
+        if (symbol >= 0 && symbol < denseIdLimit) {
+            final Object[] d = dense;
+            return symbol < d.length ? (V) d[symbol] : null;
+        }
+        return map.get(symbol);
+    }
+
+    public void put(final int symbol, final V value) {
+        map.put(symbol, value);
+        putDense(symbol, value);
+    }
+
+    public V getIfAbsentPut(final int symbol, final Supplier<V> supplier) {
+        V value = get(symbol);
+        if (value == null) {
+            value = supplier.get();
+            put(symbol, value);
+        }
+        return value;
+    }
+
+    public V remove(final int symbol) {
+        if (symbol >= 0 && symbol < dense.length) {
+            dense[symbol] = null;
+        }
+        return map.remove(symbol);
+    }
+
+    public void clear() {
+        map.clear();
+        dense = EMPTY;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return underlying hash map (should not be modified directly)
+     */
+    public IntObjectHashMap<V> getMap() {
+        return map;
+    }
+
+    private void putDense(final int symbol, final V value) {
+        if (symbol < 0 || symbol >= denseIdLimit) {
+            return;
+        }
+        if (symbol >= dense.length) {
+            final int newLength = (int) Math.min(denseIdLimit, Math.max(symbol + 1L, dense.length * 2L));
+            dense = Arrays.copyOf(dense, newLength);
+        }
+        dense[symbol] = value;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.TimeoutException;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Matching engine barrier with cancel/move/reduce fast lane.
+ * <p>
+ * Risk pre-processing (R1) does nothing for cancel, move and reduce commands, but matching engine normally waits until
+ * R1 publishes its progress (end of R1 batch) before processing them. This barrier makes commands available to matching
+ * engine as soon as grouping processor (G) has passed them, if all preceding commands are already pre-processed by R1.
+ * Matching engine still processes commands strictly in sequence order, so results are deterministic
+ * (same as without fast lane, and same during journal replay).
+ * <p>
+ * Matching engine can get ahead of R1, so R1 processors should remain gating sequences of the ring buffer.
+ */
+public final class FastLaneSequenceBarrier implements SequenceBarrier {
+
+    private final RingBuffer<OrderCommand> ringBuffer;
+    private final SequenceBarrier riskBarrier;
+    private final SequenceBarrier groupingBarrier;
+
+    /**
+     * @param ringBuffer       - ring buffer
+     * @param groupingSequence - grouping processor (G) sequence
+     * @param riskSequences    - risk pre-processors (R1 masters and workers) sequences
+     */
+    public FastLaneSequenceBarrier(final RingBuffer<OrderCommand> ringBuffer,
+                                   final Sequence groupingSequence,
+                                   final Sequence... riskSequences) {
+        this.ringBuffer = ringBuffer;
+        this.riskBarrier = ringBuffer.newBarrier(riskSequences);
+        this.groupingBarrier = ringBuffer.newBarrier(groupingSequence);
+    }
+
+    @Override
+    public long waitFor(final long sequence) throws AlertException, InterruptedException, TimeoutException {
+
+        // nothing can be processed before grouping
+        final long groupingAvailable = groupingBarrier.waitFor(sequence);
+        long available = extendFastLane(riskBarrier.getCursor(), groupingAvailable);
+
+        while (available < sequence) {
+            // next command requires risk pre-processing
+            final long riskAvailable = riskBarrier.waitFor(available + 1);
+            available = extendFastLane(riskAvailable, groupingBarrier.getCursor());
+        }
+
+        return available;
+    }
+
+    /*
+     * Extends available sequence through contiguous fast lane commands already passed by grouping processor
+     */
+    private long extendFastLane(final long riskAvailable, final long groupingAvailable) {
+        long seq = riskAvailable;
+        while (seq < groupingAvailable && isFastLaneCommand(ringBuffer.get(seq + 1).command)) {
+            seq++;
+        }
+        return seq;
+    }
+
+    public static boolean isFastLaneCommand(final OrderCommandType command) {
+        return command == OrderCommandType.CANCEL_ORDER
+                || command == OrderCommandType.MOVE_ORDER
+                || command == OrderCommandType.REDUCE_ORDER;
+    }
+
+    @Override
+    public long getCursor() {
+        return riskBarrier.getCursor();
+    }
+
+    @Override
+    public boolean isAlerted() {
+        return riskBarrier.isAlerted();
+    }
+
+    @Override
+    public void alert() {
+        riskBarrier.alert();
+        groupingBarrier.alert();
+    }
+
+    @Override
+    public void clearAlert() {
+        riskBarrier.clearAlert();
+        groupingBarrier.clearAlert();
+    }
+
+    @Override
+    public void checkAlert() throws AlertException {
+        riskBarrier.checkAlert();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.SymbolPositionRecord;
+import exchange.core2.core.common.UserProfile;
+import lombok.Getter;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+
+/**
+ * Per-user per-currency aggregates of margin positions: sum of (estimated profit - required margin).
+ * <p>
+ * Each position keeps its last contribution, so aggregate is updated incrementally after position change.
+ * Estimated profit depends on last prices, so aggregates are tagged with price epoch,
+ * which is incremented on every last price change. Last price record of the symbol keeps epoch of its last change,
+ * so on next access only contributions of positions in symbols with changed price are re-calculated (as delta to aggregate).
+ * Aggregates older than last global invalidation (reset) are fully recalculated.
+ * <p>
+ * Aggregates are not a part of the state (not serialized, re-calculated after loading).
+ * Not threadsafe, owned by single risk engine instance.
+ */
+public final class FreeMarginCache {
+
+    private final SymbolSpecificationProvider symbolSpecificationProvider;
+    private final DenseSymbolMap<RiskEngine.LastPriceCacheRecord> lastPriceCache;
+
+    @Getter
+    private long priceEpoch = 0;
+
+    // aggregates of older epochs are not valid anymore
+    private long resetEpoch = 0;
+
+    // statistics only (not exact when risk pre-check is running in multiple threads)
+    @Getter
+    private long recalculationsCount = 0;
+    @Getter
+    private long contributionUpdatesCount = 0;
+
+    public FreeMarginCache(final SymbolSpecificationProvider symbolSpecificationProvider,
+                           final DenseSymbolMap<RiskEngine.LastPriceCacheRecord> lastPriceCache) {
+        this.symbolSpecificationProvider = symbolSpecificationProvider;
+        this.lastPriceCache = lastPriceCache;
+    }
+
+    /**
+     * Sum of (estimated profit - required margin) for all user positions quoted in specified currency
+     *
+     * @param userProfile - user profile
+     * @param currency    - currency
+     * @return free margin (can be negative)
+     */
+    public long getFreeMargin(final UserProfile userProfile, final int currency) {
+        if (userProfile.marginAggregatesEpoch != priceEpoch) {
+            if (isTracked(userProfile)) {
+                refresh(userProfile);
+            } else {
+                recalculate(userProfile);
+            }
+        }
+        return userProfile.marginAggregates.get(currency);
+    }
+
+    /**
+     * Should be called after any change of the position record (including creation)
+     *
+     * @param userProfile - user profile
+     * @param position    - changed position record
+     */
+    public void onPositionChanged(final UserProfile userProfile, final SymbolPositionRecord position) {
+        if (isTracked(userProfile)) {
+            final long contribution = calculateContribution(position);
+            userProfile.marginAggregates.addToValue(position.currency, contribution - position.marginContribution);
+            position.marginContribution = contribution;
+        }
+    }
+
+    /**
+     * Should be called when position record is removed from user profile
+     *
+     * @param userProfile - user profile
+     * @param position    - removed position record
+     */
+    public void onPositionRemoved(final UserProfile userProfile, final SymbolPositionRecord position) {
+        if (isTracked(userProfile)) {
+            userProfile.marginAggregates.addToValue(position.currency, -position.marginContribution);
+        }
+        position.marginContribution = 0;
+    }
+
+    /**
+     * Should be called after last price change of the symbol
+     *
+     * @param lastPrice - changed last price record
+     */
+    public void onPriceChanged(final RiskEngine.LastPriceCacheRecord lastPrice) {
+        priceEpoch++;
+        lastPrice.priceEpoch = priceEpoch;
+    }
+
+    /**
+     * Should be called after any global change (reset), all aggregates will be fully recalculated
+     */
+    public void invalidateAll() {
+        priceEpoch++;
+        resetEpoch = priceEpoch;
+    }
+
+    /**
+     * Full calculation, does not use or change cached values
+     *
+     * @param userProfile - user profile
+     * @param currency    - currency
+     * @return free margin (can be negative)
+     */
+    public long calculateFreeMarginFull(final UserProfile userProfile, final int currency) {
+        long freeMargin = 0L;
+        for (final SymbolPositionRecord position : userProfile.positions) {
+            if (position.currency == currency) {
+                freeMargin += calculateContribution(position);
+            }
+        }
+        return freeMargin;
+    }
+
+    public long calculateContribution(final SymbolPositionRecord position) {
+        return calculateContribution(position, lastPriceCache.get(position.symbol));
+    }
+
+    private long calculateContribution(final SymbolPositionRecord position, final RiskEngine.LastPriceCacheRecord lastPrice) {
+        final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(position.symbol);
+        // add P&L subtract margin
+        return position.estimateProfit(spec, lastPrice) - position.calculateRequiredMarginForFutures(spec);
+    }
+
+    private boolean isTracked(final UserProfile userProfile) {
+        return userProfile.marginAggregates != null && userProfile.marginAggregatesEpoch >= resetEpoch;
+    }
+
+    private void refresh(final UserProfile userProfile) {
+        final long aggregatesEpoch = userProfile.marginAggregatesEpoch;
+        for (final SymbolPositionRecord position : userProfile.positions) {
+            final RiskEngine.LastPriceCacheRecord lastPrice = lastPriceCache.get(position.symbol);
+            if (lastPrice != null && lastPrice.priceEpoch > aggregatesEpoch) {
+                final long contribution = calculateContribution(position, lastPrice);
+                userProfile.marginAggregates.addToValue(position.currency, contribution - position.marginContribution);
+                position.marginContribution = contribution;
+                contributionUpdatesCount++;
+            }
+        }
+        userProfile.marginAggregatesEpoch = priceEpoch;
+    }
+
+    private void recalculate(final UserProfile userProfile) {
+        if (userProfile.marginAggregates == null) {
+            userProfile.marginAggregates = new IntLongHashMap();
+        } else {
+            userProfile.marginAggregates.clear();
+        }
+
+        for (final SymbolPositionRecord position : userProfile.positions) {
+            final long contribution = calculateContribution(position);
+            position.marginContribution = contribution;
+            userProfile.marginAggregates.addToValue(position.currency, contribution);
+        }
+
+        userProfile.marginAggregatesEpoch = priceEpoch;
+        recalculationsCount++;
+    }
+}
@@ -22,7 +22,9 @@ import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.metrics.StageLatencyMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.SingleWriterRecorder;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -50,11 +52,26 @@ public final class GroupingProcessor implements EventProcessor {
     private final int msgsInGroupLimit;
     private final long maxGroupDurationNs;
 
+    // optional per-stage latency instrumentation (null if disabled)
+    private final StageLatencyMetrics stageLatencyMetrics;
+
+    // groups sizes (null if metrics monitor is disabled), interval histograms are taken by metrics monitor
+    private final SingleWriterRecorder groupSizeRecorder;
+
     public GroupingProcessor(RingBuffer<OrderCommand> ringBuffer,
                              SequenceBarrier sequenceBarrier,
                              PerformanceConfiguration perfCfg,
                              CoreWaitStrategy coreWaitStrategy,
                              SharedPool sharedPool) {
+        this(ringBuffer, sequenceBarrier, perfCfg, coreWaitStrategy, sharedPool, null);
+    }
+
+    public GroupingProcessor(RingBuffer<OrderCommand> ringBuffer,
+                             SequenceBarrier sequenceBarrier,
+                             PerformanceConfiguration perfCfg,
+                             CoreWaitStrategy coreWaitStrategy,
+                             SharedPool sharedPool,
+                             StageLatencyMetrics stageLatencyMetrics) {
 
         if (perfCfg.getMsgsInGroupLimit() > perfCfg.getRingBufferSize() / 4) {
             throw new IllegalArgumentException("msgsInGroupLimit should be less than quarter ringBufferSize");
@@ -62,10 +79,14 @@ public final class GroupingProcessor implements EventProcessor {
 
         this.ringBuffer = ringBuffer;
         this.sequenceBarrier = sequenceBarrier;
-        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, GROUP_SPIN_LIMIT, coreWaitStrategy);
+        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, GROUP_SPIN_LIMIT, coreWaitStrategy, perfCfg.getWaitBackoffCfg().getGrouping());
         this.msgsInGroupLimit = perfCfg.getMsgsInGroupLimit();
         this.maxGroupDurationNs = perfCfg.getMaxGroupDurationNs();
         this.sharedPool = sharedPool;
+        this.stageLatencyMetrics = stageLatencyMetrics;
+        this.groupSizeRecorder = perfCfg.getMetricsSamplingIntervalUs() > 0
+                ? new SingleWriterRecorder(perfCfg.getRingBufferSize(), 2)
+                : null;
     }
 
     @Override
@@ -136,10 +157,18 @@ public final class GroupingProcessor implements EventProcessor {
                 long availableSequence = waitSpinningHelper.tryWaitFor(nextSequence);
 
                 if (nextSequence <= availableSequence) {
+
+                    // single timestamp for the whole batch
+                    final long batchNs = stageLatencyMetrics != null ? System.nanoTime() : 0L;
+
                     while (nextSequence <= availableSequence) {
 
                         final OrderCommand cmd = ringBuffer.get(nextSequence);
 
+                        if (stageLatencyMetrics != null) {
+                            stageLatencyMetrics.groupingTimestamp(nextSequence, batchNs);
+                        }
+
                         nextSequence++;
 
                         if (cmd.command == OrderCommandType.GROUPING_CONTROL) {
@@ -147,9 +176,14 @@ public final class GroupingProcessor implements EventProcessor {
                             cmd.resultCode = CommandResultCode.SUCCESS;
                         }
 
+                        // margin calls are published together with own events
+                        final boolean ownEvents = cmd.command == OrderCommandType.MARGIN_CALL;
+
                         if (!groupingEnabled) {
                             // TODO pooling
-                            cmd.matcherEvent = null;
+                            if (!ownEvents) {
+                                cmd.matcherEvent = null;
+                            }
                             cmd.marketData = null;
                             continue;
                         }
@@ -158,12 +192,14 @@ public final class GroupingProcessor implements EventProcessor {
                         if (cmd.command == OrderCommandType.RESET
                                 || cmd.command == OrderCommandType.PERSIST_STATE_MATCHING
                                 || cmd.command == OrderCommandType.GROUPING_CONTROL) {
+                            recordGroupSize(msgsInGroup);
                             groupCounter++;
                             msgsInGroup = 0;
                         }
 
                         // report/binary commands also should trigger R2 stage, but only for last message
                         if ((cmd.command == OrderCommandType.BINARY_DATA_COMMAND || cmd.command == OrderCommandType.BINARY_DATA_QUERY) && cmd.symbol == -1) {
+                            recordGroupSize(msgsInGroup);
                             groupCounter++;
                             msgsInGroup = 0;
                         }
@@ -179,7 +215,7 @@ public final class GroupingProcessor implements EventProcessor {
                         }
 
                         // cleaning attached events
-                        if (EVENTS_POOLING && cmd.matcherEvent != null) {
+                        if (EVENTS_POOLING && cmd.matcherEvent != null && !ownEvents) {
 
                             // update tail
                             if (tradeEventTail == null) {
@@ -206,7 +242,9 @@ public final class GroupingProcessor implements EventProcessor {
                             }
 
                         }
-                        cmd.matcherEvent = null;
+                        if (!ownEvents) {
+                            cmd.matcherEvent = null;
+                        }
 
                         // TODO collect to shared buffer
                         cmd.marketData = null;
@@ -216,6 +254,7 @@ public final class GroupingProcessor implements EventProcessor {
                         // switch group after each N messages
                         // avoid changing groups when PERSIST_STATE_MATCHING is already executing
                         if (msgsInGroup >= msgsInGroupLimit && cmd.command != OrderCommandType.PERSIST_STATE_RISK) {
+                            recordGroupSize(msgsInGroup);
                             groupCounter++;
                             msgsInGroup = 0;
                         }
@@ -229,6 +268,7 @@ public final class GroupingProcessor implements EventProcessor {
                     final long t = System.nanoTime();
                     if (msgsInGroup > 0 && t > groupLastNs) {
                         // switch group after T microseconds elapsed, if group is non empty
+                        recordGroupSize(msgsInGroup);
                         groupCounter++;
                         msgsInGroup = 0;
                     }
@@ -254,6 +294,16 @@ public final class GroupingProcessor implements EventProcessor {
         }
     }
 
+    private void recordGroupSize(final long msgsInGroup) {
+        if (groupSizeRecorder != null && msgsInGroup > 0) {
+            groupSizeRecorder.recordValue(msgsInGroup);
+        }
+    }
+
+    public SingleWriterRecorder getGroupSizeRecorder() {
+        return groupSizeRecorder;
+    }
+
     @Override
     public String toString() {
         return "GroupingProcessor{" +
@@ -0,0 +1,679 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.collections.art.LongAdaptiveRadixTreeMap;
+import exchange.core2.collections.art.LongObjConsumer;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static exchange.core2.core.ExchangeCore.EVENTS_POOLING;
+
+/**
+ * Margin calls detector, running in own thread (one per exchange core).
+ * <p>
+ * Account equity for a currency is balance + sum of (estimated profit - required margin) over margin positions (see FreeMarginCache).
+ * For every open position equity is a linear function of the symbol last price (other prices fixed),
+ * so risk engines (see MarginPositionsTracker) are sending liquidation notional of each position -
+ * LONG: equity = volume * bid - notional, SHORT: equity = notional - volume * ask.
+ * Scanner indexes positions by liquidation price:
+ * LONG positions - by highest bid price triggering margin call, SHORT positions - by lowest ask price triggering margin call.
+ * On each last price update only positions with crossed liquidation price are processed, called positions are
+ * indexed separately until price recovers (or position changes).
+ * <p>
+ * Scanner does not access user profiles: risk engines are writing position and price updates into the channel,
+ * scanner thread reads them and publishes detected margin calls as separate MARGIN_CALL commands (events chain)
+ * into exchange ring buffer. Publishing never blocks - if ring buffer is full, margin calls are retried later.
+ * Writing into the channel is blocking while channel is full and scanner is running.
+ * <p>
+ * Number of margin calls per MARGIN_CALL command (and positions processed per cycle) is limited by scan budget.
+ * <p>
+ * Index is not a part of the state (rebuilt from positions when exchange core starts).
+ */
+@Slf4j
+public final class MarginCallScanner {
+
+    // channel messages
+    private static final int MSG_POSITION = 1;
+    private static final int MSG_POSITION_REMOVED = 2;
+    private static final int MSG_PRICE = 3;
+    private static final int MSG_RESET = 4;
+
+    private static final int POSITION_UID_OFFSET = 0;
+    private static final int POSITION_NOTIONAL_OFFSET = 8;
+    private static final int POSITION_VOLUME_OFFSET = 16;
+    private static final int POSITION_SYMBOL_OFFSET = 24;
+    private static final int POSITION_CURRENCY_OFFSET = 28;
+    private static final int POSITION_LONG_OFFSET = 32;
+    private static final int POSITION_LENGTH = 33;
+
+    private static final int REMOVED_UID_OFFSET = 0;
+    private static final int REMOVED_SYMBOL_OFFSET = 8;
+    private static final int REMOVED_LENGTH = 12;
+
+    private static final int PRICE_ASK_OFFSET = 0;
+    private static final int PRICE_BID_OFFSET = 8;
+    private static final int PRICE_SYMBOL_OFFSET = 16;
+    private static final int PRICE_LENGTH = 20;
+
+    private static final int RESET_SHARD_MASK_OFFSET = 0;
+    private static final int RESET_SHARD_ID_OFFSET = 8;
+    private static final int RESET_LENGTH = 12;
+
+    private static final int READ_LIMIT = 1024;
+
+    private final ManyToOneRingBuffer channel;
+    private final MessageHandler messageHandler = this::onMessage;
+
+    private final Predicate<MatcherTradeEvent> marginCallsPublisher;
+    private final int scanBudget;
+
+    // symbol -> index
+    private final IntObjectHashMap<SymbolIndex> indexes = new IntObjectHashMap<>();
+
+    // symbols with price or positions changed since last scan
+    private final ArrayDeque<SymbolIndex> dirtyIndexes = new ArrayDeque<>();
+
+    // reusable tree lookup result
+    private final BucketFinder bucketFinder = new BucketFinder();
+
+    // margin calls waiting for publishing
+    private MatcherTradeEvent eventsHead;
+    private MatcherTradeEvent eventsTail;
+
+    // events pooling
+    private final Supplier<MatcherTradeEvent> eventChainsSupplier;
+    private MatcherTradeEvent eventsChainHead;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    @Getter
+    private volatile long marginCallsCount = 0;
+    @Getter
+    private volatile long droppedUpdatesCount = 0;
+
+    /**
+     * @param channelCapacity      - channel capacity in bytes, power of 2
+     * @param scanBudget           - max number of positions processed per cycle (and margin calls per MARGIN_CALL command)
+     * @param eventChainsSupplier  - events chains supplier (used if events pooling is enabled)
+     * @param marginCallsPublisher - publishes margin calls events chain, returns false if it should be retried later
+     */
+    public MarginCallScanner(final int channelCapacity,
+                             final int scanBudget,
+                             final Supplier<MatcherTradeEvent> eventChainsSupplier,
+                             final Predicate<MatcherTradeEvent> marginCallsPublisher) {
+        if (!BitUtil.isPowerOfTwo(channelCapacity)) {
+            throw new IllegalArgumentException("Margin calls channel capacity must be a power of 2: " + channelCapacity);
+        }
+        if (scanBudget <= 0) {
+            throw new IllegalArgumentException("Margin calls scan budget must be positive: " + scanBudget);
+        }
+        this.channel = new ManyToOneRingBuffer(new UnsafeBuffer(
+                ByteBuffer.allocateDirect(channelCapacity + RingBufferDescriptor.TRAILER_LENGTH)));
+        this.scanBudget = scanBudget;
+        this.eventChainsSupplier = eventChainsSupplier;
+        this.marginCallsPublisher = marginCallsPublisher;
+    }
+
+    /**
+     * Publisher of MARGIN_CALL commands into exchange ring buffer
+     *
+     * @param ringBuffer - exchange ring buffer
+     * @return publisher for scanner constructor
+     */
+    public static Predicate<MatcherTradeEvent> ringBufferPublisher(final RingBuffer<OrderCommand> ringBuffer) {
+        return events -> {
+            final long seq;
+            try {
+                seq = ringBuffer.tryNext();
+            } catch (final InsufficientCapacityException ex) {
+                return false;
+            }
+            final OrderCommand cmd = ringBuffer.get(seq);
+            cmd.command = OrderCommandType.MARGIN_CALL;
+            cmd.orderId = 0;
+            cmd.symbol = -1;
+            cmd.uid = 0;
+            cmd.price = 0;
+            cmd.size = 0;
+            cmd.timestamp = System.currentTimeMillis();
+            cmd.resultCode = CommandResultCode.SUCCESS;
+            cmd.matcherEvent = events;
+            cmd.marketData = null;
+            ringBuffer.publish(seq);
+            return true;
+        };
+    }
+
+    public synchronized void start(final ThreadFactory threadFactory) {
+        if (worker == null) {
+            running = true;
+            worker = threadFactory.newThread(this::workLoop);
+            worker.setName("MarginCalls-" + worker.getName());
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops scanner thread, channel updates are not accepted anymore
+     */
+    public synchronized void stop() {
+        if (worker != null) {
+            running = false;
+            try {
+                worker.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    private void workLoop() {
+        final IdleStrategy idleStrategy = new BackoffIdleStrategy(100, 10, 1_000, 100_000);
+        while (running) {
+            idleStrategy.idle(poll());
+        }
+    }
+
+    /**
+     * Single scanner cycle: reads channel updates, publishes pending margin calls, scans changed symbols.
+     * Called by scanner thread (or directly, if scanner thread is not started).
+     *
+     * @return amount of work done
+     */
+    public int poll() {
+        int work = channel.read(messageHandler, READ_LIMIT);
+
+        // new margin calls are not collected until pending ones are published
+        if (eventsHead != null && !publishMarginCalls()) {
+            return work;
+        }
+
+        int budget = scanBudget;
+        while (budget > 0 && !dirtyIndexes.isEmpty()) {
+            final SymbolIndex index = dirtyIndexes.peekFirst();
+            budget = scan(index, budget);
+            if (budget > 0) {
+                dirtyIndexes.pollFirst();
+                index.dirty = false;
+            }
+        }
+        work += scanBudget - budget;
+
+        if (eventsHead != null) {
+            publishMarginCalls();
+        }
+        return work;
+    }
+
+    private boolean publishMarginCalls() {
+        if (marginCallsPublisher.test(eventsHead)) {
+            eventsHead = null;
+            eventsTail = null;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Position liquidation notional update (called by risk engine thread).
+     *
+     * @param uid                 - user id
+     * @param symbol              - position symbol
+     * @param currency            - position currency
+     * @param isLong              - LONG or SHORT position
+     * @param liquidationNotional - volume * price when equity becomes zero
+     * @param volume              - position open volume
+     */
+    public void onPositionChanged(final long uid,
+                                  final int symbol,
+                                  final int currency,
+                                  final boolean isLong,
+                                  final long liquidationNotional,
+                                  final long volume) {
+        final int index = claim(MSG_POSITION, POSITION_LENGTH);
+        if (index >= 0) {
+            final AtomicBuffer buffer = channel.buffer();
+            buffer.putLong(index + POSITION_UID_OFFSET, uid);
+            buffer.putLong(index + POSITION_NOTIONAL_OFFSET, liquidationNotional);
+            buffer.putLong(index + POSITION_VOLUME_OFFSET, volume);
+            buffer.putInt(index + POSITION_SYMBOL_OFFSET, symbol);
+            buffer.putInt(index + POSITION_CURRENCY_OFFSET, currency);
+            buffer.putByte(index + POSITION_LONG_OFFSET, (byte) (isLong ? 1 : 0));
+            channel.commit(index);
+        }
+    }
+
+    /**
+     * Position removed or not open anymore (called by risk engine thread).
+     *
+     * @param uid    - user id
+     * @param symbol - position symbol
+     */
+    public void onPositionRemoved(final long uid, final int symbol) {
+        final int index = claim(MSG_POSITION_REMOVED, REMOVED_LENGTH);
+        if (index >= 0) {
+            final AtomicBuffer buffer = channel.buffer();
+            buffer.putLong(index + REMOVED_UID_OFFSET, uid);
+            buffer.putInt(index + REMOVED_SYMBOL_OFFSET, symbol);
+            channel.commit(index);
+        }
+    }
+
+    /**
+     * Last price update (called by risk engine thread).
+     *
+     * @param symbol   - symbol
+     * @param askPrice - best ask price (Long.MAX_VALUE if no asks)
+     * @param bidPrice - best bid price (0 if no bids)
+     */
+    public void onPriceChanged(final int symbol, final long askPrice, final long bidPrice) {
+        final int index = claim(MSG_PRICE, PRICE_LENGTH);
+        if (index >= 0) {
+            final AtomicBuffer buffer = channel.buffer();
+            buffer.putLong(index + PRICE_ASK_OFFSET, askPrice);
+            buffer.putLong(index + PRICE_BID_OFFSET, bidPrice);
+            buffer.putInt(index + PRICE_SYMBOL_OFFSET, symbol);
+            channel.commit(index);
+        }
+    }
+
+    /**
+     * Removes positions of risk engine shard, shard 0 also removes prices (called by risk engine thread).
+     *
+     * @param shardId   - risk engine shard id
+     * @param shardMask - risk engine shard mask
+     */
+    public void onReset(final int shardId, final long shardMask) {
+        final int index = claim(MSG_RESET, RESET_LENGTH);
+        if (index >= 0) {
+            final AtomicBuffer buffer = channel.buffer();
+            buffer.putLong(index + RESET_SHARD_MASK_OFFSET, shardMask);
+            buffer.putInt(index + RESET_SHARD_ID_OFFSET, shardId);
+            channel.commit(index);
+        }
+    }
+
+    private int claim(final int msgTypeId, final int length) {
+        while (true) {
+            final int index = channel.tryClaim(msgTypeId, length);
+            if (index >= 0) {
+                return index;
+            }
+            if (!running) {
+                // scanner is stopped (or not started)
+                droppedUpdatesCount++;
+                return -1;
+            }
+            Thread.yield();
+        }
+    }
+
+    private void onMessage(final int msgTypeId, final MutableDirectBuffer buffer, final int index, final int length) {
+        switch (msgTypeId) {
+            case MSG_POSITION:
+                updateEntry(
+                        buffer.getLong(index + POSITION_UID_OFFSET),
+                        buffer.getInt(index + POSITION_SYMBOL_OFFSET),
+                        buffer.getInt(index + POSITION_CURRENCY_OFFSET),
+                        buffer.getByte(index + POSITION_LONG_OFFSET) != 0,
+                        buffer.getLong(index + POSITION_NOTIONAL_OFFSET),
+                        buffer.getLong(index + POSITION_VOLUME_OFFSET));
+                break;
+
+            case MSG_POSITION_REMOVED:
+                removeEntry(buffer.getLong(index + REMOVED_UID_OFFSET), buffer.getInt(index + REMOVED_SYMBOL_OFFSET));
+                break;
+
+            case MSG_PRICE:
+                final SymbolIndex symbolIndex = indexes.getIfAbsentPutWithKey(buffer.getInt(index + PRICE_SYMBOL_OFFSET), SymbolIndex::new);
+                symbolIndex.askPrice = buffer.getLong(index + PRICE_ASK_OFFSET);
+                symbolIndex.bidPrice = buffer.getLong(index + PRICE_BID_OFFSET);
+                markDirty(symbolIndex);
+                break;
+
+            case MSG_RESET:
+                reset(buffer.getInt(index + RESET_SHARD_ID_OFFSET), buffer.getLong(index + RESET_SHARD_MASK_OFFSET));
+                break;
+
+            default:
+                log.warn("Ignored margin calls channel message type={} length={}", msgTypeId, length);
+        }
+    }
+
+    private void updateEntry(final long uid,
+                             final int symbol,
+                             final int currency,
+                             final boolean isLong,
+                             final long liquidationNotional,
+                             final long volume) {
+
+        final SymbolIndex index = indexes.getIfAbsentPutWithKey(symbol, SymbolIndex::new);
+        Entry entry = index.entries.get(uid);
+        if (entry == null) {
+            entry = new Entry(uid);
+            index.entries.put(uid, entry);
+        } else {
+            index.unlink(entry);
+        }
+
+        entry.currency = currency;
+        entry.isLong = isLong;
+        entry.liquidationNotional = liquidationNotional;
+        entry.volume = volume;
+
+        if (isLong) {
+            // margin call if volume * bid < notional
+            entry.key = Math.floorDiv(liquidationNotional - 1, volume);
+            if (entry.key < 1) {
+                // margin call is not possible for any price
+                entry.called = false;
+                return;
+            }
+        } else {
+            // margin call if volume * ask > notional
+            entry.key = Math.max(0L, Math.floorDiv(liquidationNotional, volume) + 1);
+        }
+
+        final boolean crossed = index.isCrossed(entry);
+        if (entry.called && crossed) {
+            // margin call is not repeated until price recovers
+            index.link(isLong ? index.calledLongs : index.calledShorts, entry);
+        } else {
+            entry.called = false;
+            index.link(isLong ? index.longs : index.shorts, entry);
+            if (crossed) {
+                markDirty(index);
+            }
+        }
+    }
+
+    private void removeEntry(final long uid, final int symbol) {
+        final SymbolIndex index = indexes.get(symbol);
+        if (index != null) {
+            final Entry entry = index.entries.remove(uid);
+            if (entry != null) {
+                index.unlink(entry);
+            }
+        }
+    }
+
+    private void markDirty(final SymbolIndex index) {
+        if (!index.dirty) {
+            index.dirty = true;
+            dirtyIndexes.addLast(index);
+        }
+    }
+
+    private int scan(final SymbolIndex index, int budget) {
+        if (index.bidPrice != 0) {
+            budget = scanSide(index, index.longs, true, true, budget);
+            budget = scanSide(index, index.calledLongs, true, false, budget);
+        }
+        if (index.askPrice != Long.MAX_VALUE) {
+            budget = scanSide(index, index.shorts, false, true, budget);
+            budget = scanSide(index, index.calledShorts, false, false, budget);
+        }
+        return budget;
+    }
+
+    /*
+     * Moves entries with crossed liquidation price into called tree (emitting margin calls),
+     * or entries with recovered price from called tree back into active tree.
+     */
+    private int scanSide(final SymbolIndex index,
+                         final LongAdaptiveRadixTreeMap<Bucket> tree,
+                         final boolean longs,
+                         final boolean active,
+                         int budget) {
+
+        final long price = longs ? index.bidPrice : index.askPrice;
+
+        // active LONG and called SHORT entries are crossed/recovered from the highest key
+        final boolean descending = longs == active;
+
+        while (budget > 0) {
+            if (descending) {
+                tree.forEachDesc(bucketFinder, 1);
+            } else {
+                tree.forEach(bucketFinder, 1);
+            }
+            final Bucket bucket = bucketFinder.take();
+            if (bucket == null || !(index.isCrossed(longs, bucket.key, price) == active)) {
+                break;
+            }
+            while (bucket.head != null && budget > 0) {
+                final Entry entry = bucket.head;
+                index.unlink(entry);
+                if (active) {
+                    entry.called = true;
+                    index.link(longs ? index.calledLongs : index.calledShorts, entry);
+                    emitMarginCall(index, entry);
+                } else {
+                    entry.called = false;
+                    index.link(longs ? index.longs : index.shorts, entry);
+                }
+                budget--;
+            }
+        }
+        return budget;
+    }
+
+    private void emitMarginCall(final SymbolIndex index, final Entry entry) {
+
+        final MatcherTradeEvent event = newMatcherEvent();
+        event.eventType = MatcherEventType.MARGIN_CALL;
+        event.section = entry.currency;
+        event.matchedOrderId = index.symbol;
+        event.matchedOrderUid = entry.uid;
+        event.price = entry.isLong ? index.bidPrice : index.askPrice;
+        event.size = entry.volume;
+        event.bidderHoldPrice = entry.isLong
+                ? entry.volume * index.bidPrice - entry.liquidationNotional
+                : entry.liquidationNotional - entry.volume * index.askPrice;
+        event.nextEvent = null;
+
+        if (eventsHead == null) {
+            eventsHead = event;
+        } else {
+            eventsTail.nextEvent = event;
+        }
+        eventsTail = event;
+
+        marginCallsCount++;
+    }
+
+    private MatcherTradeEvent newMatcherEvent() {
+        if (EVENTS_POOLING) {
+            if (eventsChainHead == null) {
+                eventsChainHead = eventChainsSupplier.get();
+            }
+            final MatcherTradeEvent res = eventsChainHead;
+            eventsChainHead = eventsChainHead.nextEvent;
+            return res;
+        } else {
+            return new MatcherTradeEvent();
+        }
+    }
+
+    private void reset(final int shardId, final long shardMask) {
+        final LongArrayList removed = new LongArrayList();
+        indexes.forEachValue(index -> {
+            removed.clear();
+            index.entries.forEachKeyValue((uid, entry) -> {
+                if ((uid & shardMask) == shardId) {
+                    index.unlink(entry);
+                    removed.add(uid);
+                }
+            });
+            removed.forEach(index.entries::remove);
+            if (shardId == 0) {
+                index.askPrice = Long.MAX_VALUE;
+                index.bidPrice = 0L;
+            }
+        });
+    }
+
+    private static final class SymbolIndex {
+
+        private final int symbol;
+
+        // last price
+        private long askPrice = Long.MAX_VALUE;
+        private long bidPrice = 0L;
+
+        private boolean dirty = false;
+
+        // LONG positions: bid price triggering margin call -> bucket
+        private final LongAdaptiveRadixTreeMap<Bucket> longs = new LongAdaptiveRadixTreeMap<>();
+        private final LongAdaptiveRadixTreeMap<Bucket> calledLongs = new LongAdaptiveRadixTreeMap<>();
+
+        // SHORT positions: ask price triggering margin call -> bucket
+        private final LongAdaptiveRadixTreeMap<Bucket> shorts = new LongAdaptiveRadixTreeMap<>();
+        private final LongAdaptiveRadixTreeMap<Bucket> calledShorts = new LongAdaptiveRadixTreeMap<>();
+
+        // uid -> entry
+        private final LongObjectHashMap<Entry> entries = new LongObjectHashMap<>();
+
+        private SymbolIndex(int symbol) {
+            this.symbol = symbol;
+        }
+
+        private boolean isCrossed(final Entry entry) {
+            return entry.isLong
+                    ? isCrossed(true, entry.key, bidPrice)
+                    : isCrossed(false, entry.key, askPrice);
+        }
+
+        private boolean isCrossed(final boolean isLong, final long key, final long price) {
+            return isLong
+                    ? price != 0 && key >= price
+                    : price != Long.MAX_VALUE && key <= price;
+        }
+
+        private void link(final LongAdaptiveRadixTreeMap<Bucket> tree, final Entry entry) {
+            Bucket bucket = tree.get(entry.key);
+            if (bucket == null) {
+                bucket = new Bucket(entry.key, tree);
+                tree.put(entry.key, bucket);
+            }
+            entry.bucket = bucket;
+            entry.prev = null;
+            entry.next = bucket.head;
+            if (bucket.head != null) {
+                bucket.head.prev = entry;
+            }
+            bucket.head = entry;
+        }
+
+        private void unlink(final Entry entry) {
+            final Bucket bucket = entry.bucket;
+            if (bucket == null) {
+                return;
+            }
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                bucket.head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            entry.bucket = null;
+            entry.prev = null;
+            entry.next = null;
+
+            if (bucket.head == null) {
+                bucket.tree.remove(bucket.key);
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private final long key;
+        private final LongAdaptiveRadixTreeMap<Bucket> tree;
+        private Entry head;
+
+        private Bucket(long key, LongAdaptiveRadixTreeMap<Bucket> tree) {
+            this.key = key;
+            this.tree = tree;
+        }
+    }
+
+    private static final class Entry {
+        private final long uid;
+
+        private int currency;
+        private boolean isLong;
+        private long liquidationNotional;
+        private long volume;
+        private long key;
+
+        // margin call already raised (entry is in called tree until price recovers or position changes)
+        private boolean called;
+
+        private Bucket bucket;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(long uid) {
+            this.uid = uid;
+        }
+    }
+
+    private static final class BucketFinder implements LongObjConsumer<Bucket> {
+        private Bucket found;
+
+        @Override
+        public void accept(long key, Bucket bucket) {
+            found = bucket;
+        }
+
+        private Bucket take() {
+            final Bucket b = found;
+            found = null;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.PositionDirection;
+import exchange.core2.core.common.SymbolPositionRecord;
+import exchange.core2.core.common.UserProfile;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.util.ArrayList;
+
+/**
+ * Risk engine side of margin calls detection.
+ * <p>
+ * Calculates liquidation notional of user margin positions (see MarginCallScanner) and sends it to the scanner when it changes.
+ * Liquidation notional depends on other positions of the same user and currency.
+ * It is recalculated after user own changes, but not after price changes of other symbols.
+ * Slow drift is handled by round-robin sweep - few positions are re-evaluated on every market data update.
+ * Sweep skips evicted users (their own positions and balances do not change while evicted), so cold tier is never accessed.
+ * <p>
+ * Not threadsafe, owned by single risk engine instance (R1 and R2 handlers).
+ */
+@Slf4j
+public final class MarginPositionsTracker {
+
+    private final MarginCallScanner scanner;
+    private final UserProfileService userProfileService;
+    private final SymbolSpecificationProvider symbolSpecificationProvider;
+    private final FreeMarginCache freeMarginCache;
+
+    // only one risk engine shard sends prices
+    private final boolean sendPrices;
+    private final int sweepBudget;
+
+    // symbol -> uid -> entry
+    private final IntObjectHashMap<LongObjectHashMap<Entry>> entries = new IntObjectHashMap<>();
+
+    // all entries (for sweep)
+    private final ArrayList<Entry> sweepList = new ArrayList<>();
+    private int sweepCursor = 0;
+
+    @Getter
+    private long evaluationsCount = 0;
+
+    public MarginPositionsTracker(final MarginCallScanner scanner,
+                                  final UserProfileService userProfileService,
+                                  final SymbolSpecificationProvider symbolSpecificationProvider,
+                                  final FreeMarginCache freeMarginCache,
+                                  final boolean sendPrices,
+                                  final int sweepBudget) {
+        this.scanner = scanner;
+        this.userProfileService = userProfileService;
+        this.symbolSpecificationProvider = symbolSpecificationProvider;
+        this.freeMarginCache = freeMarginCache;
+        this.sendPrices = sendPrices;
+        this.sweepBudget = sweepBudget;
+    }
+
+    /**
+     * Sends all margin positions to the scanner (rebuilds scanner index after loading state)
+     */
+    public void sendAllPositions() {
+        userProfileService.forEachUserProfile(up -> up.positions.forEach(pos -> onUserChanged(up, pos.currency)));
+    }
+
+    /**
+     * Update liquidation notional of user positions after any change of account balance or positions of specified currency
+     *
+     * @param userProfile - user profile
+     * @param currency    - currency
+     */
+    public void onUserChanged(final UserProfile userProfile, final int currency) {
+        if (userProfile.positions.isEmpty()) {
+            return;
+        }
+        final long equity = calculateEquity(userProfile, currency);
+        for (final SymbolPositionRecord position : userProfile.positions) {
+            if (position.currency == currency) {
+                final LongObjectHashMap<Entry> symbolEntries = entries.getIfAbsentPut(position.symbol, LongObjectHashMap::new);
+                Entry entry = symbolEntries.get(userProfile.uid);
+                if (entry == null) {
+                    entry = new Entry(userProfile.uid, position.symbol);
+                    symbolEntries.put(userProfile.uid, entry);
+                    entry.sweepIdx = sweepList.size();
+                    sweepList.add(entry);
+                }
+                update(entry, position, equity);
+            }
+        }
+    }
+
+    /**
+     * Should be called when position record is removed from user profile
+     *
+     * @param uid    - user id
+     * @param symbol - position symbol
+     */
+    public void onPositionRemoved(final long uid, final int symbol) {
+        final LongObjectHashMap<Entry> symbolEntries = entries.get(symbol);
+        if (symbolEntries != null) {
+            final Entry entry = symbolEntries.remove(uid);
+            if (entry != null) {
+                if (entry.sent) {
+                    scanner.onPositionRemoved(uid, symbol);
+                }
+                removeFromSweepList(entry);
+            }
+        }
+    }
+
+    /**
+     * Should be called when last price of the symbol is changed
+     *
+     * @param symbol    - symbol
+     * @param lastPrice - new last price
+     */
+    public void onPriceChanged(final int symbol, final RiskEngine.LastPriceCacheRecord lastPrice) {
+        if (sendPrices) {
+            scanner.onPriceChanged(symbol, lastPrice.askPrice, lastPrice.bidPrice);
+        }
+    }
+
+    /**
+     * Re-evaluates few positions of hot user profiles (called on every market data update)
+     */
+    public void sweep() {
+        for (int i = 0; i < sweepBudget && !sweepList.isEmpty(); i++) {
+            if (sweepCursor >= sweepList.size()) {
+                sweepCursor = 0;
+            }
+            final Entry entry = sweepList.get(sweepCursor++);
+            final UserProfile userProfile = userProfileService.peekHotUserProfile(entry.uid);
+            if (userProfile != null) {
+                final SymbolPositionRecord position = userProfile.positions.get(entry.symbol);
+                if (position == null) {
+                    // should not happen normally
+                    log.warn("Position not found for uid={} symbol={}", entry.uid, entry.symbol);
+                    onPositionRemoved(entry.uid, entry.symbol);
+                } else {
+                    update(entry, position, calculateEquity(userProfile, position.currency));
+                }
+            }
+        }
+    }
+
+    private void update(final Entry entry, final SymbolPositionRecord position, final long equity) {
+
+        evaluationsCount++;
+
+        if (position.direction == PositionDirection.EMPTY) {
+            // equity does not depend on price (only pending orders)
+            if (entry.sent) {
+                entry.sent = false;
+                scanner.onPositionRemoved(entry.uid, entry.symbol);
+            }
+            return;
+        }
+
+        // equity as a function of this symbol price: rest + contribution(price)
+        final long rest = equity - position.marginContribution;
+        final long requiredMargin = position.calculateRequiredMarginForFutures(symbolSpecificationProvider.getSymbolSpecification(position.symbol));
+        final boolean isLong = position.direction == PositionDirection.LONG;
+
+        // LONG: margin call if rest + profit + volume * bid - openPriceSum - margin < 0
+        // SHORT: margin call if rest + profit + openPriceSum - volume * ask - margin < 0
+        final long notional = isLong
+                ? position.openPriceSum + requiredMargin - position.profit - rest
+                : rest + position.profit + position.openPriceSum - requiredMargin;
+
+        if (!entry.sent || entry.isLong != isLong || entry.notional != notional || entry.volume != position.openVolume) {
+            entry.sent = true;
+            entry.isLong = isLong;
+            entry.notional = notional;
+            entry.volume = position.openVolume;
+            scanner.onPositionChanged(entry.uid, entry.symbol, position.currency, isLong, notional, position.openVolume);
+        }
+    }
+
+    private long calculateEquity(final UserProfile userProfile, final int currency) {
+        return userProfile.accounts.get(currency) + freeMarginCache.getFreeMargin(userProfile, currency);
+    }
+
+    private void removeFromSweepList(final Entry entry) {
+        final int idx = entry.sweepIdx;
+        final Entry last = sweepList.remove(sweepList.size() - 1);
+        if (last != entry) {
+            sweepList.set(idx, last);
+            last.sweepIdx = idx;
+        }
+    }
+
+    /**
+     * Removes all positions (also from the scanner)
+     *
+     * @param shardId   - risk engine shard id
+     * @param shardMask - risk engine shard mask
+     */
+    public void reset(final int shardId, final long shardMask) {
+        entries.clear();
+        sweepList.clear();
+        sweepCursor = 0;
+        scanner.onReset(shardId, shardMask);
+    }
+
+    private static final class Entry {
+        private final long uid;
+        private final int symbol;
+
+        // last values sent to the scanner
+        private boolean sent;
+        private boolean isLong;
+        private long notional;
+        private long volume;
+
+        private int sweepIdx;
+
+        private Entry(long uid, int symbol) {
+            this.uid = uid;
+            this.symbol = symbol;
+        }
+    }
+}
@@ -57,6 +57,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
     // symbol->OB
     private final IntObjectHashMap<IOrderBook> orderBooks;
+    private final DenseSymbolMap<IOrderBook> orderBooksIndex; // lookups and modifications of orderBooks
 
     private final IOrderBook.OrderBookFactory orderBookFactory;
 
@@ -160,6 +161,8 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
             this.orderBooks = new IntObjectHashMap<>();
         }
 
+        this.orderBooksIndex = new DenseSymbolMap<>(exchangeCfg.getPerformanceCfg().getSymbolsDenseIdLimit(), orderBooks);
+
         final OrdersProcessingConfiguration ordersProcCfg = exchangeCfg.getOrdersProcessingCfg();
         this.cfgMarginTradingEnabled = ordersProcCfg.getMarginTradingMode() == OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED;
 
@@ -190,14 +193,15 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
         } else if (command == OrderCommandType.RESET) {
             // process all symbols groups, only processor 0 writes result
-            orderBooks.clear();
+            orderBooksIndex.clear();
             binaryCommandsProcessor.reset();
             if (shardId == 0) {
                 cmd.resultCode = CommandResultCode.SUCCESS;
             }
 
         } else if (command == OrderCommandType.NOP) {
-            if (shardId == 0) {
+            // invalid gateway messages are published as NOP with final result code
+            if (shardId == 0 && cmd.resultCode == CommandResultCode.NEW) {
                 cmd.resultCode = CommandResultCode.SUCCESS;
             }
 
@@ -243,8 +247,8 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
             log.warn("Margin symbols are not allowed: {}", spec);
         }
 
-        if (orderBooks.get(spec.symbolId) == null) {
-            orderBooks.put(spec.symbolId, orderBookFactory.create(spec, objectsPool, eventsHelper, loggingCfg));
+        if (orderBooksIndex.get(spec.symbolId) == null) {
+            orderBooksIndex.put(spec.symbolId, orderBookFactory.create(spec, objectsPool, eventsHelper, loggingCfg));
         } else {
             log.warn("OrderBook for symbol id={} already exists! Can not add symbol: {}", spec.symbolId, spec);
         }
@@ -252,7 +256,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
     private void processMatchingCommand(final OrderCommand cmd) {
 
-        final IOrderBook orderBook = orderBooks.get(cmd.symbol);
+        final IOrderBook orderBook = orderBooksIndex.get(cmd.symbol);
         if (orderBook == null) {
             cmd.resultCode = CommandResultCode.MATCHING_INVALID_ORDER_BOOK_ID;
         } else {
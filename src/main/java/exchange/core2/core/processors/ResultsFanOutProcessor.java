@@ -0,0 +1,444 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.Sequence;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OffHeapOrderCommandRing;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandFlyweight;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration.BackPressurePolicy;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Fan-out results stage - one instance per additional results consumer.
+ * <p>
+ * BLOCK policy: consumer is called directly from disruptor thread, this processor has own sequence in the main ring.
+ * <p>
+ * OVERFLOW and SAMPLE policies: disruptor thread only copies command into own single-producer buffer,
+ * consumer is called from dedicated worker thread. If buffer is full command is either copied into unbounded
+ * overflow queue (OVERFLOW) or dropped (SAMPLE).
+ * <p>
+ * Own buffer is either array of heap commands copies, or off-heap command ring (offHeapMaxEvents > 0) -
+ * fixed-size records including trade events and market data, invisible for GC.
+ * Consumer receives single reusable command (with reusable market data snapshot) read from the record.
+ * Commands with more trade events or deeper market data than record can hold are handled as if buffer was full.
+ */
+@Slf4j
+public final class ResultsFanOutProcessor implements EventHandler<OrderCommand>, LifecycleAware {
+
+    @Getter
+    private final String name;
+    private final ObjLongConsumer<OrderCommand> consumer;
+    private final Predicate<OrderCommand> filter;
+    @Getter
+    private final BackPressurePolicy backPressurePolicy;
+    private final ThreadFactory threadFactory;
+    private final StageBackoff idleBackoff;
+
+    // handles GROUPING_CONTROL same way as main results consumer
+    private final ResultsHandler resultsHandler;
+
+    // own buffer (not used for BLOCK policy)
+    private final OrderCommand[] slots;
+    private final long[] slotSequences;
+    private final EventsChain[] slotEvents;
+    private final int indexMask;
+
+    // off-heap buffer (null if heap slots are used)
+    private final OffHeapOrderCommandRing offHeapRing;
+    private final OrderCommandFlyweight producerRecord;
+    private final OrderCommandFlyweight consumerRecord;
+    private final OrderCommand consumerCmd;
+    private final EventsChain consumerEvents;
+    private final L2MarketData consumerMarketData;
+    private final Sequence publishedSeq = new Sequence(-1);
+    private final Sequence consumedSeq = new Sequence(-1);
+    private final Queue<OverflowRecord> overflowQueue = new ConcurrentLinkedQueue<>();
+
+    // producer-local state
+    private long nextSeq = 0;
+    private long cachedConsumedSeq = -1;
+
+    @Getter
+    private volatile long overflowedCount = 0;
+    @Getter
+    private volatile long droppedCount = 0;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    /**
+     * @param cfg               - consumer configuration
+     * @param threadFactory     - thread factory for consumer worker
+     * @param offHeapMaxEvents  - max trade events per command in off-heap buffer, 0 - use heap buffer
+     * @param offHeapMaxL2Depth - max market data depth (per side) per command in off-heap buffer
+     * @param idleBackoff       - backoff thresholds of consumer worker while buffer is empty
+     */
+    public ResultsFanOutProcessor(final ResultsConsumerConfiguration cfg,
+                                  final ThreadFactory threadFactory,
+                                  final int offHeapMaxEvents,
+                                  final int offHeapMaxL2Depth,
+                                  final StageBackoff idleBackoff) {
+        this.name = cfg.getName();
+        this.consumer = cfg.getConsumer();
+        this.filter = cfg.getFilter();
+        this.backPressurePolicy = cfg.getBackPressurePolicy();
+        this.threadFactory = threadFactory;
+        this.idleBackoff = idleBackoff;
+        this.resultsHandler = new ResultsHandler(this::publish);
+
+        final int bufferSize = backPressurePolicy == BackPressurePolicy.BLOCK ? 1 : cfg.getBufferSize();
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2: " + bufferSize);
+        }
+
+        if (offHeapMaxEvents < 0) {
+            throw new IllegalArgumentException("offHeapMaxEvents can not be negative: " + offHeapMaxEvents);
+        }
+        if (offHeapMaxL2Depth < 0) {
+            throw new IllegalArgumentException("offHeapMaxL2Depth can not be negative: " + offHeapMaxL2Depth);
+        }
+
+        this.slotSequences = new long[bufferSize];
+        this.indexMask = bufferSize - 1;
+
+        if (offHeapMaxEvents > 0 && backPressurePolicy != BackPressurePolicy.BLOCK) {
+            this.slots = null;
+            this.slotEvents = null;
+            this.offHeapRing = new OffHeapOrderCommandRing(bufferSize, offHeapMaxEvents, offHeapMaxL2Depth);
+            this.producerRecord = offHeapRing.newFlyweight();
+            this.consumerRecord = offHeapRing.newFlyweight();
+            this.consumerCmd = new OrderCommand();
+            this.consumerEvents = new EventsChain();
+            this.consumerMarketData = new L2MarketData(offHeapMaxL2Depth, offHeapMaxL2Depth);
+        } else {
+            this.slots = new OrderCommand[bufferSize];
+            this.slotEvents = new EventsChain[bufferSize];
+            for (int i = 0; i < bufferSize; i++) {
+                slots[i] = new OrderCommand();
+                slotEvents[i] = new EventsChain();
+            }
+            this.offHeapRing = null;
+            this.producerRecord = null;
+            this.consumerRecord = null;
+            this.consumerCmd = null;
+            this.consumerEvents = null;
+            this.consumerMarketData = null;
+        }
+    }
+
+    @Override
+    public void onEvent(OrderCommand cmd, long sequence, boolean endOfBatch) {
+        resultsHandler.onEvent(cmd, sequence, endOfBatch);
+    }
+
+    private void publish(final OrderCommand cmd, final long seq) {
+
+        if (!filter.test(cmd)) {
+            return;
+        }
+
+        switch (backPressurePolicy) {
+            case BLOCK:
+                consumer.accept(cmd, seq);
+                break;
+
+            case OVERFLOW:
+                // keep order - once overflow queue is used, all commands go there until consumer drains it
+                if (!overflowQueue.isEmpty() || !tryPublish(cmd, seq)) {
+                    final OrderCommand copy = new OrderCommand();
+                    copyCommand(cmd, copy, new EventsChain());
+                    overflowQueue.add(new OverflowRecord(copy, seq));
+                    overflowedCount++;
+                }
+                break;
+
+            case SAMPLE:
+                if (!tryPublish(cmd, seq)) {
+                    droppedCount++;
+                }
+                break;
+        }
+    }
+
+    private boolean tryPublish(final OrderCommand cmd, final long seq) {
+
+        final long wrapPoint = nextSeq - slotSequences.length;
+        if (wrapPoint > cachedConsumedSeq) {
+            cachedConsumedSeq = consumedSeq.get();
+            if (wrapPoint > cachedConsumedSeq) {
+                return false;
+            }
+        }
+
+        final int idx = (int) nextSeq & indexMask;
+        if (offHeapRing != null) {
+            if (countEvents(cmd.matcherEvent) > offHeapRing.getMaxEventsPerSlot() || !producerRecord.canHoldMarketData(cmd.marketData)) {
+                return false;
+            }
+            offHeapRing.wrap(producerRecord, nextSeq).writeFrom(cmd);
+        } else {
+            copyCommand(cmd, slots[idx], slotEvents[idx]);
+        }
+        slotSequences[idx] = seq;
+        publishedSeq.set(nextSeq);
+        nextSeq++;
+        return true;
+    }
+
+    @Override
+    public void onStart() {
+        if (backPressurePolicy != BackPressurePolicy.BLOCK) {
+            running = true;
+            worker = threadFactory.newThread(this::consumerLoop);
+            worker.setName("results-" + name);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        if (worker != null) {
+            running = false;
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    private void consumerLoop() {
+
+        long nextToConsume = 0;
+        final BackoffWaitStrategy.IdleBackoff backoff = new BackoffWaitStrategy.IdleBackoff(idleBackoff);
+
+        while (true) {
+
+            final long available = publishedSeq.get();
+            if (available >= nextToConsume) {
+                for (long s = nextToConsume; s <= available; s++) {
+                    final int idx = (int) s & indexMask;
+                    consumeSafe(offHeapRing != null ? readRecord(s) : slots[idx], slotSequences[idx]);
+                }
+                consumedSeq.set(available);
+                nextToConsume = available + 1;
+                backoff.reset();
+                continue;
+            }
+
+            // overflow records are newer than any record published into buffer before them,
+            // so buffer must be re-checked after the record became visible
+            final OverflowRecord record = overflowQueue.peek();
+            if (record != null && publishedSeq.get() < nextToConsume) {
+                overflowQueue.poll();
+                consumeSafe(record.cmd, record.seq);
+                backoff.reset();
+                continue;
+            }
+
+            if (!running) {
+                if (record == null && publishedSeq.get() < nextToConsume) {
+                    break;
+                }
+                continue;
+            }
+
+            backoff.idle();
+        }
+
+        log.debug("Results consumer {} stopped (overflowed={} dropped={})", name, overflowedCount, droppedCount);
+    }
+
+    private void consumeSafe(final OrderCommand cmd, final long seq) {
+        try {
+            consumer.accept(cmd, seq);
+        } catch (Exception ex) {
+            log.error("Exception in results consumer {} seq={}", name, seq, ex);
+        }
+    }
+
+    /**
+     * Copy command including result and trade events (events chain can be recycled after command is processed).
+     * Market data snapshot is not modified after publishing, so it is shared.
+     *
+     * @param src    - source command
+     * @param dst    - destination command
+     * @param events - events chain owned by destination
+     */
+    private static void copyCommand(final OrderCommand src, final OrderCommand dst, final EventsChain events) {
+
+        src.writeTo(dst);
+        dst.userCookie = src.userCookie;
+        dst.eventsGroup = src.eventsGroup;
+        dst.serviceFlags = src.serviceFlags;
+        dst.resultCode = src.resultCode;
+        dst.marketData = src.marketData;
+        dst.matcherEvent = events.copyFrom(src.matcherEvent);
+    }
+
+    private OrderCommand readRecord(final long s) {
+        final OrderCommandFlyweight record = offHeapRing.wrap(consumerRecord, s);
+        record.readFieldsTo(consumerCmd);
+        consumerCmd.matcherEvent = consumerEvents.readFrom(record);
+        consumerCmd.marketData = record.readMarketData(consumerMarketData);
+        return consumerCmd;
+    }
+
+    private static int countEvents(MatcherTradeEvent evt) {
+        int count = 0;
+        while (evt != null) {
+            count++;
+            evt = evt.nextEvent;
+        }
+        return count;
+    }
+
+    /**
+     * Reusable events chain of the buffer slot.
+     * Published chain is terminated after last used event, unused tail is kept and re-attached on next copy,
+     * so chain only grows up to the longest copied chain and does not produce garbage.
+     */
+    static final class EventsChain {
+
+        private MatcherTradeEvent head;
+
+        // last event of published chain (terminated) and detached unused tail
+        private MatcherTradeEvent last;
+        private MatcherTradeEvent spare;
+
+        @Getter
+        private int size;
+
+        /**
+         * @param srcEvt - source events chain (can be null)
+         * @return copy of source chain (null if source chain is null)
+         */
+        MatcherTradeEvent copyFrom(MatcherTradeEvent srcEvt) {
+
+            reattachTail();
+
+            if (srcEvt == null) {
+                size = 0;
+                return null;
+            }
+
+            int count = 1;
+            MatcherTradeEvent dstEvt = first();
+            while (true) {
+                dstEvt.eventType = srcEvt.eventType;
+                dstEvt.section = srcEvt.section;
+                dstEvt.activeOrderCompleted = srcEvt.activeOrderCompleted;
+                dstEvt.matchedOrderId = srcEvt.matchedOrderId;
+                dstEvt.matchedOrderUid = srcEvt.matchedOrderUid;
+                dstEvt.matchedOrderCompleted = srcEvt.matchedOrderCompleted;
+                dstEvt.price = srcEvt.price;
+                dstEvt.size = srcEvt.size;
+                dstEvt.bidderHoldPrice = srcEvt.bidderHoldPrice;
+
+                srcEvt = srcEvt.nextEvent;
+                if (srcEvt == null) {
+                    break;
+                }
+                dstEvt = next(dstEvt);
+                count++;
+            }
+
+            return terminate(dstEvt, count);
+        }
+
+        /**
+         * @param record - off-heap command record
+         * @return copy of record trade events (null if there are no events)
+         */
+        MatcherTradeEvent readFrom(OrderCommandFlyweight record) {
+
+            reattachTail();
+
+            final int count = record.eventsCount();
+            if (count == 0) {
+                size = 0;
+                return null;
+            }
+
+            MatcherTradeEvent dstEvt = first();
+            for (int i = 0; i < count; i++) {
+                if (i != 0) {
+                    dstEvt = next(dstEvt);
+                }
+                record.readEvent(i, dstEvt);
+            }
+
+            return terminate(dstEvt, count);
+        }
+
+        // re-attach unused tail (consumer has already processed previous command)
+        private void reattachTail() {
+            if (last != null) {
+                last.nextEvent = spare;
+                last = null;
+                spare = null;
+            }
+        }
+
+        private MatcherTradeEvent first() {
+            if (head == null) {
+                head = new MatcherTradeEvent();
+            }
+            return head;
+        }
+
+        private static MatcherTradeEvent next(final MatcherTradeEvent evt) {
+            if (evt.nextEvent == null) {
+                evt.nextEvent = new MatcherTradeEvent();
+            }
+            return evt.nextEvent;
+        }
+
+        // terminate published chain, keep the tail for reuse
+        private MatcherTradeEvent terminate(final MatcherTradeEvent lastEvt, final int count) {
+            spare = lastEvt.nextEvent;
+            lastEvt.nextEvent = null;
+            last = lastEvt;
+            size = count;
+            return head;
+        }
+    }
+
+    private static final class OverflowRecord {
+        private final OrderCommand cmd;
+        private final long seq;
+
+        private OverflowRecord(OrderCommand cmd, long seq) {
+            this.cmd = cmd;
+            this.seq = seq;
+        }
+    }
+}
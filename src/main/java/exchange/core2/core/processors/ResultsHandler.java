@@ -3,17 +3,29 @@ package exchange.core2.core.processors;
 import com.lmax.disruptor.EventHandler;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
-import lombok.RequiredArgsConstructor;
+import exchange.core2.core.processors.journaling.ISerializationProcessor;
 
 import java.util.function.ObjLongConsumer;
 
-@RequiredArgsConstructor
 public final class ResultsHandler implements EventHandler<OrderCommand> {
 
     private final ObjLongConsumer<OrderCommand> resultsConsumer;
 
+    // if set - results of mutating commands are published only after reaching journal durable sequence
+    private final ISerializationProcessor durabilityBarrier;
+
     private boolean processingEnabled = true;
 
+    public ResultsHandler(final ObjLongConsumer<OrderCommand> resultsConsumer) {
+        this(resultsConsumer, null);
+    }
+
+    public ResultsHandler(final ObjLongConsumer<OrderCommand> resultsConsumer,
+                          final ISerializationProcessor durabilityBarrier) {
+        this.resultsConsumer = resultsConsumer;
+        this.durabilityBarrier = durabilityBarrier;
+    }
+
     @Override
     public void onEvent(OrderCommand cmd, long sequence, boolean endOfBatch) {
 
@@ -22,6 +34,9 @@ public final class ResultsHandler implements EventHandler<OrderCommand> {
         }
 
         if (processingEnabled) {
+            if (durabilityBarrier != null && cmd.command.isMutate()) {
+                durabilityBarrier.awaitDurable(sequence);
+            }
             resultsConsumer.accept(cmd, sequence);
         }
 
@@ -42,6 +42,7 @@ import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesMarshallable;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.agrona.collections.MutableInteger;
 import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
@@ -61,25 +62,39 @@ public final class RiskEngine implements WriteBytesMarshallable {
     public static final ISerializationProcessor.SerializedModuleType MODULE_RE =
             ISerializationProcessor.SerializedModuleType.RISK_ENGINE;
 
+    // pre-check stripe for commands that can not be processed in parallel with any other command
+    public static final int STRIPE_SERIAL = -1;
+
     // state
     private final SymbolSpecificationProvider symbolSpecificationProvider;
     private final UserProfileService userProfileService;
     private final BinaryCommandsProcessor binaryCommandsProcessor;
     private final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache;
+    private final DenseSymbolMap<LastPriceCacheRecord> lastPriceIndex; // lookups and modifications of lastPriceCache
     private final IntLongHashMap fees;
     private final IntLongHashMap adjustments;
     private final IntLongHashMap suspends;
     private final ObjectsPool objectsPool;
+    private final ObjectsPool[] stripeObjectsPools; // one per pre-check stripe (first one is objectsPool)
+
+    // not a part of state
+    private final FreeMarginCache freeMarginCache;
+    private final MarginPositionsTracker marginPositionsTracker; // null if margin calls are disabled
 
     // sharding by symbolId
     private final int shardId;
     private final long shardMask;
 
+    // pre-check (R1) striping by uid within shard
+    private final int stripeShift;
+    private final long stripeMask;
+
     private final String exchangeId; // TODO validate
     private final Path folder;
 
     private final boolean cfgIgnoreRiskProcessing;
     private final boolean cfgMarginTradingEnabled;
+    private final boolean cfgMarginCheckAllPositions;
 
     private final ISerializationProcessor serializationProcessor;
 
@@ -90,6 +105,18 @@ public final class RiskEngine implements WriteBytesMarshallable {
                       final ISerializationProcessor serializationProcessor,
                       final SharedPool sharedPool,
                       final ExchangeConfiguration exchangeConfiguration) {
+        this(shardId, numShards, serializationProcessor, sharedPool, exchangeConfiguration, null);
+    }
+
+    /**
+     * @param marginCallScanner - margin calls scanner (shared by all shards), null - margin calls are not detected
+     */
+    public RiskEngine(final int shardId,
+                      final long numShards,
+                      final ISerializationProcessor serializationProcessor,
+                      final SharedPool sharedPool,
+                      final ExchangeConfiguration exchangeConfiguration,
+                      final MarginCallScanner marginCallScanner) {
 
         if (Long.bitCount(numShards) != 1) {
             throw new IllegalArgumentException("Invalid number of shards " + numShards + " - must be power of 2");
@@ -100,17 +127,38 @@ public final class RiskEngine implements WriteBytesMarshallable {
         this.exchangeId = initStateCfg.getExchangeId();
         this.folder = Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER);
 
+        final int preCheckWorkersNum = Math.max(1, exchangeConfiguration.getPerformanceCfg().getRiskPreCheckWorkersNum());
+        if (Integer.bitCount(preCheckWorkersNum) != 1) {
+            throw new IllegalArgumentException("Invalid number of risk pre-check workers " + preCheckWorkersNum + " - must be power of 2");
+        }
+
+        final long idleEvictionThreshold = exchangeConfiguration.getPerformanceCfg().getUserProfilesIdleEvictionThreshold();
+        if (preCheckWorkersNum > 1 && idleEvictionThreshold > 0) {
+            throw new IllegalArgumentException("Risk pre-check workers can not be used together with user profiles eviction");
+        }
+
         this.shardId = shardId;
         this.shardMask = numShards - 1;
+        this.stripeShift = Long.numberOfTrailingZeros(numShards);
+        this.stripeMask = preCheckWorkersNum - 1;
         this.serializationProcessor = serializationProcessor;
 
         // initialize object pools // TODO move to perf config
         final HashMap<Integer, Integer> objectsPoolConfig = new HashMap<>();
-        objectsPoolConfig.put(ObjectsPool.SYMBOL_POSITION_RECORD, 1024 * 256);
-        this.objectsPool = new ObjectsPool(objectsPoolConfig);
+        objectsPoolConfig.put(ObjectsPool.SYMBOL_POSITION_RECORD, 1024 * 256 / preCheckWorkersNum);
+        this.stripeObjectsPools = new ObjectsPool[preCheckWorkersNum];
+        for (int i = 0; i < preCheckWorkersNum; i++) {
+            stripeObjectsPools[i] = new ObjectsPool(objectsPoolConfig);
+        }
+        this.objectsPool = stripeObjectsPools[0];
 
         this.logDebug = exchangeConfiguration.getLoggingCfg().getLoggingLevels().contains(LoggingConfiguration.LoggingLevel.LOGGING_RISK_DEBUG);
 
+        final int symbolsDenseIdLimit = exchangeConfiguration.getPerformanceCfg().getSymbolsDenseIdLimit();
+        final UserProfileColdStore coldStore = idleEvictionThreshold > 0
+                ? new UserProfileColdStore(folder, String.format("%s_users_cold_RE%d_", exchangeId, shardId))
+                : null;
+
         if (ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_RE)) {
 
             // TODO refactor, change to creator (simpler init)`
@@ -125,8 +173,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
                         if (shardMask != bytesIn.readLong()) {
                             throw new IllegalStateException("wrong shardMask");
                         }
-                        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
-                        final UserProfileService userProfileService = new UserProfileService(bytesIn);
+                        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn, symbolsDenseIdLimit);
+                        final UserProfileService userProfileService = new UserProfileService(bytesIn, coldStore, idleEvictionThreshold);
                         final BinaryCommandsProcessor binaryCommandsProcessor = new BinaryCommandsProcessor(
                                 this::handleBinaryMessage,
                                 this::handleReportQuery,
@@ -158,8 +206,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
             this.suspends = state.suspends;
 
         } else {
-            this.symbolSpecificationProvider = new SymbolSpecificationProvider();
-            this.userProfileService = new UserProfileService();
+            this.symbolSpecificationProvider = new SymbolSpecificationProvider(symbolsDenseIdLimit);
+            this.userProfileService = new UserProfileService(coldStore, idleEvictionThreshold);
             this.binaryCommandsProcessor = new BinaryCommandsProcessor(
                     this::handleBinaryMessage,
                     this::handleReportQuery,
@@ -175,6 +223,23 @@ public final class RiskEngine implements WriteBytesMarshallable {
         final OrdersProcessingConfiguration ordersProcCfg = exchangeConfiguration.getOrdersProcessingCfg();
         this.cfgIgnoreRiskProcessing = ordersProcCfg.getRiskProcessingMode() == OrdersProcessingConfiguration.RiskProcessingMode.NO_RISK_PROCESSING;
         this.cfgMarginTradingEnabled = ordersProcCfg.getMarginTradingMode() == OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED;
+        this.cfgMarginCheckAllPositions = ordersProcCfg.getMarginOrderCheckMode() == OrdersProcessingConfiguration.MarginOrderCheckMode.MARGIN_CHECK_ALL_POSITIONS;
+
+        this.lastPriceIndex = new DenseSymbolMap<>(symbolsDenseIdLimit, lastPriceCache);
+        this.freeMarginCache = new FreeMarginCache(symbolSpecificationProvider, lastPriceIndex);
+
+        if (marginCallScanner != null && cfgMarginTradingEnabled
+                && ordersProcCfg.getMarginCallsMode() == OrdersProcessingConfiguration.MarginCallsMode.MARGIN_CALLS_ENABLED) {
+            this.marginPositionsTracker = new MarginPositionsTracker(
+                    marginCallScanner,
+                    userProfileService,
+                    symbolSpecificationProvider,
+                    freeMarginCache,
+                    shardId == 0,
+                    Math.max(1, ordersProcCfg.getMarginCallsScanBudget() / 8));
+        } else {
+            this.marginPositionsTracker = null;
+        }
     }
 
     @ToString
@@ -182,6 +247,9 @@ public final class RiskEngine implements WriteBytesMarshallable {
         public long askPrice = Long.MAX_VALUE;
         public long bidPrice = 0L;
 
+        // price epoch of last change, maintained by FreeMarginCache (not a part of state)
+        public long priceEpoch = 0L;
+
         public LastPriceCacheRecord() {
         }
 
@@ -239,7 +307,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
             case PLACE_ORDER:
                 if (uidForThisHandler(cmd.uid)) {
-                    cmd.resultCode = placeOrderRiskCheck(cmd);
+                    cmd.resultCode = placeOrderRiskCheck(cmd, objectsPool);
                 }
                 return false;
 
@@ -305,9 +373,70 @@ public final class RiskEngine implements WriteBytesMarshallable {
     }
 
 
+    /**
+     * Pre-check stripe of the command (for parallel R1 processing within this shard).
+     * Commands of different stripes can be processed in parallel,
+     * STRIPE_SERIAL commands require all preceding commands to be processed (and block all following commands).
+     * <p>
+     * Result depends only on command and symbol specifications (can not change between serial commands).
+     *
+     * @param cmd - command
+     * @return stripe index or STRIPE_SERIAL
+     */
+    public int preProcessStripe(final OrderCommand cmd) {
+        switch (cmd.command) {
+            case MOVE_ORDER:
+            case CANCEL_ORDER:
+            case REDUCE_ORDER:
+            case ORDER_BOOK_REQUEST:
+            case MARGIN_CALL:
+                return uidStripe(cmd.uid);
+
+            case PLACE_ORDER:
+                if (marginPositionsTracker != null && uidForThisHandler(cmd.uid)) {
+                    // margin positions changes are updating shared margin calls index
+                    final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(cmd.symbol);
+                    if (spec != null && spec.type == SymbolType.FUTURES_CONTRACT) {
+                        return STRIPE_SERIAL;
+                    }
+                }
+                return uidStripe(cmd.uid);
+
+            case ADD_USER:
+            case BALANCE_ADJUSTMENT:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                // modifying user profiles map or shared totals
+                return uidForThisHandler(cmd.uid) ? STRIPE_SERIAL : uidStripe(cmd.uid);
+
+            default:
+                return STRIPE_SERIAL;
+        }
+    }
+
+    /**
+     * Pre-process command handler for additional R1 workers (stripe 1 and above).
+     * Only handles commands of specified stripe, see {@link #preProcessStripe(OrderCommand)}.
+     *
+     * @param cmd    - command
+     * @param stripe - stripe index of the worker
+     */
+    public void preProcessCommandStripe(final OrderCommand cmd, final int stripe) {
+        if (cmd.command == OrderCommandType.PLACE_ORDER && uidForThisHandler(cmd.uid)) {
+            cmd.resultCode = placeOrderRiskCheck(cmd, stripeObjectsPools[stripe]);
+        }
+    }
+
+    private int uidStripe(final long uid) {
+        return (int) ((uid >>> stripeShift) & stripeMask);
+    }
+
     private CommandResultCode adjustBalance(long uid, int currency, long amountDiff, long fundingTransactionId, BalanceAdjustmentType adjustmentType) {
         final CommandResultCode res = userProfileService.balanceAdjustment(uid, currency, amountDiff, fundingTransactionId);
         if (res == CommandResultCode.SUCCESS) {
+            if (marginPositionsTracker != null) {
+                marginPositionsTracker.onUserChanged(userProfileService.getUserProfile(uid), currency);
+            }
             switch (adjustmentType) {
                 case ADJUSTMENT: // adjust total adjustments amount
                     adjustments.addToValue(currency, -amountDiff);
@@ -355,7 +484,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         return (shardMask == 0) || ((uid & shardMask) == shardId);
     }
 
-    private CommandResultCode placeOrderRiskCheck(final OrderCommand cmd) {
+    private CommandResultCode placeOrderRiskCheck(final OrderCommand cmd, final ObjectsPool pool) {
 
         final UserProfile userProfile = userProfileService.getUserProfile(cmd.uid);
         if (userProfile == null) {
@@ -376,7 +505,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         }
 
         // check if account has enough funds
-        final CommandResultCode resultCode = placeOrder(cmd, userProfile, spec);
+        final CommandResultCode resultCode = placeOrder(cmd, userProfile, spec, pool);
 
         if (resultCode != CommandResultCode.VALID_FOR_MATCHING_ENGINE) {
             log.warn("{} risk result={} uid={}: Can not place {}", cmd.orderId, resultCode, userProfile.uid, cmd);
@@ -390,7 +519,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
     private CommandResultCode placeOrder(final OrderCommand cmd,
                                          final UserProfile userProfile,
-                                         final CoreSymbolSpecification spec) {
+                                         final CoreSymbolSpecification spec,
+                                         final ObjectsPool pool) {
 
 
         if (spec.type == SymbolType.CURRENCY_EXCHANGE_PAIR) {
@@ -405,7 +535,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
             SymbolPositionRecord position = userProfile.positions.get(spec.symbolId); // TODO getIfAbsentPut?
             if (position == null) {
-                position = objectsPool.get(ObjectsPool.SYMBOL_POSITION_RECORD, SymbolPositionRecord::new);
+                position = pool.get(ObjectsPool.SYMBOL_POSITION_RECORD, SymbolPositionRecord::new);
                 position.initialize(userProfile.uid, spec.symbolId, spec.quoteCurrency);
                 userProfile.positions.put(spec.symbolId, position);
             }
@@ -413,11 +543,15 @@ public final class RiskEngine implements WriteBytesMarshallable {
             final boolean canPlaceOrder = canPlaceMarginOrder(cmd, userProfile, spec, position);
             if (canPlaceOrder) {
                 position.pendingHold(cmd.action, cmd.size);
+                freeMarginCache.onPositionChanged(userProfile, position);
+                if (marginPositionsTracker != null) {
+                    marginPositionsTracker.onUserChanged(userProfile, position.currency);
+                }
                 return CommandResultCode.VALID_FOR_MATCHING_ENGINE;
             } else {
                 // try to cleanup position if refusing to place
                 if (position.isEmpty()) {
-                    removePositionRecord(position, userProfile);
+                    removePositionRecord(position, userProfile, pool);
                 }
                 return CommandResultCode.RISK_NSF;
             }
@@ -434,18 +568,9 @@ public final class RiskEngine implements WriteBytesMarshallable {
         final int currency = (cmd.action == OrderAction.BID) ? spec.quoteCurrency : spec.baseCurrency;
 
         // futures positions check for this currency
-        long freeFuturesMargin = 0L;
-        if (cfgMarginTradingEnabled) {
-            for (final SymbolPositionRecord position : userProfile.positions) {
-                if (position.currency == currency) {
-                    final int recSymbol = position.symbol;
-                    final CoreSymbolSpecification spec2 = symbolSpecificationProvider.getSymbolSpecification(recSymbol);
-                    // add P&L subtract margin
-                    freeFuturesMargin +=
-                            (position.estimateProfit(spec2, lastPriceCache.get(recSymbol)) - position.calculateRequiredMarginForFutures(spec2));
-                }
-            }
-        }
+        final long freeFuturesMargin = (cfgMarginTradingEnabled && !userProfile.positions.isEmpty())
+                ? freeMarginCache.getFreeMargin(userProfile, currency)
+                : 0L;
 
         final long size = cmd.size;
         final long orderHoldAmount;
@@ -531,7 +656,32 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         // extra margin is required
 
-        final int symbol = cmd.symbol;
+        final long freeMargin;
+        if (cfgMarginCheckAllPositions) {
+            // free margin for all positions same currency (cached aggregate),
+            // margin of this symbol position is replaced by new required margin, so only its P&L is counted
+            freeMargin = freeMarginCache.getFreeMargin(userProfile, position.currency)
+                    - position.marginContribution
+                    + position.estimateProfit(spec, lastPriceIndex.get(spec.symbolId));
+        } else {
+            freeMargin = calculateFreeMarginLegacy(cmd.symbol, userProfile, spec, position);
+        }
+
+//        log.debug("newMargin={} <= account({})={} + free {}",
+//                newRequiredMarginForSymbol, position.currency, userProfile.accounts.get(position.currency), freeMargin);
+
+        // check if current balance and margin can cover new required margin for symbol position
+        return newRequiredMarginForSymbol <= userProfile.accounts.get(position.currency) + freeMargin;
+    }
+
+    /**
+     * Free margin calculation of MARGIN_CHECK_LEGACY mode (see OrdersProcessingConfiguration.MarginOrderCheckMode)
+     */
+    private long calculateFreeMarginLegacy(final int symbol,
+                                           final UserProfile userProfile,
+                                           final CoreSymbolSpecification spec,
+                                           final SymbolPositionRecord position) {
+
         // calculate free margin for all positions same currency
         long freeMargin = 0L;
         for (final SymbolPositionRecord positionRecord : userProfile.positions) {
@@ -540,23 +690,26 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 if (positionRecord.currency == spec.quoteCurrency) {
                     final CoreSymbolSpecification spec2 = symbolSpecificationProvider.getSymbolSpecification(recSymbol);
                     // add P&L subtract margin
-                    freeMargin += positionRecord.estimateProfit(spec2, lastPriceCache.get(recSymbol));
+                    freeMargin += positionRecord.estimateProfit(spec2, lastPriceIndex.get(recSymbol));
                     freeMargin -= positionRecord.calculateRequiredMarginForFutures(spec2);
                 }
             } else {
-                freeMargin = position.estimateProfit(spec, lastPriceCache.get(spec.symbolId));
+                freeMargin = position.estimateProfit(spec, lastPriceIndex.get(spec.symbolId));
             }
         }
-
-//        log.debug("newMargin={} <= account({})={} + free {}",
-//                newRequiredMarginForSymbol, position.currency, userProfile.accounts.get(position.currency), freeMargin);
-
-        // check if current balance and margin can cover new required margin for symbol position
-        return newRequiredMarginForSymbol <= userProfile.accounts.get(position.currency) + freeMargin;
+        return freeMargin;
     }
 
     public boolean handlerRiskRelease(final long seq, final OrderCommand cmd) {
 
+        // move dormant profiles into the cold tier (if enabled)
+        userProfileService.evictIdleProfiles(seq);
+
+        // margin calls are not changing risk engine state
+        if (cmd.command == OrderCommandType.MARGIN_CALL) {
+            return false;
+        }
+
         final int symbol = cmd.symbol;
 
         final L2MarketData marketData = cmd.marketData;
@@ -613,9 +766,21 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         // Process marked data
         if (marketData != null && cfgMarginTradingEnabled) {
-            final RiskEngine.LastPriceCacheRecord record = lastPriceCache.getIfAbsentPut(symbol, RiskEngine.LastPriceCacheRecord::new);
-            record.askPrice = (marketData.askSize != 0) ? marketData.askPrices[0] : Long.MAX_VALUE;
-            record.bidPrice = (marketData.bidSize != 0) ? marketData.bidPrices[0] : 0;
+            final RiskEngine.LastPriceCacheRecord record = lastPriceIndex.getIfAbsentPut(symbol, RiskEngine.LastPriceCacheRecord::new);
+            final long askPrice = (marketData.askSize != 0) ? marketData.askPrices[0] : Long.MAX_VALUE;
+            final long bidPrice = (marketData.bidSize != 0) ? marketData.bidPrices[0] : 0;
+            if (record.askPrice != askPrice || record.bidPrice != bidPrice) {
+                record.askPrice = askPrice;
+                record.bidPrice = bidPrice;
+                freeMarginCache.onPriceChanged(record);
+                if (marginPositionsTracker != null) {
+                    marginPositionsTracker.onPriceChanged(symbol, record);
+                }
+            }
+
+            if (marginPositionsTracker != null) {
+                marginPositionsTracker.sweep();
+            }
         }
 
         return false;
@@ -640,6 +805,11 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
             if (takerSpr.isEmpty()) {
                 removePositionRecord(takerSpr, takerUp);
+            } else {
+                freeMarginCache.onPositionChanged(takerUp, takerSpr);
+                if (marginPositionsTracker != null) {
+                    marginPositionsTracker.onUserChanged(takerUp, takerSpr.currency);
+                }
             }
         }
 
@@ -653,6 +823,11 @@ public final class RiskEngine implements WriteBytesMarshallable {
             fees.addToValue(spec.quoteCurrency, fee);
             if (makerSpr.isEmpty()) {
                 removePositionRecord(makerSpr, maker);
+            } else {
+                freeMarginCache.onPositionChanged(maker, makerSpr);
+                if (marginPositionsTracker != null) {
+                    marginPositionsTracker.onUserChanged(maker, makerSpr.currency);
+                }
             }
         }
 
@@ -791,9 +966,18 @@ public final class RiskEngine implements WriteBytesMarshallable {
     }
 
     private void removePositionRecord(SymbolPositionRecord record, UserProfile userProfile) {
+        removePositionRecord(record, userProfile, objectsPool);
+    }
+
+    private void removePositionRecord(SymbolPositionRecord record, UserProfile userProfile, ObjectsPool pool) {
+        freeMarginCache.onPositionRemoved(userProfile, record);
         userProfile.accounts.addToValue(record.currency, record.profit);
         userProfile.positions.removeKey(record.symbol);
-        objectsPool.put(ObjectsPool.SYMBOL_POSITION_RECORD, record);
+        if (marginPositionsTracker != null) {
+            marginPositionsTracker.onPositionRemoved(userProfile.uid, record.symbol);
+            marginPositionsTracker.onUserChanged(userProfile, record.currency);
+        }
+        pool.put(ObjectsPool.SYMBOL_POSITION_RECORD, record);
     }
 
     @Override
@@ -810,16 +994,53 @@ public final class RiskEngine implements WriteBytesMarshallable {
         SerializationUtils.marshallIntLongHashMap(suspends, bytes);
     }
 
+    /**
+     * Sends open margin positions to margin calls scanner (if enabled).
+     * Should be called once when exchange core starts (scanner is running, risk engine is not processing commands yet).
+     */
+    public void sendMarginPositions() {
+        if (marginPositionsTracker != null) {
+            marginPositionsTracker.sendAllPositions();
+        }
+    }
+
     public void reset() {
         userProfileService.reset();
         symbolSpecificationProvider.reset();
         binaryCommandsProcessor.reset();
-        lastPriceCache.clear();
+        lastPriceIndex.clear();
+        freeMarginCache.invalidateAll();
+        if (marginPositionsTracker != null) {
+            marginPositionsTracker.reset(shardId, shardMask);
+        }
         fees.clear();
         adjustments.clear();
         suspends.clear();
     }
 
+    /**
+     * Compares cached free margin aggregates of all user profiles with full recalculation.
+     * Slow, intended for consistency checks in tests (call only when engine is idle).
+     *
+     * @return number of inconsistent user currency aggregates
+     */
+    public int countFreeMarginCacheMismatches() {
+        final MutableInteger mismatches = new MutableInteger();
+        userProfileService.forEachUserProfile(userProfile -> userProfile.positions.forEach(position -> {
+            if (freeMarginCache.getFreeMargin(userProfile, position.currency) != freeMarginCache.calculateFreeMarginFull(userProfile, position.currency)) {
+                mismatches.increment();
+            }
+        }));
+        return mismatches.get();
+    }
+
+    /**
+     * Releases resources (user profiles cold store file), call after processing is stopped
+     */
+    public void close() {
+        userProfileService.close();
+    }
+
     @AllArgsConstructor
     @Getter
     private static class State {
@@ -20,6 +20,7 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public final class SharedPool {
@@ -29,6 +30,12 @@ public final class SharedPool {
     @Getter
     private final int chainLength;
 
+    // chains created because buffer was empty
+    private final AtomicLong chainMisses = new AtomicLong();
+
+    // chains skipped because buffer was full
+    private final AtomicLong chainsDropped = new AtomicLong();
+
     public static SharedPool createTestSharedPool() {
         return new SharedPool(8, 4, 256);
     }
@@ -64,6 +71,7 @@ public final class SharedPool {
         MatcherTradeEvent poll = eventChainsBuffer.poll();
 //        log.debug("<<< POLL CHAIN HEAD  size={}", poll == null ? 0 : poll.getChainSize());
         if (poll == null) {
+            chainMisses.incrementAndGet();
             poll = MatcherTradeEvent.createEventChain(chainLength);
         }
 
@@ -79,6 +87,17 @@ public final class SharedPool {
     public void putChain(MatcherTradeEvent head) {
         boolean offer = eventChainsBuffer.offer(head);
 //        log.debug(">>> OFFER CHAIN HEAD  size={} orrder={}", head.getChainSize(), offer);
+        if (!offer) {
+            chainsDropped.incrementAndGet();
+        }
+    }
+
+    public long getChainMisses() {
+        return chainMisses.get();
+    }
+
+    public long getChainsDropped() {
+        return chainsDropped.get();
     }
 
 }
@@ -24,7 +24,6 @@ import lombok.extern.slf4j.Slf4j;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
-import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import java.util.Objects;
 
@@ -32,14 +31,22 @@ import java.util.Objects;
 public final class SymbolSpecificationProvider implements WriteBytesMarshallable, StateHash {
 
     // symbol->specs
-    private final IntObjectHashMap<CoreSymbolSpecification> symbolSpecs;
+    private final DenseSymbolMap<CoreSymbolSpecification> symbolSpecs;
 
     public SymbolSpecificationProvider() {
-        this.symbolSpecs = new IntObjectHashMap<>();
+        this(0);
+    }
+
+    public SymbolSpecificationProvider(int denseIdLimit) {
+        this.symbolSpecs = new DenseSymbolMap<>(denseIdLimit);
     }
 
     public SymbolSpecificationProvider(BytesIn bytes) {
-        this.symbolSpecs = SerializationUtils.readIntHashMap(bytes, CoreSymbolSpecification::new);
+        this(bytes, 0);
+    }
+
+    public SymbolSpecificationProvider(BytesIn bytes, int denseIdLimit) {
+        this.symbolSpecs = new DenseSymbolMap<>(denseIdLimit, SerializationUtils.readIntHashMap(bytes, CoreSymbolSpecification::new));
     }
 
 
@@ -82,12 +89,12 @@ public final class SymbolSpecificationProvider implements WriteBytesMarshallable
     @Override
     public void writeMarshallable(BytesOut bytes) {
         // write symbolSpecs
-        SerializationUtils.marshallIntHashMap(symbolSpecs, bytes);
+        SerializationUtils.marshallIntHashMap(symbolSpecs.getMap(), bytes);
     }
 
     @Override
     public int stateHash() {
-        return Objects.hash(HashingUtils.stateHash(symbolSpecs));
+        return Objects.hash(HashingUtils.stateHash(symbolSpecs.getMap()));
     }
 
 }
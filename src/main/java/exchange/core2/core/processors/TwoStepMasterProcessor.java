@@ -19,10 +19,13 @@ import com.lmax.disruptor.*;
 import exchange.core2.core.common.CoreWaitStrategy;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 
 @Slf4j
 public final class TwoStepMasterProcessor implements EventProcessor {
@@ -31,16 +34,29 @@ public final class TwoStepMasterProcessor implements EventProcessor {
     private static final int RUNNING = HALTED + 1;
 
     private static final int MASTER_SPIN_LIMIT = 5000;
+    private static final int WORKERS_SPIN_LIMIT = 1000;
 
     private final AtomicInteger running = new AtomicInteger(IDLE);
+    private final RingBuffer<OrderCommand> ringBuffer;
     private final DataProvider<OrderCommand> dataProvider;
     private final SequenceBarrier sequenceBarrier;
     private final WaitSpinningHelper waitSpinningHelper;
     private final SimpleEventHandler eventHandler;
     private final ExceptionHandler<OrderCommand> exceptionHandler;
+    private final CoreWaitStrategy coreWaitStrategy;
+    private final StageBackoff stageBackoff;
     private final String name;
     private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
 
+    // parallel first step: commands stripe function (stripe 0 is processed by master), and sequence released to workers
+    private final ToIntFunction<OrderCommand> stripeFunction;
+    private final Sequence releasedSequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private Sequence[] workerSequences = new Sequence[0];
+
+    // waiting for workers to complete released commands (same wait strategy as for the main barrier)
+    private SequenceBarrier workersBarrier;
+    private WaitSpinningHelper workersWaitHelper;
+
     @Setter
     private TwoStepSlaveProcessor slaveProcessor;
 
@@ -50,14 +66,54 @@ public final class TwoStepMasterProcessor implements EventProcessor {
                                   final ExceptionHandler<OrderCommand> exceptionHandler,
                                   final CoreWaitStrategy coreWaitStrategy,
                                   final String name) {
+        this(ringBuffer, sequenceBarrier, eventHandler, null, exceptionHandler, coreWaitStrategy, null, name);
+    }
+
+    /**
+     * @param stripeFunction - commands stripe function for parallel processing with TwoStepWorkerProcessor's,
+     *                       should return RiskEngine.STRIPE_SERIAL for commands that require all workers to stop
+     * @param stageBackoff   - backoff thresholds for PHASED_BACKOFF wait strategy (null - default)
+     */
+    public TwoStepMasterProcessor(final RingBuffer<OrderCommand> ringBuffer,
+                                  final SequenceBarrier sequenceBarrier,
+                                  final SimpleEventHandler eventHandler,
+                                  final ToIntFunction<OrderCommand> stripeFunction,
+                                  final ExceptionHandler<OrderCommand> exceptionHandler,
+                                  final CoreWaitStrategy coreWaitStrategy,
+                                  final StageBackoff stageBackoff,
+                                  final String name) {
+        this.ringBuffer = ringBuffer;
         this.dataProvider = ringBuffer;
         this.sequenceBarrier = sequenceBarrier;
-        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, MASTER_SPIN_LIMIT, coreWaitStrategy);
+        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, MASTER_SPIN_LIMIT, coreWaitStrategy, stageBackoff);
         this.eventHandler = eventHandler;
+        this.stripeFunction = stripeFunction;
         this.exceptionHandler = exceptionHandler;
+        this.coreWaitStrategy = coreWaitStrategy;
+        this.stageBackoff = stageBackoff;
         this.name = name;
     }
 
+    /**
+     * Sequence up to which workers are allowed to process commands (workers barrier should depend on it).
+     *
+     * @return released sequence
+     */
+    public Sequence getReleasedSequence() {
+        return releasedSequence;
+    }
+
+    public void setWorkerProcessors(final List<TwoStepWorkerProcessor> workerProcessors) {
+        if (!workerProcessors.isEmpty() && stripeFunction == null) {
+            throw new IllegalStateException("Stripe function is required for worker processors");
+        }
+        this.workerSequences = workerProcessors.stream().map(TwoStepWorkerProcessor::getSequence).toArray(Sequence[]::new);
+        if (workerSequences.length != 0) {
+            this.workersBarrier = ringBuffer.newBarrier(workerSequences);
+            this.workersWaitHelper = new WaitSpinningHelper(ringBuffer, workersBarrier, WORKERS_SPIN_LIMIT, coreWaitStrategy, stageBackoff);
+        }
+    }
+
     @Override
     public Sequence getSequence() {
         return sequence;
@@ -67,6 +123,9 @@ public final class TwoStepMasterProcessor implements EventProcessor {
     public void halt() {
         running.set(HALTED);
         sequenceBarrier.alert();
+        if (workersBarrier != null) {
+            workersBarrier.alert();
+        }
     }
 
     @Override
@@ -84,6 +143,9 @@ public final class TwoStepMasterProcessor implements EventProcessor {
     public void run() {
         if (running.compareAndSet(IDLE, RUNNING)) {
             sequenceBarrier.clearAlert();
+            if (workersBarrier != null) {
+                workersBarrier.clearAlert();
+            }
 
             try {
                 if (running.get() == RUNNING) {
@@ -108,6 +170,11 @@ public final class TwoStepMasterProcessor implements EventProcessor {
             Thread.yield();
         }
 
+        if (workerSequences.length != 0) {
+            processEventsWithWorkers(nextSequence);
+            return;
+        }
+
         while (true) {
             OrderCommand cmd = null;
             try {
@@ -156,6 +223,104 @@ public final class TwoStepMasterProcessor implements EventProcessor {
         }
     }
 
+    /**
+     * Same as single-threaded processing, but commands between barriers (groups switching and serial commands)
+     * are released to workers, and master handles only stripe 0 of them.
+     * Before triggering slave processor, master waits until all workers have completed the group.
+     */
+    private void processEventsWithWorkers(long nextSequence) {
+
+        long currentSequenceGroup = 0;
+
+        while (true) {
+            OrderCommand cmd = null;
+            try {
+
+                final long availableSequence = waitSpinningHelper.tryWaitFor(nextSequence);
+
+                if (nextSequence <= availableSequence) {
+                    while (nextSequence <= availableSequence) {
+                        cmd = dataProvider.get(nextSequence);
+
+                        // switch to next group - let slave processor start doing its handling cycle when workers are done
+                        if (cmd.eventsGroup != currentSequenceGroup) {
+                            awaitWorkers(nextSequence - 1);
+                            publishProgressAndTriggerSlaveProcessor(nextSequence);
+                            currentSequenceGroup = cmd.eventsGroup;
+                        }
+
+                        if (stripeFunction.applyAsInt(cmd) == RiskEngine.STRIPE_SERIAL) {
+
+                            awaitWorkers(nextSequence - 1);
+                            boolean forcedPublish = eventHandler.onEvent(nextSequence, cmd);
+                            releaseWorkers(nextSequence);
+                            nextSequence++;
+
+                            if (forcedPublish) {
+                                sequence.set(nextSequence - 1);
+                                waitSpinningHelper.signalAllWhenBlocking();
+                            }
+
+                            if (cmd.command == OrderCommandType.SHUTDOWN_SIGNAL) {
+                                awaitWorkers(nextSequence - 1);
+                                publishProgressAndTriggerSlaveProcessor(nextSequence);
+                            }
+
+                        } else {
+
+                            // release segment up to the next barrier, then process own stripe
+                            long segmentEnd = nextSequence + 1;
+                            while (segmentEnd <= availableSequence) {
+                                final OrderCommand nextCmd = dataProvider.get(segmentEnd);
+                                if (nextCmd.eventsGroup != currentSequenceGroup || stripeFunction.applyAsInt(nextCmd) == RiskEngine.STRIPE_SERIAL) {
+                                    break;
+                                }
+                                segmentEnd++;
+                            }
+                            releaseWorkers(segmentEnd - 1);
+
+                            while (nextSequence < segmentEnd) {
+                                cmd = dataProvider.get(nextSequence);
+                                if (stripeFunction.applyAsInt(cmd) == 0) {
+                                    eventHandler.onEvent(nextSequence, cmd);
+                                }
+                                nextSequence++;
+                            }
+                        }
+                    }
+                    sequence.set(availableSequence);
+                    waitSpinningHelper.signalAllWhenBlocking();
+                }
+            } catch (final AlertException ex) {
+                if (running.get() != RUNNING) {
+                    break;
+                }
+            } catch (final Throwable ex) {
+                exceptionHandler.handleEventException(ex, nextSequence, cmd);
+                sequence.set(nextSequence);
+                releaseWorkers(nextSequence);
+                waitSpinningHelper.signalAllWhenBlocking();
+                nextSequence++;
+            }
+        }
+    }
+
+    private void releaseWorkers(final long seq) {
+        if (releasedSequence.get() < seq) {
+            releasedSequence.set(seq);
+            waitSpinningHelper.signalAllWhenBlocking();
+        }
+    }
+
+    private void awaitWorkers(final long seq) throws AlertException, InterruptedException {
+        releaseWorkers(seq);
+        // workers barrier cursor is the minimum of workers sequences, workers signal when blocking wait strategy is used
+        while (workersBarrier.getCursor() < seq) {
+            sequenceBarrier.checkAlert();
+            workersWaitHelper.tryWaitFor(seq);
+        }
+    }
+
     private void publishProgressAndTriggerSlaveProcessor(final long nextSequence) {
         sequence.set(nextSequence - 1);
         waitSpinningHelper.signalAllWhenBlocking();
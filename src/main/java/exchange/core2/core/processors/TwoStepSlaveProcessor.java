@@ -18,6 +18,7 @@ package exchange.core2.core.processors;
 import com.lmax.disruptor.*;
 import exchange.core2.core.common.CoreWaitStrategy;
 import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,9 +45,23 @@ public final class TwoStepSlaveProcessor implements EventProcessor {
                                  final SimpleEventHandler eventHandler,
                                  final ExceptionHandler<? super OrderCommand> exceptionHandler,
                                  final String name) {
+        this(ringBuffer, sequenceBarrier, eventHandler, exceptionHandler, null, name);
+    }
+
+    /**
+     * @param stageBackoff - backoff thresholds while waiting for previous stage, null - spinning without backoff
+     */
+    public TwoStepSlaveProcessor(final RingBuffer<OrderCommand> ringBuffer,
+                                 final SequenceBarrier sequenceBarrier,
+                                 final SimpleEventHandler eventHandler,
+                                 final ExceptionHandler<? super OrderCommand> exceptionHandler,
+                                 final StageBackoff stageBackoff,
+                                 final String name) {
         this.dataProvider = ringBuffer;
         this.sequenceBarrier = sequenceBarrier;
-        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, 0, CoreWaitStrategy.SECOND_STEP_NO_WAIT);
+        this.waitSpinningHelper = stageBackoff == null
+                ? new WaitSpinningHelper(ringBuffer, sequenceBarrier, 0, CoreWaitStrategy.SECOND_STEP_NO_WAIT)
+                : new WaitSpinningHelper(ringBuffer, sequenceBarrier, 0, CoreWaitStrategy.PHASED_BACKOFF, stageBackoff);
         this.eventHandler = eventHandler;
         this.exceptionHandler = exceptionHandler;
         this.name = name;
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.*;
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Additional first step (R1) worker of TwoStepMasterProcessor.
+ * <p>
+ * Processes only commands of own stripe, and only up to the sequence released by master processor.
+ * Master processor releases commands in segments between barriers (groups switching and serial commands),
+ * so commands of different stripes within the same segment are processed in parallel.
+ */
+@Slf4j
+public final class TwoStepWorkerProcessor implements EventProcessor {
+    private static final int IDLE = 0;
+    private static final int HALTED = IDLE + 1;
+    private static final int RUNNING = HALTED + 1;
+
+    private static final int WORKER_SPIN_LIMIT = 5000;
+
+    private final AtomicInteger running = new AtomicInteger(IDLE);
+    private final DataProvider<OrderCommand> dataProvider;
+    private final SequenceBarrier sequenceBarrier;
+    private final WaitSpinningHelper waitSpinningHelper;
+    private final SimpleEventHandler eventHandler;
+    private final ToIntFunction<OrderCommand> stripeFunction;
+    private final int stripe;
+    private final ExceptionHandler<OrderCommand> exceptionHandler;
+    private final String name;
+    private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+
+    /**
+     * @param ringBuffer       - ring buffer
+     * @param sequenceBarrier  - barrier depending on master processor released sequence
+     * @param eventHandler     - commands handler
+     * @param stripeFunction   - command stripe function (same as used by master processor)
+     * @param stripe           - stripe index of this worker
+     * @param exceptionHandler - exception handler
+     * @param coreWaitStrategy - wait strategy
+     * @param stageBackoff     - backoff thresholds for PHASED_BACKOFF wait strategy (null - default)
+     * @param name             - name
+     */
+    public TwoStepWorkerProcessor(final RingBuffer<OrderCommand> ringBuffer,
+                                  final SequenceBarrier sequenceBarrier,
+                                  final SimpleEventHandler eventHandler,
+                                  final ToIntFunction<OrderCommand> stripeFunction,
+                                  final int stripe,
+                                  final ExceptionHandler<OrderCommand> exceptionHandler,
+                                  final CoreWaitStrategy coreWaitStrategy,
+                                  final StageBackoff stageBackoff,
+                                  final String name) {
+        this.dataProvider = ringBuffer;
+        this.sequenceBarrier = sequenceBarrier;
+        this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, WORKER_SPIN_LIMIT, coreWaitStrategy, stageBackoff);
+        this.eventHandler = eventHandler;
+        this.stripeFunction = stripeFunction;
+        this.stripe = stripe;
+        this.exceptionHandler = exceptionHandler;
+        this.name = name;
+    }
+
+    @Override
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void halt() {
+        running.set(HALTED);
+        sequenceBarrier.alert();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get() != IDLE;
+    }
+
+    /**
+     * It is ok to have another thread rerun this method after a halt().
+     *
+     * @throws IllegalStateException if this object instance is already running in a thread
+     */
+    @Override
+    public void run() {
+        if (running.compareAndSet(IDLE, RUNNING)) {
+            sequenceBarrier.clearAlert();
+
+            try {
+                if (running.get() == RUNNING) {
+                    processEvents();
+                }
+            } finally {
+                running.set(IDLE);
+            }
+        }
+    }
+
+    private void processEvents() {
+
+        Thread.currentThread().setName("Thread-" + name);
+
+        long nextSequence = sequence.get() + 1L;
+
+        while (true) {
+            OrderCommand cmd = null;
+            try {
+
+                final long availableSequence = waitSpinningHelper.tryWaitFor(nextSequence);
+
+                if (nextSequence <= availableSequence) {
+                    while (nextSequence <= availableSequence) {
+                        cmd = dataProvider.get(nextSequence);
+                        if (stripeFunction.applyAsInt(cmd) == stripe) {
+                            eventHandler.onEvent(nextSequence, cmd);
+                        }
+                        nextSequence++;
+                    }
+                    sequence.set(availableSequence);
+                    waitSpinningHelper.signalAllWhenBlocking();
+                }
+            } catch (final AlertException ex) {
+                if (running.get() != RUNNING) {
+                    break;
+                }
+            } catch (final Throwable ex) {
+                exceptionHandler.handleEventException(ex, nextSequence, cmd);
+                sequence.set(nextSequence);
+                waitSpinningHelper.signalAllWhenBlocking();
+                nextSequence++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TwoStepWorkerProcessor{" + name + "}";
+    }
+}
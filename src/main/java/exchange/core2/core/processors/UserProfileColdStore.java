@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.UserProfile;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.agrona.IoUtil;
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Cold tier for dormant user profiles.
+ * <p>
+ * Profiles are stored in serialized form in a memory-mapped scratch file.
+ * Records are only appended, removed records are marked as dead and reclaimed by in-place compaction
+ * when dead space exceeds live space.
+ * <p>
+ * Record format: uid (8 bytes), payload length (4 bytes), payload (UserProfile.writeMarshallable output).
+ * <p>
+ * File content is not a part of persistent state - all profiles are written into a regular snapshot.
+ * Every store creates its own uniquely named file (several instances can share the folder - sharded risk engines,
+ * standby replica, journal compactor), the file is unmapped and removed by {@link #close()}.
+ * <p>
+ * Not threadsafe, owned by single risk engine instance.
+ */
+@Slf4j
+public final class UserProfileColdStore implements AutoCloseable {
+
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int INITIAL_CAPACITY = 4 * 1024 * 1024;
+
+    // do not compact small files
+    private static final int COMPACTION_MIN_DEAD_BYTES = 1024 * 1024;
+
+    @Getter
+    private final Path path;
+    private final FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    // uid -> record offset
+    private final LongLongHashMap index = new LongLongHashMap();
+
+    private int writePosition = 0;
+    private int deadBytes = 0;
+
+    // serialization buffer (reused)
+    private final Bytes<ByteBuffer> serializationBuffer = Bytes.elasticHeapByteBuffer(256);
+    private byte[] copyBuffer = new byte[256];
+
+    @Getter
+    private long compactionsCount = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Creates cold store in a new file
+     *
+     * @param folder     - scratch files folder
+     * @param namePrefix - file name prefix (unique suffix is appended)
+     */
+    public UserProfileColdStore(final Path folder, final String namePrefix) {
+        try {
+            Files.createDirectories(folder);
+            this.path = Files.createTempFile(folder, namePrefix, ".ecu");
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Can not create cold store file in " + folder, ex);
+        }
+        log.debug("Created user profiles cold store {}", path);
+    }
+
+    /**
+     * Serialize and append profile. Replaces existing record for the same uid.
+     *
+     * @param profile user profile
+     */
+    public void put(final UserProfile profile) {
+
+        serializationBuffer.clear();
+        profile.writeMarshallable(serializationBuffer);
+
+        final int payloadLength = Math.toIntExact(serializationBuffer.readRemaining());
+
+        ensureCapacity(RECORD_HEADER_SIZE + payloadLength);
+
+        final int recordOffset = writePosition;
+        buffer.putLong(recordOffset, profile.uid);
+        buffer.putInt(recordOffset + 8, payloadLength);
+        final byte[] bytes = copyBuffer(payloadLength);
+        serializationBuffer.read(bytes, 0, payloadLength);
+        buffer.put(recordOffset + RECORD_HEADER_SIZE, bytes, 0, payloadLength);
+        writePosition += RECORD_HEADER_SIZE + payloadLength;
+
+        final long prevOffset = index.getIfAbsent(profile.uid, -1);
+        if (prevOffset != -1) {
+            markDead((int) prevOffset);
+        }
+        index.put(profile.uid, recordOffset);
+    }
+
+    /**
+     * Remove profile from the store.
+     *
+     * @param uid user id
+     * @return de-serialized user profile, or null if not found
+     */
+    public UserProfile remove(final long uid) {
+        final long offset = index.getIfAbsent(uid, -1);
+        if (offset == -1) {
+            return null;
+        }
+        index.remove(uid);
+        final UserProfile profile = readRecord((int) offset);
+        markDead((int) offset);
+        compactIfRequired();
+        return profile;
+    }
+
+    /**
+     * Read profile without removing it from the store.
+     *
+     * @param uid user id
+     * @return de-serialized user profile (detached copy), or null if not found
+     */
+    public UserProfile peek(final long uid) {
+        final long offset = index.getIfAbsent(uid, -1);
+        return offset == -1 ? null : readRecord((int) offset);
+    }
+
+    public boolean contains(final long uid) {
+        return index.containsKey(uid);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * De-serialize every stored profile (detached copies).
+     *
+     * @param consumer profiles consumer
+     */
+    public void forEach(final Consumer<UserProfile> consumer) {
+        index.forEachValue(offset -> consumer.accept(readRecord((int) offset)));
+    }
+
+    /**
+     * Write all records in the same format as SerializationUtils.marshallLongHashMap writes entries (without size),
+     * copying serialized payload without de-serialization.
+     *
+     * @param bytes output
+     */
+    public void writeRecords(final BytesOut bytes) {
+        index.forEachKeyValue((uid, offset) -> {
+            final int payloadLength = buffer.getInt((int) offset + 8);
+            final byte[] payload = copyBuffer(payloadLength);
+            buffer.get((int) offset + RECORD_HEADER_SIZE, payload, 0, payloadLength);
+            bytes.writeLong(uid);
+            bytes.write(payload, 0, payloadLength);
+        });
+    }
+
+    public void clear() {
+        index.clear();
+        writePosition = 0;
+        deadBytes = 0;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IoUtil.unmap(buffer);
+        try {
+            channel.close();
+        } catch (final IOException ex) {
+            log.warn("Can not close cold store file {}", path, ex);
+        }
+    }
+
+    private UserProfile readRecord(final int offset) {
+        final int payloadLength = buffer.getInt(offset + 8);
+        final byte[] bytes = new byte[payloadLength];
+        buffer.get(offset + RECORD_HEADER_SIZE, bytes, 0, payloadLength);
+        return new UserProfile(Bytes.wrapForRead(bytes));
+    }
+
+    private void markDead(final int offset) {
+        deadBytes += RECORD_HEADER_SIZE + buffer.getInt(offset + 8);
+    }
+
+    private void compactIfRequired() {
+        if (deadBytes < COMPACTION_MIN_DEAD_BYTES || deadBytes < writePosition - deadBytes) {
+            return;
+        }
+
+        // records are moved only towards file start, so single forward pass is sufficient
+        int readPosition = 0;
+        int newWritePosition = 0;
+        while (readPosition < writePosition) {
+            final long uid = buffer.getLong(readPosition);
+            final int recordSize = RECORD_HEADER_SIZE + buffer.getInt(readPosition + 8);
+            if (index.getIfAbsent(uid, -1) == readPosition) {
+                if (newWritePosition != readPosition) {
+                    final byte[] bytes = copyBuffer(recordSize);
+                    buffer.get(readPosition, bytes, 0, recordSize);
+                    buffer.put(newWritePosition, bytes, 0, recordSize);
+                    index.put(uid, newWritePosition);
+                }
+                newWritePosition += recordSize;
+            }
+            readPosition += recordSize;
+        }
+
+        log.debug("Compacted cold store {}: {} -> {} bytes", path, writePosition, newWritePosition);
+        writePosition = newWritePosition;
+        deadBytes = 0;
+        compactionsCount++;
+    }
+
+    private void ensureCapacity(final int recordSize) {
+        final long required = (long) writePosition + recordSize;
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        long newCapacity = buffer.capacity();
+        while (newCapacity < required) {
+            newCapacity <<= 1;
+        }
+        if (newCapacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Cold store file is too big: " + newCapacity);
+        }
+        try {
+            final MappedByteBuffer newBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            IoUtil.unmap(buffer);
+            buffer = newBuffer;
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Can not extend cold store file " + path, ex);
+        }
+    }
+
+    private byte[] copyBuffer(final int size) {
+        if (copyBuffer.length < size) {
+            copyBuffer = new byte[Math.max(size, copyBuffer.length * 2)];
+        }
+        return copyBuffer;
+    }
+}
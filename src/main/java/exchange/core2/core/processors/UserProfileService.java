@@ -26,28 +26,75 @@ import lombok.extern.slf4j.Slf4j;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.agrona.collections.MutableLong;
 import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 
+import java.util.Objects;
+import java.util.function.Consumer;
+
 /**
  * Stateful (!) User profile service
  * <p>
+ * Optionally keeps only recently used profiles in memory (hot tier),
+ * profiles idle for more than specified number of ticks (commands) are evicted into the cold store
+ * and faulted back in on first access.
+ * <p>
  * TODO make multi instance
  */
 @Slf4j
 public final class UserProfileService implements WriteBytesMarshallable, StateHash {
 
+    // limits amount of work done per single eviction call
+    private static final int EVICTION_BATCH_LIMIT = 16;
+
     /*
-     * State: uid to UserProfile
+     * State: uid to UserProfile (hot tier)
      */
-    @Getter
     private final LongObjectHashMap<UserProfile> userProfiles;
 
+    /*
+     * State: evicted profiles (cold tier), null if tiering is disabled
+     */
+    private final UserProfileColdStore coldStore;
+
+    private final long idleEvictionThreshold;
+
+    // recently used profiles list (only when tiering is enabled): head - most recent, tail - least recent
+    private UserProfile lruHead;
+    private UserProfile lruTail;
+    private long currentTick = 0;
+
+    // tiering metrics
+    @Getter
+    private long hotHits = 0;
+    @Getter
+    private long coldHits = 0;
+    @Getter
+    private long misses = 0;
+    @Getter
+    private long evictions = 0;
+
     public UserProfileService() {
-        this.userProfiles = new LongObjectHashMap<>(1024);
+        this(null, 0);
     }
 
     public UserProfileService(BytesIn bytes) {
+        this(bytes, null, 0);
+    }
+
+    public UserProfileService(final UserProfileColdStore coldStore, final long idleEvictionThreshold) {
+        this.userProfiles = new LongObjectHashMap<>(1024);
+        this.coldStore = coldStore;
+        this.idleEvictionThreshold = idleEvictionThreshold;
+    }
+
+    public UserProfileService(final BytesIn bytes, final UserProfileColdStore coldStore, final long idleEvictionThreshold) {
         this.userProfiles = SerializationUtils.readLongHashMap(bytes, UserProfile::new);
+        this.coldStore = coldStore;
+        this.idleEvictionThreshold = idleEvictionThreshold;
+        if (coldStore != null) {
+            userProfiles.forEachValue(this::lruAddFirst);
+        }
     }
 
     /**
@@ -57,11 +104,105 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return user profile
      */
     public UserProfile getUserProfile(long uid) {
+
+        if (coldStore == null) {
+            return userProfiles.get(uid);
+        }
+
+        UserProfile profile = userProfiles.get(uid);
+        if (profile != null) {
+            hotHits++;
+            lruRemove(profile);
+        } else {
+            profile = coldStore.remove(uid);
+            if (profile == null) {
+                misses++;
+                return null;
+            }
+            coldHits++;
+            userProfiles.put(uid, profile);
+        }
+        profile.lastAccessTick = currentTick;
+        lruAddFirst(profile);
+        return profile;
+    }
+
+    /**
+     * Find user profile without changing its tier and idle tracking (for background scans)
+     *
+     * @param uid uid
+     * @return hot user profile, or detached copy of evicted profile (should not be modified), or null if not found
+     */
+    public UserProfile peekUserProfile(long uid) {
+        final UserProfile profile = userProfiles.get(uid);
+        return (profile != null || coldStore == null) ? profile : coldStore.peek(uid);
+    }
+
+    /**
+     * Find user profile only if it is not evicted, without changing idle tracking
+     *
+     * @param uid uid
+     * @return hot user profile, or null if not found or evicted
+     */
+    public UserProfile peekHotUserProfile(long uid) {
         return userProfiles.get(uid);
     }
 
+    /**
+     * Iterate over all user profiles, including evicted ones (as detached copies, without faulting them in).
+     * Slow, intended for reports.
+     *
+     * @param consumer profiles consumer
+     */
+    public void forEachUserProfile(final Consumer<UserProfile> consumer) {
+        userProfiles.forEachValue(consumer::accept);
+        if (coldStore != null) {
+            coldStore.forEach(consumer);
+        }
+    }
+
+    /**
+     * Total number of user profiles (hot and cold)
+     *
+     * @return number of profiles
+     */
+    public int size() {
+        return userProfiles.size() + (coldStore != null ? coldStore.size() : 0);
+    }
+
+    /**
+     * Number of user profiles kept in memory
+     *
+     * @return number of hot profiles
+     */
+    public int hotSize() {
+        return userProfiles.size();
+    }
+
+    /**
+     * Move profiles not accessed during last idleEvictionThreshold ticks into the cold store.
+     * Amount of work per call is limited, so method should be called regularly (from R2 stage).
+     *
+     * @param tick current tick (for example command sequence), should only increase
+     */
+    public void evictIdleProfiles(final long tick) {
+        if (coldStore == null) {
+            return;
+        }
+        currentTick = tick;
+        final long idleBefore = tick - idleEvictionThreshold;
+        for (int i = 0; i < EVICTION_BATCH_LIMIT && lruTail != null && lruTail.lastAccessTick < idleBefore; i++) {
+            final UserProfile profile = lruTail;
+            lruRemove(profile);
+            userProfiles.remove(profile.uid);
+            coldStore.put(profile);
+            evictions++;
+        }
+    }
+
     public UserProfile getUserProfileOrAddSuspended(long uid) {
-        return userProfiles.getIfAbsentPut(uid, () -> new UserProfile(uid, UserStatus.SUSPENDED));
+        final UserProfile profile = getUserProfile(uid);
+        return profile != null ? profile : putNewProfile(uid, UserStatus.SUSPENDED);
     }
 
 
@@ -113,8 +254,8 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return true if user was added
      */
     public boolean addEmptyUserProfile(long uid) {
-        if (userProfiles.get(uid) == null) {
-            userProfiles.put(uid, new UserProfile(uid, UserStatus.ACTIVE));
+        if (getUserProfile(uid) == null) {
+            putNewProfile(uid, UserStatus.ACTIVE);
             return true;
         } else {
             log.debug("Can not add user, already exists: {}", uid);
@@ -134,7 +275,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return result code
      */
     public CommandResultCode suspendUserProfile(long uid) {
-        final UserProfile userProfile = userProfiles.get(uid);
+        final UserProfile userProfile = getUserProfile(uid);
         if (userProfile == null) {
             return CommandResultCode.USER_MGMT_USER_NOT_FOUND;
 
@@ -150,17 +291,20 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
         } else {
             log.debug("Suspended user profile: {}", userProfile);
             userProfiles.remove(uid);
+            if (coldStore != null) {
+                lruRemove(userProfile);
+            }
             // TODO pool UserProfile objects
             return CommandResultCode.SUCCESS;
         }
     }
 
     public CommandResultCode resumeUserProfile(long uid) {
-        final UserProfile userProfile = userProfiles.get(uid);
+        final UserProfile userProfile = getUserProfile(uid);
         if (userProfile == null) {
             // create new empty user profile
             // account balance adjustments should be applied later
-            userProfiles.put(uid, new UserProfile(uid, UserStatus.ACTIVE));
+            putNewProfile(uid, UserStatus.ACTIVE);
             return CommandResultCode.SUCCESS;
         } else if (userProfile.userStatus != UserStatus.SUSPENDED) {
             // attempt to resume non-suspended account (or resume twice)
@@ -173,23 +317,91 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
         }
     }
 
+    /**
+     * Releases cold store file (if eviction is enabled)
+     */
+    public void close() {
+        if (coldStore != null) {
+            coldStore.close();
+        }
+    }
+
     /**
      * Reset module - for testing only
      */
     public void reset() {
         userProfiles.clear();
+        if (coldStore != null) {
+            coldStore.clear();
+            lruHead = null;
+            lruTail = null;
+        }
     }
 
     @Override
     public void writeMarshallable(BytesOut bytes) {
 
-        // write symbolSpecs
-        SerializationUtils.marshallLongHashMap(userProfiles, bytes);
+        if (coldStore == null) {
+            SerializationUtils.marshallLongHashMap(userProfiles, bytes);
+        } else {
+            // same format as for single map, cold records are copied without de-serialization
+            bytes.writeInt(userProfiles.size() + coldStore.size());
+            userProfiles.forEachKeyValue((k, v) -> {
+                bytes.writeLong(k);
+                v.writeMarshallable(bytes);
+            });
+            coldStore.writeRecords(bytes);
+        }
     }
 
     @Override
     public int stateHash() {
-        return HashingUtils.stateHash(userProfiles);
+        if (coldStore == null) {
+            return HashingUtils.stateHash(userProfiles);
+        } else {
+            // same algorithm as HashingUtils.stateHash, so result does not depend on eviction
+            final MutableLong mutableLong = new MutableLong();
+            forEachUserProfile(profile -> mutableLong.addAndGet(Objects.hash(profile.uid, profile.stateHash())));
+            return Long.hashCode(mutableLong.value);
+        }
+    }
+
+    private UserProfile putNewProfile(final long uid, final UserStatus status) {
+        final UserProfile profile = new UserProfile(uid, status);
+        userProfiles.put(uid, profile);
+        if (coldStore != null) {
+            profile.lastAccessTick = currentTick;
+            lruAddFirst(profile);
+        }
+        return profile;
+    }
+
+    private void lruAddFirst(final UserProfile profile) {
+        profile.lruPrev = null;
+        profile.lruNext = lruHead;
+        if (lruHead != null) {
+            lruHead.lruPrev = profile;
+        } else {
+            lruTail = profile;
+        }
+        lruHead = profile;
+    }
+
+    private void lruRemove(final UserProfile profile) {
+        final UserProfile prev = profile.lruPrev;
+        final UserProfile next = profile.lruNext;
+        if (prev != null) {
+            prev.lruNext = next;
+        } else {
+            lruHead = next;
+        }
+        if (next != null) {
+            next.lruPrev = prev;
+        } else {
+            lruTail = prev;
+        }
+        profile.lruPrev = null;
+        profile.lruNext = null;
     }
 
 }
\ No newline at end of file
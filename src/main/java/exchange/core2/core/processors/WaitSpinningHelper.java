@@ -17,6 +17,8 @@ package exchange.core2.core.processors;
 
 import com.lmax.disruptor.*;
 import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
 import exchange.core2.core.utils.ReflectionUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,7 +43,21 @@ public final class WaitSpinningHelper {
     // next Disruptor release will have mutex (to avoid allocations)
     // private final Object mutex;
 
+    // phased backoff mode (one idle step per tryWaitFor call)
+    private final BackoffWaitStrategy backoffWaitStrategy;
+    private final StageBackoff stageBackoff;
+    private final Sequence cursorSequence;
+    private boolean idle = false;
+    private long idleStartNs;
+
     public <T> WaitSpinningHelper(RingBuffer<T> ringBuffer, SequenceBarrier sequenceBarrier, int spinLimit, CoreWaitStrategy waitStrategy) {
+        this(ringBuffer, sequenceBarrier, spinLimit, waitStrategy, null);
+    }
+
+    /**
+     * @param stageBackoff - backoff thresholds for PHASED_BACKOFF wait strategy (null - default)
+     */
+    public <T> WaitSpinningHelper(RingBuffer<T> ringBuffer, SequenceBarrier sequenceBarrier, int spinLimit, CoreWaitStrategy waitStrategy, StageBackoff stageBackoff) {
         this.sequenceBarrier = sequenceBarrier;
         this.spinLimit = spinLimit;
         this.sequencer = extractSequencer(ringBuffer);
@@ -57,11 +73,25 @@ public final class WaitSpinningHelper {
             this.lock = null;
             this.processorNotifyCondition = null;
         }
+
+        if (waitStrategy == CoreWaitStrategy.PHASED_BACKOFF) {
+            this.backoffWaitStrategy = ReflectionUtils.extractField(AbstractSequencer.class, (AbstractSequencer) sequencer, "waitStrategy");
+            this.cursorSequence = ReflectionUtils.extractField(AbstractSequencer.class, (AbstractSequencer) sequencer, "cursor");
+            this.stageBackoff = stageBackoff != null ? stageBackoff : WaitBackoffConfiguration.BALANCED;
+        } else {
+            this.backoffWaitStrategy = null;
+            this.cursorSequence = null;
+            this.stageBackoff = null;
+        }
     }
 
     public long tryWaitFor(final long seq) throws AlertException, InterruptedException {
         sequenceBarrier.checkAlert();
 
+        if (backoffWaitStrategy != null) {
+            return tryWaitForBackoff(seq);
+        }
+
         long spin = spinLimit;
         long availableSequence;
         while ((availableSequence = sequenceBarrier.getCursor()) < seq && spin > 0) {
@@ -94,9 +124,31 @@ public final class WaitSpinningHelper {
                 : sequencer.getHighestPublishedSequence(seq, availableSequence);
     }
 
+    private long tryWaitForBackoff(final long seq) throws AlertException, InterruptedException {
+
+        long availableSequence = sequenceBarrier.getCursor();
+        if (availableSequence < seq) {
+            final long t = System.nanoTime();
+            if (!idle) {
+                idle = true;
+                idleStartNs = t;
+            }
+            backoffWaitStrategy.idle(stageBackoff, t - idleStartNs, seq, cursorSequence, sequenceBarrier);
+            availableSequence = sequenceBarrier.getCursor();
+            if (availableSequence < seq) {
+                return availableSequence;
+            }
+        }
+
+        idle = false;
+        return sequencer.getHighestPublishedSequence(seq, availableSequence);
+    }
+
     public void signalAllWhenBlocking() {
         if (block) {
             blockingDisruptorWaitStrategy.signalAllWhenBlocking();
+        } else if (backoffWaitStrategy != null) {
+            backoffWaitStrategy.signalAllWhenBlocking();
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Portable asynchronous backend based on AsynchronousFileChannel (writes are performed by JDK I/O thread pool).
+ * Used as a fallback when io_uring is not available.
+ */
+public final class AsyncFileChannelJournalIoBackend implements IJournalIoBackend {
+
+    private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+
+    private AsynchronousFileChannel channel;
+    private boolean writeThrough;
+    private long position;
+
+    @Override
+    public void open(final Path file, final boolean writeThrough) throws IOException {
+        final OpenOption[] options = writeThrough
+                ? new OpenOption[]{StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW, StandardOpenOption.DSYNC}
+                : new OpenOption[]{StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW};
+        this.channel = AsynchronousFileChannel.open(file, options);
+        this.writeThrough = writeThrough;
+        this.position = 0;
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        // writing independent view, so caller is free to reset original buffer (but not to change its content)
+        final ByteBuffer slice = buffer.slice();
+        final long startPosition = position;
+        position += slice.remaining();
+        pendingWrites.add(new PendingWrite(slice, startPosition, channel.write(slice, startPosition)));
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        PendingWrite pending;
+        while ((pending = pendingWrites.poll()) != null) {
+            try {
+                pending.future.get();
+                // complete partial write
+                while (pending.slice.hasRemaining()) {
+                    channel.write(pending.slice, pending.startPosition + pending.slice.position()).get();
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for journal write", ex);
+            } catch (final ExecutionException ex) {
+                pendingWrites.clear();
+                throw new IOException("Journal write failed", ex.getCause());
+            }
+        }
+
+        if (!writeThrough) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static final class PendingWrite {
+        private final ByteBuffer slice;
+        private final long startPosition;
+        private final Future<Integer> future;
+
+        private PendingWrite(ByteBuffer slice, long startPosition, Future<Integer> future) {
+            this.slice = slice;
+            this.startPosition = startPosition;
+            this.future = future;
+        }
+    }
+}
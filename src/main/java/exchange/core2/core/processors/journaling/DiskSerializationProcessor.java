@@ -15,15 +15,17 @@
  */
 package exchange.core2.core.processors.journaling;
 
+import com.lmax.disruptor.Sequence;
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.BalanceAdjustmentType;
-import exchange.core2.core.common.OrderAction;
-import exchange.core2.core.common.OrderType;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration.StageBackoff;
+import exchange.core2.core.processors.BackoffWaitStrategy;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode;
 import lombok.extern.slf4j.Slf4j;
 import net.jpountz.lz4.*;
 import net.jpountz.xxhash.XXHashFactory;
@@ -33,17 +35,18 @@ import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import net.openhft.chronicle.wire.InputStreamToWire;
 import net.openhft.chronicle.wire.Wire;
 import net.openhft.chronicle.wire.WireType;
+import org.HdrHistogram.SingleWriterRecorder;
 import org.agrona.collections.MutableLong;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
@@ -60,13 +63,14 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     private final long baseSeq;
 
-    private final ByteBuffer journalWriteBuffer;
-    private final ByteBuffer lz4WriteBuffer;
+    // journal blocks: single block for INLINE_SYNC mode, ring of blocks for pipelined modes
+    private final JournalBlock[] journalBlocks;
+    private JournalBlock currentBlock;
+    private ByteBuffer journalWriteBuffer;
 
     // TODO configurable
     private final LZ4Compressor lz4CompressorSnapshot;
     private final LZ4Compressor lz4CompressorJournal;
-    private final LZ4SafeDecompressor lz4SafeDecompressor = LZ4Factory.fastestInstance().safeDecompressor();
 
     private ConcurrentSkipListMap<Long, SnapshotDescriptor> snapshotsIndex;
 
@@ -78,14 +82,42 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     private long enableJournalAfterSeq = -1;
 
-    private RandomAccessFile raf;
-    private FileChannel channel;
+    private final IJournalIoBackend ioBackend;
+    private boolean journalFileOpened = false;
+
+    // sparse index of current journal file (written by the same thread as journal file)
+    private final int journalIndexInterval;
+    private DataOutputStream journalIndexStream;
+    private long lastIndexedOffset;
 
     private int filesCounter = 0;
 
     private long writtenBytes = 0;
 
-    private static final int MAX_COMMAND_SIZE_BYTES = 256;
+    // metrics (single writer - journal thread or writer thread)
+    private volatile long journalWrittenBytes = 0;
+    private final SingleWriterRecorder syncLatencyRecorder = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
+
+    static final int MAX_COMMAND_SIZE_BYTES = 256;
+
+    private final JournalDurabilityMode durabilityMode;
+    private final ThreadFactory threadFactory;
+
+    // journal stage and writer thread are waiting for each other, results stage is waiting for durability
+    private final StageBackoff journalingBackoff;
+    private final BackoffWaitStrategy.IdleBackoff journalStageBackoff;
+    private final BackoffWaitStrategy.IdleBackoff durableAckBackoff;
+
+    // pipelined writer: journal stage publishes blocks, writer thread writes and forces them (group commit)
+    private final Sequence publishedBlocks = new Sequence(-1);
+    private final Sequence consumedBlocks = new Sequence(-1);
+    private long nextBlock = 0;
+    private volatile boolean writerRunning = false;
+    private volatile Throwable writerError = null;
+    private Thread writer;
+
+    // all journaled commands up to this disruptor sequence are durably stored
+    private final Sequence durableSequence = new Sequence(-1);
 
 //    private List<Integer> batchSizes = new ArrayList<>(100000);
 //    final SingleWriterRecorder hdrRecorderRaw = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
@@ -112,14 +144,33 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         this.journalBufferFlushTrigger = journalBufferSize - MAX_COMMAND_SIZE_BYTES; // less than max command size in bytes
         this.journalBatchCompressThreshold = diskConfig.getJournalBatchCompressThreshold();
+        this.journalIndexInterval = diskConfig.getJournalIndexInterval();
 
-        this.journalWriteBuffer = ByteBuffer.allocateDirect(journalBufferSize);
+        this.durabilityMode = diskConfig.getJournalDurabilityMode();
+        this.threadFactory = perfCfg.getThreadFactory();
+        this.journalingBackoff = perfCfg.getWaitBackoffCfg().getJournaling();
+        this.journalStageBackoff = new BackoffWaitStrategy.IdleBackoff(journalingBackoff);
+        this.durableAckBackoff = new BackoffWaitStrategy.IdleBackoff(perfCfg.getWaitBackoffCfg().getResults());
 
+        final int blocksNum = durabilityMode.isPipelined() ? diskConfig.getJournalWriterBuffersNum() : 1;
+        if (blocksNum < 2 && durabilityMode.isPipelined()) {
+            throw new IllegalArgumentException("Pipelined journal writer requires at least 2 buffers: " + blocksNum);
+        }
         this.lz4CompressorJournal = diskConfig.getJournalLz4CompressorFactory().get();
         this.lz4CompressorSnapshot = diskConfig.getSnapshotLz4CompressorFactory().get();
 
+        // every block has own compression buffer - asynchronous backends keep reading it until sync
         final int maxCompressedBlockLength = lz4CompressorJournal.maxCompressedLength(journalBufferSize);
-        this.lz4WriteBuffer = ByteBuffer.allocate(maxCompressedBlockLength);
+        this.journalBlocks = new JournalBlock[blocksNum];
+        for (int i = 0; i < blocksNum; i++) {
+            journalBlocks[i] = new JournalBlock(
+                    ByteBuffer.allocateDirect(journalBufferSize),
+                    ByteBuffer.allocateDirect(maxCompressedBlockLength));
+        }
+        this.currentBlock = journalBlocks[0];
+        this.journalWriteBuffer = currentBlock.buffer;
+
+        this.ioBackend = diskConfig.getJournalIoBackendFactory().get();
     }
 
     @Override
@@ -240,6 +291,10 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     @Override
     public void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException {
 
+        if (writerError != null) {
+            throw new IOException("Journal writer failed", writerError);
+        }
+
         // TODO improve checks logic
         // skip
         if (enableJournalAfterSeq == -1 || dSeq + baseSeq <= enableJournalAfterSeq) {
@@ -249,39 +304,73 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             log.info("Enabled journaling at seq = {} ({}+{})", enableJournalAfterSeq + 1, baseSeq, dSeq);
         }
 
-        boolean debug = false;
-
 //        log.debug("Writing {}", cmd);
 
         final OrderCommandType cmdType = cmd.command;
 
         if (cmdType == OrderCommandType.SHUTDOWN_SIGNAL) {
-            flushBufferSync(false, cmd.timestamp);
+            commitBlock(dSeq, cmd.timestamp, false);
+            stopWriter();
+            closeJournalFile();
             log.debug("Shutdown signal received, flushed to disk");
             return;
         }
 
         if (!cmdType.isMutate()) {
-            // skip queries
+            // skip queries, but commit pending commands if query completes the batch
+            if (eob && journalWriteBuffer.position() != 0) {
+                commitBlock(dSeq, cmd.timestamp, false);
+            }
             return;
         }
 
-        if (channel == null) {
-            startNewFile(cmd.timestamp);
+        final ByteBuffer buffer = journalWriteBuffer;
+
+        if (buffer.position() == 0) {
+            currentBlock.firstSeq = baseSeq + dSeq;
         }
 
-        final ByteBuffer buffer = journalWriteBuffer;
+        encodeCommand(buffer, cmd, baseSeq + dSeq);
+
+        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
+
+            // register snapshot change and start new file (when block is written)
+            currentBlock.nextSnapshotId = cmd.orderId;
+            currentBlock.nextSnapshotSeq = baseSeq + dSeq;
+
+            commitBlock(dSeq, cmd.timestamp, true);
+
+        } else if (cmdType == OrderCommandType.RESET) {
+
+            // forcing to start next journal file on reset (useful for testing)
+            commitBlock(dSeq, cmd.timestamp, true);
+
+        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
+
+            // flushing on end of batch or when buffer is full
+            commitBlock(dSeq, cmd.timestamp, false);
+        }
+
+    }
+
+    /**
+     * Encodes journal record of mutating command
+     *
+     * @param buffer - journal buffer
+     * @param cmd    - command
+     * @param seq    - command sequence
+     */
+    static void encodeCommand(final ByteBuffer buffer, final OrderCommand cmd, final long seq) {
+
+        final OrderCommandType cmdType = cmd.command;
 
         // mandatory fields
         buffer.put(cmdType.getCode()); // 1 byte
-        buffer.putLong(baseSeq + dSeq); // 8 bytes - can be compressed as delta
+        buffer.putLong(seq); // 8 bytes - can be compressed as delta
         buffer.putLong(cmd.timestamp); // 8 bytes - can be compressed as delta
         buffer.putInt(cmd.serviceFlags); // 4 bytes - can be compressed as dictionary
         buffer.putLong(cmd.eventsGroup); // 8 bytes - can be compressed as delta
 
-        if (debug)
-            log.debug("LOG {} eventsGroup={} serviceFlags={}", String.format("seq=%d t=%d cmd=%X (%s) ", baseSeq + dSeq, cmd.timestamp, cmdType.getCode(), cmdType), cmd.eventsGroup, cmd.serviceFlags);
-
         if (cmdType == OrderCommandType.MOVE_ORDER) {
 
             buffer.putLong(cmd.uid); // 8 bytes can be compressed as dictionary
@@ -289,16 +378,12 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
             buffer.putLong(cmd.price); // 8 bytes - can be compressed as delta
 
-            if (debug) log.debug("move order seq={} t={} orderId={} symbol={} uid={} price={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price);
-
         } else if (cmdType == OrderCommandType.CANCEL_ORDER) {
 
             buffer.putLong(cmd.uid); // 8 bytes can be compressed as dictionary
             buffer.putInt(cmd.symbol); // 4 bytes can be compressed as dictionary
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
 
-            if (debug) log.debug("cancel order seq={} t={} orderId={} symbol={} uid={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid);
-
         } else if (cmdType == OrderCommandType.REDUCE_ORDER) {
 
             buffer.putLong(cmd.uid); // 8 bytes can be compressed as dictionary
@@ -306,8 +391,6 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
             buffer.putLong(cmd.size); // 8 bytes - can be compressed as low value
 
-            if (debug) log.debug("reduce order seq={} t={} orderId={} symbol={} uid={} size={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.size);
-
         } else if (cmdType == OrderCommandType.PLACE_ORDER) {
 
             buffer.putLong(cmd.uid); // 8 bytes can be compressed as dictionary
@@ -322,9 +405,6 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             byte actionAndType1 = (byte) actionAndType;
             buffer.put(actionAndType1); // 1 byte
 
-            if (debug) log.debug("place order seq={} t={} orderId={} symbol={} uid={} price={} reserveBidPrice={} size={} userCookie={} {}/{} actionAndType={}",
-                    baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.userCookie, cmd.action, cmd.orderType, actionAndType1);
-
         } else if (cmdType == OrderCommandType.BALANCE_ADJUSTMENT) {
 
             buffer.putLong(cmd.uid); // 8 bytes can be compressed as dictionary
@@ -341,9 +421,6 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         } else if (cmdType == OrderCommandType.BINARY_DATA_COMMAND) {
 
-//            if (debug) log.debug("LOG BINARY_DATA_COMMAND {}", String.format("seq=%d f=%d word0=%X word1=%X word2=%X word3=%X word4=%X",
-//                    dSeq + baseSeq, (byte) cmd.symbol, cmd.orderId, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.uid));
-
             buffer.put((byte) cmd.symbol); // 1 byte (0 or -1)
             buffer.putLong(cmd.orderId); // 8 bytes word0
             buffer.putLong(cmd.price); // 8 bytes word1
@@ -355,29 +432,151 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //                cmdType == OrderCommandType.PERSIST_STATE_RISK) {
 //            buffer.putLong(cmd.orderId); // 8 bytes
         }
+    }
 
-        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
+    /**
+     * Completes current block: INLINE_SYNC mode - writes it synchronously,
+     * pipelined modes - publishes it to writer thread and switches to next free block.
+     */
+    private void commitBlock(final long dSeq, final long timestampNs, final boolean forceStartNextFile) throws IOException {
 
-            // register snapshot change
-            registerNextSnapshot(cmd.orderId, baseSeq + dSeq, cmd.timestamp);
+        final JournalBlock block = currentBlock;
+        block.lastSeq = dSeq;
+        block.timestampNs = timestampNs;
+        block.startNextFile = forceStartNextFile;
 
-            // start new file
-            baseSnapshotId = cmd.orderId;
-            filesCounter = 0;
+        if (!durabilityMode.isPipelined()) {
+            writeBlock(block);
+            syncJournal();
+            durableSequence.set(dSeq);
+            return;
+        }
 
-            flushBufferSync(true, cmd.timestamp);
+        publishedBlocks.set(nextBlock);
+        nextBlock++;
 
-        } else if (cmdType == OrderCommandType.RESET) {
+        if (!writerRunning) {
+            startWriter();
+        }
 
-            // forcing to start next journal file on reset (useful for testing)
-            flushBufferSync(true, cmd.timestamp);
+        // wait until writer releases next block
+        final long wrapPoint = nextBlock - journalBlocks.length;
+        journalStageBackoff.reset();
+        while (consumedBlocks.get() < wrapPoint) {
+            if (writerError != null) {
+                throw new IOException("Journal writer failed", writerError);
+            }
+            journalStageBackoff.idle();
+        }
 
-        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
+        currentBlock = journalBlocks[(int) (nextBlock % journalBlocks.length)];
+        currentBlock.nextSnapshotId = -1;
+        journalWriteBuffer = currentBlock.buffer;
+        journalWriteBuffer.clear();
+    }
 
-            // flushing on end of batch or when buffer is full
-            flushBufferSync(false, cmd.timestamp);
+    private void startWriter() {
+        writerRunning = true;
+        writer = threadFactory.newThread(this::writerLoop);
+        writer.setName("journal-writer-" + exchangeId);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void stopWriter() {
+        if (writer != null) {
+            writerRunning = false;
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
         }
+    }
 
+    /**
+     * Writer thread: writes all published blocks, then forces them to disk at once (group commit)
+     */
+    private void writerLoop() {
+
+        long nextToWrite = consumedBlocks.get() + 1;
+        final BackoffWaitStrategy.IdleBackoff backoff = new BackoffWaitStrategy.IdleBackoff(journalingBackoff);
+
+        try {
+            while (true) {
+
+                final long available = publishedBlocks.get();
+                if (available >= nextToWrite) {
+                    for (long s = nextToWrite; s <= available; s++) {
+                        writeBlock(journalBlocks[(int) (s % journalBlocks.length)]);
+                    }
+                    syncJournal();
+                    durableSequence.set(journalBlocks[(int) (available % journalBlocks.length)].lastSeq);
+                    consumedBlocks.set(available);
+                    nextToWrite = available + 1;
+                    backoff.reset();
+                    continue;
+                }
+
+                if (!writerRunning) {
+                    if (publishedBlocks.get() < nextToWrite) {
+                        break;
+                    }
+                    continue;
+                }
+
+                backoff.idle();
+            }
+        } catch (final Throwable ex) {
+            log.error("Journal writer failed", ex);
+            writerError = ex;
+        }
+
+        log.debug("Journal writer stopped, durable sequence={}", durableSequence.get());
+    }
+
+    private void syncJournal() throws IOException {
+        final long t = System.nanoTime();
+        ioBackend.sync();
+        syncLatencyRecorder.recordValue(Math.min(System.nanoTime() - t, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public boolean isDurableAckRequired() {
+        return durabilityMode == JournalDurabilityMode.PIPELINED_DURABLE_ACK;
+    }
+
+    @Override
+    public void awaitDurable(final long dSeq) {
+
+        // commands replayed before journaling was enabled are not journaled
+        if (enableJournalAfterSeq == -1 || dSeq + baseSeq <= enableJournalAfterSeq) {
+            return;
+        }
+
+        durableAckBackoff.reset();
+        while (durableSequence.get() < dSeq) {
+            if (writerError != null) {
+                throw new IllegalStateException("Journal writer failed", writerError);
+            }
+            durableAckBackoff.idle();
+        }
+    }
+
+    @Override
+    public long getJournalWrittenBytes() {
+        return journalWrittenBytes;
+    }
+
+    @Override
+    public SingleWriterRecorder getJournalSyncLatencyRecorder() {
+        return syncLatencyRecorder;
+    }
+
+    @Override
+    public long getDurableSequence() {
+        return durableSequence.get();
     }
 
     @Override
@@ -400,7 +599,18 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     @Override
     public void replayJournalStep(long snapshotId, long seqFrom, long seqTo, ExchangeApi exchangeApi) {
-        throw new UnsupportedOperationException();
+
+        log.debug("Replaying journal of snapshot {} from seq={} to seq={}...", snapshotId, seqFrom, seqTo);
+
+        exchangeApi.groupingControl(0, 0);
+
+        try {
+            final long lastSeq = new JournalReader().readRange(folder, exchangeId, snapshotId, seqFrom, seqTo,
+                    (seq, cmd) -> replayCommand(cmd, exchangeApi));
+            log.debug("Replayed journal up to seq={}", lastSeq);
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not replay journal of snapshot " + snapshotId, ex);
+        }
     }
 
     @Override
@@ -418,6 +628,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
 
         final MutableLong lastSeq = new MutableLong();
+        final JournalReader reader = new JournalReader();
         // TODO refactor reading, use EOF flag
 
         int partitionCounter = 1;
@@ -430,7 +641,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
                  final BufferedInputStream bis = new BufferedInputStream(fis);
                  final DataInputStream dis = new DataInputStream(bis)) {
 
-                readCommands(dis, api, lastSeq, false);
+                reader.readCommands(dis, lastSeq, (seq, cmd) -> replayCommand(cmd, api));
                 partitionCounter++;
                 log.debug("File end reached, try next partition {}...", partitionCounter);
 
@@ -446,189 +657,73 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     }
 
 
-    private void readCommands(final DataInputStream jr,
-                              final ExchangeApi api,
-                              final MutableLong lastSeq,
-                              boolean insideCompressedBlock) throws IOException {
-
-        while (jr.available() != 0) {
-
-            boolean debug = false;
-//            boolean debug = insideCompressedBlock;
-
-            final byte cmd = jr.readByte();
-
-            if (debug) log.debug("COMPR STEP lastSeq={} ", lastSeq);
-
-            if (cmd == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
-
-                if (insideCompressedBlock) {
-                    throw new IllegalStateException("Recursive compression block (data corrupted)");
-                }
-
-                int size = jr.readInt();
-                int origSize = jr.readInt();
-
-//                log.debug("{}->{}", size, origSize);
-
-                if (size > 1000000) {
-                    throw new IllegalStateException("Bad compressed block size = " + size + "(data corrupted)");
-                }
-
-                if (origSize > 1000000) {
-                    throw new IllegalStateException("Bad original block size = " + size + "(data corrupted)");
-                }
-
-                byte[] compressedArray = new byte[size];
-                int read = jr.read(compressedArray);
-                if (read < size) {
-                    throw new IOException("Can not read full block (only " + read + " bytes, not all " + size + " bytes) ");
-                }
-
-//                log.debug("Decoding block {}", origSize);
-                byte[] originalArray = lz4SafeDecompressor.decompress(compressedArray, origSize);
-
-                // read compressed block recursively
-                try (final ByteArrayInputStream bis = new ByteArrayInputStream(originalArray);
-                     final DataInputStream dis = new DataInputStream(bis)) {
-
-                    readCommands(dis, api, lastSeq, true);
-                }
-
-            } else {
-
-                final long seq = jr.readLong();
-
-                final long timestampNs = jr.readLong();
-                final int serviceFlags = jr.readInt();
-                final long eventsGroup = jr.readLong();
-                final OrderCommandType cmdType = OrderCommandType.fromCode(cmd);
-
-                if (seq != lastSeq.value + 1) {
-                    log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
-//                    log.debug("timestampNs={} eventsGroup={} serviceFlags={} cmdType={}", timestampNs, eventsGroup, serviceFlags, cmdType);
-                }
-
-                lastSeq.value = seq;
-
-//                log.debug("command seq={} {}", lastSeq, cmdType);
-
-                if (debug) log.debug("eventsGroup={} serviceFlags={} cmdType={}", eventsGroup, serviceFlags, cmdType);
-
-                if (cmdType == OrderCommandType.MOVE_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long price = jr.readLong(); // 8 bytes - can be compressed as delta
-
-                    if (debug) log.debug("move order seq={} t={} orderId={} symbol={} uid={} price={}", lastSeq, timestampNs, orderId, symbol, uid, price);
-
-                    api.moveOrder(serviceFlags, eventsGroup, timestampNs, price, orderId, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.CANCEL_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-
-                    if (debug) log.debug("cancel order seq={} t={} orderId={} symbol={} uid={}", lastSeq, timestampNs, orderId, symbol, uid);
-
-                    api.cancelOrder(serviceFlags, eventsGroup, timestampNs, orderId, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.REDUCE_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long reduceSize = jr.readLong(); // 8 bytes - can be compressed as low value
-
-                    if (debug) log.debug("reduce order seq={} t={} orderId={} symbol={} uid={} reduceSize={}", lastSeq, timestampNs, orderId, symbol, uid, reduceSize);
-
-                    api.reduceOrder(serviceFlags, eventsGroup, timestampNs, reduceSize, orderId, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.PLACE_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long price = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long reservedBidPrice = jr.readLong(); // 8 bytes - can be compressed (diff to price or 0)
-                    final long size = jr.readLong(); // 8 bytes - can be compressed
-                    final int userCookie = jr.readInt(); // 4 bytes can be compressed as a optional low value
-
-                    final byte actionAndType = jr.readByte(); // 1 byte
-                    final OrderAction orderAction = OrderAction.of((byte) (actionAndType & 0b1));
-                    final OrderType orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
-
-                    if (debug)
-                        log.debug("place order seq={} t={} orderId={} symbol={} uid={} price={} reserveBidPrice={} size={} userCookie={} {}/{} actionAndType={}", lastSeq, timestampNs, orderId, symbol, uid, price, reservedBidPrice, size, userCookie, orderAction, orderType, actionAndType);
-
-                    api.placeNewOrder(serviceFlags, eventsGroup, timestampNs, orderId, userCookie, price, reservedBidPrice, size, orderAction, orderType, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.BALANCE_ADJUSTMENT) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int currency = jr.readInt();// 4 bytes can be compressed as dictionary (currency)
-                    final long transactionId = jr.readLong(); // 8 bytes can be compressed as delta (transaction)
-                    final long amount = jr.readLong(); // 8 bytes - can be compressed as low value (amount)
-                    final BalanceAdjustmentType adjustmentType = BalanceAdjustmentType.of(jr.readByte()); // 1 byte (adjustment or suspend)
-
-                    if (debug) log.debug("balanceAdjustment seq={}  {} uid:{} curre:{}", lastSeq, timestampNs, uid, currency);
-
-                    api.balanceAdjustment(serviceFlags, eventsGroup, timestampNs, uid, transactionId, currency, amount, adjustmentType);
-
-                } else if (cmdType == OrderCommandType.ADD_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("add user  seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.createUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.SUSPEND_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("suspend user seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.suspendUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.RESUME_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("resume user seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.resumeUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.BINARY_DATA_COMMAND) {
-
-                    final byte lastFlag = jr.readByte(); // 1 byte (0 or -1)
-                    final long word0 = jr.readLong(); // 8 bytes word0
-                    final long word1 = jr.readLong(); // 8 bytes word1
-                    final long word2 = jr.readLong(); // 8 bytes word2
-                    final long word3 = jr.readLong(); // 8 bytes word3
-                    final long word4 = jr.readLong(); // 8 bytes word4
-
-                    if (debug)
-                        log.debug("binary data seq={} t:{} {}", lastSeq, timestampNs, String.format("f=%d word0=%X word1=%X word2=%X word3=%X word4=%X", lastFlag, word0, word1, word2, word3, word4));
-
-                    api.binaryData(serviceFlags, eventsGroup, timestampNs, lastFlag, word0, word1, word2, word3, word4);
-
-                } else if (cmdType == OrderCommandType.RESET) {
-
-                    api.reset(timestampNs);
-
-                } else {
-
-                    log.debug("eventsGroup={} serviceFlags={} cmdType={}", eventsGroup, serviceFlags, cmdType);
-
-                    throw new IllegalStateException("unexpected command");
-                }
-            }
+    /**
+     * Publishes journaled command into exchange pipeline (original timestamp, events group and service flags are preserved).
+     * Persist state commands are ignored - snapshots are not re-created during replay.
+     *
+     * @param cmd - journaled command
+     * @param api - exchange api
+     * @return always true (reading can be continued)
+     */
+    public static boolean replayCommand(final OrderCommand cmd, final ExchangeApi api) {
+
+        final int serviceFlags = cmd.serviceFlags;
+        final long eventsGroup = cmd.eventsGroup;
+        final long timestampNs = cmd.timestamp;
+
+        switch (cmd.command) {
+            case MOVE_ORDER:
+                api.moveOrder(serviceFlags, eventsGroup, timestampNs, cmd.price, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
+
+            case CANCEL_ORDER:
+                api.cancelOrder(serviceFlags, eventsGroup, timestampNs, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
+
+            case REDUCE_ORDER:
+                api.reduceOrder(serviceFlags, eventsGroup, timestampNs, cmd.size, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
+
+            case PLACE_ORDER:
+                api.placeNewOrder(serviceFlags, eventsGroup, timestampNs, cmd.orderId, cmd.userCookie, cmd.price,
+                        cmd.reserveBidPrice, cmd.size, cmd.action, cmd.orderType, cmd.symbol, cmd.uid);
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                api.balanceAdjustment(serviceFlags, eventsGroup, timestampNs, cmd.uid, cmd.orderId, cmd.symbol, cmd.price,
+                        BalanceAdjustmentType.of(cmd.orderType.getCode()));
+                break;
+
+            case ADD_USER:
+                api.createUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
+
+            case SUSPEND_USER:
+                api.suspendUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
+
+            case RESUME_USER:
+                api.resumeUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
+
+            case BINARY_DATA_COMMAND:
+                api.binaryData(serviceFlags, eventsGroup, timestampNs, (byte) cmd.symbol,
+                        cmd.orderId, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.uid);
+                break;
+
+            case RESET:
+                api.reset(timestampNs);
+                break;
+
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                // snapshots are not re-created during replay
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected command " + cmd.command);
         }
-
+        return true;
     }
 
 
@@ -646,7 +741,21 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         return exists;
     }
 
-    private void flushBufferSync(final boolean forceStartNextFile, final long timestampNs) throws IOException {
+    /**
+     * Writes block into journal file (journal thread in INLINE_SYNC mode, writer thread in pipelined modes)
+     */
+    private void writeBlock(final JournalBlock block) throws IOException {
+
+        final ByteBuffer journalWriteBuffer = block.buffer;
+        final long timestampNs = block.timestampNs;
+
+        if (journalWriteBuffer.position() == 0 && !block.startNextFile) {
+            return;
+        }
+
+        if (!journalFileOpened) {
+            startNewFile(timestampNs);
+        }
 
 //        log.debug("Flushing buffer position={}", buffer.position());
 
@@ -656,18 +765,28 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //            batchSizes = new ArrayList<>();
 //        }
 
+        if (journalWriteBuffer.position() != 0 && (writtenBytes == 0 || writtenBytes - lastIndexedOffset >= journalIndexInterval)) {
+            // sparse index: batch offset is known before compression
+            JournalSegmentIndex.writeEntry(journalIndexStream, block.firstSeq, writtenBytes);
+            journalIndexStream.flush();
+            lastIndexedOffset = writtenBytes;
+        }
+
         if (journalWriteBuffer.position() < journalBatchCompressThreshold) {
             // uncompressed write for single messages or small batches
             writtenBytes += journalWriteBuffer.position();
+            journalWrittenBytes += journalWriteBuffer.position();
             journalWriteBuffer.flip();
 //            long t = System.nanoTime();
-            channel.write(journalWriteBuffer);
+            ioBackend.write(journalWriteBuffer);
 //            hdrRecorderRaw.recordValue(System.nanoTime() - t);
             journalWriteBuffer.clear();
 
         } else {
             // compressed write for bigger batches
 //            long t = System.nanoTime();
+            final ByteBuffer lz4WriteBuffer = block.lz4Buffer;
+            lz4WriteBuffer.clear();
             int originalLength = journalWriteBuffer.position(); // commands code
             journalWriteBuffer.flip();
             lz4WriteBuffer.put(OrderCommandType.RESERVED_COMPRESSED.getCode()); // compressed block
@@ -676,32 +795,35 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             lz4CompressorJournal.compress(journalWriteBuffer, lz4WriteBuffer);
             journalWriteBuffer.clear();
             writtenBytes += lz4WriteBuffer.position();
+            journalWrittenBytes += lz4WriteBuffer.position();
             int remainingCompressedLength = lz4WriteBuffer.position() - 9; // 1 + 4 + 4
             lz4WriteBuffer.putInt(1, remainingCompressedLength); // 1 byte offset
             lz4WriteBuffer.putInt(5, originalLength); // 1 + 4 bytes offset
             lz4WriteBuffer.flip();
 //            hdrRecorderLz4.recordValue(System.nanoTime() - t);
-            channel.write(lz4WriteBuffer);
-            lz4WriteBuffer.clear();
+            ioBackend.write(lz4WriteBuffer);
+        }
+
+        if (block.nextSnapshotId != -1) {
+            // register snapshot change, next files are related to new snapshot
+            registerNextSnapshot(block.nextSnapshotId, block.nextSnapshotSeq, timestampNs);
+            baseSnapshotId = block.nextSnapshotId;
+            filesCounter = 0;
         }
 
-        if (forceStartNextFile || writtenBytes >= journalFileMaxSize) {
+        if (block.startNextFile || writtenBytes >= journalFileMaxSize) {
 
 //            log.info("RAW {}", LatencyTools.createLatencyReportFast(hdrRecorderRaw.getIntervalHistogram()));
 //            log.info("LZ4-compression {}", LatencyTools.createLatencyReportFast(hdrRecorderLz4.getIntervalHistogram()));
 
             // todo start preparing new file asynchronously, but ONLY ONCE
             startNewFile(timestampNs);
-            writtenBytes = 0;
         }
     }
 
     private void startNewFile(final long timestampNs) throws IOException {
         filesCounter++;
-        if (channel != null) {
-            channel.close();
-            raf.close();
-        }
+        closeJournalFile();
         final Path fileName = resolveJournalPath(filesCounter, baseSnapshotId);
 //        log.debug("Starting new journal file: {}", fileName);
 
@@ -709,12 +831,26 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             throw new IllegalStateException("File already exists: " + fileName);
         }
 
-        raf = new RandomAccessFile(fileName.toString(), "rwd");
-        channel = raf.getChannel();
+        // pipelined writer syncs groups of blocks, otherwise every write is durable (O_DSYNC)
+        ioBackend.open(fileName, !durabilityMode.isPipelined());
+        journalFileOpened = true;
+        writtenBytes = 0;
+
+        journalIndexStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                resolveJournalIndexPath(folder, exchangeId, baseSnapshotId, filesCounter), StandardOpenOption.CREATE_NEW)));
+        lastIndexedOffset = 0;
 
         registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
     }
 
+    private void closeJournalFile() throws IOException {
+        if (journalFileOpened) {
+            ioBackend.close();
+            journalIndexStream.close();
+            journalFileOpened = false;
+        }
+    }
+
     /**
      * call only from journal thread
      *
@@ -741,16 +877,51 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         lastSnapshotDescriptor = lastSnapshotDescriptor.createNext(snapshotId, seq, timestampNs);
     }
 
+    private static final class JournalBlock {
+
+        private final ByteBuffer buffer;
+        private final ByteBuffer lz4Buffer;
+
+        // sequence of the first command in this block
+        private long firstSeq;
+
+        // last disruptor sequence covered by this block
+        private long lastSeq;
+        private long timestampNs;
+        private boolean startNextFile;
+
+        // snapshot registered by this block (-1 if none)
+        private long nextSnapshotId = -1;
+        private long nextSnapshotSeq;
+
+        private JournalBlock(ByteBuffer buffer, ByteBuffer lz4Buffer) {
+            this.buffer = buffer;
+            this.lz4Buffer = lz4Buffer;
+        }
+    }
+
     private Path resolveSnapshotPath(long snapshotId, SerializedModuleType type, int instanceId) {
 
         return folder.resolve(String.format("%s_snapshot_%d_%s%d.ecs", exchangeId, snapshotId, type.code, instanceId));
     }
 
     private Path resolveMainLogPath() {
+        return resolveMainLogPath(folder, exchangeId);
+    }
+
+    public static Path resolveMainLogPath(Path folder, String exchangeId) {
         return folder.resolve(String.format("%s.eca", exchangeId));
     }
 
     private Path resolveJournalPath(int partitionId, long snapshotId) {
+        return resolveJournalPath(folder, exchangeId, snapshotId, partitionId);
+    }
+
+    public static Path resolveJournalPath(Path folder, String exchangeId, long snapshotId, int partitionId) {
         return folder.resolve(String.format("%s_journal_%d_%04X.ecj", exchangeId, snapshotId, partitionId));
     }
+
+    public static Path resolveJournalIndexPath(Path folder, String exchangeId, long snapshotId, int partitionId) {
+        return folder.resolve(String.format("%s_journal_%d_%04X.eci", exchangeId, snapshotId, partitionId));
+    }
 }
@@ -21,6 +21,10 @@ public class DiskSerializationProcessorConfiguration {
     public static final Supplier<LZ4Compressor> LZ4_FAST = () -> LZ4Factory.fastestInstance().fastCompressor();
     public static final Supplier<LZ4Compressor> LZ4_HIGH = () -> LZ4Factory.fastestInstance().highCompressor();
 
+    public static final Supplier<IJournalIoBackend> IO_FILE_CHANNEL = FileChannelJournalIoBackend::new;
+    public static final Supplier<IJournalIoBackend> IO_ASYNC_FILE_CHANNEL = AsyncFileChannelJournalIoBackend::new;
+    public static final Supplier<IJournalIoBackend> IO_URING = IoUringJournalIoBackend::createOrFallback;
+
     private final String storageFolder;
 
     // -------- snapshot settings ---------------
@@ -39,19 +43,68 @@ public class DiskSerializationProcessorConfiguration {
     // under moderate load for single messages compression is never used
     private final int journalBatchCompressThreshold;
 
+    // minimal distance (in bytes) between journal file offsets recorded in sparse index (seq -> batch offset)
+    // smaller values make random-access replay faster, index entry takes 16 bytes
+    private final int journalIndexInterval;
+
     // Journals LZ4 compressor
     // note: using LZ4 HIGH is not recommended because of very high impact on throughput
     private final Supplier<LZ4Compressor> journalLz4CompressorFactory;
 
+    // journal write mode and acknowledgements durability guarantee
+    private final JournalDurabilityMode journalDurabilityMode;
+
+    // number of journal buffers for pipelined modes (journal stage encodes into one buffer while writer thread writes others)
+    private final int journalWriterBuffersNum;
+
+    // journal files I/O backend (io_uring falls back to AsynchronousFileChannel if not supported)
+    private final Supplier<IJournalIoBackend> journalIoBackendFactory;
+
     public static DiskSerializationProcessorConfiguration createDefaultConfig() {
+        return createConfig(JournalDurabilityMode.INLINE_SYNC);
+    }
+
+    public static DiskSerializationProcessorConfiguration createConfig(final JournalDurabilityMode durabilityMode) {
+        return createConfig(durabilityMode, IO_FILE_CHANNEL);
+    }
+
+    public static DiskSerializationProcessorConfiguration createConfig(final JournalDurabilityMode durabilityMode,
+                                                                       final Supplier<IJournalIoBackend> ioBackendFactory) {
+        return createConfig(DEFAULT_FOLDER, durabilityMode, ioBackendFactory);
+    }
+
+    public static DiskSerializationProcessorConfiguration createConfig(final String storageFolder,
+                                                                       final JournalDurabilityMode durabilityMode,
+                                                                       final Supplier<IJournalIoBackend> ioBackendFactory) {
 
         return DiskSerializationProcessorConfiguration.builder()
-                .storageFolder(DEFAULT_FOLDER)
+                .storageFolder(storageFolder)
                 .snapshotLz4CompressorFactory(LZ4_FAST)
                 .journalFileMaxSize(4000 * ONE_MEGABYTE)
                 .journalBufferSize(256 * 1024) // 256 KB - TODO calculate based on ringBufferSize
                 .journalBatchCompressThreshold(2048)
+                .journalIndexInterval(64 * 1024)
                 .journalLz4CompressorFactory(LZ4_FAST)
+                .journalDurabilityMode(durabilityMode)
+                .journalWriterBuffersNum(3)
+                .journalIoBackendFactory(ioBackendFactory)
                 .build();
     }
+
+    public enum JournalDurabilityMode {
+
+        // journal stage compresses and writes synchronously (file opened in "rwd" mode) - results are waiting for disk writes
+        INLINE_SYNC,
+
+        // journal stage hands buffers to writer thread, writer thread compresses, writes and forces groups of buffers;
+        // results are not waiting for disk writes (commands can be lost if process crashes)
+        PIPELINED_ASYNC,
+
+        // same as PIPELINED_ASYNC, but results of journaled commands are published only after reaching durable sequence
+        PIPELINED_DURABLE_ACK;
+
+        public boolean isPipelined() {
+            return this != INLINE_SYNC;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Synchronous FileChannel backend - every write is blocking.
+ */
+public final class FileChannelJournalIoBackend implements IJournalIoBackend {
+
+    private FileChannel channel;
+    private boolean writeThrough;
+
+    @Override
+    public void open(final Path file, final boolean writeThrough) throws IOException {
+        final OpenOption[] options = writeThrough
+                ? new OpenOption[]{StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW, StandardOpenOption.DSYNC}
+                : new OpenOption[]{StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW};
+        this.channel = FileChannel.open(file, options);
+        this.writeThrough = writeThrough;
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (channel != null && !writeThrough) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+}
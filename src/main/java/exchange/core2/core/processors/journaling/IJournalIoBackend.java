@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Journal file I/O backend.
+ * <p>
+ * Writes are appended to the end of current journal file and can be performed asynchronously:
+ * content of submitted buffer must not be modified until {@link #sync()} returns.
+ * Single-threaded - all methods are called from the same (journal writer) thread.
+ */
+public interface IJournalIoBackend {
+
+    /**
+     * Create new journal file (previous file should be closed)
+     *
+     * @param file         - file path (must not exist)
+     * @param writeThrough - if true, every write is durable when completed (O_DSYNC), otherwise sync is required
+     * @throws IOException if file can not be created
+     */
+    void open(Path file, boolean writeThrough) throws IOException;
+
+    /**
+     * Submit write of buffer remaining bytes
+     *
+     * @param buffer - buffer (direct buffer), must not be modified until sync
+     * @throws IOException if write can not be submitted or previous write failed
+     */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Wait until all submitted writes are completed and durably stored
+     *
+     * @throws IOException if any write failed
+     */
+    void sync() throws IOException;
+
+    /**
+     * Sync and close current file (if opened), release resources
+     *
+     * @throws IOException if any write failed
+     */
+    void close() throws IOException;
+
+}
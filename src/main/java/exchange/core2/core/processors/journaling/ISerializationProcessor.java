@@ -21,6 +21,7 @@ import exchange.core2.core.common.config.InitialStateConfiguration;
 import lombok.AllArgsConstructor;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.HdrHistogram.SingleWriterRecorder;
 
 import java.io.IOException;
 import java.util.NavigableMap;
@@ -70,11 +71,52 @@ public interface ISerializationProcessor {
      *
      * @param cmd  - command to write
      * @param dSeq - disruptor sequence
-     * @param eob  - if true, journal should commit all previous data synchronously
+     * @param eob  - if true, journal should commit all previous data (synchronously, or hand it over to writer thread)
      * @throws IOException - can throw in case of writing issue (will stop exchange core from responding)
      */
     void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException;
 
+    /**
+     * If true, results of journaled commands should be published only after they are durably stored
+     *
+     * @return true if acknowledgements should wait for {@link #awaitDurable(long)}
+     */
+    default boolean isDurableAckRequired() {
+        return false;
+    }
+
+    /**
+     * Wait until command is durably stored in journal (returns immediately for commands not written into journal).<p>
+     * Called from results handler thread.
+     *
+     * @param dSeq - disruptor sequence
+     */
+    default void awaitDurable(long dSeq) {
+    }
+
+    /**
+     * @return disruptor sequence, all journaled commands up to it are durably stored (-1 if none)
+     */
+    default long getDurableSequence() {
+        return -1;
+    }
+
+    /**
+     * @return total number of bytes written into journal files (after compression)
+     */
+    default long getJournalWrittenBytes() {
+        return 0;
+    }
+
+    /**
+     * Journal sync (fsync) latency recorder, interval histograms are taken by metrics monitor.
+     *
+     * @return sync latency recorder (nanoseconds), or null if journal is not synced
+     */
+    default SingleWriterRecorder getJournalSyncLatencyRecorder() {
+        return null;
+    }
+
 
     /**
      * Activate journal
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import com.sun.jna.Function;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Linux io_uring backend (called through JNA, no liburing required).
+ * <p>
+ * Every write is submitted to the kernel immediately without waiting for completion,
+ * sync submits IORING_OP_FSYNC (datasync) with IOSQE_IO_DRAIN flag, so it is executed after all previous writes,
+ * and waits for all completions in one io_uring_enter call.
+ * Completion user_data carries expected length (or FSYNC_USER_DATA), short write is reported as an error.
+ * <p>
+ * Ring is created lazily when file is opened and destroyed when file is closed.
+ * Use {@link #createOrFallback()} to get AsynchronousFileChannel backend on systems without io_uring
+ * or without required operations (IORING_OP_WRITE requires Linux 5.6+).
+ */
+@Slf4j
+public final class IoUringJournalIoBackend implements IJournalIoBackend {
+
+    private static final int DEFAULT_RING_ENTRIES = 64;
+
+    // io_uring syscall numbers are the same for all architectures
+    private static final long SYS_IO_URING_SETUP = 425;
+    private static final long SYS_IO_URING_ENTER = 426;
+    private static final long SYS_IO_URING_REGISTER = 427;
+
+    private static final int IORING_FEAT_SINGLE_MMAP = 1;
+    private static final long IORING_OFF_SQ_RING = 0L;
+    private static final long IORING_OFF_CQ_RING = 0x8000000L;
+    private static final long IORING_OFF_SQES = 0x10000000L;
+    private static final int IORING_ENTER_GETEVENTS = 1;
+    private static final long IORING_REGISTER_PROBE = 8;
+
+    private static final byte IORING_OP_FSYNC = 3;
+    private static final byte IORING_OP_WRITE = 23;
+    private static final byte IOSQE_IO_DRAIN = 2;
+    private static final int IORING_FSYNC_DATASYNC = 1;
+
+    private static final int PROT_READ_WRITE = 0x1 | 0x2;
+    private static final int MAP_SHARED_POPULATE = 0x01 | 0x8000;
+
+    private static final int O_WRONLY = 01;
+    private static final int O_CREAT = 0100;
+    private static final int O_EXCL = 0200;
+    private static final int O_DSYNC = 010000;
+    private static final int O_CLOEXEC = 02000000;
+    private static final int FILE_MODE = 0644;
+    private static final int EEXIST = 17;
+    private static final int EINTR = 4;
+
+    // struct io_uring_params
+    private static final int PARAMS_SIZE = 120;
+    private static final int PARAMS_SQ_ENTRIES = 0;
+    private static final int PARAMS_CQ_ENTRIES = 4;
+    private static final int PARAMS_FEATURES = 20;
+    private static final int PARAMS_SQ_OFF = 40;
+    private static final int PARAMS_CQ_OFF = 80;
+
+    private static final int SQE_SIZE = 64;
+    private static final int CQE_SIZE = 16;
+
+    // struct io_uring_probe (header followed by io_uring_probe_op entries)
+    private static final int PROBE_OPS_NUM = 256;
+    private static final int PROBE_HEADER_SIZE = 16;
+    private static final int PROBE_OP_SIZE = 8;
+    private static final int PROBE_LAST_OP = 0;
+    private static final int PROBE_OP_FLAGS = 2;
+    private static final int IO_URING_OP_SUPPORTED = 1;
+
+    private static final long FSYNC_USER_DATA = -1L;
+
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static volatile LibC libC;
+
+    private final int ringEntries;
+
+    // ring state (valid while ringFd >= 0)
+    private int ringFd = -1;
+    private Pointer sqRingPtr;
+    private long sqRingSize;
+    private Pointer cqRingPtr;
+    private long cqRingSize;
+    private Pointer sqesPtr;
+    private long sqesSize;
+    private ByteBuffer sqRing;
+    private ByteBuffer cqRing;
+    private int sqHeadOff;
+    private int sqTailOff;
+    private int sqMask;
+    private int sqArrayOff;
+    private int cqHeadOff;
+    private int cqTailOff;
+    private int cqMask;
+    private int cqesOff;
+
+    private int sqTail;
+    private int inFlight;
+
+    // buffers referenced by in-flight writes (prevents deallocation)
+    private final List<ByteBuffer> inFlightBuffers = new ArrayList<>();
+    private IOException pendingError;
+
+    // file state
+    private int fileFd = -1;
+    private boolean writeThrough;
+    private long position;
+
+    public IoUringJournalIoBackend() {
+        this(DEFAULT_RING_ENTRIES);
+    }
+
+    public IoUringJournalIoBackend(final int ringEntries) {
+        if (Integer.bitCount(ringEntries) != 1) {
+            throw new IllegalArgumentException("Ring entries number must be power of 2: " + ringEntries);
+        }
+        this.ringEntries = ringEntries;
+    }
+
+    /**
+     * Creates io_uring backend if supported by current system, otherwise AsynchronousFileChannel backend
+     *
+     * @return journal I/O backend
+     */
+    public static IJournalIoBackend createOrFallback() {
+        final IoUringJournalIoBackend backend = new IoUringJournalIoBackend();
+        try {
+            backend.setupRing();
+            try {
+                backend.checkOpcodesSupported();
+            } finally {
+                backend.destroyRing();
+            }
+            return backend;
+        } catch (final IOException | UnsatisfiedLinkError | UnsupportedOperationException ex) {
+            log.warn("io_uring is not available ({}), using AsynchronousFileChannel for journaling", ex.getMessage());
+            return new AsyncFileChannelJournalIoBackend();
+        }
+    }
+
+    @Override
+    public void open(final Path file, final boolean writeThrough) throws IOException {
+        if (fileFd >= 0) {
+            throw new IllegalStateException("Journal file is already opened");
+        }
+        if (ringFd < 0) {
+            setupRing();
+        }
+
+        final int flags = O_WRONLY | O_CREAT | O_EXCL | O_CLOEXEC | (writeThrough ? O_DSYNC : 0);
+        final int fd = lib().open.invokeInt(new Object[]{file.toAbsolutePath().toString(), flags, FILE_MODE});
+        if (fd < 0) {
+            final int errno = Native.getLastError();
+            if (errno == EEXIST) {
+                throw new FileAlreadyExistsException(file.toString());
+            }
+            throw new IOException("Can not create " + file + ", errno=" + errno);
+        }
+        this.fileFd = fd;
+        this.writeThrough = writeThrough;
+        this.position = 0;
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer) throws IOException {
+        throwPendingError();
+        final int length = buffer.remaining();
+        if (length == 0) {
+            return;
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("io_uring journal backend requires direct buffers");
+        }
+
+        if (inFlight == ringEntries) {
+            // keep completion queue from overflowing
+            enter(0, 1);
+        }
+
+        final long address = Pointer.nativeValue(Native.getDirectBufferPointer(buffer)) + buffer.position();
+        pushSqe(IORING_OP_WRITE, (byte) 0, address, length, 0, length);
+        inFlightBuffers.add(buffer);
+        position += length;
+
+        // start write without waiting for completion
+        enter(1, 0);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (fileFd < 0) {
+            return;
+        }
+
+        int toSubmit = 0;
+        if (!writeThrough) {
+            if (inFlight == ringEntries) {
+                enter(0, 1);
+            }
+            pushSqe(IORING_OP_FSYNC, IOSQE_IO_DRAIN, 0L, 0, IORING_FSYNC_DATASYNC, FSYNC_USER_DATA);
+            toSubmit = 1;
+        }
+
+        while (inFlight > 0) {
+            enter(toSubmit, inFlight);
+            toSubmit = 0;
+        }
+        inFlightBuffers.clear();
+
+        throwPendingError();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileFd >= 0) {
+                try {
+                    sync();
+                } finally {
+                    lib().close.invokeInt(new Object[]{fileFd});
+                    fileFd = -1;
+                }
+            }
+        } finally {
+            destroyRing();
+        }
+    }
+
+    private void pushSqe(final byte opcode, final byte sqeFlags, final long address, final int length, final int opFlags, final long userData) {
+        final int index = sqTail & sqMask;
+        final long sqeOffset = (long) index * SQE_SIZE;
+        sqesPtr.setMemory(sqeOffset, SQE_SIZE, (byte) 0);
+        sqesPtr.setByte(sqeOffset, opcode);
+        sqesPtr.setByte(sqeOffset + 1, sqeFlags);
+        sqesPtr.setInt(sqeOffset + 4, fileFd);
+        sqesPtr.setLong(sqeOffset + 8, position);
+        sqesPtr.setLong(sqeOffset + 16, address);
+        sqesPtr.setInt(sqeOffset + 24, length);
+        sqesPtr.setInt(sqeOffset + 28, opFlags);
+        sqesPtr.setLong(sqeOffset + 32, userData);
+
+        sqRing.putInt(sqArrayOff + index * 4, index);
+        sqTail++;
+        INT_HANDLE.setRelease(sqRing, sqTailOff, sqTail);
+        inFlight++;
+    }
+
+    private void enter(final int toSubmit, final int minComplete) throws IOException {
+        final int flags = minComplete > 0 ? IORING_ENTER_GETEVENTS : 0;
+        while (true) {
+            final long res = lib().syscall.invokeLong(new Object[]{
+                    SYS_IO_URING_ENTER, (long) ringFd, (long) toSubmit, (long) minComplete, (long) flags, Pointer.NULL, 0L});
+            if (res >= 0) {
+                break;
+            }
+            final int errno = Native.getLastError();
+            if (errno != EINTR) {
+                throw new IOException("io_uring_enter failed, errno=" + errno);
+            }
+        }
+        reapCompletions();
+    }
+
+    private void reapCompletions() {
+        int head = (int) INT_HANDLE.getAcquire(cqRing, cqHeadOff);
+        final int tail = (int) INT_HANDLE.getAcquire(cqRing, cqTailOff);
+        while (head != tail) {
+            final int cqeOffset = cqesOff + (head & cqMask) * CQE_SIZE;
+            final long userData = cqRing.getLong(cqeOffset);
+            final int res = cqRing.getInt(cqeOffset + 8);
+            if (pendingError == null) {
+                if (res < 0) {
+                    pendingError = new IOException((userData == FSYNC_USER_DATA ? "fsync" : "write") + " failed, errno=" + (-res));
+                } else if (userData != FSYNC_USER_DATA && res != userData) {
+                    pendingError = new IOException("short write: " + res + " of " + userData + " bytes");
+                }
+            }
+            head++;
+            inFlight--;
+        }
+        INT_HANDLE.setRelease(cqRing, cqHeadOff, head);
+    }
+
+    private void throwPendingError() throws IOException {
+        if (pendingError != null) {
+            final IOException ex = pendingError;
+            pendingError = null;
+            throw ex;
+        }
+    }
+
+    private void setupRing() throws IOException {
+        final LibC lib = lib();
+        final Memory params = new Memory(PARAMS_SIZE);
+        params.clear();
+        final long fd = lib.syscall.invokeLong(new Object[]{SYS_IO_URING_SETUP, (long) ringEntries, params});
+        if (fd < 0) {
+            throw new IOException("io_uring_setup failed, errno=" + Native.getLastError());
+        }
+        ringFd = (int) fd;
+
+        try {
+            final int sqEntries = params.getInt(PARAMS_SQ_ENTRIES);
+            final int cqEntries = params.getInt(PARAMS_CQ_ENTRIES);
+            final boolean singleMmap = (params.getInt(PARAMS_FEATURES) & IORING_FEAT_SINGLE_MMAP) != 0;
+
+            sqHeadOff = params.getInt(PARAMS_SQ_OFF);
+            sqTailOff = params.getInt(PARAMS_SQ_OFF + 4);
+            sqArrayOff = params.getInt(PARAMS_SQ_OFF + 24);
+            cqHeadOff = params.getInt(PARAMS_CQ_OFF);
+            cqTailOff = params.getInt(PARAMS_CQ_OFF + 4);
+            cqesOff = params.getInt(PARAMS_CQ_OFF + 20);
+
+            sqRingSize = sqArrayOff + (long) sqEntries * 4;
+            cqRingSize = cqesOff + (long) cqEntries * CQE_SIZE;
+            if (singleMmap) {
+                sqRingSize = cqRingSize = Math.max(sqRingSize, cqRingSize);
+            }
+
+            sqRingPtr = mmap(sqRingSize, IORING_OFF_SQ_RING);
+            cqRingPtr = singleMmap ? sqRingPtr : mmap(cqRingSize, IORING_OFF_CQ_RING);
+            sqesSize = (long) sqEntries * SQE_SIZE;
+            sqesPtr = mmap(sqesSize, IORING_OFF_SQES);
+
+            sqRing = sqRingPtr.getByteBuffer(0, sqRingSize).order(ByteOrder.nativeOrder());
+            cqRing = cqRingPtr.getByteBuffer(0, cqRingSize).order(ByteOrder.nativeOrder());
+            sqMask = sqRing.getInt(params.getInt(PARAMS_SQ_OFF + 8));
+            cqMask = cqRing.getInt(params.getInt(PARAMS_CQ_OFF + 8));
+
+            sqTail = (int) INT_HANDLE.getAcquire(sqRing, sqTailOff);
+            inFlight = 0;
+        } catch (final IOException | RuntimeException ex) {
+            destroyRing();
+            throw ex;
+        }
+    }
+
+    /*
+     * Ring setup is supported since Linux 5.1, but write operation is available only since 5.6 (same as probing)
+     */
+    private void checkOpcodesSupported() throws IOException {
+        final Memory probe = new Memory(PROBE_HEADER_SIZE + PROBE_OPS_NUM * PROBE_OP_SIZE);
+        probe.clear();
+        final long res = lib().syscall.invokeLong(new Object[]{
+                SYS_IO_URING_REGISTER, (long) ringFd, IORING_REGISTER_PROBE, probe, (long) PROBE_OPS_NUM});
+        if (res < 0) {
+            throw new UnsupportedOperationException("io_uring probe failed (Linux 5.6+ is required), errno=" + Native.getLastError());
+        }
+        final ByteBuffer probeBuffer = probe.getByteBuffer(0, probe.size()).order(ByteOrder.nativeOrder());
+        for (final byte opcode : new byte[]{IORING_OP_WRITE, IORING_OP_FSYNC}) {
+            if (!isOpcodeSupported(probeBuffer, opcode)) {
+                throw new UnsupportedOperationException("io_uring operation " + opcode + " is not supported");
+            }
+        }
+    }
+
+    static boolean isOpcodeSupported(final ByteBuffer probe, final byte opcode) {
+        final int lastOp = probe.get(PROBE_LAST_OP) & 0xFF;
+        if (opcode > lastOp) {
+            return false;
+        }
+        final int flags = probe.getShort(PROBE_HEADER_SIZE + opcode * PROBE_OP_SIZE + PROBE_OP_FLAGS) & 0xFFFF;
+        return (flags & IO_URING_OP_SUPPORTED) != 0;
+    }
+
+    private void destroyRing() {
+        if (ringFd < 0) {
+            return;
+        }
+        final LibC lib = lib();
+        if (sqesPtr != null) {
+            lib.munmap.invokeInt(new Object[]{sqesPtr, sqesSize});
+        }
+        if (cqRingPtr != null && cqRingPtr != sqRingPtr) {
+            lib.munmap.invokeInt(new Object[]{cqRingPtr, cqRingSize});
+        }
+        if (sqRingPtr != null) {
+            lib.munmap.invokeInt(new Object[]{sqRingPtr, sqRingSize});
+        }
+        lib.close.invokeInt(new Object[]{ringFd});
+        ringFd = -1;
+        sqRingPtr = null;
+        cqRingPtr = null;
+        sqesPtr = null;
+        sqRing = null;
+        cqRing = null;
+        inFlight = 0;
+        inFlightBuffers.clear();
+    }
+
+    private Pointer mmap(final long size, final long offset) throws IOException {
+        final Pointer ptr = (Pointer) lib().mmap.invoke(Pointer.class, new Object[]{
+                Pointer.NULL, size, PROT_READ_WRITE, MAP_SHARED_POPULATE, ringFd, offset});
+        if (ptr == null || Pointer.nativeValue(ptr) == -1L) {
+            throw new IOException("io_uring mmap failed, errno=" + Native.getLastError());
+        }
+        return ptr;
+    }
+
+    private static LibC lib() {
+        LibC lib = libC;
+        if (lib == null) {
+            synchronized (IoUringJournalIoBackend.class) {
+                lib = libC;
+                if (lib == null) {
+                    if (!System.getProperty("os.name", "").toLowerCase().startsWith("linux")) {
+                        throw new UnsupportedOperationException("io_uring requires Linux");
+                    }
+                    lib = new LibC(NativeLibrary.getInstance("c"));
+                    libC = lib;
+                }
+            }
+        }
+        return lib;
+    }
+
+    private static final class LibC {
+        private final Function syscall;
+        private final Function mmap;
+        private final Function munmap;
+        private final Function open;
+        private final Function close;
+
+        private LibC(final NativeLibrary library) {
+            this.syscall = library.getFunction("syscall");
+            this.mmap = library.getFunction("mmap");
+            this.munmap = library.getFunction("munmap");
+            this.open = library.getFunction("open");
+            this.close = library.getFunction("close");
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.api.reports.StateHashReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.SharedPool;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesIn;
+import org.agrona.collections.LongArrayList;
+import org.agrona.collections.MutableLong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Offline journal compactor: folds journal history into a synthetic snapshot.
+ * <p>
+ * Loads base snapshot, replays its journal directly into matching engines and risk engines (without disruptor),
+ * then stores all modules as new snapshot. Stages are called in the same order as pipeline does:
+ * commands are buffered until events group changes, then R1 and ME are executed for the whole group, then R2.
+ * This way R1 of a command does not see settlements of preceding commands of the same group (same as live instance).
+ * Commands journaled after compaction point (if any) are extracted as journal of the new snapshot,
+ * so the new snapshot has truncated journal set. Source snapshot and journal files are not modified.
+ * <p>
+ * Compacted state is verified by loading the new snapshot into fresh engines and comparing state hashes.
+ * <p>
+ * Must be executed separately from live instance (different process or after it is stopped) -
+ * it does not coordinate with journal writer. Configuration must have the same ME/RE shards number
+ * and orders processing settings as the instance produced the journal.
+ */
+@Slf4j
+public final class JournalCompactor {
+
+    private final ExchangeConfiguration exchangeCfg;
+    private final DiskSerializationProcessorConfiguration diskCfg;
+
+    private final String exchangeId;
+    private final long snapshotId;
+    private final long snapshotBaseSeq;
+    private final Path folder;
+
+    /**
+     * @param exchangeCfg - configuration of the source instance, initial state configuration points to base snapshot
+     * @param diskCfg     - disk configuration (storage folder)
+     */
+    public JournalCompactor(final ExchangeConfiguration exchangeCfg,
+                            final DiskSerializationProcessorConfiguration diskCfg) {
+
+        final InitialStateConfiguration initStateCfg = exchangeCfg.getInitStateCfg();
+
+        this.exchangeCfg = exchangeCfg;
+        this.diskCfg = diskCfg;
+        this.exchangeId = initStateCfg.getExchangeId();
+        this.snapshotId = initStateCfg.getSnapshotId();
+        this.snapshotBaseSeq = initStateCfg.getSnapshotBaseSeq();
+        this.folder = Paths.get(diskCfg.getStorageFolder());
+    }
+
+    /**
+     * Compacts journal of base snapshot into new snapshot
+     *
+     * @param newSnapshotId - id of the new snapshot (must not exist)
+     * @param seqTo         - last command sequence to fold into the snapshot (inclusive), Long.MAX_VALUE - whole journal
+     * @return compaction result
+     * @throws IOException if journal can not be read or written
+     */
+    public CompactionResult compact(final long newSnapshotId, final long seqTo) throws IOException {
+
+        if (newSnapshotId == snapshotId || newSnapshotId == 0) {
+            throw new IllegalArgumentException("Invalid new snapshot id: " + newSnapshotId);
+        }
+
+        log.info("Compacting journal of {} snapshot {} (baseSeq={}) up to seq={} into snapshot {}",
+                exchangeId, snapshotId, snapshotBaseSeq, seqTo, newSnapshotId);
+
+        final DiskSerializationProcessor serializationProcessor = new DiskSerializationProcessor(exchangeCfg, diskCfg);
+        final Engines engines = new Engines(exchangeCfg, serializationProcessor);
+        final MutableLong commandsNum = new MutableLong();
+        final long lastSeq;
+        final int stateHash;
+        try {
+
+            // replay journal
+            final MutableLong lastTimestamp = new MutableLong();
+            lastSeq = new JournalReader().readRange(folder, exchangeId, snapshotId, snapshotBaseSeq, seqTo, (seq, cmd) -> {
+                lastTimestamp.value = cmd.timestamp;
+                if (cmd.command != OrderCommandType.PERSIST_STATE_MATCHING && cmd.command != OrderCommandType.PERSIST_STATE_RISK) {
+                    engines.process(seq, cmd);
+                    commandsNum.increment();
+                }
+                return true;
+            });
+
+            engines.flush();
+
+            log.info("Replayed {} commands, last seq={}", commandsNum, lastSeq);
+
+            stateHash = engines.stateHash();
+
+            // store new snapshot
+            for (final MatchingEngineRouter matchingEngine : engines.matchingEngines) {
+                if (!serializationProcessor.storeData(newSnapshotId, lastSeq, lastTimestamp.value,
+                        ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER, matchingEngine.getShardId(), matchingEngine)) {
+                    throw new IllegalStateException("Can not store matching engine " + matchingEngine.getShardId() + " state");
+                }
+            }
+            for (final RiskEngine riskEngine : engines.riskEngines) {
+                if (!serializationProcessor.storeData(newSnapshotId, lastSeq, lastTimestamp.value,
+                        ISerializationProcessor.SerializedModuleType.RISK_ENGINE, riskEngine.getShardId(), riskEngine)) {
+                    throw new IllegalStateException("Can not store risk engine " + riskEngine.getShardId() + " state");
+                }
+            }
+        } finally {
+            engines.close();
+        }
+
+        // verify new snapshot
+        final ExchangeConfiguration compactedCfg = ExchangeConfiguration.builder()
+                .ordersProcessingCfg(exchangeCfg.getOrdersProcessingCfg())
+                .performanceCfg(exchangeCfg.getPerformanceCfg())
+                .initStateCfg(InitialStateConfiguration.fromSnapshotOnly(exchangeId, newSnapshotId, lastSeq))
+                .reportsQueriesCfg(exchangeCfg.getReportsQueriesCfg())
+                .loggingCfg(exchangeCfg.getLoggingCfg())
+                .serializationCfg(exchangeCfg.getSerializationCfg())
+                .build();
+
+        final Engines loadedEngines = new Engines(compactedCfg, new DiskSerializationProcessor(compactedCfg, diskCfg));
+        final int loadedStateHash;
+        try {
+            loadedStateHash = loadedEngines.stateHash();
+        } finally {
+            loadedEngines.close();
+        }
+        if (loadedStateHash != stateHash) {
+            throw new IllegalStateException("Snapshot " + newSnapshotId + " verification failed: state hash "
+                    + loadedStateHash + " does not match replayed state hash " + stateHash);
+        }
+
+        // move remaining commands into journal of the new snapshot
+        long tailCommandsNum = 0;
+        if (lastSeq == seqTo && hasCommandsAfter(lastSeq)) {
+            tailCommandsNum = JournalRangeExtractor.extract(
+                    folder, exchangeId, snapshotId, lastSeq, Long.MAX_VALUE, folder, exchangeId, newSnapshotId);
+        }
+
+        log.info("Compacted into snapshot {} at seq={} (stateHash={}), remaining journal: {} commands",
+                newSnapshotId, lastSeq, stateHash, tailCommandsNum);
+
+        return new CompactionResult(newSnapshotId, lastSeq, commandsNum.value, tailCommandsNum, stateHash);
+    }
+
+    private boolean hasCommandsAfter(final long seq) throws IOException {
+        return new JournalReader().readRange(folder, exchangeId, snapshotId, seq, seq + 1, (s, cmd) -> false) != seq;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static final class CompactionResult {
+
+        // id of the new snapshot
+        private final long snapshotId;
+
+        // sequence of the last command folded into the new snapshot (base sequence of the new snapshot)
+        private final long snapshotSeq;
+
+        // number of replayed commands
+        private final long commandsNum;
+
+        // number of commands moved into journal of the new snapshot
+        private final long tailCommandsNum;
+
+        // state hash of the new snapshot (same as StateHashReportQuery result)
+        private final int stateHash;
+    }
+
+    /**
+     * Matching engines and risk engines of all shards, processing commands in pipeline order
+     */
+    private static final class Engines {
+
+        private final List<MatchingEngineRouter> matchingEngines;
+        private final List<RiskEngine> riskEngines;
+
+        // commands of the current events group (reused instances, reader does not retain commands)
+        private final List<OrderCommand> groupCommands = new ArrayList<>();
+        private final LongArrayList groupSequences = new LongArrayList();
+        private int groupSize = 0;
+        private long currentGroup;
+
+        private Engines(final ExchangeConfiguration cfg, final ISerializationProcessor serializationProcessor) {
+
+            final PerformanceConfiguration perfCfg = cfg.getPerformanceCfg();
+            final int matchingEnginesNum = perfCfg.getMatchingEnginesNum();
+            final int riskEnginesNum = perfCfg.getRiskEnginesNum();
+
+            final int poolInitialSize = (matchingEnginesNum + riskEnginesNum) * 8;
+            final int chainLength = ExchangeCore.EVENTS_POOLING ? 1024 : 1;
+            final SharedPool sharedPool = new SharedPool(poolInitialSize * 4, poolInitialSize, chainLength);
+
+            this.matchingEngines = IntStream.range(0, matchingEnginesNum)
+                    .mapToObj(shardId -> new MatchingEngineRouter(shardId, matchingEnginesNum, serializationProcessor, perfCfg.getOrderBookFactory(), sharedPool, cfg))
+                    .collect(Collectors.toList());
+
+            this.riskEngines = IntStream.range(0, riskEnginesNum)
+                    .mapToObj(shardId -> new RiskEngine(shardId, riskEnginesNum, serializationProcessor, sharedPool, cfg))
+                    .collect(Collectors.toList());
+        }
+
+        private void close() {
+            riskEngines.forEach(RiskEngine::close);
+        }
+
+        /**
+         * Adds command into current events group. Previous group is processed if events group has changed.
+         * <p>
+         * Same as TwoStepMasterProcessor, R2 stage is triggered only by events group change -
+         * GroupingProcessor already starts new group for RESET, PERSIST_STATE_MATCHING, GROUPING_CONTROL and last binary frame.
+         * Other serial commands are only R1 barriers, replay is sequential anyway.
+         */
+        private void process(final long seq, final OrderCommand cmd) {
+
+            if (groupSize != 0 && cmd.eventsGroup != currentGroup) {
+                flush();
+            }
+            currentGroup = cmd.eventsGroup;
+
+            if (groupSize == groupCommands.size()) {
+                groupCommands.add(new OrderCommand());
+            }
+            final OrderCommand groupCmd = groupCommands.get(groupSize++);
+            cmd.writeTo(groupCmd);
+            groupCmd.userCookie = cmd.userCookie;
+            groupCmd.eventsGroup = cmd.eventsGroup;
+            groupCmd.serviceFlags = cmd.serviceFlags;
+
+            // same as publishing and grouping stages do
+            groupCmd.resultCode = CommandResultCode.NEW;
+            groupCmd.matcherEvent = null;
+            groupCmd.marketData = null;
+
+            groupSequences.addLong(seq);
+        }
+
+        /**
+         * Processes buffered commands of current events group: R1 for each command, then ME, then R2.
+         */
+        private void flush() {
+
+            for (int i = 0; i < groupSize; i++) {
+                final long seq = groupSequences.getLong(i);
+                final OrderCommand cmd = groupCommands.get(i);
+                for (final RiskEngine riskEngine : riskEngines) {
+                    riskEngine.preProcessCommand(seq, cmd);
+                }
+            }
+
+            for (int i = 0; i < groupSize; i++) {
+                final long seq = groupSequences.getLong(i);
+                final OrderCommand cmd = groupCommands.get(i);
+                for (final MatchingEngineRouter matchingEngine : matchingEngines) {
+                    matchingEngine.processOrder(seq, cmd);
+                }
+            }
+
+            for (int i = 0; i < groupSize; i++) {
+                final long seq = groupSequences.getLong(i);
+                final OrderCommand cmd = groupCommands.get(i);
+                for (final RiskEngine riskEngine : riskEngines) {
+                    riskEngine.handlerRiskRelease(seq, cmd);
+                }
+            }
+
+            groupSize = 0;
+            groupSequences.clear();
+        }
+
+        private int stateHash() {
+
+            final StateHashReportQuery query = new StateHashReportQuery();
+            final List<BytesIn> sections = new ArrayList<>();
+
+            matchingEngines.forEach(matchingEngine -> query.process(matchingEngine).ifPresent(result -> sections.add(serialize(result))));
+            riskEngines.forEach(riskEngine -> query.process(riskEngine).ifPresent(result -> sections.add(serialize(result))));
+
+            return query.createResult(sections.stream()).getStateHash();
+        }
+
+        private static BytesIn serialize(final StateHashReportResult result) {
+            final Bytes<ByteBuffer> bytes = Bytes.elasticHeapByteBuffer(128);
+            result.writeMarshallable(bytes);
+            return bytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 7) {
+            System.err.println("Usage: JournalCompactor folder exchangeId snapshotId snapshotBaseSeq newSnapshotId matchingEnginesNum riskEnginesNum");
+            System.exit(1);
+        }
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.createConfig(
+                args[0],
+                DiskSerializationProcessorConfiguration.JournalDurabilityMode.INLINE_SYNC,
+                DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL);
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.fromSnapshotOnly(args[1], Long.parseLong(args[2]), Long.parseLong(args[3])))
+                .performanceCfg(PerformanceConfiguration.baseBuilder()
+                        .matchingEnginesNum(Integer.parseInt(args[5]))
+                        .riskEnginesNum(Integer.parseInt(args[6]))
+                        .build())
+                .build();
+
+        final CompactionResult result = new JournalCompactor(exchangeCfg, diskCfg).compact(Long.parseLong(args[4]), Long.MAX_VALUE);
+        log.info("Compaction completed: {}", result);
+    }
+}
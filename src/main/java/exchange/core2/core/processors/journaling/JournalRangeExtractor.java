@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.MutableLong;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Extracts range of journaled commands into standalone journal (single uncompressed file with index).
+ * <p>
+ * Extracted journal is named as first journal file of the same snapshot for target exchange id,
+ * so it can be replayed by DiskSerializationProcessor (for example to reproduce an issue).
+ * To replay it on top of the snapshot, extract the range starting from snapshot sequence
+ * and copy snapshot files under the target exchange id.
+ * <p>
+ * Usage: JournalRangeExtractor folder exchangeId snapshotId seqFrom seqTo targetFolder targetExchangeId
+ */
+@Slf4j
+public final class JournalRangeExtractor {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int INDEX_INTERVAL = 64 * 1024;
+
+    private JournalRangeExtractor() {
+    }
+
+    /**
+     * Extracts commands with sequence in range (seqFrom, seqTo]
+     *
+     * @param folder           - source journal folder
+     * @param exchangeId       - source exchange id
+     * @param snapshotId       - snapshot id
+     * @param seqFrom          - starting command sequence (exclusive)
+     * @param seqTo            - ending command sequence (inclusive)
+     * @param targetFolder     - target folder
+     * @param targetExchangeId - target exchange id (must be different from source exchange id if folders are the same)
+     * @return number of extracted commands
+     * @throws IOException if journal can not be read or target can not be written
+     */
+    public static long extract(final Path folder,
+                               final String exchangeId,
+                               final long snapshotId,
+                               final long seqFrom,
+                               final long seqTo,
+                               final Path targetFolder,
+                               final String targetExchangeId) throws IOException {
+
+        return extract(folder, exchangeId, snapshotId, seqFrom, seqTo, targetFolder, targetExchangeId, snapshotId);
+    }
+
+    /**
+     * Extracts commands with sequence in range (seqFrom, seqTo] as journal of another snapshot
+     *
+     * @param folder           - source journal folder
+     * @param exchangeId       - source exchange id
+     * @param snapshotId       - snapshot id
+     * @param seqFrom          - starting command sequence (exclusive)
+     * @param seqTo            - ending command sequence (inclusive)
+     * @param targetFolder     - target folder
+     * @param targetExchangeId - target exchange id
+     * @param targetSnapshotId - snapshot id of extracted journal
+     * @return number of extracted commands
+     * @throws IOException if journal can not be read or target can not be written
+     */
+    public static long extract(final Path folder,
+                               final String exchangeId,
+                               final long snapshotId,
+                               final long seqFrom,
+                               final long seqTo,
+                               final Path targetFolder,
+                               final String targetExchangeId,
+                               final long targetSnapshotId) throws IOException {
+
+        final Path targetPath = DiskSerializationProcessor.resolveJournalPath(targetFolder, targetExchangeId, targetSnapshotId, 1);
+        final Path targetIndexPath = DiskSerializationProcessor.resolveJournalIndexPath(targetFolder, targetExchangeId, targetSnapshotId, 1);
+
+        log.info("Extracting commands ({}..{}] of {} snapshot {} into {}", seqFrom, seqTo, exchangeId, snapshotId, targetPath);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final MutableLong commandsNum = new MutableLong();
+        final MutableLong writtenBytes = new MutableLong();
+        final MutableLong lastIndexedOffset = new MutableLong();
+
+        try (final FileChannel channel = FileChannel.open(targetPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+             final DataOutputStream indexStream = new DataOutputStream(new BufferedOutputStream(
+                     Files.newOutputStream(targetIndexPath, StandardOpenOption.CREATE_NEW)))) {
+
+            final long lastSeq = new JournalReader().readRange(folder, exchangeId, snapshotId, seqFrom, seqTo, (seq, cmd) -> {
+                try {
+                    if (buffer.position() == 0 && (writtenBytes.value == 0 || writtenBytes.value - lastIndexedOffset.value >= INDEX_INTERVAL)) {
+                        JournalSegmentIndex.writeEntry(indexStream, seq, writtenBytes.value);
+                        lastIndexedOffset.value = writtenBytes.value;
+                    }
+
+                    DiskSerializationProcessor.encodeCommand(buffer, cmd, seq);
+                    commandsNum.increment();
+
+                    if (buffer.remaining() < DiskSerializationProcessor.MAX_COMMAND_SIZE_BYTES) {
+                        writtenBytes.value += writeBuffer(channel, buffer);
+                    }
+                    return true;
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+
+            writeBuffer(channel, buffer);
+            channel.force(false);
+
+            log.info("Extracted {} commands, last sequence: {}", commandsNum, lastSeq);
+
+        } catch (final UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        return commandsNum.value;
+    }
+
+    private static int writeBuffer(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        final int size = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return size;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 7) {
+            System.err.println("Usage: JournalRangeExtractor folder exchangeId snapshotId seqFrom seqTo targetFolder targetExchangeId");
+            System.exit(1);
+        }
+
+        extract(
+                Paths.get(args[0]),
+                args[1],
+                Long.parseLong(args[2]),
+                Long.parseLong(args[3]),
+                Long.parseLong(args[4]),
+                Paths.get(args[5]),
+                args[6]);
+    }
+}
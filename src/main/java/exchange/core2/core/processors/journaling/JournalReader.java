@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.agrona.collections.MutableLong;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Journal files reader: decodes journaled commands (including LZ4-compressed batches) into reusable OrderCommand.
+ * Not thread-safe.
+ */
+@Slf4j
+public final class JournalReader {
+
+    private static final int MAX_BLOCK_SIZE = 1000000;
+
+    private final LZ4SafeDecompressor lz4SafeDecompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    // reused for every command
+    private final OrderCommand cmd = new OrderCommand();
+
+    @FunctionalInterface
+    public interface CommandHandler {
+
+        /**
+         * Handle decoded command (command object is reused, fields are valid only during the call)
+         *
+         * @param seq - command sequence
+         * @param cmd - decoded command
+         * @return true to continue reading, false to stop
+         */
+        boolean onCommand(long seq, OrderCommand cmd);
+    }
+
+    /**
+     * Reads commands with sequence in range (seqFrom, seqTo] from journal files of specified snapshot.
+     * <p>
+     * Journal files located before the range are skipped using first sequence of the next file index,
+     * reading of the first relevant file starts from nearest indexed batch (binary search),
+     * journal files without index are read from the beginning.
+     *
+     * @param folder     - journal folder
+     * @param exchangeId - exchange id
+     * @param snapshotId - snapshot id
+     * @param seqFrom    - starting command sequence (exclusive)
+     * @param seqTo      - ending command sequence (inclusive)
+     * @param handler    - commands handler
+     * @return sequence of last handled command (seqFrom if no commands found)
+     * @throws IOException if journal can not be read
+     */
+    public long readRange(final Path folder,
+                          final String exchangeId,
+                          final long snapshotId,
+                          final long seqFrom,
+                          final long seqTo,
+                          final CommandHandler handler) throws IOException {
+
+        final MutableLong lastSeq = new MutableLong(seqFrom);
+        final MutableLong lastHandledSeq = new MutableLong(seqFrom);
+
+        final CommandHandler rangeHandler = (seq, c) -> {
+            if (seq <= seqFrom) {
+                return true;
+            }
+            if (seq > seqTo) {
+                return false;
+            }
+            lastHandledSeq.value = seq;
+            return handler.onCommand(seq, c) && seq < seqTo;
+        };
+
+        boolean started = false;
+        for (int partition = 1; ; partition++) {
+
+            final Path path = DiskSerializationProcessor.resolveJournalPath(folder, exchangeId, snapshotId, partition);
+            if (!Files.exists(path)) {
+                log.debug("Journal file not found: {}, last sequence {}", path, lastHandledSeq);
+                return lastHandledSeq.value;
+            }
+
+            long offset = 0;
+            if (!started) {
+
+                final Path nextPath = DiskSerializationProcessor.resolveJournalPath(folder, exchangeId, snapshotId, partition + 1);
+                if (Files.exists(nextPath)) {
+                    final long nextFirstSeq = loadIndex(folder, exchangeId, snapshotId, partition + 1, nextPath).getFirstSeq();
+                    if (nextFirstSeq != -1 && nextFirstSeq <= seqFrom + 1) {
+                        // whole range is located in the next files
+                        continue;
+                    }
+                }
+                started = true;
+
+                final JournalSegmentIndex index = loadIndex(folder, exchangeId, snapshotId, partition, path);
+                final int entry = index.floorEntry(seqFrom + 1);
+                if (entry >= 0) {
+                    offset = index.getOffset(entry);
+                    lastSeq.value = index.getSeq(entry) - 1;
+                }
+                log.debug("Reading journal file {} from offset {} (index entries: {})", path, offset, index.size());
+            }
+
+            try (final FileInputStream fis = new FileInputStream(path.toFile())) {
+                fis.getChannel().position(offset);
+                try (final BufferedInputStream bis = new BufferedInputStream(fis);
+                     final DataInputStream dis = new DataInputStream(bis)) {
+
+                    if (!readCommands(dis, lastSeq, rangeHandler)) {
+                        return lastHandledSeq.value;
+                    }
+                }
+            } catch (final EOFException ex) {
+                log.debug("Journal file {} is truncated", path);
+            }
+        }
+    }
+
+    /**
+     * Reads all commands from journal stream
+     *
+     * @param jr      - journal stream
+     * @param lastSeq - sequence of last read command (for gaps detection)
+     * @param handler - commands handler
+     * @return false if handler requested to stop reading
+     * @throws IOException if stream can not be read
+     */
+    public boolean readCommands(final DataInputStream jr,
+                                final MutableLong lastSeq,
+                                final CommandHandler handler) throws IOException {
+
+        return readCommands(jr, lastSeq, handler, false);
+    }
+
+    private boolean readCommands(final DataInputStream jr,
+                                 final MutableLong lastSeq,
+                                 final CommandHandler handler,
+                                 final boolean insideCompressedBlock) throws IOException {
+
+        while (jr.available() != 0) {
+
+            final byte cmdCode = jr.readByte();
+
+            if (cmdCode == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+
+                if (insideCompressedBlock) {
+                    throw new IllegalStateException("Recursive compression block (data corrupted)");
+                }
+
+                final int size = jr.readInt();
+                final int origSize = jr.readInt();
+
+                if (size > MAX_BLOCK_SIZE) {
+                    throw new IllegalStateException("Bad compressed block size = " + size + "(data corrupted)");
+                }
+
+                if (origSize > MAX_BLOCK_SIZE) {
+                    throw new IllegalStateException("Bad original block size = " + size + "(data corrupted)");
+                }
+
+                final byte[] compressedArray = new byte[size];
+                jr.readFully(compressedArray);
+
+                final byte[] originalArray = lz4SafeDecompressor.decompress(compressedArray, origSize);
+
+                // read compressed block recursively
+                try (final ByteArrayInputStream bis = new ByteArrayInputStream(originalArray);
+                     final DataInputStream dis = new DataInputStream(bis)) {
+
+                    if (!readCommands(dis, lastSeq, handler, true)) {
+                        return false;
+                    }
+                }
+
+            } else {
+
+                final long seq = jr.readLong();
+                final OrderCommandType cmdType = OrderCommandType.fromCode(cmdCode);
+
+                cmd.command = cmdType;
+                cmd.timestamp = jr.readLong();
+                cmd.serviceFlags = jr.readInt();
+                cmd.eventsGroup = jr.readLong();
+
+                if (seq != lastSeq.value + 1) {
+                    log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
+                }
+
+                lastSeq.value = seq;
+
+                readCommandBody(jr, cmdType);
+
+                if (!handler.onCommand(seq, cmd)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void readCommandBody(final DataInputStream jr, final OrderCommandType cmdType) throws IOException {
+
+        switch (cmdType) {
+
+            case MOVE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                break;
+
+            case CANCEL_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                break;
+
+            case REDUCE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.size = jr.readLong();
+                break;
+
+            case PLACE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                cmd.reserveBidPrice = jr.readLong();
+                cmd.size = jr.readLong();
+                cmd.userCookie = jr.readInt();
+                final byte actionAndType = jr.readByte();
+                cmd.action = OrderAction.of((byte) (actionAndType & 0b1));
+                cmd.orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt(); // currency
+                cmd.orderId = jr.readLong(); // transaction
+                cmd.price = jr.readLong(); // amount
+                cmd.orderType = OrderType.of(jr.readByte()); // adjustment type
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                cmd.uid = jr.readLong();
+                break;
+
+            case BINARY_DATA_COMMAND:
+                cmd.symbol = jr.readByte(); // last flag
+                cmd.orderId = jr.readLong(); // word0
+                cmd.price = jr.readLong(); // word1
+                cmd.reserveBidPrice = jr.readLong(); // word2
+                cmd.size = jr.readLong(); // word3
+                cmd.uid = jr.readLong(); // word4
+                break;
+
+            case RESET:
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                // no payload
+                break;
+
+            default:
+                log.debug("eventsGroup={} serviceFlags={} cmdType={}", cmd.eventsGroup, cmd.serviceFlags, cmdType);
+                throw new IllegalStateException("unexpected command");
+        }
+    }
+
+    private static JournalSegmentIndex loadIndex(final Path folder,
+                                                 final String exchangeId,
+                                                 final long snapshotId,
+                                                 final int partitionId,
+                                                 final Path journalPath) throws IOException {
+
+        return JournalSegmentIndex.load(
+                DiskSerializationProcessor.resolveJournalIndexPath(folder, exchangeId, snapshotId, partitionId),
+                Files.size(journalPath));
+    }
+}
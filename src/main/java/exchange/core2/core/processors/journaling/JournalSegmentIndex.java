@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Sparse index of single journal file: sequence of the first command in a batch -> file offset of the batch.
+ * <p>
+ * Stored next to the journal file as (long seq, long offset) entries in ascending order.
+ * Index is only a hint: after a crash it can be truncated or point beyond the end of journal file,
+ * such entries are ignored and reading starts from the nearest earlier indexed batch (or from the file beginning).
+ */
+public final class JournalSegmentIndex {
+
+    public static final int ENTRY_SIZE = 16;
+
+    private static final JournalSegmentIndex EMPTY = new JournalSegmentIndex(new long[0], new long[0]);
+
+    // first sequence of indexed batches
+    private final long[] seqs;
+
+    // offsets of indexed batches
+    private final long[] offsets;
+
+    private JournalSegmentIndex(long[] seqs, long[] offsets) {
+        this.seqs = seqs;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Loads index of journal file
+     *
+     * @param indexFile   - index file
+     * @param journalSize - size of journal file (entries beyond this offset are ignored)
+     * @return index (empty if index file does not exist)
+     * @throws IOException if index can not be read
+     */
+    public static JournalSegmentIndex load(final Path indexFile, final long journalSize) throws IOException {
+
+        if (!Files.exists(indexFile)) {
+            return EMPTY;
+        }
+
+        // ignore partially written entry
+        final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        final int entriesNum = data.remaining() / ENTRY_SIZE;
+
+        final long[] seqs = new long[entriesNum];
+        final long[] offsets = new long[entriesNum];
+        int size = 0;
+        for (int i = 0; i < entriesNum; i++) {
+            final long seq = data.getLong();
+            final long offset = data.getLong();
+            if (offset >= journalSize || (size > 0 && (seq <= seqs[size - 1] || offset <= offsets[size - 1]))) {
+                break;
+            }
+            seqs[size] = seq;
+            offsets[size] = offset;
+            size++;
+        }
+
+        return size == 0 ? EMPTY : new JournalSegmentIndex(Arrays.copyOf(seqs, size), Arrays.copyOf(offsets, size));
+    }
+
+    /**
+     * Appends index entry
+     *
+     * @param os     - index output stream
+     * @param seq    - sequence of the first command in the batch
+     * @param offset - batch offset in journal file
+     * @throws IOException if entry can not be written
+     */
+    public static void writeEntry(final DataOutputStream os, final long seq, final long offset) throws IOException {
+        os.writeLong(seq);
+        os.writeLong(offset);
+    }
+
+    public int size() {
+        return seqs.length;
+    }
+
+    public boolean isEmpty() {
+        return seqs.length == 0;
+    }
+
+    /**
+     * @return sequence of the first indexed command, or -1 if index is empty
+     */
+    public long getFirstSeq() {
+        return seqs.length == 0 ? -1 : seqs[0];
+    }
+
+    /**
+     * Finds last indexed batch starting with sequence less than or equal to specified sequence (binary search)
+     *
+     * @param seq - sequence
+     * @return entry number, or -1 if there is no such batch
+     */
+    public int floorEntry(final long seq) {
+        final int idx = Arrays.binarySearch(seqs, seq);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    public long getSeq(final int entry) {
+        return seqs[entry];
+    }
+
+    public long getOffset(final int entry) {
+        return offsets[entry];
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.MutableLong;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Follows journal files while they are written by another instance (local-file transport for standby replica).
+ * <p>
+ * Every poll reads complete records appended since previous poll, partially written records are read next time.
+ * Follows journal file changes: next partition of the same snapshot, or first partition of the new snapshot
+ * after PERSIST_STATE_RISK command. Current file is considered complete when next file is created
+ * (writer closes current file before creating next one).
+ * <p>
+ * Journal records do not contain snapshot id, so id of the new snapshot is taken from the main log record
+ * written by primary risk engine (shard 0) for PERSIST_STATE_RISK command with the same timestamp.
+ * Main log record is written only after snapshot is stored, tailer waits for it before switching journal files.
+ * <p>
+ * Not thread-safe.
+ */
+@Slf4j
+public final class JournalTailer {
+
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final Path folder;
+    private final String exchangeId;
+
+    private final JournalReader reader = new JournalReader();
+
+    // current journal file
+    @Getter
+    private long snapshotId;
+    private int partition = 1;
+    private long offset = 0;
+
+    // PERSIST_STATE_RISK command was read from current file
+    private boolean snapshotSwitchPending = false;
+    private long snapshotSwitchTimestampNs;
+
+    // sequence of the last delivered (or skipped) command
+    @Getter
+    private long lastSeq;
+
+    // sequence of the last read command (for gaps detection)
+    private final MutableLong lastReadSeq = new MutableLong();
+
+    // current chunk reading state
+    private long unitStart;
+    private long unitEnd;
+    private long unitFirstSeq;
+    private int chunkHandled;
+    private boolean stopped;
+
+    /**
+     * @param folder     - journal folder
+     * @param exchangeId - exchange id
+     * @param snapshotId - snapshot id of the first journal file
+     * @param seqFrom    - commands with sequence less than or equal to this sequence are skipped
+     */
+    public JournalTailer(final Path folder, final String exchangeId, final long snapshotId, final long seqFrom) {
+        this.folder = folder;
+        this.exchangeId = exchangeId;
+        this.snapshotId = snapshotId;
+        this.lastSeq = seqFrom;
+        this.lastReadSeq.value = seqFrom;
+    }
+
+    /**
+     * Reads commands appended since previous poll
+     *
+     * @param handler - commands handler, can stop reading by returning false (next poll continues from the next command)
+     * @return number of handled commands
+     * @throws IOException if journal can not be read
+     */
+    public int poll(final JournalReader.CommandHandler handler) throws IOException {
+
+        int handled = 0;
+        while (true) {
+
+            final Path path = DiskSerializationProcessor.resolveJournalPath(folder, exchangeId, snapshotId, partition);
+            if (!Files.exists(path)) {
+                return handled;
+            }
+
+            final int read = readAvailable(path, handler);
+            if (read < 0) {
+                // stopped by handler
+                return handled - read - 1;
+            }
+            handled += read;
+
+            final long nextSnapshotId = snapshotSwitchPending ? findNextSnapshotId() : snapshotId;
+            if (nextSnapshotId == -1) {
+                return handled;
+            }
+
+            final int nextPartition = snapshotSwitchPending ? 1 : partition + 1;
+            final Path nextPath = DiskSerializationProcessor.resolveJournalPath(folder, exchangeId, nextSnapshotId, nextPartition);
+            if (!Files.exists(nextPath)) {
+                return handled;
+            }
+
+            // current file is closed - read the rest before switching
+            final int rest = readAvailable(path, handler);
+            if (rest < 0) {
+                return handled - rest - 1;
+            }
+            handled += rest;
+
+            final long size = Files.size(path);
+            if (offset != size) {
+                log.warn("Journal file {} is truncated at offset {} (size {})", path, offset, size);
+            }
+
+            snapshotId = nextSnapshotId;
+            partition = nextPartition;
+            snapshotSwitchPending = false;
+            offset = 0;
+            log.debug("Following journal file {}", nextPath);
+        }
+    }
+
+    /**
+     * Finds snapshot made by PERSIST_STATE_RISK command of current file in the main log.
+     * Records of other snapshots (including older snapshots in the same folder) have different timestamps.
+     *
+     * @return snapshot id, or -1 if snapshot is not stored yet
+     */
+    private long findNextSnapshotId() throws IOException {
+
+        final Path mainLogPath = DiskSerializationProcessor.resolveMainLogPath(folder, exchangeId);
+        if (!Files.exists(mainLogPath)) {
+            return -1;
+        }
+
+        final String timestampToken = "timestampNs=" + snapshotSwitchTimestampNs;
+        final String moduleToken = "type=" + ISerializationProcessor.SerializedModuleType.RISK_ENGINE.code;
+
+        for (final String line : Files.readAllLines(mainLogPath)) {
+
+            // format: <millis> seq=<seq> timestampNs=<ns> snapshotId=<id> type=<module> instance=<shard>
+            final String[] tokens = line.split(" ");
+            if (tokens.length != 6
+                    || !tokens[2].equals(timestampToken)
+                    || !tokens[4].equals(moduleToken)
+                    || !tokens[5].equals("instance=0")
+                    || !tokens[3].startsWith("snapshotId=")) {
+                continue;
+            }
+
+            final long id = Long.parseLong(tokens[3].substring("snapshotId=".length()));
+            if (id != snapshotId) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of handled commands, or -(handled + 1) if handler requested to stop
+     */
+    private int readAvailable(final Path path, final JournalReader.CommandHandler handler) throws IOException {
+
+        int handled = 0;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (true) {
+
+                final long available = channel.size() - offset;
+                if (available <= 0) {
+                    return handled;
+                }
+
+                final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(available, MAX_CHUNK_SIZE));
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                    // read until end of chunk
+                }
+
+                final long chunkOffset = offset;
+                final int read = readChunk(buffer.array(), handler);
+                if (read < 0) {
+                    return -(handled - read - 1) - 1;
+                }
+                handled += read;
+
+                if (offset == chunkOffset) {
+                    // partially written record - will be read next time
+                    return handled;
+                }
+            }
+        }
+    }
+
+    private int readChunk(final byte[] data, final JournalReader.CommandHandler handler) throws IOException {
+
+        final ByteArrayInputStream bis = new ByteArrayInputStream(data);
+
+        unitStart = 0;
+        unitEnd = 0;
+        unitFirstSeq = lastReadSeq.value + 1;
+        chunkHandled = 0;
+        stopped = false;
+
+        try (final DataInputStream dis = new DataInputStream(bis)) {
+            reader.readCommands(dis, lastReadSeq, (seq, cmd) -> {
+
+                // records of compressed block are delivered after whole block is read, so position changes only between blocks
+                final long position = data.length - bis.available();
+                if (position != unitEnd) {
+                    unitStart = unitEnd;
+                    unitEnd = position;
+                    unitFirstSeq = seq;
+                }
+
+                if (cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+                    snapshotSwitchPending = true;
+                    snapshotSwitchTimestampNs = cmd.timestamp;
+                }
+
+                if (seq <= lastSeq) {
+                    return true;
+                }
+                lastSeq = seq;
+
+                chunkHandled++;
+                if (!handler.onCommand(seq, cmd)) {
+                    stopped = true;
+                    return false;
+                }
+                return true;
+            });
+        } catch (final EOFException ex) {
+            // partially written record at the end of chunk
+        }
+
+        if (stopped) {
+            // continue from the beginning of stopped unit, already delivered records are skipped by sequence
+            offset += unitStart;
+            lastReadSeq.value = unitFirstSeq - 1;
+            return -chunkHandled - 1;
+        } else {
+            offset += unitEnd;
+            return chunkHandled;
+        }
+    }
+}
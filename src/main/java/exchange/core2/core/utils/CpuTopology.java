@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * CPU topology: sockets, physical cores, shared L2/L3 caches and NUMA nodes of online logical CPUs.
+ * <p>
+ * Read from Linux sysfs (/sys/devices/system), root directory can be replaced by any directory with the same layout:
+ * <pre>
+ * cpu/online
+ * cpu/cpuN/topology/physical_package_id
+ * cpu/cpuN/topology/core_id
+ * cpu/cpuN/cache/indexK/level
+ * cpu/cpuN/cache/indexK/shared_cpu_list
+ * node/nodeM/cpulist
+ * </pre>
+ * Missing entries are treated as single socket, single node, one logical CPU per core and no shared caches.
+ */
+@Slf4j
+@Getter
+public final class CpuTopology {
+
+    public static final Path SYSFS_ROOT = Paths.get("/sys/devices/system");
+
+    // logical CPUs ordered by id
+    private final List<LogicalCpu> cpus;
+
+    public CpuTopology(final List<LogicalCpu> cpus) {
+        this.cpus = cpus.stream()
+                .sorted(Comparator.comparingInt(LogicalCpu::getCpuId))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Reads topology of current machine. If sysfs is not available, single node topology of available processors is returned.
+     *
+     * @return topology
+     */
+    public static CpuTopology readSystem() {
+        if (Files.isReadable(SYSFS_ROOT.resolve("cpu").resolve("online"))) {
+            try {
+                return readSysfs(SYSFS_ROOT);
+            } catch (final RuntimeException ex) {
+                log.warn("Can not read CPU topology from {}: {}", SYSFS_ROOT, ex.getMessage());
+            }
+        }
+        final int num = Runtime.getRuntime().availableProcessors();
+        final List<LogicalCpu> cpus = new ArrayList<>(num);
+        for (int i = 0; i < num; i++) {
+            cpus.add(new LogicalCpu(i, 0, i, 0, i, 0));
+        }
+        return new CpuTopology(cpus);
+    }
+
+    /**
+     * Reads topology from sysfs-like directory
+     *
+     * @param root - root directory (normally /sys/devices/system)
+     * @return topology
+     */
+    public static CpuTopology readSysfs(final Path root) {
+
+        final Path cpuDir = root.resolve("cpu");
+        final BitSet online = parseCpuList(readLine(cpuDir.resolve("online"))
+                .orElseThrow(() -> new IllegalStateException("No online CPUs list in " + cpuDir)));
+
+        // NUMA nodes
+        final Map<Integer, Integer> cpuToNode = new HashMap<>();
+        final Path nodeDir = root.resolve("node");
+        if (Files.isDirectory(nodeDir)) {
+            try (var dirs = Files.list(nodeDir)) {
+                dirs.map(p -> p.getFileName().toString())
+                        .filter(n -> n.matches("node\\d+"))
+                        .forEach(n -> {
+                            final int nodeId = Integer.parseInt(n.substring(4));
+                            readLine(nodeDir.resolve(n).resolve("cpulist"))
+                                    .map(CpuTopology::parseCpuList)
+                                    .ifPresent(nodeCpus -> nodeCpus.stream().forEach(c -> cpuToNode.put(c, nodeId)));
+                        });
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        final List<LogicalCpu> cpus = new ArrayList<>();
+        online.stream().forEach(cpuId -> {
+            final Path dir = cpuDir.resolve("cpu" + cpuId);
+            final int packageId = readInt(dir.resolve("topology").resolve("physical_package_id")).orElse(0);
+            final int coreId = readInt(dir.resolve("topology").resolve("core_id")).orElse(cpuId);
+
+            // cache groups are identified by lowest CPU id sharing the cache
+            int l2Group = cpuId;
+            int l3Group = -1;
+            for (int idx = 0; Files.isDirectory(dir.resolve("cache").resolve("index" + idx)); idx++) {
+                final Path cacheDir = dir.resolve("cache").resolve("index" + idx);
+                final int level = readInt(cacheDir.resolve("level")).orElse(0);
+                final int firstShared = readLine(cacheDir.resolve("shared_cpu_list"))
+                        .map(CpuTopology::parseCpuList)
+                        .map(shared -> shared.nextSetBit(0))
+                        .orElse(cpuId);
+                if (level == 2) {
+                    l2Group = firstShared;
+                } else if (level == 3) {
+                    l3Group = firstShared;
+                }
+            }
+
+            cpus.add(new LogicalCpu(cpuId, packageId, coreId, cpuToNode.getOrDefault(cpuId, 0), l2Group, l3Group));
+        });
+
+        return new CpuTopology(cpus);
+    }
+
+    public Optional<LogicalCpu> getCpu(final int cpuId) {
+        return cpus.stream().filter(c -> c.cpuId == cpuId).findFirst();
+    }
+
+    /**
+     * Parses Linux CPU list format, for example "0-3,8,10-11"
+     *
+     * @param list - list
+     * @return set of CPU ids
+     */
+    public static BitSet parseCpuList(final String list) {
+        final BitSet res = new BitSet();
+        for (String range : list.trim().split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int dash = range.indexOf('-');
+            if (dash < 0) {
+                res.set(Integer.parseInt(range));
+            } else {
+                res.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return res;
+    }
+
+    private static Optional<String> readLine(final Path file) {
+        if (!Files.isReadable(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Files.readAllLines(file).stream().findFirst().map(String::trim);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Optional<Integer> readInt(final Path file) {
+        return readLine(file).filter(s -> !s.isEmpty()).map(Integer::parseInt);
+    }
+
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static final class LogicalCpu {
+
+        private final int cpuId;
+
+        // socket
+        private final int packageId;
+
+        // physical core id (unique within socket)
+        private final int coreId;
+
+        private final int numaNode;
+
+        // lowest CPU id sharing the same L2 cache
+        private final int l2Group;
+
+        // lowest CPU id sharing the same L3 cache (-1 if no L3 cache)
+        private final int l3Group;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.utils;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.affinity.Affinity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Thread factory pinning pipeline stages according to ThreadPlacementPlan (CPU topology aware).
+ * <p>
+ * ExchangeCore creates the plan before building the pipeline (see {@link #createPlan(List, Map)}),
+ * allocates ring buffer from ring CPU, and registers stage processors and handlers by name.
+ * Threads for registered stages are pinned to planned CPUs, other threads are bound to spare CPUs.
+ */
+@Slf4j
+public final class PlannedAffinityThreadFactory implements ThreadFactory {
+
+    private final Supplier<CpuTopology> topologySupplier;
+    private final Map<String, Integer> overrides;
+    private final Set<Integer> reservedCpus;
+
+    // processor or handler -> stage name
+    private final Map<Object, String> stages = new IdentityHashMap<>();
+
+    private ThreadPlacementPlan plan;
+
+    private final AtomicInteger threadsCounter = new AtomicInteger();
+
+    /**
+     * Uses machine topology, CPU 0 is reserved for OS
+     */
+    public PlannedAffinityThreadFactory() {
+        this(CpuTopology::readSystem, Map.of(), Set.of(0));
+    }
+
+    /**
+     * @param overrides - explicit stage CPUs by stage thread name, for example ME_0=5 (NOT_PINNED to disable pinning)
+     */
+    public PlannedAffinityThreadFactory(final Map<String, Integer> overrides) {
+        this(CpuTopology::readSystem, overrides, Set.of(0));
+    }
+
+    /**
+     * @param topologySupplier - CPU topology supplier
+     * @param overrides        - explicit stage CPUs by stage thread name
+     * @param reservedCpus     - CPUs that should not be used
+     */
+    public PlannedAffinityThreadFactory(final Supplier<CpuTopology> topologySupplier,
+                                        final Map<String, Integer> overrides,
+                                        final Set<Integer> reservedCpus) {
+        this.topologySupplier = topologySupplier;
+        this.overrides = overrides;
+        this.reservedCpus = reservedCpus;
+    }
+
+    /**
+     * Creates and prints placement plan for pipeline stages.
+     *
+     * @param stageNames    - stage thread names in pipeline order
+     * @param sharedThreads - stages running in other stage thread
+     * @return plan
+     */
+    public synchronized ThreadPlacementPlan createPlan(final List<String> stageNames, final Map<String, String> sharedThreads) {
+        stages.clear();
+        plan = ThreadPlacementPlan.create(topologySupplier.get(), stageNames, sharedThreads, overrides, reservedCpus);
+        log.info("Thread placement plan:\n{}", plan);
+        return plan;
+    }
+
+    /**
+     * Registers stage processor or handler
+     *
+     * @param stage - processor (thread runnable), or event handler of Disruptor BatchEventProcessor
+     * @param name  - stage name
+     * @param <T>   - stage type
+     * @return same stage
+     */
+    public synchronized <T> T registerStage(final T stage, final String name) {
+        stages.put(stage, name);
+        return stage;
+    }
+
+    /**
+     * Performs allocation in a thread pinned to ring CPU, so memory is touched first (and placed) on ring NUMA node.
+     *
+     * @param allocator - allocator
+     * @param <T>       - allocated object type
+     * @return allocated object
+     */
+    public <T> T allocateOnRingNode(final Supplier<T> allocator) {
+        final int ringCpu = getPlan().getRingCpu();
+        if (ringCpu == ThreadPlacementPlan.NOT_PINNED) {
+            return allocator.get();
+        }
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                Affinity.setAffinity(ringCpu);
+                future.complete(allocator.get());
+            } catch (final Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }, "Thread-PL-allocator-cpu" + ringCpu);
+        thread.start();
+        return future.join();
+    }
+
+    public synchronized ThreadPlacementPlan getPlan() {
+        if (plan == null) {
+            throw new IllegalStateException("Thread placement plan is not created");
+        }
+        return plan;
+    }
+
+    @Override
+    public synchronized Thread newThread(@NotNull Runnable runnable) {
+
+        final String stage = resolveStage(runnable);
+        final ThreadPlacementPlan currentPlan = plan;
+        final int threadId = threadsCounter.incrementAndGet();
+
+        if (stage != null && currentPlan != null && currentPlan.getCpu(stage) != ThreadPlacementPlan.NOT_PINNED) {
+            final int cpu = currentPlan.getCpu(stage);
+            return new Thread(() -> {
+                Affinity.setAffinity(cpu);
+                log.debug("{} stage {} pinned to cpu {}", runnable, stage, cpu);
+                runnable.run();
+            }, String.format("Thread-PL-%d-%s-cpu%d", threadId, stage, cpu));
+        }
+
+        final BitSet spareCpus = currentPlan != null ? currentPlan.getSpareCpus() : null;
+        if (spareCpus != null && !spareCpus.isEmpty()) {
+            return new Thread(() -> {
+                Affinity.setAffinity(spareCpus);
+                runnable.run();
+            }, String.format("Thread-PL-%d-%s", threadId, stage != null ? stage : "spare"));
+        }
+
+        return new Thread(runnable, String.format("Thread-PL-%d-%s", threadId, stage != null ? stage : "any"));
+    }
+
+    private String resolveStage(final Runnable runnable) {
+        final String stage = stages.get(runnable);
+        if (stage != null || !(runnable instanceof BatchEventProcessor)) {
+            return stage;
+        }
+        final Object handler = ReflectionUtils.extractField(BatchEventProcessor.class, (BatchEventProcessor<?>) runnable, "eventHandler");
+        return stages.get(handler);
+    }
+}
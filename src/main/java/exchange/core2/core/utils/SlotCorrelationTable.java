@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Correlation ids of externally submitted commands per ring buffer slot.
+ * <p>
+ * Publisher puts correlation id before publishing the slot, results handler reads it for the same sequence
+ * (disruptor barriers provide visibility). Entry is valid only while slot sequence matches,
+ * so commands published by other publishers are simply not found.
+ */
+public final class SlotCorrelationTable {
+
+    private final long[] correlationIds;
+    private final long[] sequences;
+    private final int indexMask;
+
+    public SlotCorrelationTable(final int ringBufferSize) {
+        if (Integer.bitCount(ringBufferSize) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of 2: " + ringBufferSize);
+        }
+        this.correlationIds = new long[ringBufferSize];
+        this.sequences = new long[ringBufferSize];
+        Arrays.fill(sequences, -1L);
+        this.indexMask = ringBufferSize - 1;
+    }
+
+    public void put(final long seq, final long correlationId) {
+        final int idx = (int) seq & indexMask;
+        correlationIds[idx] = correlationId;
+        sequences[idx] = seq;
+    }
+
+    /**
+     * @param seq - ring buffer sequence
+     * @return true if command with this sequence was published with correlation id
+     */
+    public boolean contains(final long seq) {
+        return sequences[(int) seq & indexMask] == seq;
+    }
+
+    /**
+     * @param seq - ring buffer sequence (should be checked by {@link #contains(long)})
+     * @return correlation id
+     */
+    public long get(final long seq) {
+        return correlationIds[(int) seq & indexMask];
+    }
+}
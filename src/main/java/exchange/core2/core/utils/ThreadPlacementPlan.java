@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.utils;
+
+import exchange.core2.core.utils.CpuTopology.LogicalCpu;
+import lombok.Getter;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Placement of pipeline stage threads on CPUs.
+ * <p>
+ * Stages are listed in pipeline order (G, R1_n and its workers, ME_n, E, F_n), neighbours in the list are communicating,
+ * so they are placed on neighbouring physical cores of the same NUMA node (sorted by shared L3, then L2 cache).
+ * If there are not enough physical cores, hyper-threading siblings are used, then other nodes.
+ * Journal (J) is placed on a separate physical core at the far end of the node, or not pinned if there is no spare core.
+ * Stages that are running in another stage thread (R2_n in R1_n thread) are getting the same CPU.
+ * <p>
+ * Ring buffer memory should be allocated from ring CPU (grouping processor CPU), so pages are placed on its NUMA node.
+ */
+@Getter
+public final class ThreadPlacementPlan {
+
+    public static final int NOT_PINNED = -1;
+
+    public static final String JOURNAL_STAGE = "J";
+
+    private final CpuTopology topology;
+
+    // stage name -> cpu, in pipeline order
+    private final Map<String, Integer> stageCpus;
+
+    // stage name -> stage which thread it is running in
+    private final Map<String, String> sharedThreads;
+
+    private final int ringCpu;
+
+    // CPUs for threads not belonging to any stage (loaders, consumers), not used by stages
+    private final BitSet spareCpus;
+
+    private ThreadPlacementPlan(final CpuTopology topology,
+                                final Map<String, Integer> stageCpus,
+                                final Map<String, String> sharedThreads,
+                                final int ringCpu,
+                                final BitSet spareCpus) {
+        this.topology = topology;
+        this.stageCpus = stageCpus;
+        this.sharedThreads = sharedThreads;
+        this.ringCpu = ringCpu;
+        this.spareCpus = spareCpus;
+    }
+
+    /**
+     * Creates placement plan
+     *
+     * @param topology      - CPU topology
+     * @param stages        - stage thread names in pipeline order
+     * @param sharedThreads - stages running in other stage thread (stage name -> thread stage name)
+     * @param overrides     - explicit stage CPUs (NOT_PINNED to disable pinning)
+     * @param reservedCpus  - CPUs that should not be used (OS, interrupts)
+     * @return plan
+     */
+    public static ThreadPlacementPlan create(final CpuTopology topology,
+                                             final List<String> stages,
+                                             final Map<String, String> sharedThreads,
+                                             final Map<String, Integer> overrides,
+                                             final Set<Integer> reservedCpus) {
+
+        overrides.forEach((stage, cpu) -> {
+            if (cpu != NOT_PINNED && topology.getCpu(cpu).isEmpty()) {
+                throw new IllegalArgumentException("Stage " + stage + " can not be pinned to unknown cpu " + cpu);
+            }
+        });
+
+        final List<LogicalCpu> available = topology.getCpus().stream()
+                .filter(c -> !reservedCpus.contains(c.getCpuId()))
+                .filter(c -> !overrides.containsValue(c.getCpuId()))
+                .collect(Collectors.toList());
+
+        // physical cores (available logical CPUs) grouped by NUMA node, ordered by caches locality,
+        // cores partially reserved (shared with OS) are going last
+        final Map<List<Integer>, Long> coreSizes = topology.getCpus().stream()
+                .collect(Collectors.groupingBy(ThreadPlacementPlan::coreKey, Collectors.counting()));
+        final Comparator<List<LogicalCpu>> coresOrder = Comparator
+                .<List<LogicalCpu>>comparingInt(core -> core.size() < coreSizes.get(coreKey(core.get(0))) ? 1 : 0)
+                .thenComparingInt(core -> core.get(0).getL3Group())
+                .thenComparingInt(core -> core.get(0).getL2Group())
+                .thenComparingInt(core -> core.get(0).getPackageId())
+                .thenComparingInt(core -> core.get(0).getCoreId());
+
+        final TreeMap<Integer, List<List<LogicalCpu>>> nodeCores = new TreeMap<>();
+        available.stream()
+                .collect(Collectors.groupingBy(ThreadPlacementPlan::coreKey, LinkedHashMap::new, Collectors.toList()))
+                .values()
+                .forEach(core -> nodeCores.computeIfAbsent(core.get(0).getNumaNode(), k -> new ArrayList<>()).add(core));
+        nodeCores.values().forEach(cores -> cores.sort(coresOrder));
+
+        // target node - node of explicitly placed grouping processor, otherwise node with most available cores
+        final Integer groupingCpu = stages.isEmpty() ? null : overrides.get(stages.get(0));
+        final int targetNode = (groupingCpu != null && groupingCpu != NOT_PINNED)
+                ? topology.getCpu(groupingCpu).map(LogicalCpu::getNumaNode).orElse(0)
+                : nodeCores.entrySet().stream()
+                .max(Comparator.<Map.Entry<Integer, List<List<LogicalCpu>>>>comparingInt(e -> e.getValue().size())
+                        .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()))
+                .map(Map.Entry::getKey)
+                .orElse(0);
+
+        final List<List<LogicalCpu>> primaryCores = new ArrayList<>(nodeCores.getOrDefault(targetNode, List.of()));
+        final List<List<LogicalCpu>> otherCores = nodeCores.entrySet().stream()
+                .filter(e -> e.getKey() != targetNode)
+                .flatMap(e -> e.getValue().stream())
+                .collect(Collectors.toList());
+
+        final List<String> pipeline = stages.stream()
+                .filter(s -> !overrides.containsKey(s))
+                .filter(s -> !s.equals(JOURNAL_STAGE))
+                .collect(Collectors.toList());
+
+        final Map<String, Integer> assigned = new HashMap<>(overrides);
+
+        // journal is isolated on the last core of the node (most distant caches), only if it does not take core from pipeline
+        if (stages.contains(JOURNAL_STAGE) && !overrides.containsKey(JOURNAL_STAGE)) {
+            if (primaryCores.size() > pipeline.size()) {
+                assigned.put(JOURNAL_STAGE, primaryCores.remove(primaryCores.size() - 1).get(0).getCpuId());
+            } else {
+                assigned.put(JOURNAL_STAGE, NOT_PINNED);
+            }
+        }
+
+        // physical cores of target node first, then their siblings, then other nodes
+        final List<LogicalCpu> slots = new ArrayList<>();
+        addSlots(slots, primaryCores);
+        addSlots(slots, otherCores);
+
+        for (int i = 0; i < pipeline.size(); i++) {
+            assigned.put(pipeline.get(i), i < slots.size() ? slots.get(i).getCpuId() : NOT_PINNED);
+        }
+
+        final Map<String, Integer> stageCpus = new LinkedHashMap<>();
+        stages.forEach(stage -> stageCpus.put(stage, assigned.get(stage)));
+        sharedThreads.forEach((stage, thread) -> stageCpus.put(stage, assigned.getOrDefault(thread, NOT_PINNED)));
+
+        final int ringCpu = stageCpus.values().stream()
+                .filter(cpu -> cpu != NOT_PINNED)
+                .findFirst()
+                .orElse(NOT_PINNED);
+
+        // spare CPUs of the ring node are preferred for other threads
+        final Set<Integer> used = new HashSet<>(stageCpus.values());
+        final int ringNode = topology.getCpu(ringCpu).map(LogicalCpu::getNumaNode).orElse(targetNode);
+        final BitSet spareCpus = new BitSet();
+        available.stream()
+                .filter(c -> c.getNumaNode() == ringNode && !used.contains(c.getCpuId()))
+                .forEach(c -> spareCpus.set(c.getCpuId()));
+        if (spareCpus.isEmpty()) {
+            available.stream()
+                    .filter(c -> !used.contains(c.getCpuId()))
+                    .forEach(c -> spareCpus.set(c.getCpuId()));
+        }
+
+        return new ThreadPlacementPlan(topology, stageCpus, sharedThreads, ringCpu, spareCpus);
+    }
+
+    private static List<Integer> coreKey(final LogicalCpu cpu) {
+        return Arrays.asList(cpu.getNumaNode(), cpu.getPackageId(), cpu.getCoreId());
+    }
+
+    private static void addSlots(final List<LogicalCpu> slots, final List<List<LogicalCpu>> cores) {
+        final int maxThreads = cores.stream().mapToInt(List::size).max().orElse(0);
+        for (int t = 0; t < maxThreads; t++) {
+            for (final List<LogicalCpu> core : cores) {
+                if (t < core.size()) {
+                    slots.add(core.get(t));
+                }
+            }
+        }
+    }
+
+    public int getCpu(final String stage) {
+        return stageCpus.getOrDefault(stage, NOT_PINNED);
+    }
+
+    public int getRingNode() {
+        return topology.getCpu(ringCpu).map(LogicalCpu::getNumaNode).orElse(NOT_PINNED);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        if (ringCpu != NOT_PINNED) {
+            sb.append(String.format("ring buffer memory: node %d (allocated from cpu %d)%n", getRingNode(), ringCpu));
+        }
+        stageCpus.forEach((stage, cpu) -> {
+            sb.append(String.format("  %-8s ", stage));
+            final String thread = sharedThreads.get(stage);
+            if (thread != null) {
+                sb.append(cpu == NOT_PINNED ? "not pinned" : String.format("cpu %-3d", cpu)).append(" (").append(thread).append(" thread)");
+            } else if (cpu == NOT_PINNED) {
+                sb.append("not pinned");
+            } else {
+                topology.getCpu(cpu).ifPresent(c -> sb.append(String.format("cpu %-3d node %d socket %d core %d L2 %d L3 %d",
+                        cpu, c.getNumaNode(), c.getPackageId(), c.getCoreId(), c.getL2Group(), c.getL3Group())));
+            }
+            sb.append(String.format("%n"));
+        });
+        sb.append(String.format("  other threads: cpus %s", spareCpus.isEmpty() ? "any" : spareCpus.toString()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+
+@Slf4j
+public final class FlyweightEventsProcessorTest {
+
+    @Test
+    public void shouldDeliverSameEventsAsSimpleProcessor() {
+
+        for (OrderCommand cmd : sampleCommands()) {
+
+            final List<Object> expected = new ArrayList<>();
+            new SimpleEventsProcessor(new RecordingHandler(expected)).accept(cmd, 1234L);
+
+            final List<Object> actual = new ArrayList<>();
+            new FlyweightEventsProcessor(new ConvertingHandler(actual)).accept(cmd, 1234L);
+
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void shouldReportResultsOfAllCommands() {
+
+        final EnumSet<OrderCommandType> notReported = EnumSet.of(
+                OrderCommandType.NOP,
+                OrderCommandType.GROUPING_CONTROL,
+                OrderCommandType.SHUTDOWN_SIGNAL,
+                OrderCommandType.RESERVED_COMPRESSED,
+                OrderCommandType.MARGIN_CALL);
+
+        for (OrderCommandType commandType : OrderCommandType.values()) {
+            assertThat(commandType.name(), reportedResults(sampleCommand(commandType)), is(notReported.contains(commandType) ? 0 : 1));
+        }
+
+        // intermediate frames and steps are not reported
+        final OrderCommand persistMatching = sampleCommand(OrderCommandType.PERSIST_STATE_MATCHING);
+        persistMatching.resultCode = CommandResultCode.ACCEPTED;
+        assertThat(reportedResults(persistMatching), is(0));
+        final OrderCommand binaryQuery = sampleCommand(OrderCommandType.BINARY_DATA_QUERY);
+        binaryQuery.resultCode = CommandResultCode.ACCEPTED;
+        assertThat(reportedResults(binaryQuery), is(0));
+
+        // rejected gateway message
+        final OrderCommand rejected = sampleCommand(OrderCommandType.NOP);
+        rejected.resultCode = CommandResultCode.GATEWAY_MESSAGE_INVALID;
+        assertThat(reportedResults(rejected), is(1));
+    }
+
+    private static int reportedResults(OrderCommand cmd) {
+        final List<Object> events = new ArrayList<>();
+        new FlyweightEventsProcessor(new ConvertingHandler(events)).accept(cmd, 1234L);
+        return events.size();
+    }
+
+    /**
+     * Allocation benchmark: compares bytes allocated per command by both processors
+     */
+    @Test
+    public void shouldNotAllocate() {
+
+        final List<OrderCommand> commands = sampleCommands();
+
+        final SumHandler sumHandler = new SumHandler();
+        final FlyweightEventsProcessor flyweightProcessor = new FlyweightEventsProcessor(sumHandler);
+        final SimpleEventsProcessor simpleProcessor = new SimpleEventsProcessor(new RecordingHandler(null));
+
+        final int iterations = 200_000;
+
+        // warm-up
+        measureAllocatedBytes(flyweightProcessor, commands, iterations);
+        measureAllocatedBytes(simpleProcessor, commands, iterations);
+
+        final double flyweightBytesPerCmd = (double) measureAllocatedBytes(flyweightProcessor, commands, iterations) / iterations / commands.size();
+        final double simpleBytesPerCmd = (double) measureAllocatedBytes(simpleProcessor, commands, iterations) / iterations / commands.size();
+
+        log.info("Allocated bytes per command: simple={} flyweight={} (checksum {})",
+                String.format("%.1f", simpleBytesPerCmd), String.format("%.3f", flyweightBytesPerCmd), sumHandler.sum);
+
+        assertThat(flyweightBytesPerCmd, lessThan(1.0));
+    }
+
+    private static long measureAllocatedBytes(final ObjLongConsumer<OrderCommand> processor,
+                                              final List<OrderCommand> commands,
+                                              final int iterations) {
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int size = commands.size();
+
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            for (int j = 0; j < size; j++) {
+                processor.accept(commands.get(j), i);
+            }
+        }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static List<OrderCommand> sampleCommands() {
+
+        final List<OrderCommand> commands = new ArrayList<>();
+
+        final OrderCommand cancel = sampleCommand(OrderCommandType.CANCEL_ORDER);
+        cancel.matcherEvent = event(MatcherEventType.REDUCE, 0L, 0L, 20100L, 3L);
+        cancel.matcherEvent.activeOrderCompleted = true;
+        commands.add(cancel);
+
+        final OrderCommand placeTrades = sampleCommand(OrderCommandType.PLACE_ORDER);
+        placeTrades.matcherEvent = event(MatcherEventType.TRADE, 276810L, 10332L, 20100L, 8272L);
+        placeTrades.matcherEvent.nextEvent = event(MatcherEventType.TRADE, 100293L, 1982L, 20110L, 3121L);
+        placeTrades.matcherEvent.nextEvent.activeOrderCompleted = true;
+        commands.add(placeTrades);
+
+        final OrderCommand placeTradeReject = sampleCommand(OrderCommandType.PLACE_ORDER);
+        placeTradeReject.matcherEvent = event(MatcherEventType.TRADE, 276810L, 10332L, 20100L, 8272L);
+        placeTradeReject.matcherEvent.nextEvent = event(MatcherEventType.REJECT, 0L, 0L, 52200L, 1000L);
+        commands.add(placeTradeReject);
+
+        final OrderCommand orderBook = sampleCommand(OrderCommandType.ORDER_BOOK_REQUEST);
+        orderBook.marketData = new L2MarketData(
+                new long[]{52300L, 52400L}, new long[]{10L, 20L}, new long[]{1L, 2L},
+                new long[]{52200L}, new long[]{30L}, new long[]{3L});
+        commands.add(orderBook);
+
+        commands.add(sampleCommand(OrderCommandType.ADD_USER));
+        commands.add(sampleCommand(OrderCommandType.MOVE_ORDER));
+
+        return commands;
+    }
+
+    private static OrderCommand sampleCommand(OrderCommandType commandType) {
+        return OrderCommand.builder()
+                .command(commandType)
+                .orderId(123L)
+                .symbol(3)
+                .price(52200L)
+                .size(3200L)
+                .reserveBidPrice(12800L)
+                .action(OrderAction.BID)
+                .orderType(OrderType.IOC)
+                .uid(29851L)
+                .timestamp(1578930983745201L)
+                .userCookie(44188)
+                .resultCode(CommandResultCode.SUCCESS)
+                .build();
+    }
+
+    private static MatcherTradeEvent event(MatcherEventType type, long matchedOrderId, long matchedUid, long price, long size) {
+        return MatcherTradeEvent.builder()
+                .eventType(type)
+                .matchedOrderId(matchedOrderId)
+                .matchedOrderUid(matchedUid)
+                .matchedOrderCompleted(matchedOrderId % 2 == 0)
+                .price(price)
+                .size(size)
+                .build();
+    }
+
+    // records events, command result is reduced to result code, sequence and timestamp
+    private static final class RecordingHandler implements IEventsHandler {
+
+        private final List<Object> events;
+
+        RecordingHandler(List<Object> events) {
+            this.events = events;
+        }
+
+        private void add(Object evt) {
+            if (events != null) {
+                events.add(evt);
+            }
+        }
+
+        @Override
+        public void commandResult(ApiCommandResult commandResult) {
+            if (events != null) {
+                add(List.of(commandResult.resultCode, commandResult.seq, commandResult.command.timestamp));
+            }
+        }
+
+        @Override
+        public void tradeEvent(TradeEvent tradeEvent) {
+            add(tradeEvent);
+        }
+
+        @Override
+        public void rejectEvent(RejectEvent rejectEvent) {
+            add(rejectEvent);
+        }
+
+        @Override
+        public void reduceEvent(ReduceEvent reduceEvent) {
+            add(reduceEvent);
+        }
+
+        @Override
+        public void orderBook(OrderBook orderBook) {
+            add(orderBook);
+        }
+    }
+
+    // converts views into IEventsHandler objects
+    private static final class ConvertingHandler implements IFlyweightEventsHandler {
+
+        private final List<Object> events;
+
+        ConvertingHandler(List<Object> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void commandResult(CommandResultView commandResult) {
+            events.add(List.of(commandResult.resultCode(), commandResult.seq(), commandResult.timestamp()));
+        }
+
+        @Override
+        public void tradeEvent(TradeEventView tradeEvent) {
+            final List<IEventsHandler.Trade> trades = new ArrayList<>();
+            while (tradeEvent.nextTrade()) {
+                trades.add(new IEventsHandler.Trade(
+                        tradeEvent.makerOrderId(),
+                        tradeEvent.makerUid(),
+                        tradeEvent.makerOrderCompleted(),
+                        tradeEvent.price(),
+                        tradeEvent.volume()));
+            }
+            events.add(new IEventsHandler.TradeEvent(
+                    tradeEvent.symbol(),
+                    tradeEvent.totalVolume(),
+                    tradeEvent.takerOrderId(),
+                    tradeEvent.takerUid(),
+                    tradeEvent.takerAction(),
+                    tradeEvent.takerOrderCompleted(),
+                    tradeEvent.timestamp(),
+                    trades));
+        }
+
+        @Override
+        public void rejectEvent(OrderEventView rejectEvent) {
+            events.add(new IEventsHandler.RejectEvent(
+                    rejectEvent.symbol(),
+                    rejectEvent.volume(),
+                    rejectEvent.price(),
+                    rejectEvent.orderId(),
+                    rejectEvent.uid(),
+                    rejectEvent.timestamp()));
+        }
+
+        @Override
+        public void reduceEvent(OrderEventView reduceEvent) {
+            events.add(new IEventsHandler.ReduceEvent(
+                    reduceEvent.symbol(),
+                    reduceEvent.volume(),
+                    reduceEvent.orderCompleted(),
+                    reduceEvent.price(),
+                    reduceEvent.orderId(),
+                    reduceEvent.uid(),
+                    reduceEvent.timestamp()));
+        }
+
+        @Override
+        public void orderBook(OrderBookView orderBook) {
+            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>();
+            for (int i = 0; i < orderBook.askSize(); i++) {
+                asks.add(new IEventsHandler.OrderBookRecord(orderBook.askPrice(i), orderBook.askVolume(i), orderBook.askOrders(i)));
+            }
+            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>();
+            for (int i = 0; i < orderBook.bidSize(); i++) {
+                bids.add(new IEventsHandler.OrderBookRecord(orderBook.bidPrice(i), orderBook.bidVolume(i), orderBook.bidOrders(i)));
+            }
+            events.add(new IEventsHandler.OrderBook(orderBook.symbol(), asks, bids, orderBook.timestamp()));
+        }
+    }
+
+    // garbage-free handler touching all the data
+    private static final class SumHandler implements IFlyweightEventsHandler {
+
+        long sum = 0;
+
+        @Override
+        public void commandResult(CommandResultView commandResult) {
+            sum += commandResult.seq() + commandResult.orderId() + commandResult.resultCode().ordinal();
+        }
+
+        @Override
+        public void tradeEvent(TradeEventView tradeEvent) {
+            sum += tradeEvent.totalVolume();
+            while (tradeEvent.nextTrade()) {
+                sum += tradeEvent.makerOrderId() + tradeEvent.price() * tradeEvent.volume();
+            }
+        }
+
+        @Override
+        public void rejectEvent(OrderEventView rejectEvent) {
+            sum += rejectEvent.volume();
+        }
+
+        @Override
+        public void reduceEvent(OrderEventView reduceEvent) {
+            sum += reduceEvent.volume();
+        }
+
+        @Override
+        public void orderBook(OrderBookView orderBook) {
+            for (int i = 0; i < orderBook.askSize(); i++) {
+                sum += orderBook.askPrice(i) * orderBook.askVolume(i) + orderBook.askOrders(i);
+            }
+            for (int i = 0; i < orderBook.bidSize(); i++) {
+                sum += orderBook.bidPrice(i) * orderBook.bidVolume(i) + orderBook.bidOrders(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestConstants;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.TestOrdersGeneratorConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class FreeMarginConsistencyTest {
+
+    @Test
+    public void shouldKeepFreeMarginAggregatesConsistentWithFullRecalculation() throws Exception {
+
+        final Set<Integer> currencies = new HashSet<>(TestConstants.CURRENCIES_FUTURES);
+        currencies.addAll(TestConstants.CURRENCIES_EXCHANGE);
+
+        final TestDataParameters testDataParameters = TestDataParameters.builder()
+                .totalTransactionsNumber(50_000)
+                .targetOrderBookOrdersTotal(2_000)
+                .numAccounts(1_000)
+                .currenciesAllowed(currencies)
+                .numSymbols(12)
+                .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                .build();
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT)) {
+
+            container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+            container.getApi().submitCommandsSync(testDataFutures.getGenResult().get().getApiCommandsBenchmark().join());
+
+            // results of all commands are received - risk engines are idle
+            for (final RiskEngine riskEngine : container.getExchangeCore().getRiskEngines()) {
+                assertThat(riskEngine.countFreeMarginCacheMismatches(), is(0));
+            }
+        }
+    }
+}
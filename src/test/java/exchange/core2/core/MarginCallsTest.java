@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.api.ApiMoveOrder;
+import exchange.core2.core.common.api.ApiNop;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.OrdersProcessingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static exchange.core2.core.common.OrderAction.ASK;
+import static exchange.core2.core.common.OrderAction.BID;
+import static exchange.core2.core.common.OrderType.GTC;
+import static exchange.core2.core.common.OrderType.IOC;
+import static exchange.core2.tests.util.TestConstants.CURRENECY_USD;
+import static exchange.core2.tests.util.TestConstants.SYMBOL_MARGIN;
+import static exchange.core2.tests.util.TestConstants.UID_1;
+import static exchange.core2.tests.util.TestConstants.UID_2;
+import static exchange.core2.tests.util.TestConstants.UID_3;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@Slf4j
+public final class MarginCallsTest {
+
+    @Test
+    public void shouldDeliverMarginCallEvent() throws Exception {
+
+        final OrdersProcessingConfiguration ordersCfg = OrdersProcessingConfiguration.builder()
+                .riskProcessingMode(OrdersProcessingConfiguration.RiskProcessingMode.FULL_PER_CURRENCY)
+                .marginTradingMode(OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED)
+                .marginCallsMode(OrdersProcessingConfiguration.MarginCallsMode.MARGIN_CALLS_ENABLED)
+                .build();
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .sendL2ForEveryCmd(true)
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg, ordersCfg)) {
+
+            final List<IEventsHandler.MarginCallEvent> marginCalls = new CopyOnWriteArrayList<>();
+            container.setConsumer(new SimpleEventsProcessor(new IEventsHandler() {
+                @Override
+                public void commandResult(ApiCommandResult commandResult) {
+                }
+
+                @Override
+                public void tradeEvent(TradeEvent tradeEvent) {
+                }
+
+                @Override
+                public void rejectEvent(RejectEvent rejectEvent) {
+                }
+
+                @Override
+                public void reduceEvent(ReduceEvent reduceEvent) {
+                }
+
+                @Override
+                public void orderBook(OrderBook orderBook) {
+                }
+
+                @Override
+                public void marginCall(MarginCallEvent marginCallEvent) {
+                    marginCalls.add(marginCallEvent);
+                }
+            }));
+
+            container.addSymbol(TestConstants.SYMBOLSPEC_EUR_USD);
+            container.createUserWithMoney(UID_1, CURRENECY_USD, 2_500L);
+            container.createUserWithMoney(UID_2, CURRENECY_USD, 100_000L);
+            container.createUserWithMoney(UID_3, CURRENECY_USD, 100_000L);
+
+            // UID_1 opens long position 1 @ 10000 with margin 2200 - margin call when bid < 9700
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_2).orderId(1).price(10_000).size(1)
+                    .action(ASK).orderType(GTC).symbol(SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_1).orderId(2).price(10_000).size(1)
+                    .action(BID).orderType(IOC).symbol(SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+
+            // bid still above liquidation price
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_3).orderId(3).price(9_700).size(1)
+                    .action(BID).orderType(GTC).symbol(SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+            pushCommands(container, 20);
+            assertThat(marginCalls.size(), is(0));
+
+            // best bid moves below liquidation price
+            container.submitCommandSync(ApiMoveOrder.builder().uid(UID_3).orderId(3).newPrice(9_699).symbol(SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+
+            // risk engine applies price on next group, then scanner publishes MARGIN_CALL command
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (marginCalls.isEmpty() && System.currentTimeMillis() < deadline) {
+                pushCommands(container, 1);
+            }
+
+            pushCommands(container, 20);
+            assertThat(marginCalls.size(), is(1));
+
+            final IEventsHandler.MarginCallEvent event = marginCalls.get(0);
+            log.debug("margin call: {}", event);
+            assertThat(event.getUid(), is(UID_1));
+            assertThat(event.getSymbol(), is(SYMBOL_MARGIN));
+            assertThat(event.getCurrency(), is(CURRENECY_USD));
+            assertThat(event.getPrice(), is(9_699L));
+            assertThat(event.getPositionVolume(), is(1L));
+            assertThat(event.getEquity(), is(-1L));
+            assertThat(container.getExchangeCore().getMarginCallScanner().getMarginCallsCount(), is(1L));
+        }
+    }
+
+    private static void pushCommands(final ExchangeTestContainer container, final int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            container.getApi().submitCommandAsync(ApiNop.builder().build()).join();
+            Thread.sleep(10);
+        }
+    }
+}
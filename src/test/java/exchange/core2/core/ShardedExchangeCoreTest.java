@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.ApiOrderBookRequest;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.reports.SingleUserReportQuery;
+import exchange.core2.core.common.api.reports.SingleUserReportResult;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportQuery;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.ShardedThroughputTestsModule;
+import exchange.core2.tests.util.TestConstants;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.TestOrdersGeneratorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static exchange.core2.tests.util.TestConstants.CURRENECY_XBT;
+import static exchange.core2.tests.util.TestConstants.UID_1;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class ShardedExchangeCoreTest {
+
+    private ShardedExchangeCore shardedCore;
+    private ShardedExchangeApi api;
+
+    @BeforeEach
+    public void before() {
+        shardedCore = ShardedExchangeCore.builder()
+                .shardsNum(2)
+                .exchangeConfigurationFactory(shard -> ShardedThroughputTestsModule.shardConfiguration(PerformanceConfiguration.DEFAULT, shard))
+                .symbolToShard(symbol -> symbol == TestConstants.SYMBOL_MARGIN ? 0 : 1)
+                .build();
+        shardedCore.startup();
+        api = shardedCore.getApi();
+    }
+
+    @AfterEach
+    public void after() {
+        shardedCore.shutdown();
+    }
+
+    @Test
+    public void shouldRouteSymbolsToShards() {
+
+        assertThat(api.submitBinaryDataAsync(new BatchAddSymbolsCommand(Arrays.asList(TestConstants.SYMBOLSPEC_EUR_USD, TestConstants.SYMBOLSPEC_ETH_XBT))).join(),
+                is(CommandResultCode.SUCCESS));
+
+        assertThat(api.submitCommandAsync(orderBookRequest(TestConstants.SYMBOL_MARGIN)).join(), is(CommandResultCode.SUCCESS));
+        assertThat(api.submitCommandAsync(orderBookRequest(TestConstants.SYMBOL_EXCHANGE)).join(), is(CommandResultCode.SUCCESS));
+
+        // symbols are not added to other shards
+        assertThat(api.getShardApi(1).submitCommandAsync(orderBookRequest(TestConstants.SYMBOL_MARGIN)).join(), is(CommandResultCode.MATCHING_INVALID_ORDER_BOOK_ID));
+        assertThat(api.getShardApi(0).submitCommandAsync(orderBookRequest(TestConstants.SYMBOL_EXCHANGE)).join(), is(CommandResultCode.MATCHING_INVALID_ORDER_BOOK_ID));
+    }
+
+    @Test
+    public void shouldTransferBalanceBetweenShards() {
+
+        assertThat(api.submitCommandAsync(ApiAddUser.builder().uid(UID_1).build()).join(), is(CommandResultCode.SUCCESS));
+        assertThat(api.submitCommandAsync(ApiAdjustUserBalance.builder().uid(UID_1).currency(CURRENECY_XBT).amount(1_0000_0000L).transactionId(1L).build()).join(),
+                is(CommandResultCode.SUCCESS));
+
+        assertThat(api.transferBalance(UID_1, CURRENECY_XBT, 4000_0000L, 0, 1, 2L).join(), is(CommandResultCode.SUCCESS));
+        assertThat(xbtBalances(), is(new long[]{6000_0000L, 4000_0000L}));
+
+        // insufficient funds in source sub-account
+        assertThat(api.transferBalance(UID_1, CURRENECY_XBT, 7000_0000L, 0, 1, 4L).join(), is(CommandResultCode.USER_MGMT_ACCOUNT_BALANCE_ADJUSTMENT_NSF));
+        assertThat(xbtBalances(), is(new long[]{6000_0000L, 4000_0000L}));
+
+        // transfer back
+        assertThat(api.transferBalance(UID_1, CURRENECY_XBT, 1000_0000L, 1, 0, 6L).join(), is(CommandResultCode.SUCCESS));
+        assertThat(xbtBalances(), is(new long[]{7000_0000L, 3000_0000L}));
+
+        // same transaction can not be applied twice
+        assertThat(api.transferBalance(UID_1, CURRENECY_XBT, 1000_0000L, 1, 0, 6L).join(), is(CommandResultCode.USER_MGMT_ACCOUNT_BALANCE_ADJUSTMENT_ALREADY_APPLIED_SAME));
+        assertThat(xbtBalances(), is(new long[]{7000_0000L, 3000_0000L}));
+
+        assertBalancesZeroInEachShard();
+    }
+
+    @Test
+    public void shouldRefundWhenCreditFails() {
+
+        // user exists only in shard 0
+        assertThat(api.getShardApi(0).submitCommandAsync(ApiAddUser.builder().uid(UID_1).build()).join(), is(CommandResultCode.SUCCESS));
+        assertThat(api.submitCommandAsync(ApiAdjustUserBalance.builder().uid(UID_1).currency(CURRENECY_XBT).amount(1_0000_0000L).transactionId(1L).build()).join(),
+                is(CommandResultCode.SUCCESS));
+
+        assertThat(api.transferBalance(UID_1, CURRENECY_XBT, 4000_0000L, 0, 1, 2L).join(), is(CommandResultCode.AUTH_INVALID_USER));
+
+        final SingleUserReportResult report = api.getShardApi(0).processReport(new SingleUserReportQuery(UID_1), 0).join();
+        assertThat(report.getAccounts().get(CURRENECY_XBT), is(1_0000_0000L));
+
+        assertBalancesZeroInEachShard();
+    }
+
+    @Test
+    public void shouldProcessMultiSymbolWorkload() {
+        ShardedThroughputTestsModule.shardedThroughputTestImpl(
+                PerformanceConfiguration.DEFAULT,
+                ExchangeTestContainer.prepareTestDataAsync(TestDataParameters.builder()
+                        .totalTransactionsNumber(20_000)
+                        .targetOrderBookOrdersTotal(2_000)
+                        .numAccounts(2_000)
+                        .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                        .numSymbols(20)
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                        .build(), 1),
+                3,
+                1);
+    }
+
+    private static ApiOrderBookRequest orderBookRequest(final int symbol) {
+        return ApiOrderBookRequest.builder().symbol(symbol).size(10).build();
+    }
+
+    private long[] xbtBalances() {
+        return api.processReport(new SingleUserReportQuery(UID_1), 0).join().stream()
+                .mapToLong(report -> report.getAccounts().get(CURRENECY_XBT))
+                .toArray();
+    }
+
+    private void assertBalancesZeroInEachShard() {
+        final List<TotalCurrencyBalanceReportResult> reports = api.processReport(new TotalCurrencyBalanceReportQuery(), 0).join();
+        reports.forEach(report -> assertThat(report.isGlobalBalancesAllZero(), is(true)));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.core.processors.journaling.JournalCompactor;
+import exchange.core2.core.processors.journaling.JournalReader;
+import exchange.core2.core.processors.journaling.JournalTailer;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.StandbyFailoverTestsModule;
+import exchange.core2.tests.util.TestDataParameters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode.INLINE_SYNC;
+import static exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode.PIPELINED_ASYNC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class StandbyReplicaTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void shouldFailoverToStandby() throws Exception {
+        StandbyFailoverTestsModule.failoverTestImpl(
+                PerformanceConfiguration.DEFAULT,
+                TestDataParameters.singlePairMarginBuilder()
+                        .totalTransactionsNumber(20_000)
+                        .targetOrderBookOrdersTotal(500)
+                        .numAccounts(500)
+                        .build(),
+                folder,
+                PIPELINED_ASYNC,
+                1);
+    }
+
+    @Test
+    public void shouldPromoteAtExactSequence() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.DEFAULT;
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+        final Path primaryFolder = Files.createDirectories(folder.resolve("primary"));
+
+        final TestDataParameters testDataParameters = TestDataParameters.singlePairExchangeBuilder()
+                .totalTransactionsNumber(20_000)
+                .targetOrderBookOrdersTotal(500)
+                .numAccounts(500)
+                .build();
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                perfCfg,
+                InitialStateConfiguration.cleanStartJournaling(exchangeId),
+                StandbyFailoverTestsModule.diskJournaling(primaryFolder, INLINE_SYNC))) {
+
+            primary.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+            primary.getApi().submitCommandsSync(testDataFutures.getGenResult().get().getApiCommandsBenchmark().join());
+        }
+
+        final long lastSeq = new JournalReader().readRange(primaryFolder, exchangeId, 0, 0, Long.MAX_VALUE, (seq, cmd) -> true);
+        final long promotionSeq = new JournalReader().readRange(primaryFolder, exchangeId, 0, 0, lastSeq - 100, (seq, cmd) -> true);
+
+        // expected state at promotion sequence
+        final ExchangeConfiguration compactorCfg = StandbyFailoverTestsModule.standbyConfiguration(
+                perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, 0, 0), primaryFolder, INLINE_SYNC);
+        final JournalCompactor.CompactionResult compactionResult = new JournalCompactor(compactorCfg,
+                DiskSerializationProcessorConfiguration.createConfig(primaryFolder.toString(), INLINE_SYNC, DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL))
+                .compact(1, promotionSeq);
+
+        final StandbyReplica standby = StandbyReplica.builder()
+                .resultsConsumer((cmd, seq) -> {
+                })
+                .exchangeConfiguration(StandbyFailoverTestsModule.standbyConfiguration(
+                        perfCfg, InitialStateConfiguration.cleanStartJournaling(exchangeId), Files.createDirectories(folder.resolve("standby")), PIPELINED_ASYNC))
+                .journalTailer(new JournalTailer(primaryFolder, exchangeId, 0, 0))
+                .build();
+
+        standby.start();
+        assertThat(standby.promote(promotionSeq), is(promotionSeq));
+        assertThat(standby.isPromoted(), is(true));
+
+        final int standbyStateHash = standby.getExchangeCore().getApi().processReport(new StateHashReportQuery(), 1).get().getStateHash();
+        assertThat(standbyStateHash, is(compactionResult.getStateHash()));
+
+        standby.shutdown();
+    }
+
+    @Test
+    public void shouldRefusePromotionAtAlreadyReplicatedSequence() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.DEFAULT;
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+        final Path primaryFolder = Files.createDirectories(folder.resolve("primary"));
+
+        final TestDataParameters testDataParameters = TestDataParameters.singlePairExchangeBuilder()
+                .totalTransactionsNumber(5_000)
+                .targetOrderBookOrdersTotal(200)
+                .numAccounts(200)
+                .build();
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                perfCfg,
+                InitialStateConfiguration.cleanStartJournaling(exchangeId),
+                StandbyFailoverTestsModule.diskJournaling(primaryFolder, INLINE_SYNC))) {
+
+            primary.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+            primary.getApi().submitCommandsSync(testDataFutures.getGenResult().get().getApiCommandsBenchmark().join());
+        }
+
+        final long lastSeq = new JournalReader().readRange(primaryFolder, exchangeId, 0, 0, Long.MAX_VALUE, (seq, cmd) -> true);
+
+        final StandbyReplica standby = StandbyReplica.builder()
+                .resultsConsumer((cmd, seq) -> {
+                })
+                .exchangeConfiguration(StandbyFailoverTestsModule.standbyConfiguration(
+                        perfCfg, InitialStateConfiguration.cleanStartJournaling(exchangeId), Files.createDirectories(folder.resolve("standby")), PIPELINED_ASYNC))
+                .journalTailer(new JournalTailer(primaryFolder, exchangeId, 0, 0))
+                .build();
+
+        standby.start();
+        while (standby.getLastAppliedSeq() < lastSeq) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(IllegalStateException.class, () -> standby.promote(lastSeq - 100));
+        assertThat(standby.isPromoted(), is(false));
+
+        // standby keeps replicating and can still be promoted
+        assertThat(standby.promote(), is(lastSeq));
+        assertThat(standby.isPromoted(), is(true));
+
+        standby.shutdown();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.cmd;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class OffHeapOrderCommandRingTest {
+
+    @Test
+    public void shouldWriteAndReadCommands() {
+
+        final OffHeapOrderCommandRing ring = new OffHeapOrderCommandRing(16, 4);
+        assertThat(ring.getSlotSize() % 64, is(0));
+
+        final OrderCommandFlyweight writer = ring.newFlyweight();
+        final OrderCommandFlyweight reader = ring.newFlyweight();
+
+        for (long seq = 0; seq < 40; seq++) {
+            final OrderCommand cmd = OrderCommand.newOrder(OrderType.IOC, 1000 + seq, 77, 12000 + seq, 12500, 3, OrderAction.BID);
+            cmd.symbol = 5;
+            cmd.timestamp = seq * 10;
+            cmd.eventsGroup = seq / 4;
+            cmd.serviceFlags = 1;
+            cmd.resultCode = CommandResultCode.SUCCESS;
+            for (int i = 0; i < seq % 5; i++) {
+                final MatcherTradeEvent evt = new MatcherTradeEvent();
+                evt.eventType = MatcherEventType.TRADE;
+                evt.matchedOrderId = seq * 100 + i;
+                evt.matchedOrderUid = 88;
+                evt.matchedOrderCompleted = i % 2 == 0;
+                evt.activeOrderCompleted = i == 3;
+                evt.price = 12000 + i;
+                evt.size = 1;
+                evt.bidderHoldPrice = 12500;
+                evt.nextEvent = cmd.matcherEvent;
+                cmd.matcherEvent = evt;
+            }
+
+            ring.wrap(writer, seq).writeFrom(cmd);
+
+            final OrderCommand restored = new OrderCommand();
+            ring.wrap(reader, seq).readTo(restored);
+
+            assertThat(restored.toString(), is(cmd.toString()));
+            assertThat(reader.eventsCount(), is((int) (seq % 5)));
+
+            final List<MatcherTradeEvent> expected = cmd.extractEvents();
+            final List<MatcherTradeEvent> actual = restored.extractEvents();
+            assertThat(actual.size(), is(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).matchedOrderId, is(expected.get(i).matchedOrderId));
+                assertThat(actual.get(i).matchedOrderCompleted, is(expected.get(i).matchedOrderCompleted));
+                assertThat(actual.get(i).activeOrderCompleted, is(expected.get(i).activeOrderCompleted));
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepNullEnumsAndRejectOverflow() {
+
+        final OffHeapOrderCommandRing ring = new OffHeapOrderCommandRing(4, 1);
+        final OrderCommandFlyweight flyweight = ring.wrap(ring.newFlyweight(), 1);
+
+        final OrderCommand cmd = OrderCommand.cancel(5, 6);
+        flyweight.writeFrom(cmd);
+        assertThat(flyweight.action(), nullValue());
+        assertThat(flyweight.orderType(), nullValue());
+        assertThat(flyweight.command(), is(OrderCommandType.CANCEL_ORDER));
+
+        final MatcherTradeEvent evt = new MatcherTradeEvent();
+        evt.eventType = MatcherEventType.REDUCE;
+        flyweight.appendEvent(evt);
+        assertThrows(IllegalStateException.class, () -> flyweight.appendEvent(evt));
+    }
+
+    @Test
+    public void shouldWriteAndReadMarketData() {
+
+        final OffHeapOrderCommandRing ring = new OffHeapOrderCommandRing(4, 2, 3);
+        assertThat(ring.getSlotSize(), is(OrderCommandFlyweight.recordSize(2, 3)));
+        assertThat(ring.getSlotSize() > OrderCommandFlyweight.recordSize(2), is(true));
+
+        final OrderCommandFlyweight writer = ring.newFlyweight();
+        final OrderCommandFlyweight reader = ring.newFlyweight();
+
+        final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, 10, 20, 1500, 1500, 7, OrderAction.ASK);
+        cmd.marketData = new L2MarketData(
+                new long[]{1500, 1510, 1520}, new long[]{7, 1, 2}, new long[]{1, 1, 2},
+                new long[]{1490}, new long[]{30}, new long[]{4});
+        cmd.marketData.timestamp = 123;
+        cmd.marketData.referenceSeq = 45;
+
+        ring.wrap(writer, 1).writeFrom(cmd);
+
+        // source snapshot is not referenced by the record
+        final L2MarketData expected = cmd.marketData.copy();
+        cmd.marketData.askPrices[0] = 1;
+
+        final OrderCommand restored = new OrderCommand();
+        ring.wrap(reader, 1).readTo(restored);
+        assertThat(reader.hasMarketData(), is(true));
+        assertThat(restored.marketData, notNullValue());
+        assertThat(restored.marketData, is(expected));
+        assertThat(restored.marketData.timestamp, is(123L));
+        assertThat(restored.marketData.referenceSeq, is(45L));
+
+        // snapshot object of target command is reused, null is restored as null
+        final L2MarketData reused = restored.marketData;
+        cmd.marketData = null;
+        ring.wrap(writer, 2).writeFrom(cmd);
+        ring.wrap(reader, 2).readTo(restored);
+        assertThat(reader.hasMarketData(), is(false));
+        assertThat(restored.marketData, nullValue());
+
+        cmd.marketData = expected;
+        ring.wrap(writer, 3).writeFrom(cmd);
+        restored.marketData = reused;
+        ring.wrap(reader, 3).readTo(restored);
+        assertThat(restored.marketData == reused, is(true));
+        assertThat(restored.marketData, is(expected));
+    }
+
+    @Test
+    public void shouldRejectTooDeepMarketData() {
+
+        final L2MarketData marketData = new L2MarketData(4, 1);
+        marketData.askSize = 4;
+        marketData.bidSize = 1;
+
+        final OrderCommandFlyweight noMarketData = new OffHeapOrderCommandRing(4, 1).newFlyweight();
+        assertThat(noMarketData.canHoldMarketData(null), is(true));
+        assertThat(noMarketData.canHoldMarketData(marketData), is(false));
+
+        final OffHeapOrderCommandRing ring = new OffHeapOrderCommandRing(4, 1, 3);
+        final OrderCommandFlyweight flyweight = ring.wrap(ring.newFlyweight(), 0);
+        assertThat(flyweight.canHoldMarketData(marketData), is(false));
+        assertThrows(IllegalStateException.class, () -> flyweight.writeMarketData(marketData));
+
+        marketData.askSize = 3;
+        assertThat(flyweight.canHoldMarketData(marketData), is(true));
+        flyweight.writeMarketData(marketData);
+        assertThat(flyweight.hasMarketData(), is(true));
+    }
+}
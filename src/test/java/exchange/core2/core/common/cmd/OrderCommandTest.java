@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.cmd;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Stream;
+
+import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+
+public final class OrderCommandTest {
+
+    private static final int CACHE_LINE_SIZE = 64;
+
+    private static final String[] INPUT_FIELDS = {"command", "orderId", "symbol", "price", "size", "reserveBidPrice",
+            "orderType", "uid", "timestamp", "userCookie", "eventsGroup", "serviceFlags"};
+
+    private static final String[] RESULT_FIELDS = {"resultCode", "matcherEvent", "marketData", "action"};
+
+    @Test
+    public void shouldSeparateResultSectionFromInputSection() {
+
+        final long inputStart = Stream.of(INPUT_FIELDS).mapToLong(OrderCommandTest::offset).min().orElseThrow();
+        // conservative - assuming last field is 8 bytes long
+        final long inputEnd = Stream.of(INPUT_FIELDS).mapToLong(OrderCommandTest::offset).max().orElseThrow() + 8;
+        final long resultStart = Stream.of(RESULT_FIELDS).mapToLong(OrderCommandTest::offset).min().orElseThrow();
+
+        // results are written by R1/ME while other stages are reading input of the same slot
+        assertThat(resultStart - inputEnd, greaterThanOrEqualTo((long) CACHE_LINE_SIZE));
+
+        // left padding protects input section from result section of the previous slot
+        assertThat(inputStart, greaterThanOrEqualTo((long) CACHE_LINE_SIZE));
+    }
+
+    @Test
+    public void shouldBuildAndCopy() {
+
+        final OrderCommand cmd = OrderCommand.builder()
+                .command(OrderCommandType.PLACE_ORDER)
+                .orderId(123L)
+                .symbol(5)
+                .price(100L)
+                .reserveBidPrice(110L)
+                .size(7L)
+                .action(OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .uid(42L)
+                .timestamp(1000L)
+                .resultCode(CommandResultCode.VALID_FOR_MATCHING_ENGINE)
+                .build();
+
+        final OrderCommand copy = cmd.copy();
+        assertThat(copy.getOrderId(), is(123L));
+        assertThat(copy.symbol, is(5));
+        assertThat(copy.getReserveBidPrice(), is(110L));
+        assertThat(copy.getUid(), is(42L));
+        assertThat(copy.resultCode, is(CommandResultCode.VALID_FOR_MATCHING_ENGINE));
+        assertThat(copy.toString(), is(cmd.toString()));
+    }
+
+    private static long offset(final String fieldName) {
+        Class<?> clazz = OrderCommand.class;
+        while (clazz != null) {
+            try {
+                return UNSAFE.objectFieldOffset(clazz.getDeclaredField(fieldName));
+            } catch (NoSuchFieldException ex) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+        throw new IllegalArgumentException("Unknown field " + fieldName);
+    }
+}
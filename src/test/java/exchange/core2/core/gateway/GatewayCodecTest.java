@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.gateway;
+
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import exchange.core2.core.utils.SlotCorrelationTable;
+import exchange.core2.tests.util.TestConstants;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class GatewayCodecTest {
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[4096]);
+
+    @Test
+    public void shouldDecodeRequestsIntoOrderCommand() {
+
+        final OrderCommand cmd = new OrderCommand();
+
+        int len = GatewayCodec.encodePlaceOrder(buffer, 0, 11L, 1000L, UID_1, 101L, SYMBOL_EXCHANGE, 1600L, 1650L, 7L, OrderAction.BID, OrderType.FOK_BUDGET, 42);
+        assertThat(len, is(GatewayCodec.messageLength(buffer, 0)));
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(11L));
+        assertThat(cmd.command, is(OrderCommandType.PLACE_ORDER));
+        assertThat(cmd.timestamp, is(1000L));
+        assertThat(cmd.uid, is(UID_1));
+        assertThat(cmd.orderId, is(101L));
+        assertThat(cmd.symbol, is(SYMBOL_EXCHANGE));
+        assertThat(cmd.price, is(1600L));
+        assertThat(cmd.reserveBidPrice, is(1650L));
+        assertThat(cmd.size, is(7L));
+        assertThat(cmd.action, is(OrderAction.BID));
+        assertThat(cmd.orderType, is(OrderType.FOK_BUDGET));
+        assertThat(cmd.userCookie, is(42));
+        assertThat(cmd.resultCode, is(CommandResultCode.NEW));
+
+        len = GatewayCodec.encodeMoveOrder(buffer, 0, 12L, 1001L, UID_2, 102L, SYMBOL_MARGIN, 1700L);
+        assertThat(len, is(GatewayCodec.messageLength(buffer, 0)));
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(12L));
+        assertThat(cmd.command, is(OrderCommandType.MOVE_ORDER));
+        assertThat(cmd.uid, is(UID_2));
+        assertThat(cmd.orderId, is(102L));
+        assertThat(cmd.symbol, is(SYMBOL_MARGIN));
+        assertThat(cmd.price, is(1700L));
+        assertThat(cmd.timestamp, is(1001L));
+
+        GatewayCodec.encodeCancelOrder(buffer, 0, 13L, 1002L, UID_3, 103L, SYMBOL_MARGIN);
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(13L));
+        assertThat(cmd.command, is(OrderCommandType.CANCEL_ORDER));
+        assertThat(cmd.uid, is(UID_3));
+        assertThat(cmd.orderId, is(103L));
+        assertThat(cmd.symbol, is(SYMBOL_MARGIN));
+
+        GatewayCodec.encodeReduceOrder(buffer, 0, 14L, 1003L, UID_1, 104L, SYMBOL_MARGIN, 3L);
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(14L));
+        assertThat(cmd.command, is(OrderCommandType.REDUCE_ORDER));
+        assertThat(cmd.orderId, is(104L));
+        assertThat(cmd.size, is(3L));
+
+        GatewayCodec.encodeAdjustBalance(buffer, 0, 15L, 1004L, UID_2, 7001L, CURRENECY_USD, -500L, BalanceAdjustmentType.SUSPEND);
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(15L));
+        assertThat(cmd.command, is(OrderCommandType.BALANCE_ADJUSTMENT));
+        assertThat(cmd.uid, is(UID_2));
+        assertThat(cmd.orderId, is(7001L));
+        assertThat(cmd.symbol, is(CURRENECY_USD));
+        assertThat(cmd.price, is(-500L));
+        assertThat(cmd.orderType.getCode(), is(BalanceAdjustmentType.SUSPEND.getCode()));
+    }
+
+    @Test
+    public void shouldDecodeExtendedBlockOfNewerVersion() {
+
+        GatewayCodec.encodeCancelOrder(buffer, 0, 21L, 0L, UID_1, 105L, SYMBOL_MARGIN);
+        // newer schema version with 16 more bytes in the block
+        buffer.putShort(GatewayCodec.HDR_BLOCK_LENGTH, (short) (GatewayCodec.CANCEL_BLOCK_LENGTH + 16), GatewayCodec.BYTE_ORDER);
+        buffer.putShort(GatewayCodec.HDR_VERSION, (short) (GatewayCodec.SCHEMA_VERSION + 1), GatewayCodec.BYTE_ORDER);
+
+        final OrderCommand cmd = new OrderCommand();
+        assertThat(GatewayCodec.decodeCommand(buffer, 0, cmd), is(21L));
+        assertThat(cmd.orderId, is(105L));
+        assertThat(GatewayCodec.messageLength(buffer, 0), is(GatewayCodec.HEADER_LENGTH + GatewayCodec.CANCEL_BLOCK_LENGTH + 16));
+    }
+
+    @Test
+    public void shouldRejectInvalidMessages() {
+
+        final OrderCommand cmd = new OrderCommand();
+
+        GatewayCodec.encodeCancelOrder(buffer, 0, 1L, 0L, UID_1, 1L, SYMBOL_MARGIN);
+        buffer.putShort(GatewayCodec.HDR_TEMPLATE_ID, (short) 77, GatewayCodec.BYTE_ORDER);
+        assertThrows(IllegalArgumentException.class, () -> GatewayCodec.decodeCommand(buffer, 0, cmd));
+
+        GatewayCodec.encodeCancelOrder(buffer, 0, 1L, 0L, UID_1, 1L, SYMBOL_MARGIN);
+        buffer.putShort(GatewayCodec.HDR_SCHEMA_ID, (short) 1, GatewayCodec.BYTE_ORDER);
+        assertThrows(IllegalArgumentException.class, () -> GatewayCodec.decodeCommand(buffer, 0, cmd));
+
+        GatewayCodec.encodePlaceOrder(buffer, 0, 1L, 0L, UID_1, 1L, SYMBOL_MARGIN, 1L, 1L, 1L, OrderAction.BID, OrderType.GTC, 0);
+        buffer.putShort(GatewayCodec.HDR_BLOCK_LENGTH, (short) GatewayCodec.CANCEL_BLOCK_LENGTH, GatewayCodec.BYTE_ORDER);
+        assertThrows(IllegalArgumentException.class, () -> GatewayCodec.decodeCommand(buffer, 0, cmd));
+    }
+
+    @Test
+    public void shouldEncodeResultWithTradeEvents() {
+
+        final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, 201L, UID_1, 1600L, 1600L, 10L, OrderAction.BID);
+        cmd.symbol = SYMBOL_MARGIN;
+        cmd.resultCode = CommandResultCode.SUCCESS;
+        cmd.matcherEvent = MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.TRADE).matchedOrderId(151L).matchedOrderUid(UID_2).price(1590L).size(4L).matchedOrderCompleted(true)
+                .nextEvent(MatcherTradeEvent.builder()
+                        .eventType(MatcherEventType.TRADE).matchedOrderId(152L).matchedOrderUid(UID_3).price(1600L).size(6L).activeOrderCompleted(true).build())
+                .build();
+
+        final int length = GatewayCodec.encodeResult(cmd, 33L, buffer, 100);
+        assertThat(length, is(GatewayCodec.resultLength(cmd)));
+        assertThat(length, is(GatewayCodec.RESULT_LENGTH + 2 * GatewayCodec.TRADE_EVENT_LENGTH));
+
+        final List<String> decoded = new ArrayList<>();
+        final IIpcResultsHandler handler = new IIpcResultsHandler() {
+            @Override
+            public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+                decoded.add(correlationId + " " + command + " " + resultCode + " " + uid + " " + orderId + " " + symbol + " " + eventsNum);
+            }
+
+            @Override
+            public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                     boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+                decoded.add(correlationId + " " + eventType + " " + matchedOrderId + " " + matchedOrderUid + " " + activeOrderCompleted + " " + matchedOrderCompleted + " " + price + " " + size);
+            }
+        };
+
+        int ptr = 100;
+        while (ptr < 100 + length) {
+            ptr += GatewayCodec.decodeResponse(buffer, ptr, handler);
+        }
+
+        assertThat(decoded, is(List.of(
+                "33 PLACE_ORDER SUCCESS " + UID_1 + " 201 " + SYMBOL_MARGIN + " 2",
+                "33 TRADE 151 " + UID_2 + " false true 1590 4",
+                "33 TRADE 152 " + UID_3 + " true false 1600 6")));
+    }
+
+    @Test
+    public void shouldSubmitMessagesIntoRingBufferSlots() throws Exception {
+
+        final ExchangeConfiguration conf = ExchangeConfiguration.defaultBuilder().build();
+        final SlotCorrelationTable correlations = new SlotCorrelationTable(conf.getPerformanceCfg().getRingBufferSize());
+        final ConcurrentLinkedQueue<String> results = new ConcurrentLinkedQueue<>();
+
+        final ExchangeCore exchangeCore = ExchangeCore.builder()
+                .resultsConsumer((cmd, seq) -> {
+                    if (correlations.contains(seq)) {
+                        results.add(correlations.get(seq) + " " + cmd.command + " " + cmd.resultCode);
+                    }
+                })
+                .exchangeConfiguration(conf)
+                .build();
+        exchangeCore.startup();
+
+        try {
+            assertThat(exchangeCore.getApi().submitBinaryDataAsync(new BatchAddSymbolsCommand(TestConstants.SYMBOLSPEC_EUR_USD)).get(), is(CommandResultCode.SUCCESS));
+            assertThat(exchangeCore.getApi().submitCommandAsync(ApiAddUser.builder().uid(UID_1).build()).get(), is(CommandResultCode.SUCCESS));
+
+            int len = 0;
+            len += GatewayCodec.encodeAdjustBalance(buffer, len, 1L, 0L, UID_1, 1L, CURRENECY_USD, 10_000_00L, BalanceAdjustmentType.ADJUSTMENT);
+            len += GatewayCodec.encodeCommand(ApiPlaceOrder.builder().uid(UID_1).orderId(301L).symbol(SYMBOL_MARGIN).price(1600L).size(5L)
+                    .action(OrderAction.BID).orderType(OrderType.GTC).build(), 2L, buffer, len);
+            final int completeLength = len;
+            len += GatewayCodec.encodeCancelOrder(buffer, len, 3L, 0L, UID_1, 301L, SYMBOL_MARGIN);
+
+            // last message is incomplete
+            assertThat(exchangeCore.getApi().submitGatewayMessages(buffer, 0, len - 1, correlations), is(completeLength));
+            assertThat(exchangeCore.getApi().submitGatewayMessages(buffer, completeLength, len - completeLength, correlations), is(len - completeLength));
+
+            // invalid message is rejected, following messages of the batch are processed
+            int batchLen = 0;
+            batchLen += GatewayCodec.encodeCancelOrder(buffer, batchLen, 4L, 0L, UID_1, 301L, SYMBOL_MARGIN);
+            buffer.putShort(GatewayCodec.HDR_TEMPLATE_ID, (short) 77, GatewayCodec.BYTE_ORDER);
+            batchLen += GatewayCodec.encodeAdjustBalance(buffer, batchLen, 5L, 0L, UID_1, 2L, CURRENECY_USD, 100L, BalanceAdjustmentType.ADJUSTMENT);
+            assertThat(exchangeCore.getApi().submitGatewayMessages(buffer, 0, batchLen, correlations), is(batchLen));
+
+            assertThat(exchangeCore.getApi().submitCommandAsync(ApiAddUser.builder().uid(UID_2).build()).get(5, TimeUnit.SECONDS), is(CommandResultCode.SUCCESS));
+
+            assertThat(new ArrayList<>(results), is(List.of(
+                    "1 BALANCE_ADJUSTMENT SUCCESS",
+                    "2 PLACE_ORDER SUCCESS",
+                    "3 CANCEL_ORDER SUCCESS",
+                    "4 NOP GATEWAY_MESSAGE_INVALID",
+                    "5 BALANCE_ADJUSTMENT SUCCESS")));
+        } finally {
+            exchangeCore.shutdown();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.ipc;
+
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.tests.util.TestConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class IpcGatewayTest {
+
+    @TempDir
+    Path folder;
+
+    private ExchangeCore exchangeCore;
+    private IpcExchangeClient client;
+
+    private final AtomicInteger apiResults = new AtomicInteger();
+
+    @BeforeEach
+    public void before() {
+        final IpcConfiguration ipcCfg = IpcConfiguration.defaultBuilder()
+                .folder(folder.toString())
+                .ingressCapacity(64 * 1024)
+                .egressCapacity(64 * 1024)
+                .build();
+
+        exchangeCore = ExchangeCore.builder()
+                .resultsConsumer((cmd, seq) -> apiResults.incrementAndGet())
+                .exchangeConfiguration(ExchangeConfiguration.defaultBuilder().build())
+                .ipcCfg(ipcCfg)
+                .build();
+        exchangeCore.startup();
+
+        assertThat(exchangeCore.getApi().submitBinaryDataAsync(new BatchAddSymbolsCommand(TestConstants.SYMBOLSPEC_EUR_USD)).join(), is(CommandResultCode.SUCCESS));
+
+        client = IpcExchangeClient.attach(ipcCfg);
+    }
+
+    @AfterEach
+    public void after() {
+        client.close();
+        exchangeCore.shutdown();
+    }
+
+    @Test
+    public void shouldProcessCommandsFromIpcChannel() {
+
+        client.submitCommand(ApiAddUser.builder().uid(UID_1).build());
+        client.submitCommand(ApiAddUser.builder().uid(UID_2).build());
+        client.submitCommand(ApiAdjustUserBalance.builder().uid(UID_1).currency(CURRENECY_USD).amount(10_000_00L).transactionId(1L).build());
+        client.submitCommand(ApiAdjustUserBalance.builder().uid(UID_2).currency(CURRENECY_USD).amount(10_000_00L).transactionId(1L).build());
+        client.submitCommand(ApiPlaceOrder.builder().uid(UID_1).orderId(101L).symbol(SYMBOL_MARGIN).price(1600L).size(7L)
+                .action(OrderAction.ASK).orderType(OrderType.GTC).build());
+        final long bidCorrelationId = client.submitCommand(ApiPlaceOrder.builder().uid(UID_2).orderId(102L).symbol(SYMBOL_MARGIN).price(1610L).reservePrice(1610L).size(5L)
+                .action(OrderAction.BID).orderType(OrderType.IOC).build());
+
+        final List<String> results = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        final IIpcResultsHandler handler = new IIpcResultsHandler() {
+            @Override
+            public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+                results.add(correlationId + " " + command + " " + resultCode + " " + eventsNum);
+            }
+
+            @Override
+            public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                     boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+                events.add(correlationId + " " + eventType + " " + matchedOrderId + " " + matchedOrderUid + " " + activeOrderCompleted + " " + matchedOrderCompleted + " " + price + " " + size);
+            }
+        };
+
+        pollUntil(handler, () -> results.size() == 6);
+
+        assertThat(results, is(List.of(
+                "1 ADD_USER SUCCESS 0",
+                "2 ADD_USER SUCCESS 0",
+                "3 BALANCE_ADJUSTMENT SUCCESS 0",
+                "4 BALANCE_ADJUSTMENT SUCCESS 0",
+                "5 PLACE_ORDER SUCCESS 0",
+                "6 PLACE_ORDER SUCCESS 1")));
+
+        assertThat(events, is(List.of(bidCorrelationId + " TRADE 101 " + UID_1 + " true false 1600 5")));
+
+        // results of IPC commands are also delivered to the main results consumer
+        assertThat(apiResults.get() >= 6, is(true));
+
+        // in-process commands are not written into egress ring (next egress message is the result of IPC command)
+        assertThat(exchangeCore.getApi().submitCommandAsync(ApiNop.builder().build()).join(), is(CommandResultCode.SUCCESS));
+        client.submitCommand(ApiNop.builder().build());
+        pollUntil(handler, () -> results.size() == 7);
+        assertThat(results.get(6), is("7 NOP SUCCESS 0"));
+    }
+
+    @Test
+    public void shouldDropResultsWhenGatewayDoesNotReadEgress() {
+
+        final IpcConfiguration slowCfg = IpcConfiguration.defaultBuilder()
+                .folder(folder.toString())
+                .channelName("slow")
+                .ingressCapacity(64 * 1024)
+                .egressCapacity(4 * 1024)
+                .egressTimeoutMs(50)
+                .build();
+
+        final AtomicInteger slowApiResults = new AtomicInteger();
+        final ExchangeCore slowCore = ExchangeCore.builder()
+                .resultsConsumer((cmd, seq) -> slowApiResults.incrementAndGet())
+                .exchangeConfiguration(ExchangeConfiguration.defaultBuilder().build())
+                .ipcCfg(slowCfg)
+                .build();
+        slowCore.startup();
+
+        try (final IpcExchangeClient slowClient = IpcExchangeClient.attach(slowCfg)) {
+
+            // gateway does not read results - exchange core is not blocked
+            final int commandsNum = 500;
+            for (int i = 0; i < commandsNum; i++) {
+                slowClient.submitCommand(ApiNop.builder().build());
+            }
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (slowApiResults.get() < commandsNum || slowCore.getIpcGateway().getEgressDroppedCount() == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Exchange core is blocked by egress ring");
+                }
+                Thread.yield();
+            }
+
+            // gateway drains egress ring and receives results again
+            final List<Long> correlationIds = new ArrayList<>();
+            final IIpcResultsHandler handler = new IIpcResultsHandler() {
+                @Override
+                public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+                    correlationIds.add(correlationId);
+                }
+
+                @Override
+                public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                         boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+                }
+            };
+            while (slowClient.pollResults(handler, 100) != 0) {
+                // drain
+            }
+            final long correlationId = slowClient.submitCommand(ApiNop.builder().build());
+            final long deadline2 = System.currentTimeMillis() + 10_000;
+            while (correlationIds.isEmpty() || correlationIds.get(correlationIds.size() - 1) != correlationId) {
+                if (slowClient.pollResults(handler, 100) == 0) {
+                    if (System.currentTimeMillis() > deadline2) {
+                        throw new IllegalStateException("Timeout waiting for IPC results");
+                    }
+                    Thread.yield();
+                }
+            }
+        } finally {
+            slowCore.shutdown();
+        }
+    }
+
+    private void pollUntil(final IIpcResultsHandler handler, final java.util.function.BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (client.pollResults(handler, 100) == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Timeout waiting for IPC results");
+                }
+                Thread.yield();
+            }
+        }
+    }
+}
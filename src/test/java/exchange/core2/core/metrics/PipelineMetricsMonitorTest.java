@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.SharedPool;
+import exchange.core2.core.processors.journaling.DummySerializationProcessor;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.StandbyFailoverTestsModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import static exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode.INLINE_SYNC;
+import static exchange.core2.tests.util.TestConstants.SYMBOL_MARGIN;
+import static exchange.core2.tests.util.TestConstants.UID_1;
+import static exchange.core2.tests.util.TestConstants.UID_2;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public final class PipelineMetricsMonitorTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void shouldSampleLagsAndFullRing() {
+
+        final RingBuffer<OrderCommand> ringBuffer = RingBuffer.createMultiProducer(OrderCommand::new, 8);
+        final Sequence slowStage = new Sequence(-1);
+        final Sequence fastStage = new Sequence(-1);
+        ringBuffer.addGatingSequences(slowStage, fastStage);
+
+        final Map<String, LongSupplier> stages = new LinkedHashMap<>();
+        stages.put("FAST", fastStage::get);
+        stages.put("SLOW", slowStage::get);
+
+        final SharedPool sharedPool = new SharedPool(1, 0, 1);
+        sharedPool.putChain(sharedPool.getChain());
+        sharedPool.putChain(sharedPool.getChain());
+        sharedPool.putChain(sharedPool.getChain());
+        sharedPool.getChain();
+        sharedPool.getChain();
+
+        final PipelineMetricsMonitor monitor = new PipelineMetricsMonitor(ringBuffer, stages, null, sharedPool, DummySerializationProcessor.INSTANCE, 1000, Thread::new);
+
+        ringBuffer.publish(ringBuffer.next(4));
+        fastStage.set(3);
+        monitor.sample();
+
+        ringBuffer.publish(ringBuffer.next(4));
+        fastStage.set(5);
+        monitor.sample();
+
+        final PipelineMetricsSnapshot snapshot = monitor.snapshot();
+        assertThat(snapshot.getSamples(), is(2L));
+        assertThat(snapshot.getCursor(), is(7L));
+        assertThat(snapshot.getMinRemainingCapacity(), is(0L));
+        assertThat(snapshot.getRingFullSamples(), is(1L));
+
+        final List<String> lags = snapshot.getStageLags().stream().map(Object::toString).collect(Collectors.toList());
+        assertThat(lags, is(List.of("FAST=2/2/1.0", "SLOW=8/8/6.0")));
+
+        assertThat(snapshot.getSharedPoolChainMisses(), is(2L));
+        assertThat(snapshot.getSharedPoolChainsDropped(), is(0L));
+        assertNull(snapshot.getGroupSizes());
+        assertNull(snapshot.getJournalSyncLatency());
+
+        // next interval
+        slowStage.set(7);
+        fastStage.set(7);
+        monitor.sample();
+        final PipelineMetricsSnapshot snapshot2 = monitor.snapshot();
+        assertThat(snapshot2.getSamples(), is(1L));
+        assertThat(snapshot2.getRingFullSamples(), is(0L));
+        assertThat(snapshot2.getMinRemainingCapacity(), is(8L));
+        assertThat(snapshot2.getStageLags().get(1).getMaxLag(), is(0L));
+    }
+
+    @Test
+    public void shouldMonitorRunningCoreWithJournal() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .metricsSamplingIntervalUs(100)
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg,
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                StandbyFailoverTestsModule.diskJournaling(folder, INLINE_SYNC))) {
+
+            final PipelineMetricsMonitor monitor = container.getExchangeCore().getMetricsMonitor();
+
+            container.initBasicSymbols();
+            container.initBasicUsers();
+
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_1).orderId(101L).symbol(SYMBOL_MARGIN).price(1600L).size(7L)
+                    .action(OrderAction.ASK).orderType(OrderType.GTC).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_2).orderId(102L).symbol(SYMBOL_MARGIN).price(1610L).reservePrice(1610L).size(5L)
+                    .action(OrderAction.BID).orderType(OrderType.IOC).build(), CommandResultCode.SUCCESS);
+
+            Thread.sleep(20);
+
+            final PipelineMetricsSnapshot snapshot = monitor.snapshot();
+
+            assertThat(snapshot.getSamples(), greaterThan(0L));
+            assertThat(snapshot.getCursor(), greaterThan(2L));
+            assertThat(snapshot.getStageLags().stream().map(PipelineMetricsSnapshot.StageLag::getStage).collect(Collectors.toList()),
+                    is(List.of("G", "J", "R1_0", "ME_0", "R2_0", "E")));
+            assertThat(snapshot.getGroupSizes().getTotalCount(), greaterThan(0L));
+            assertThat(snapshot.getJournalWrittenBytes(), greaterThan(0L));
+            assertThat(snapshot.getJournalSyncLatency().getTotalCount(), greaterThan(0L));
+        }
+    }
+
+    @Test
+    public void shouldBeDisabledByDefault() {
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT)) {
+            assertNull(container.getExchangeCore().getMetricsMonitor());
+        }
+    }
+}
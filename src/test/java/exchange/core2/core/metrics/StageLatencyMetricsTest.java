@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static exchange.core2.tests.util.TestConstants.SYMBOL_EXCHANGE;
+import static exchange.core2.tests.util.TestConstants.SYMBOL_MARGIN;
+import static exchange.core2.tests.util.TestConstants.UID_1;
+import static exchange.core2.tests.util.TestConstants.UID_2;
+import static exchange.core2.tests.util.TestConstants.UID_3;
+import static exchange.core2.tests.util.TestConstants.UID_4;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public final class StageLatencyMetricsTest {
+
+    @Test
+    public void shouldMeasureFromLatestPredecessor() {
+
+        final StageLatencyMetrics metrics = new StageLatencyMetrics(16, 2, 2);
+
+        final StageLatencyMetrics.StageProbe r1a = metrics.riskPreProcessProbe(0);
+        final StageLatencyMetrics.StageProbe r1b = metrics.riskPreProcessProbe(1);
+        final StageLatencyMetrics.StageProbe me0 = metrics.matchingEngineProbe(0);
+        final StageLatencyMetrics.StageProbe me1 = metrics.matchingEngineProbe(1);
+        final StageLatencyMetrics.StageProbe r2 = metrics.riskReleaseProbe();
+        final StageLatencyMetrics.StageProbe e = metrics.resultsProbe(false);
+        final StageLatencyMetrics.StageProbe total = metrics.totalProbe();
+
+        // sequence wraps the ring
+        final long seq = 21;
+        metrics.groupingTimestamp(seq, 1000);
+        r1a.record(seq, 1100);
+        r1b.record(seq, 1300);
+        me0.record(seq, 1500);
+        me1.record(seq, 1400);
+        r2.record(seq, 1600);
+        e.record(seq, 1700);
+        total.record(seq, 1700);
+
+        final Map<PipelineStage, Histogram> snapshot = metrics.snapshot();
+        assertNull(snapshot.get(PipelineStage.JOURNALING));
+
+        final Histogram r1Hist = snapshot.get(PipelineStage.RISK_PRE_PROCESS);
+        assertThat(r1Hist.getTotalCount(), is(2L));
+        assertThat(r1Hist.getMinValue(), is(100L));
+        assertThat(r1Hist.valuesAreEquivalent(r1Hist.getMaxValue(), 300L), is(true));
+
+        // matching engines are waiting for the latest risk engine
+        final Histogram meHist = snapshot.get(PipelineStage.MATCHING_ENGINE);
+        assertThat(meHist.getTotalCount(), is(2L));
+        assertThat(meHist.getMinValue(), is(100L));
+        assertThat(meHist.valuesAreEquivalent(meHist.getMaxValue(), 200L), is(true));
+
+        assertThat(snapshot.get(PipelineStage.RISK_RELEASE).getMaxValue(), is(100L));
+        assertThat(snapshot.get(PipelineStage.RESULTS).getMaxValue(), is(200L));
+        assertThat(metrics.snapshot().get(PipelineStage.TOTAL).getTotalCount(), is(0L));
+    }
+
+    @Test
+    public void shouldMeasureFastLaneCommandsFromGrouping() {
+
+        final StageLatencyMetrics metrics = new StageLatencyMetrics(16, 1, 1);
+
+        final StageLatencyMetrics.StageProbe r1 = metrics.riskPreProcessProbe(0);
+        final StageLatencyMetrics.StageProbe me = metrics.matchingEngineProbe(0);
+        final StageLatencyMetrics.StageProbe meFastLane = metrics.matchingEngineFastLaneProbe(0);
+        final StageLatencyMetrics.StageProbe r2 = metrics.riskReleaseProbe();
+
+        // previous ring lap
+        metrics.groupingTimestamp(5, 1000);
+        r1.record(5, 1100);
+        me.record(5, 1200);
+
+        // cancel command in the same slot is processed by matching engine before R1
+        metrics.groupingTimestamp(21, 50_000);
+        meFastLane.record(21, 50_300);
+        r1.record(21, 50_400);
+        r2.record(21, 50_500);
+
+        final Map<PipelineStage, Histogram> snapshot = metrics.snapshot();
+
+        final Histogram meHist = snapshot.get(PipelineStage.MATCHING_ENGINE);
+        assertThat(meHist.getTotalCount(), is(2L));
+        assertThat(meHist.getMinValue(), is(100L));
+        assertThat(meHist.valuesAreEquivalent(meHist.getMaxValue(), 300L), is(true));
+
+        // R2 measures from fast lane completion time
+        assertThat(snapshot.get(PipelineStage.RISK_RELEASE).getMaxValue(), is(200L));
+    }
+
+    @Test
+    public void shouldRecordAllStagesOfRunningCore() {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .stageLatencyMetricsEnabled(true)
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg)) {
+
+            final StageLatencyMetrics metrics = container.getExchangeCore().getStageLatencyMetrics();
+
+            container.initBasicSymbols();
+            container.initBasicUsers();
+
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_1).orderId(101L).symbol(SYMBOL_MARGIN).price(1600L).size(7L)
+                    .action(OrderAction.ASK).orderType(OrderType.GTC).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_2).orderId(102L).symbol(SYMBOL_MARGIN).price(1610L).reservePrice(1610L).size(5L)
+                    .action(OrderAction.BID).orderType(OrderType.IOC).build(), CommandResultCode.SUCCESS);
+
+            final Map<PipelineStage, Histogram> snapshot = metrics.snapshot();
+            assertNull(snapshot.get(PipelineStage.JOURNALING));
+
+            // result of the last command is recorded after completing its future
+            assertThat(snapshot.get(PipelineStage.TOTAL).getTotalCount(), greaterThan(2L));
+            assertThat(snapshot.get(PipelineStage.RESULTS).getTotalCount(), greaterThan(2L));
+            assertThat(snapshot.get(PipelineStage.RISK_PRE_PROCESS).getTotalCount(), greaterThan(0L));
+            assertThat(snapshot.get(PipelineStage.MATCHING_ENGINE).getTotalCount(), greaterThan(0L));
+            assertThat(snapshot.get(PipelineStage.RISK_RELEASE).getTotalCount(), greaterThan(0L));
+        }
+    }
+
+    @Test
+    public void shouldRecordRiskStripeWorkers() {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .riskPreCheckWorkersNum(2)
+                .stageLatencyMetricsEnabled(true)
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg)) {
+
+            final StageLatencyMetrics metrics = container.getExchangeCore().getStageLatencyMetrics();
+
+            container.initBasicSymbols();
+            container.initBasicUsers();
+            metrics.snapshot();
+
+            // orders of different users are pre-processed by R1 master and R1 worker
+            final long[] uids = {UID_1, UID_2, UID_3, UID_4};
+            for (int i = 0; i < uids.length; i++) {
+                container.getApi().submitCommandAsync(ApiPlaceOrder.builder().uid(uids[i]).orderId(201L + i).symbol(SYMBOL_EXCHANGE)
+                        .price(1000L + i).reservePrice(1000L + i).size(1L).action(OrderAction.BID).orderType(OrderType.GTC).build()).join();
+            }
+
+            // matching engine measures every command from its R1 completion time (not from stale or missing timestamp)
+            final Map<PipelineStage, Histogram> snapshot = metrics.snapshot();
+            assertThat(snapshot.get(PipelineStage.RISK_PRE_PROCESS).getTotalCount(), is((long) uids.length));
+            assertThat(snapshot.get(PipelineStage.MATCHING_ENGINE).getTotalCount(), is((long) uids.length));
+        }
+    }
+
+    @Test
+    public void shouldBeDisabledByDefault() {
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT)) {
+            assertNull(container.getExchangeCore().getStageLatencyMetrics());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class BackoffWaitStrategyTest {
+
+    private final RingBuffer<OrderCommand> ringBuffer = RingBuffer.createMultiProducer(
+            OrderCommand::new, 16, new BackoffWaitStrategy(WaitBackoffConfiguration.LOW_CPU));
+
+    @Test
+    public void shouldWakeUpBlockedConsumerOnPublish() throws Exception {
+
+        final SequenceBarrier barrier = ringBuffer.newBarrier();
+        final CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return barrier.waitFor(0);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        // let consumer pass all phases (LOW_CPU blocks after 1ms)
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        ringBuffer.publish(ringBuffer.next());
+        assertThat(waiting.get(5, TimeUnit.SECONDS), is(0L));
+    }
+
+    @Test
+    public void shouldWakeUpBlockedConsumerOnAlert() throws Exception {
+
+        final SequenceBarrier barrier = ringBuffer.newBarrier();
+        final CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return barrier.waitFor(0);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        Thread.sleep(100);
+        barrier.alert();
+
+        final ExecutionException ex = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertThat(ex.getCause().getCause(), instanceOf(AlertException.class));
+    }
+
+    @Test
+    public void shouldWaitForDependentProcessorWithoutBlocking() throws Exception {
+
+        final Sequence dependent = new Sequence();
+        final SequenceBarrier barrier = ringBuffer.newBarrier(dependent);
+
+        ringBuffer.publish(ringBuffer.next());
+
+        final CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return barrier.waitFor(0);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        // dependent processor does not signal - consumer should notice progress anyway (parking)
+        Thread.sleep(100);
+        dependent.set(0);
+        assertThat(waiting.get(5, TimeUnit.SECONDS), is(0L));
+    }
+}
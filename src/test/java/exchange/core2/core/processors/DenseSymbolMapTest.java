@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class DenseSymbolMapTest {
+
+    @Test
+    public void shouldBehaveLikeHashMap() {
+
+        final Random rand = new Random(1L);
+        final IntObjectHashMap<String> reference = new IntObjectHashMap<>();
+        final DenseSymbolMap<String> map = new DenseSymbolMap<>(1000);
+
+        for (int i = 0; i < 100_000; i++) {
+            // dense ids, ids above the limit, and negative ids
+            final int symbol = rand.nextInt(2000) - 100;
+            final int action = rand.nextInt(10);
+            if (action < 5) {
+                final String value = "v" + i;
+                reference.put(symbol, value);
+                map.put(symbol, value);
+            } else if (action < 7) {
+                assertThat(map.remove(symbol), is(reference.remove(symbol)));
+            } else if (action < 9) {
+                final String value = "a" + i;
+                assertThat(map.getIfAbsentPut(symbol, () -> value), is(reference.getIfAbsentPut(symbol, () -> value)));
+            } else if (rand.nextInt(1000) == 0) {
+                reference.clear();
+                map.clear();
+            }
+
+            assertThat(map.get(symbol), is(reference.get(symbol)));
+            assertThat(map.size(), is(reference.size()));
+        }
+
+        for (int symbol = -100; symbol < 1900; symbol++) {
+            assertThat(map.get(symbol), is(reference.get(symbol)));
+        }
+        assertThat(map.getMap(), is(reference));
+    }
+
+    @Test
+    public void shouldIndexExistingMap() {
+
+        final IntObjectHashMap<String> existing = new IntObjectHashMap<>();
+        existing.put(5, "five");
+        existing.put(50_000, "big");
+
+        final DenseSymbolMap<String> map = new DenseSymbolMap<>(100, existing);
+        assertThat(map.get(5), is("five"));
+        assertThat(map.get(50_000), is("big"));
+        assertThat(map.get(6), nullValue());
+        assertThat(map.get(99), nullValue());
+
+        // modifications are visible through underlying map
+        map.put(7, "seven");
+        assertThat(existing.get(7), is("seven"));
+    }
+
+    @Test
+    public void shouldRejectNegativeLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new DenseSymbolMap<>(-1));
+    }
+}
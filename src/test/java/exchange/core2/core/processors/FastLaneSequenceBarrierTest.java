@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestConstants;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.TestOrdersGeneratorConfig;
+import exchange.core2.tests.util.ThroughputTestsModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static exchange.core2.core.common.cmd.OrderCommandType.CANCEL_ORDER;
+import static exchange.core2.core.common.cmd.OrderCommandType.MOVE_ORDER;
+import static exchange.core2.core.common.cmd.OrderCommandType.PLACE_ORDER;
+import static exchange.core2.core.common.cmd.OrderCommandType.REDUCE_ORDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class FastLaneSequenceBarrierTest {
+
+    @Test
+    @Timeout(10)
+    public void shouldPassFastLaneCommandsAfterGrouping() throws Exception {
+
+        final RingBuffer<OrderCommand> ringBuffer = RingBuffer.createMultiProducer(OrderCommand::new, 16, new YieldingWaitStrategy());
+        final Sequence groupingSequence = new Sequence(-1);
+        final Sequence riskSequence = new Sequence(-1);
+
+        publish(ringBuffer, PLACE_ORDER, CANCEL_ORDER, MOVE_ORDER, PLACE_ORDER, REDUCE_ORDER, CANCEL_ORDER);
+
+        final FastLaneSequenceBarrier barrier = new FastLaneSequenceBarrier(ringBuffer, groupingSequence, riskSequence);
+
+        // grouping passed everything, but first command is not pre-processed by R1 yet
+        groupingSequence.set(5);
+        final CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> waitFor(barrier, 0));
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat(waiting.isDone(), is(false));
+
+        // cancel and move are following pre-processed command, second place order is blocking
+        riskSequence.set(0);
+        assertThat(waiting.get(), is(2L));
+
+        riskSequence.set(3);
+        assertThat(waitFor(barrier, 3), is(5L));
+
+        // fast lane is limited by grouping processor progress
+        publish(ringBuffer, CANCEL_ORDER, CANCEL_ORDER);
+        groupingSequence.set(6);
+        assertThat(waitFor(barrier, 6), is(6L));
+    }
+
+    @Test
+    public void shouldProduceSameResultsAsRegularPipeline() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.baseBuilder()
+                        .matchingEnginesNum(2)
+                        .riskEnginesNum(2)
+                        .cancelFastLaneEnabled(true)
+                        .build(),
+                TestDataParameters.builder()
+                        .totalTransactionsNumber(50_000)
+                        .targetOrderBookOrdersTotal(1_000)
+                        .numAccounts(2_000)
+                        .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                        .numSymbols(10)
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                        .build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                2);
+    }
+
+    private static void publish(final RingBuffer<OrderCommand> ringBuffer, final OrderCommandType... commands) {
+        for (final OrderCommandType command : commands) {
+            ringBuffer.publishEvent((cmd, seq) -> cmd.command = command);
+        }
+    }
+
+    private static long waitFor(final FastLaneSequenceBarrier barrier, final long seq) {
+        try {
+            return barrier.waitFor(seq);
+        } catch (final Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.SymbolPositionRecord;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.UserStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+
+public final class FreeMarginCacheTest {
+
+    private static final int NUM_SYMBOLS = 12;
+    private static final int NUM_USERS = 50;
+    private static final int[] CURRENCIES = {840, 978, 392};
+
+    private SymbolSpecificationProvider symbolSpecificationProvider;
+    private DenseSymbolMap<RiskEngine.LastPriceCacheRecord> lastPriceCache;
+    private FreeMarginCache cache;
+
+    @BeforeEach
+    public void before() {
+        symbolSpecificationProvider = new SymbolSpecificationProvider();
+        for (int symbol = 0; symbol < NUM_SYMBOLS; symbol++) {
+            symbolSpecificationProvider.addSymbol(CoreSymbolSpecification.builder()
+                    .symbolId(symbol)
+                    .type(SymbolType.FUTURES_CONTRACT)
+                    .baseCurrency(CURRENCIES[(symbol + 1) % CURRENCIES.length])
+                    .quoteCurrency(CURRENCIES[symbol % CURRENCIES.length])
+                    .baseScaleK(1)
+                    .quoteScaleK(1)
+                    .marginBuy(1000 + symbol * 100)
+                    .marginSell(1200 + symbol * 100)
+                    .build());
+        }
+        lastPriceCache = new DenseSymbolMap<>(64);
+        cache = new FreeMarginCache(symbolSpecificationProvider, lastPriceCache);
+    }
+
+    @Test
+    public void shouldMatchFullRecalculationAfterRandomChanges() {
+
+        final Random rand = new Random(1L);
+
+        final List<UserProfile> users = new ArrayList<>();
+        for (int uid = 1; uid <= NUM_USERS; uid++) {
+            users.add(new UserProfile(uid, UserStatus.ACTIVE));
+        }
+
+        int priceUpdates = 0;
+        for (int step = 0; step < 100_000; step++) {
+
+            if (rand.nextInt(100) < 3) {
+                // last price update
+                final RiskEngine.LastPriceCacheRecord record = lastPriceCache.getIfAbsentPut(rand.nextInt(NUM_SYMBOLS), RiskEngine.LastPriceCacheRecord::new);
+                record.bidPrice = rand.nextInt(10) == 0 ? 0 : 10_000 + rand.nextInt(1000);
+                record.askPrice = rand.nextInt(10) == 0 ? Long.MAX_VALUE : record.bidPrice + 1 + rand.nextInt(10);
+                if (rand.nextInt(20) == 0) {
+                    cache.invalidateAll();
+                } else {
+                    cache.onPriceChanged(record);
+                }
+                priceUpdates++;
+
+            } else {
+
+                final UserProfile userProfile = users.get(rand.nextInt(NUM_USERS));
+                final int symbol = rand.nextInt(NUM_SYMBOLS);
+                SymbolPositionRecord position = userProfile.positions.get(symbol);
+                if (position == null) {
+                    position = new SymbolPositionRecord();
+                    position.initialize(userProfile.uid, symbol, symbolSpecificationProvider.getSymbolSpecification(symbol).quoteCurrency);
+                    userProfile.positions.put(symbol, position);
+                }
+
+                // place order, then trade or release part of it
+                final OrderAction orderAction = rand.nextBoolean() ? OrderAction.ASK : OrderAction.BID;
+                final long size = 1 + rand.nextInt(50);
+                position.pendingHold(orderAction, size);
+                cache.onPositionChanged(userProfile, position);
+                verify(userProfile, rand);
+
+                final long tradeSize = rand.nextInt((int) size + 1);
+                if (tradeSize > 0) {
+                    position.updatePositionForMarginTrade(orderAction, tradeSize, 10_000 + rand.nextInt(1000));
+                }
+                if (rand.nextBoolean() && tradeSize < size) {
+                    position.pendingRelease(orderAction, size - tradeSize);
+                }
+
+                if (position.isEmpty()) {
+                    cache.onPositionRemoved(userProfile, position);
+                    userProfile.accounts.addToValue(position.currency, position.profit);
+                    userProfile.positions.removeKey(symbol);
+                } else {
+                    cache.onPositionChanged(userProfile, position);
+                }
+                verify(userProfile, rand);
+            }
+        }
+
+        for (UserProfile userProfile : users) {
+            for (int currency : CURRENCIES) {
+                assertThat(cache.getFreeMargin(userProfile, currency), is(cache.calculateFreeMarginFull(userProfile, currency)));
+            }
+        }
+
+        // at most one recalculation per user for each price epoch
+        assertThat(cache.getRecalculationsCount(), lessThanOrEqualTo((long) NUM_USERS * (priceUpdates + 1)));
+    }
+
+    @Test
+    public void shouldRecalculateOnlyAfterPriceChange() {
+
+        final UserProfile userProfile = new UserProfile(1L, UserStatus.ACTIVE);
+        final SymbolPositionRecord position = new SymbolPositionRecord();
+        position.initialize(1L, 0, CURRENCIES[0]);
+        userProfile.positions.put(0, position);
+
+        position.pendingHold(OrderAction.BID, 10);
+        position.updatePositionForMarginTrade(OrderAction.BID, 10, 10_000);
+        cache.onPositionChanged(userProfile, position);
+
+        // no price - extra margin required
+        final long noPriceMargin = cache.getFreeMargin(userProfile, CURRENCIES[0]);
+        assertThat(cache.getRecalculationsCount(), is(1L));
+        assertThat(cache.getFreeMargin(userProfile, CURRENCIES[0]), is(noPriceMargin));
+        assertThat(cache.getRecalculationsCount(), is(1L));
+
+        lastPriceCache.put(0, new RiskEngine.LastPriceCacheRecord(10_020, 10_010));
+        cache.invalidateAll();
+
+        final long expected = 10 * 10_010 - 10 * 10_000 - 10 * 1000L;
+        assertThat(cache.getFreeMargin(userProfile, CURRENCIES[0]), is(expected));
+        assertThat(cache.getRecalculationsCount(), is(2L));
+
+        // incremental update
+        position.pendingHold(OrderAction.BID, 5);
+        cache.onPositionChanged(userProfile, position);
+        assertThat(cache.getFreeMargin(userProfile, CURRENCIES[0]), is(expected - 5 * 1000L));
+        assertThat(cache.getRecalculationsCount(), is(2L));
+    }
+
+    @Test
+    public void shouldUpdateOnlyPositionsWithChangedPrice() {
+
+        final RiskEngine.LastPriceCacheRecord price0 = new RiskEngine.LastPriceCacheRecord(10_020, 10_010);
+        final RiskEngine.LastPriceCacheRecord price1 = new RiskEngine.LastPriceCacheRecord(10_020, 10_010);
+        lastPriceCache.put(0, price0);
+        lastPriceCache.put(1, price1);
+        cache.invalidateAll();
+
+        // symbols 0 and 1 have different quote currencies
+        final UserProfile userProfile = new UserProfile(1L, UserStatus.ACTIVE);
+        final SymbolPositionRecord position0 = openPosition(userProfile, 0);
+        final SymbolPositionRecord position1 = openPosition(userProfile, 1);
+        final long margin0 = cache.getFreeMargin(userProfile, position0.currency);
+        final long margin1 = cache.getFreeMargin(userProfile, position1.currency);
+        assertThat(cache.getRecalculationsCount(), is(1L));
+
+        price0.bidPrice = 10_110;
+        cache.onPriceChanged(price0);
+
+        // profit delta applied only for symbol 0
+        assertThat(cache.getFreeMargin(userProfile, position0.currency), is(margin0 + 10 * 100L));
+        assertThat(cache.getFreeMargin(userProfile, position1.currency), is(margin1));
+        assertThat(cache.getRecalculationsCount(), is(1L));
+        assertThat(cache.getContributionUpdatesCount(), is(1L));
+
+        // global invalidation - full recalculation
+        cache.invalidateAll();
+        assertThat(cache.getFreeMargin(userProfile, position0.currency), is(margin0 + 10 * 100L));
+        assertThat(cache.getRecalculationsCount(), is(2L));
+    }
+
+    private SymbolPositionRecord openPosition(UserProfile userProfile, int symbol) {
+        final SymbolPositionRecord position = new SymbolPositionRecord();
+        position.initialize(userProfile.uid, symbol, symbolSpecificationProvider.getSymbolSpecification(symbol).quoteCurrency);
+        userProfile.positions.put(symbol, position);
+        position.pendingHold(OrderAction.BID, 10);
+        position.updatePositionForMarginTrade(OrderAction.BID, 10, 10_000);
+        cache.onPositionChanged(userProfile, position);
+        return position;
+    }
+
+    private void verify(UserProfile userProfile, Random rand) {
+        final int currency = CURRENCIES[rand.nextInt(CURRENCIES.length)];
+        assertThat(cache.getFreeMargin(userProfile, currency), is(cache.calculateFreeMarginFull(userProfile, currency)));
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.SymbolPositionRecord;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.UserProfile;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+public final class MarginCallScannerTest {
+
+    private static final int SYMBOL = 5;
+    private static final int CURRENCY = 840;
+
+    private SymbolSpecificationProvider symbolSpecificationProvider;
+    private UserProfileService userProfileService;
+    private DenseSymbolMap<RiskEngine.LastPriceCacheRecord> lastPriceCache;
+    private FreeMarginCache freeMarginCache;
+    private MarginCallScanner scanner;
+    private MarginPositionsTracker tracker;
+
+    // published margin calls chains
+    private final List<MatcherTradeEvent> published = new ArrayList<>();
+    private boolean publisherAvailable;
+
+    @BeforeEach
+    public void before() {
+        symbolSpecificationProvider = new SymbolSpecificationProvider();
+        symbolSpecificationProvider.addSymbol(CoreSymbolSpecification.builder()
+                .symbolId(SYMBOL)
+                .type(SymbolType.FUTURES_CONTRACT)
+                .baseCurrency(978)
+                .quoteCurrency(CURRENCY)
+                .baseScaleK(1)
+                .quoteScaleK(1)
+                .marginBuy(100)
+                .marginSell(120)
+                .build());
+
+        userProfileService = new UserProfileService();
+        lastPriceCache = new DenseSymbolMap<>(64);
+        freeMarginCache = new FreeMarginCache(symbolSpecificationProvider, lastPriceCache);
+        publisherAvailable = true;
+        scanner = new MarginCallScanner(1 << 24, 4096, SharedPool.createTestSharedPool()::getChain, events -> {
+            if (publisherAvailable) {
+                published.add(events);
+            }
+            return publisherAvailable;
+        });
+        tracker = createTracker();
+    }
+
+    @Test
+    public void shouldRaiseMarginCallForLongPosition() {
+
+        // 10 @ 1000, margin 1000, balance 10000 -> margin call when bid <= 99
+        openPosition(1L, 10_000L, OrderAction.BID, 10, 1000);
+
+        assertThat(setPrice(1001, 1000).size(), is(0));
+        assertThat(setPrice(101, 100).size(), is(0));
+
+        final List<MatcherTradeEvent> events = setPrice(100, 99);
+        assertThat(events.size(), is(1));
+        final MatcherTradeEvent event = events.get(0);
+        assertThat(event.eventType, is(MatcherEventType.MARGIN_CALL));
+        assertThat(event.matchedOrderUid, is(1L));
+        assertThat(event.matchedOrderId, is((long) SYMBOL));
+        assertThat(event.section, is(CURRENCY));
+        assertThat(event.price, is(99L));
+        assertThat(event.size, is(10L));
+        assertThat(event.bidderHoldPrice, is(-10L));
+        assertThat(event.nextEvent, nullValue());
+        assertThat(scanner.getMarginCallsCount(), is(1L));
+
+        // not repeated
+        assertThat(setPrice(90, 80).size(), is(0));
+
+        // recovered, then margin call again
+        assertThat(setPrice(1001, 1000).size(), is(0));
+        assertThat(setPrice(51, 50).size(), is(1));
+    }
+
+    @Test
+    public void shouldRaiseMarginCallForShortPosition() {
+
+        // 10 @ 1000, margin 1200, balance 5000 -> margin call when ask >= 1381
+        openPosition(2L, 5_000L, OrderAction.ASK, 10, 1000);
+
+        assertThat(setPrice(1380, 1370).size(), is(0));
+
+        final List<MatcherTradeEvent> events = setPrice(1381, 1370);
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).matchedOrderUid, is(2L));
+        assertThat(events.get(0).price, is(1381L));
+        assertThat(events.get(0).bidderHoldPrice, is(-10L));
+    }
+
+    @Test
+    public void shouldUpdateLiquidationPriceAfterBalanceChange() {
+
+        final UserProfile userProfile = openPosition(3L, 10_000L, OrderAction.BID, 10, 1000);
+
+        // deposit moves liquidation price from 99 to 9
+        userProfile.accounts.addToValue(CURRENCY, 900L);
+        tracker.onUserChanged(userProfile, CURRENCY);
+
+        assertThat(setPrice(100, 99).size(), is(0));
+        assertThat(setPrice(10, 9).size(), is(1));
+
+        // position closed - not tracked anymore
+        userProfile.positions.removeKey(SYMBOL);
+        tracker.onPositionRemoved(3L, SYMBOL);
+        assertThat(setPrice(1001, 1000).size(), is(0));
+        assertThat(setPrice(2, 1).size(), is(0));
+    }
+
+    @Test
+    public void shouldRemovePositionsOnReset() {
+
+        openPosition(1L, 10_000L, OrderAction.BID, 10, 1000);
+        assertThat(setPrice(1001, 1000).size(), is(0));
+
+        tracker.reset(0, 0);
+        assertThat(setPrice(100, 99).size(), is(0));
+    }
+
+    @Test
+    public void shouldRetryPublishingMarginCalls() {
+
+        openPosition(1L, 10_000L, OrderAction.BID, 10, 1000);
+        openPosition(2L, 5_000L, OrderAction.BID, 10, 1000);
+
+        // ring buffer is full - margin calls are kept by scanner
+        publisherAvailable = false;
+        assertThat(setPrice(100, 99).size(), is(0));
+        assertThat(scanner.getMarginCallsCount(), is(2L));
+
+        publisherAvailable = true;
+        final List<MatcherTradeEvent> events = pollScanner();
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).nextEvent, is(events.get(1)));
+    }
+
+    @Test
+    public void shouldNotFaultInEvictedProfiles() {
+
+        try (final UserProfileColdStore coldStore = new UserProfileColdStore(Paths.get("./dumps"), "TEST_margin_cold_RE0_")) {
+
+            userProfileService = new UserProfileService(coldStore, 100);
+            tracker = createTracker();
+
+            openPosition(1L, 10_000L, OrderAction.BID, 10, 1000);
+            openPosition(2L, 100_000L, OrderAction.BID, 10, 1000);
+            userProfileService.evictIdleProfiles(1_000L);
+            assertThat(userProfileService.hotSize(), is(0));
+
+            // sweep skips evicted profiles
+            assertThat(setPrice(1001, 1000).size(), is(0));
+            assertThat(userProfileService.hotSize(), is(0));
+
+            // crossed position of evicted profile is detected without loading it
+            final List<MatcherTradeEvent> events = setPrice(100, 99);
+            assertThat(events.size(), is(1));
+            assertThat(events.get(0).matchedOrderUid, is(1L));
+            assertThat(events.get(0).bidderHoldPrice, is(-10L));
+            assertThat(userProfileService.hotSize(), is(0));
+            assertThat(userProfileService.getColdHits(), is(0L));
+        }
+    }
+
+    /**
+     * Random positions and random walk of the price: every account with negative equity must be reported,
+     * every report must have negative equity, number of evaluations should be small comparing to full scans.
+     */
+    @Test
+    public void shouldDetectAllUnderwaterAccountsWithoutFullScans() {
+
+        final Random rand = new Random(1L);
+        final int numUsers = 100_000;
+
+        // all accounts are solvent at initial price
+        long price = 1000;
+        setPrice(price + 1, price);
+        for (int uid = 1; uid <= numUsers; uid++) {
+            final long volume = 1 + rand.nextInt(100);
+            final long openPrice = 900 + rand.nextInt(200);
+            final long balance = volume * (Math.abs(openPrice - price) + 121 + rand.nextInt(300));
+            openPosition(uid, balance, rand.nextBoolean() ? OrderAction.BID : OrderAction.ASK, volume, openPrice);
+        }
+
+        final LongHashSet reported = new LongHashSet();
+        final int ticks = 5_000;
+        for (int tick = 0; tick < ticks; tick++) {
+            price = Math.max(100, price + rand.nextInt(21) - 10);
+
+            for (final MatcherTradeEvent evt : setPrice(price + 1, price)) {
+                final UserProfile userProfile = userProfileService.getUserProfile(evt.matchedOrderUid);
+                assertThat(equity(userProfile), lessThan(0L));
+                assertThat(evt.bidderHoldPrice, is(equity(userProfile)));
+                reported.add(evt.matchedOrderUid);
+            }
+
+            // brute force check (only sometimes - it is slow)
+            if (tick % 500 == 0) {
+                for (int uid = 1; uid <= numUsers; uid++) {
+                    if (equity(userProfileService.getUserProfile(uid)) < 0) {
+                        assertTrue(reported.contains(uid), "not reported uid=" + uid);
+                    }
+                }
+            }
+        }
+
+        log.info("evaluations: {} reported: {} (full scan would take {} evaluations)",
+                tracker.getEvaluationsCount(), reported.size(), (long) numUsers * ticks);
+
+        assertThat(tracker.getEvaluationsCount(), lessThan((long) numUsers * ticks / 100));
+    }
+
+    private MarginPositionsTracker createTracker() {
+        return new MarginPositionsTracker(scanner, userProfileService, symbolSpecificationProvider, freeMarginCache, true, 512);
+    }
+
+    private UserProfile openPosition(long uid, long balance, OrderAction action, long volume, long price) {
+        userProfileService.addEmptyUserProfile(uid);
+        final UserProfile userProfile = userProfileService.getUserProfile(uid);
+        userProfile.accounts.put(CURRENCY, balance);
+
+        final SymbolPositionRecord position = new SymbolPositionRecord();
+        position.initialize(uid, SYMBOL, CURRENCY);
+        userProfile.positions.put(SYMBOL, position);
+        position.pendingHold(action, volume);
+        position.updatePositionForMarginTrade(action, volume, price);
+
+        freeMarginCache.onPositionChanged(userProfile, position);
+        tracker.onUserChanged(userProfile, CURRENCY);
+        return userProfile;
+    }
+
+    private long equity(UserProfile userProfile) {
+        return userProfile.accounts.get(CURRENCY) + freeMarginCache.calculateFreeMarginFull(userProfile, CURRENCY);
+    }
+
+    /**
+     * Updates price the same way as risk engine does, then runs scanner until it becomes idle
+     *
+     * @return margin calls published by scanner
+     */
+    private List<MatcherTradeEvent> setPrice(long ask, long bid) {
+        final RiskEngine.LastPriceCacheRecord record = new RiskEngine.LastPriceCacheRecord(ask, bid);
+        lastPriceCache.put(SYMBOL, record);
+        freeMarginCache.invalidateAll();
+        tracker.onPriceChanged(SYMBOL, record);
+        tracker.sweep();
+        return pollScanner();
+    }
+
+    private List<MatcherTradeEvent> pollScanner() {
+        while (scanner.poll() != 0) {
+            // until idle
+        }
+        final List<MatcherTradeEvent> events = new ArrayList<>();
+        published.forEach(head -> {
+            for (MatcherTradeEvent evt = head; evt != null; evt = evt.nextEvent) {
+                events.add(evt);
+            }
+        });
+        published.clear();
+        return events;
+    }
+}
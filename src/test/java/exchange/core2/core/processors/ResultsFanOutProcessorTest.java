@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration;
+import exchange.core2.core.common.config.ResultsConsumerConfiguration.BackPressurePolicy;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.ObjLongConsumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class ResultsFanOutProcessorTest {
+
+    private static final int NUM_COMMANDS = 10_000;
+    private static final int L2_DEPTH = 4;
+
+    @Test
+    @Timeout(10)
+    public void overflowPolicyShouldDeliverAllCommandsInOrder() throws InterruptedException {
+
+        final CountDownLatch consumerUnblocked = new CountDownLatch(1);
+        final List<long[]> received = new ArrayList<>();
+
+        final ResultsFanOutProcessor processor = createProcessor(BackPressurePolicy.OVERFLOW, blockingRecorder(consumerUnblocked, received), 0);
+        processor.onStart();
+
+        publishCommands(processor);
+        consumerUnblocked.countDown();
+        processor.onShutdown();
+
+        assertThat(processor.getOverflowedCount(), greaterThan(0L));
+        assertThat(processor.getDroppedCount(), is(0L));
+        assertThat(received.size(), is(NUM_COMMANDS));
+        for (int i = 0; i < NUM_COMMANDS; i++) {
+            verifyRecord(received.get(i), i);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void samplePolicyShouldDropCommandsWithoutBlocking() throws InterruptedException {
+
+        final CountDownLatch consumerUnblocked = new CountDownLatch(1);
+        final List<long[]> received = new ArrayList<>();
+
+        final ResultsFanOutProcessor processor = createProcessor(BackPressurePolicy.SAMPLE, blockingRecorder(consumerUnblocked, received), 0);
+        processor.onStart();
+
+        // producer is not blocked by stuck consumer
+        publishCommands(processor);
+        consumerUnblocked.countDown();
+        processor.onShutdown();
+
+        assertThat(processor.getDroppedCount(), greaterThan(0L));
+        assertThat(received.size() + processor.getDroppedCount(), is((long) NUM_COMMANDS));
+
+        long lastSeq = -1;
+        for (long[] record : received) {
+            assertTrue(record[0] > lastSeq);
+            verifyRecord(record, record[0]);
+            lastSeq = record[0];
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void offHeapBufferShouldDeliverAllCommandsInOrder() throws InterruptedException {
+
+        // commands have 2 trade events: fit into records, or always go into overflow queue
+        for (int maxEvents = 2; maxEvents >= 1; maxEvents--) {
+
+            final CountDownLatch consumerUnblocked = new CountDownLatch(1);
+            final List<long[]> received = new ArrayList<>();
+
+            final ResultsFanOutProcessor processor = createProcessor(BackPressurePolicy.OVERFLOW, blockingRecorder(consumerUnblocked, received), maxEvents);
+            processor.onStart();
+
+            publishCommands(processor);
+            consumerUnblocked.countDown();
+            processor.onShutdown();
+
+            assertThat(processor.getOverflowedCount(), maxEvents == 1 ? is((long) NUM_COMMANDS) : greaterThan(0L));
+            assertThat(received.size(), is(NUM_COMMANDS));
+            for (int i = 0; i < NUM_COMMANDS; i++) {
+                verifyRecord(received.get(i), i);
+            }
+        }
+    }
+
+    @Test
+    public void blockPolicyShouldCallConsumerDirectlyAndApplyFilter() {
+
+        final List<long[]> received = new ArrayList<>();
+        final ResultsConsumerConfiguration cfg = ResultsConsumerConfiguration.builder()
+                .name("trades")
+                .consumer((cmd, seq) -> received.add(new long[]{seq, cmd.orderId, cmd.matcherEvent.price}))
+                .filter(cmd -> cmd.matcherEvent != null)
+                .build();
+
+        final ResultsFanOutProcessor processor = new ResultsFanOutProcessor(cfg, Thread::new, 0, 0, WaitBackoffConfiguration.BALANCED);
+        processor.onStart();
+
+        final OrderCommand cmd = new OrderCommand();
+        fillCommand(cmd, 1);
+        processor.onEvent(cmd, 1, true);
+        cmd.matcherEvent = null;
+        processor.onEvent(cmd, 2, true);
+
+        // disable processing
+        final OrderCommand control = new OrderCommand();
+        control.command = OrderCommandType.GROUPING_CONTROL;
+        control.orderId = 0;
+        processor.onEvent(control, 3, true);
+        fillCommand(cmd, 4);
+        processor.onEvent(cmd, 4, true);
+
+        processor.onShutdown();
+
+        assertThat(received.size(), is(1));
+        verifyRecord(received.get(0), 1);
+    }
+
+    @Test
+    public void eventsChainShouldBeReusedWithoutAllocation() {
+
+        final ResultsFanOutProcessor.EventsChain chain = new ResultsFanOutProcessor.EventsChain();
+
+        final MatcherTradeEvent longHead = chain.copyFrom(eventsChain(1, 2, 3));
+        final List<MatcherTradeEvent> allocated = toList(longHead);
+        assertThat(allocated.size(), is(3));
+
+        // shorter chain is terminated, but tail is kept
+        final MatcherTradeEvent shortHead = chain.copyFrom(eventsChain(4));
+        assertThat(chain.getSize(), is(1));
+        assertThat(shortHead == longHead, is(true));
+        assertThat(shortHead.price, is(4L));
+        assertThat(shortHead.nextEvent == null, is(true));
+
+        assertThat(chain.copyFrom(null) == null, is(true));
+        assertThat(chain.getSize(), is(0));
+
+        // same events are reused for longer chain
+        final List<MatcherTradeEvent> reused = toList(chain.copyFrom(eventsChain(5, 6, 7)));
+        assertThat(chain.getSize(), is(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(reused.get(i) == allocated.get(i), is(true));
+            assertThat(reused.get(i).price, is(5L + i));
+        }
+    }
+
+    private static MatcherTradeEvent eventsChain(long... prices) {
+        MatcherTradeEvent head = null;
+        for (int i = prices.length - 1; i >= 0; i--) {
+            final MatcherTradeEvent evt = new MatcherTradeEvent();
+            evt.eventType = MatcherEventType.TRADE;
+            evt.price = prices[i];
+            evt.nextEvent = head;
+            head = evt;
+        }
+        return head;
+    }
+
+    private static List<MatcherTradeEvent> toList(MatcherTradeEvent head) {
+        final List<MatcherTradeEvent> list = new ArrayList<>();
+        for (MatcherTradeEvent evt = head; evt != null; evt = evt.nextEvent) {
+            list.add(evt);
+        }
+        return list;
+    }
+
+    private static ResultsFanOutProcessor createProcessor(BackPressurePolicy policy, ObjLongConsumer<OrderCommand> consumer, int offHeapMaxEvents) {
+        return new ResultsFanOutProcessor(
+                ResultsConsumerConfiguration.builder()
+                        .name(policy.name())
+                        .consumer(consumer)
+                        .backPressurePolicy(policy)
+                        .bufferSize(64)
+                        .build(),
+                Thread::new,
+                offHeapMaxEvents,
+                L2_DEPTH,
+                WaitBackoffConfiguration.BALANCED);
+    }
+
+    // consumer is stuck until latch is released, records only copies (command object is reused)
+    private static ObjLongConsumer<OrderCommand> blockingRecorder(CountDownLatch latch, List<long[]> received) {
+        return (cmd, seq) -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+            received.add(new long[]{seq, cmd.orderId, cmd.matcherEvent.price, cmd.matcherEvent.nextEvent.price,
+                    cmd.marketData.askSize, cmd.marketData.askPrices[0], cmd.marketData.bidPrices[cmd.marketData.bidSize - 1]});
+        };
+    }
+
+    // single command object is reused same way as ring buffer slot
+    private static void publishCommands(ResultsFanOutProcessor processor) {
+        final OrderCommand cmd = new OrderCommand();
+        for (int i = 0; i < NUM_COMMANDS; i++) {
+            fillCommand(cmd, i);
+            processor.onEvent(cmd, i, true);
+        }
+    }
+
+    private static void fillCommand(OrderCommand cmd, long seq) {
+        cmd.command = OrderCommandType.PLACE_ORDER;
+        cmd.orderId = 1_000_000L + seq;
+        cmd.action = OrderAction.BID;
+        cmd.orderType = OrderType.IOC;
+        cmd.resultCode = CommandResultCode.SUCCESS;
+
+        final MatcherTradeEvent first = new MatcherTradeEvent();
+        first.eventType = MatcherEventType.TRADE;
+        first.price = seq * 10;
+        final MatcherTradeEvent second = new MatcherTradeEvent();
+        second.eventType = MatcherEventType.TRADE;
+        second.price = seq * 10 + 1;
+        first.nextEvent = second;
+        cmd.matcherEvent = first;
+
+        // new snapshot for every command, depth varies
+        final int depth = 1 + (int) (seq % L2_DEPTH);
+        final L2MarketData marketData = new L2MarketData(depth, depth);
+        marketData.askSize = depth;
+        marketData.bidSize = depth;
+        for (int i = 0; i < depth; i++) {
+            marketData.askPrices[i] = seq * 10 + 5 + i;
+            marketData.bidPrices[i] = seq * 10 - 5 - i;
+        }
+        cmd.marketData = marketData;
+    }
+
+    private static void verifyRecord(long[] record, long seq) {
+        assertThat(record[0], is(seq));
+        assertThat(record[1], is(1_000_000L + seq));
+        assertThat(record[2], is(seq * 10));
+        if (record.length > 3) {
+            assertThat(record[3], is(seq * 10 + 1));
+            final long depth = 1 + seq % L2_DEPTH;
+            assertThat(record[4], is(depth));
+            assertThat(record[5], is(seq * 10 + 5));
+            assertThat(record[6], is(seq * 10 - 4 - depth));
+        }
+    }
+}
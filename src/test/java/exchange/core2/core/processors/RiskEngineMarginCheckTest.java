@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.OrdersProcessingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.core.common.config.OrdersProcessingConfiguration.MarginOrderCheckMode.MARGIN_CHECK_ALL_POSITIONS;
+import static exchange.core2.core.common.config.OrdersProcessingConfiguration.MarginOrderCheckMode.MARGIN_CHECK_LEGACY;
+import static exchange.core2.tests.util.TestConstants.CURRENECY_EUR;
+import static exchange.core2.tests.util.TestConstants.CURRENECY_USD;
+import static exchange.core2.tests.util.TestConstants.SYMBOLSPEC_EUR_USD;
+import static exchange.core2.tests.util.TestConstants.UID_1;
+import static exchange.core2.tests.util.TestConstants.UID_2;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class RiskEngineMarginCheckTest {
+
+    // second futures symbol quoted in the same currency
+    private static final CoreSymbolSpecification SYMBOLSPEC_EUR_USD_2 = CoreSymbolSpecification.builder()
+            .symbolId(SYMBOLSPEC_EUR_USD.symbolId + 1)
+            .type(SymbolType.FUTURES_CONTRACT)
+            .baseCurrency(CURRENECY_EUR)
+            .quoteCurrency(CURRENECY_USD)
+            .baseScaleK(1)
+            .quoteScaleK(1)
+            .marginBuy(SYMBOLSPEC_EUR_USD.marginBuy)
+            .marginSell(SYMBOLSPEC_EUR_USD.marginSell)
+            .build();
+
+    // enough for margin of one order only
+    private static final long BALANCE = SYMBOLSPEC_EUR_USD.marginBuy * 3 / 2;
+
+    @Test
+    public void shouldIgnoreMarginOfPositionsIteratedBeforeOrderSymbolInLegacyMode() {
+        // same symbols for both users, so exactly one of them has pending position iterated before the order symbol
+        assertThat(countAcceptedSecondOrders(MARGIN_CHECK_LEGACY), is(1));
+    }
+
+    @Test
+    public void shouldCountMarginOfAllPositionsInSameCurrency() {
+        assertThat(countAcceptedSecondOrders(MARGIN_CHECK_ALL_POSITIONS), is(0));
+    }
+
+    /**
+     * Each user places an order in one symbol and then an order in the other symbol (in opposite order)
+     *
+     * @return number of accepted second orders
+     */
+    private static int countAcceptedSecondOrders(final OrdersProcessingConfiguration.MarginOrderCheckMode mode) {
+
+        final OrdersProcessingConfiguration ordersProcessingCfg = OrdersProcessingConfiguration.builder()
+                .riskProcessingMode(OrdersProcessingConfiguration.RiskProcessingMode.FULL_PER_CURRENCY)
+                .marginTradingMode(OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED)
+                .marginOrderCheckMode(mode)
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT, ordersProcessingCfg)) {
+            container.addSymbol(SYMBOLSPEC_EUR_USD);
+            container.addSymbol(SYMBOLSPEC_EUR_USD_2);
+            container.createUserWithMoney(UID_1, CURRENECY_USD, BALANCE);
+            container.createUserWithMoney(UID_2, CURRENECY_USD, BALANCE);
+
+            container.submitCommandSync(bid(UID_1, 101, SYMBOLSPEC_EUR_USD), CommandResultCode.SUCCESS);
+            container.submitCommandSync(bid(UID_2, 201, SYMBOLSPEC_EUR_USD_2), CommandResultCode.SUCCESS);
+
+            int accepted = 0;
+            for (final ApiPlaceOrder order : new ApiPlaceOrder[]{bid(UID_1, 102, SYMBOLSPEC_EUR_USD_2), bid(UID_2, 202, SYMBOLSPEC_EUR_USD)}) {
+                final CommandResultCode resultCode = container.getApi().submitCommandAsync(order).join();
+                if (resultCode == CommandResultCode.SUCCESS) {
+                    accepted++;
+                } else {
+                    assertThat(resultCode, is(CommandResultCode.RISK_NSF));
+                }
+            }
+            return accepted;
+        }
+    }
+
+    private static ApiPlaceOrder bid(final long uid, final long orderId, final CoreSymbolSpecification spec) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .price(1000L)
+                .size(1L)
+                .action(OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .symbol(spec.symbolId)
+                .build();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public final class UserProfileServiceTest {
+
+    private static final int NUM_USERS = 1000;
+    private static final int CURRENCY = 840;
+
+    private UserProfileColdStore coldStore;
+    private UserProfileService tiered;
+    private UserProfileService plain;
+
+    @BeforeEach
+    public void before() {
+        coldStore = new UserProfileColdStore(Paths.get("./dumps"), "TEST_users_cold_RE0_");
+        tiered = new UserProfileService(coldStore, 100);
+        plain = new UserProfileService();
+    }
+
+    @AfterEach
+    public void after() {
+        coldStore.close();
+    }
+
+    @Test
+    public void shouldEvictIdleProfilesAndFaultThemBackIn() {
+
+        createUsers(tiered);
+        createUsers(plain);
+
+        assertThat(tiered.hotSize(), is(NUM_USERS));
+        evictAll();
+
+        assertThat(tiered.hotSize(), is(0));
+        assertThat(tiered.size(), is(NUM_USERS));
+        assertThat(tiered.getEvictions(), is((long) NUM_USERS));
+        assertThat(tiered.stateHash(), is(plain.stateHash()));
+
+        // fault in and modify
+        final UserProfile profile = tiered.getUserProfile(7);
+        assertNotNull(profile);
+        assertThat(profile.accounts.get(CURRENCY), is(7_000L));
+        assertThat(tiered.getColdHits(), is(1L));
+        assertThat(tiered.hotSize(), is(1));
+
+        final long hotHits = tiered.getHotHits();
+        assertThat(tiered.balanceAdjustment(7, CURRENCY, 500, 2), is(CommandResultCode.SUCCESS));
+        assertThat(plain.balanceAdjustment(7, CURRENCY, 500, 2), is(CommandResultCode.SUCCESS));
+        assertThat(tiered.getHotHits(), is(hotHits + 1));
+        assertThat(tiered.stateHash(), is(plain.stateHash()));
+
+        // unknown user
+        final long misses = tiered.getMisses();
+        assertNull(tiered.getUserProfile(NUM_USERS + 1));
+        assertThat(tiered.getMisses(), is(misses + 1));
+
+        // can not add same user twice even if it is evicted
+        assertFalse(tiered.addEmptyUserProfile(8));
+    }
+
+    @Test
+    public void shouldKeepRecentlyUsedProfiles() {
+
+        createUsers(tiered);
+
+        long tick = 0;
+        for (int i = 0; i < 50; i++) {
+            tick += 10;
+            tiered.evictIdleProfiles(tick);
+            // keep touching single user
+            assertNotNull(tiered.getUserProfile(3));
+        }
+
+        evictAll();
+        assertThat(tiered.hotSize(), is(0));
+
+        tiered.evictIdleProfiles(1_000_000L);
+        tiered.getUserProfile(3);
+        tiered.evictIdleProfiles(1_000_050L);
+        assertThat(tiered.hotSize(), is(1));
+    }
+
+    @Test
+    public void shouldSerializeAllProfiles() {
+
+        createUsers(tiered);
+        createUsers(plain);
+
+        // evict part of profiles
+        tiered.evictIdleProfiles(1_000);
+
+        final Bytes<ByteBuffer> bytesTiered = Bytes.elasticHeapByteBuffer(1024);
+        tiered.writeMarshallable(bytesTiered);
+        final UserProfileService restored = new UserProfileService(bytesTiered);
+
+        assertThat(restored.hotSize(), is(NUM_USERS));
+        assertThat(restored.stateHash(), is(plain.stateHash()));
+        assertThat(restored.getUserProfile(NUM_USERS).accounts.get(CURRENCY), is(NUM_USERS * 1_000L));
+    }
+
+    @Test
+    public void shouldUseSeparateColdStoreFilesAndRemoveThemOnClose() {
+
+        // another instance with the same exchange id and shard (e.g. standby replica) in the same folder
+        final UserProfileColdStore otherColdStore = new UserProfileColdStore(Paths.get("./dumps"), "TEST_users_cold_RE0_");
+        assertThat(otherColdStore.getPath(), not(coldStore.getPath()));
+
+        final UserProfileService other = new UserProfileService(otherColdStore, 100);
+        createUsers(tiered);
+        createUsers(other);
+        evictAll();
+        for (int i = 0; i < NUM_USERS; i++) {
+            other.evictIdleProfiles(Long.MAX_VALUE / 2);
+        }
+        assertThat(coldStore.size(), is(NUM_USERS));
+        assertThat(otherColdStore.size(), is(NUM_USERS));
+
+        other.close();
+        assertThat(Files.exists(otherColdStore.getPath()), is(false));
+
+        // not affected by other instance
+        assertThat(tiered.getUserProfile(7).accounts.get(CURRENCY), is(7_000L));
+        assertThat(tiered.size(), is(NUM_USERS));
+
+        tiered.close();
+        assertThat(Files.exists(coldStore.getPath()), is(false));
+    }
+
+    @Test
+    public void shouldCompactColdStore() {
+
+        createUsers(tiered);
+        createUsers(plain);
+
+        // repeatedly evict and fault in all users
+        long tick = 0;
+        for (int round = 0; round < 200; round++) {
+            tick += 1_000_000;
+            for (int i = 0; i < NUM_USERS; i += 16) {
+                tiered.evictIdleProfiles(tick);
+            }
+            for (int uid = 1; uid <= NUM_USERS; uid++) {
+                tiered.getUserProfile(uid);
+            }
+        }
+
+        assertTrue(coldStore.getCompactionsCount() > 0);
+        evictAll();
+        assertThat(tiered.stateHash(), is(plain.stateHash()));
+    }
+
+    private void evictAll() {
+        for (int i = 0; i < NUM_USERS; i++) {
+            tiered.evictIdleProfiles(Long.MAX_VALUE / 2);
+        }
+    }
+
+    private static void createUsers(final UserProfileService service) {
+        for (int uid = 1; uid <= NUM_USERS; uid++) {
+            assertTrue(service.addEmptyUserProfile(uid));
+            assertThat(service.balanceAdjustment(uid, CURRENCY, uid * 1_000L, 1), is(CommandResultCode.SUCCESS));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestDataParameters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JournalCompactorTest {
+
+    private static final long SNAPSHOT_ID = 1001;
+    private static final long COMPACTED_SNAPSHOT_ID = 1002;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void shouldCompactWholeJournal() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.DEFAULT;
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+
+        final int originalStateHash = runWithJournal(perfCfg, exchangeId,
+                TestDataParameters.singlePairExchangeBuilder()
+                        .totalTransactionsNumber(20_000)
+                        .targetOrderBookOrdersTotal(500)
+                        .numAccounts(500)
+                        .build());
+
+        final JournalCompactor.CompactionResult result = compactor(perfCfg, exchangeId).compact(COMPACTED_SNAPSHOT_ID, Long.MAX_VALUE);
+        assertThat(result.getSnapshotId(), is(COMPACTED_SNAPSHOT_ID));
+        assertThat(result.getStateHash(), is(originalStateHash));
+        assertThat(result.getTailCommandsNum(), is(0L));
+
+        // snapshot only - no journal left
+        checkRestoredState(perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, COMPACTED_SNAPSHOT_ID, result.getSnapshotSeq()), originalStateHash);
+    }
+
+    @Test
+    public void shouldCompactJournalKeepingTail() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .matchingEnginesNum(2)
+                .riskEnginesNum(2)
+                .build();
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+
+        final int originalStateHash = runWithJournal(perfCfg, exchangeId,
+                TestDataParameters.singlePairMarginBuilder()
+                        .totalTransactionsNumber(20_000)
+                        .targetOrderBookOrdersTotal(500)
+                        .numAccounts(500)
+                        .build());
+
+        final long lastSeq = new JournalReader().readRange(folder, exchangeId, SNAPSHOT_ID, 0, Long.MAX_VALUE, (seq, cmd) -> true);
+        final long compactionSeq = lastSeq - 5_000;
+
+        final JournalCompactor.CompactionResult result = compactor(perfCfg, exchangeId).compact(COMPACTED_SNAPSHOT_ID, compactionSeq);
+        assertThat(result.getSnapshotSeq(), is(compactionSeq));
+        assertThat(result.getTailCommandsNum(), is(5_000L));
+
+        // snapshot and remaining journal
+        checkRestoredState(perfCfg, InitialStateConfiguration.lastKnownStateFromJournal(exchangeId, COMPACTED_SNAPSHOT_ID, compactionSeq), originalStateHash);
+    }
+
+    @Test
+    public void shouldNotSettleTradesBeforeEndOfEventsGroup() throws Exception {
+
+        // long groups - both orders should get into the same events group
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .maxGroupDurationNs(200_000_000)
+                .build();
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+
+        final int originalStateHash;
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg, InitialStateConfiguration.cleanStartJournaling(exchangeId), serializationCfg())) {
+
+            container.addSymbol(SYMBOLSPEC_ETH_XBT);
+            container.createUserWithMoney(UID_1, CURRENECY_XBT, 10_000L);
+            container.createUserWithMoney(UID_2, CURRENECY_ETH, 1_000_000L);
+
+            final CommandResultCode resultCode = container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(SNAPSHOT_ID).build()).get();
+            assertThat(resultCode, is(CommandResultCode.SUCCESS));
+
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(UID_2).orderId(101).price(90).size(10).action(OrderAction.ASK).orderType(OrderType.GTC).symbol(SYMBOL_EXCHANGE).build(),
+                    CommandResultCode.SUCCESS);
+
+            // first bid holds whole balance, trade price improvement (10 x 10 x 10) is released only by R2 stage
+            final CompletableFuture<CommandResultCode> bid1 = container.getApi().submitCommandAsync(
+                    ApiPlaceOrder.builder().uid(UID_1).orderId(102).price(100).reservePrice(100).size(10).action(OrderAction.BID).orderType(OrderType.GTC).symbol(SYMBOL_EXCHANGE).build());
+            final CompletableFuture<CommandResultCode> bid2 = container.getApi().submitCommandAsync(
+                    ApiPlaceOrder.builder().uid(UID_1).orderId(103).price(100).reservePrice(100).size(1).action(OrderAction.BID).orderType(OrderType.GTC).symbol(SYMBOL_EXCHANGE).build());
+
+            assertThat(bid1.get(), is(CommandResultCode.SUCCESS));
+            assertThat(bid2.get(), is(CommandResultCode.RISK_NSF));
+
+            originalStateHash = container.requestStateHash();
+        }
+
+        final JournalCompactor.CompactionResult result = compactor(perfCfg, exchangeId).compact(COMPACTED_SNAPSHOT_ID, Long.MAX_VALUE);
+        assertThat(result.getStateHash(), is(originalStateHash));
+
+        checkRestoredState(perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, COMPACTED_SNAPSHOT_ID, result.getSnapshotSeq()), originalStateHash);
+    }
+
+    private int runWithJournal(final PerformanceConfiguration perfCfg,
+                               final String exchangeId,
+                               final TestDataParameters testDataParameters) throws Exception {
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg, InitialStateConfiguration.cleanStartJournaling(exchangeId), serializationCfg())) {
+
+            container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+            final CommandResultCode resultCode = container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(SNAPSHOT_ID).build()).get();
+            assertThat(resultCode, is(CommandResultCode.SUCCESS));
+
+            container.getApi().submitCommandsSync(testDataFutures.getGenResult().get().getApiCommandsBenchmark().join());
+            assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+
+            return container.requestStateHash();
+        }
+    }
+
+    private JournalCompactor compactor(final PerformanceConfiguration perfCfg, final String exchangeId) {
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.fromSnapshotOnly(exchangeId, SNAPSHOT_ID, 0))
+                .performanceCfg(perfCfg)
+                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .serializationCfg(serializationCfg())
+                .build();
+
+        return new JournalCompactor(exchangeCfg, diskCfg());
+    }
+
+    private void checkRestoredState(final PerformanceConfiguration perfCfg,
+                                    final InitialStateConfiguration initStateCfg,
+                                    final int expectedStateHash) throws Exception {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg, initStateCfg, serializationCfg())) {
+            assertThat(container.requestStateHash(), is(expectedStateHash));
+            assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+        }
+    }
+
+    private SerializationConfiguration serializationCfg() {
+        return SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg, diskCfg()))
+                .build();
+    }
+
+    private DiskSerializationProcessorConfiguration diskCfg() {
+        return DiskSerializationProcessorConfiguration.createConfig(
+                folder.toString(),
+                DiskSerializationProcessorConfiguration.JournalDurabilityMode.INLINE_SYNC,
+                DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JournalIoBackendTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void shouldWriteFileChannel() throws IOException {
+        writeSequentialBlocks(DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL);
+        checkExistingFile(DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL);
+    }
+
+    @Test
+    public void shouldWriteAsyncFileChannel() throws IOException {
+        writeSequentialBlocks(DiskSerializationProcessorConfiguration.IO_ASYNC_FILE_CHANNEL);
+        checkExistingFile(DiskSerializationProcessorConfiguration.IO_ASYNC_FILE_CHANNEL);
+    }
+
+    /**
+     * io_uring or fallback backend, depending on system
+     */
+    @Test
+    public void shouldWriteIoUring() throws IOException {
+        writeSequentialBlocks(DiskSerializationProcessorConfiguration.IO_URING);
+        checkExistingFile(DiskSerializationProcessorConfiguration.IO_URING);
+    }
+
+    @Test
+    public void shouldCheckIoUringProbe() {
+        final ByteBuffer probe = ByteBuffer.allocate(16 + 256 * 8).order(ByteOrder.nativeOrder());
+
+        // kernel 5.6 - last operation is 30
+        probe.put(0, (byte) 30);
+        probe.putShort(16 + 3 * 8 + 2, (short) 1);
+        assertThat(IoUringJournalIoBackend.isOpcodeSupported(probe, (byte) 3), is(true));
+        assertThat(IoUringJournalIoBackend.isOpcodeSupported(probe, (byte) 23), is(false));
+
+        probe.putShort(16 + 23 * 8 + 2, (short) 1);
+        assertThat(IoUringJournalIoBackend.isOpcodeSupported(probe, (byte) 23), is(true));
+
+        // operation is above last supported
+        probe.put(0, (byte) 22);
+        assertThat(IoUringJournalIoBackend.isOpcodeSupported(probe, (byte) 23), is(false));
+    }
+
+    private void writeSequentialBlocks(final Supplier<IJournalIoBackend> factory) throws IOException {
+
+        final IJournalIoBackend backend = factory.get();
+        final Random rand = new Random(1L);
+
+        final ByteBuffer[] blocks = new ByteBuffer[100];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = ByteBuffer.allocateDirect(10_000);
+        }
+
+        final ByteBuffer expected = ByteBuffer.allocate(10_000_000);
+
+        for (int file = 0; file < 2; file++) {
+            final Path path = folder.resolve("journal" + file);
+            Files.deleteIfExists(path);
+            backend.open(path, file == 1);
+            expected.clear();
+
+            // blocks are reused only after sync, more writes than io_uring entries between syncs
+            for (int group = 0; group < 10; group++) {
+                for (int w = 0; w < 100; w++) {
+                    final ByteBuffer block = blocks[w % blocks.length];
+                    block.clear();
+                    final int size = 1 + rand.nextInt(block.capacity());
+                    for (int i = 0; i < size; i++) {
+                        block.put((byte) rand.nextInt());
+                    }
+                    block.flip();
+                    expected.put(block.duplicate());
+                    backend.write(block);
+                }
+                backend.sync();
+            }
+
+            backend.close();
+
+            expected.flip();
+            final byte[] expectedBytes = new byte[expected.remaining()];
+            expected.get(expectedBytes);
+            final byte[] actualBytes = Files.readAllBytes(path);
+            assertThat(actualBytes.length, is(expectedBytes.length));
+            assertThat(Arrays.mismatch(actualBytes, expectedBytes), is(-1));
+        }
+    }
+
+    private void checkExistingFile(final Supplier<IJournalIoBackend> factory) throws IOException {
+        final Path path = folder.resolve("existing");
+        Files.deleteIfExists(path);
+        Files.write(path, new byte[]{1, 2, 3});
+
+        final IJournalIoBackend backend = factory.get();
+        assertThrows(FileAlreadyExistsException.class, () -> backend.open(path, false));
+        backend.close();
+
+        assertThat(Files.readAllBytes(path), is(new byte[]{1, 2, 3}));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalReaderTest {
+
+    private static final String EXCHANGE_ID = "EC_TEST";
+    private static final long SNAPSHOT_ID = 5;
+
+    // 3 files by 1000 commands, batches of 10 commands (every second batch is compressed)
+    private static final int FILES = 3;
+    private static final int COMMANDS_PER_FILE = 1000;
+    private static final int BATCH = 10;
+
+    private final LZ4Compressor lz4Compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    @TempDir
+    Path folder;
+
+    @BeforeEach
+    public void before() throws IOException {
+        long seq = 1;
+        for (int file = 1; file <= FILES; file++) {
+            try (final OutputStream journal = Files.newOutputStream(DiskSerializationProcessor.resolveJournalPath(folder, EXCHANGE_ID, SNAPSHOT_ID, file));
+                 final DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(DiskSerializationProcessor.resolveJournalIndexPath(folder, EXCHANGE_ID, SNAPSHOT_ID, file))))) {
+
+                long offset = 0;
+                for (int batch = 0; batch < COMMANDS_PER_FILE / BATCH; batch++) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(BATCH * DiskSerializationProcessor.MAX_COMMAND_SIZE_BYTES);
+                    final long firstSeq = seq;
+                    for (int i = 0; i < BATCH; i++, seq++) {
+                        DiskSerializationProcessor.encodeCommand(buffer, command(seq), seq);
+                    }
+                    buffer.flip();
+
+                    final byte[] data = batch % 2 == 0 ? raw(buffer) : compressed(buffer);
+                    // sparse index - every third batch
+                    if (batch % 3 == 0) {
+                        JournalSegmentIndex.writeEntry(index, firstSeq, offset);
+                    }
+                    journal.write(data);
+                    offset += data.length;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadRangeInsideFile() throws IOException {
+        checkRange(1503, 1517);
+        checkRange(2000, 2001);
+        checkRange(0, 3);
+    }
+
+    @Test
+    public void shouldReadRangeAcrossFiles() throws IOException {
+        checkRange(995, 2011);
+        checkRange(0, FILES * COMMANDS_PER_FILE);
+    }
+
+    @Test
+    public void shouldReadRangeWithoutIndex() throws IOException {
+        Files.delete(DiskSerializationProcessor.resolveJournalIndexPath(folder, EXCHANGE_ID, SNAPSHOT_ID, 2));
+        checkRange(1503, 1517);
+        checkRange(1100, 2300);
+    }
+
+    @Test
+    public void shouldStopAtJournalEnd() throws IOException {
+        final List<Long> seqs = new ArrayList<>();
+        final long lastSeq = new JournalReader().readRange(folder, EXCHANGE_ID, SNAPSHOT_ID, 2990, 5000, (seq, cmd) -> seqs.add(seq));
+        assertThat(lastSeq, is(3000L));
+        assertThat(seqs.size(), is(10));
+    }
+
+    @Test
+    public void shouldIgnoreIndexEntriesBeyondJournalEnd() throws IOException {
+        final Path indexPath = DiskSerializationProcessor.resolveJournalIndexPath(folder, EXCHANGE_ID, SNAPSHOT_ID, 1);
+        final long journalSize = Files.size(DiskSerializationProcessor.resolveJournalPath(folder, EXCHANGE_ID, SNAPSHOT_ID, 1));
+
+        final JournalSegmentIndex index = JournalSegmentIndex.load(indexPath, journalSize);
+        assertThat(index.size(), is(34));
+        assertThat(index.getFirstSeq(), is(1L));
+        assertThat(index.getSeq(index.floorEntry(35)), is(31L));
+        assertThat(index.floorEntry(0), is(-1));
+
+        // truncated journal and partially written index entry
+        try (final OutputStream os = Files.newOutputStream(indexPath, StandardOpenOption.APPEND)) {
+            os.write(new byte[]{1, 2, 3});
+        }
+        assertThat(JournalSegmentIndex.load(indexPath, journalSize).size(), is(34));
+        assertThat(JournalSegmentIndex.load(indexPath, index.getOffset(10)).size(), is(10));
+    }
+
+    @Test
+    public void shouldExtractRange() throws IOException {
+        final Path target = folder.resolve("extracted");
+        Files.createDirectory(target);
+
+        final long extracted = JournalRangeExtractor.extract(folder, EXCHANGE_ID, SNAPSHOT_ID, 777, 2345, target, "EC_REPRO");
+        assertThat(extracted, is(2345L - 777L));
+
+        final List<Long> seqs = new ArrayList<>();
+        final long lastSeq = new JournalReader().readRange(target, "EC_REPRO", SNAPSHOT_ID, 0, Long.MAX_VALUE, (seq, cmd) -> {
+            checkCommand(seq, cmd);
+            return seqs.add(seq);
+        });
+        assertThat(lastSeq, is(2345L));
+        assertThat(seqs.size(), is((int) extracted));
+        assertThat(seqs.get(0), is(778L));
+
+        // random access in extracted journal
+        checkRange(target, "EC_REPRO", 1000, 1010);
+    }
+
+    private void checkRange(final long seqFrom, final long seqTo) throws IOException {
+        checkRange(folder, EXCHANGE_ID, seqFrom, seqTo);
+    }
+
+    private static void checkRange(final Path folder, final String exchangeId, final long seqFrom, final long seqTo) throws IOException {
+        final List<Long> seqs = new ArrayList<>();
+        final long lastSeq = new JournalReader().readRange(folder, exchangeId, SNAPSHOT_ID, seqFrom, seqTo, (seq, cmd) -> {
+            checkCommand(seq, cmd);
+            return seqs.add(seq);
+        });
+
+        assertThat(lastSeq, is(seqTo));
+        assertThat(seqs.size(), is((int) (seqTo - seqFrom)));
+        for (int i = 0; i < seqs.size(); i++) {
+            assertThat(seqs.get(i), is(seqFrom + 1 + i));
+        }
+    }
+
+    private static OrderCommand command(final long seq) {
+        return OrderCommand.builder()
+                .command(OrderCommandType.PLACE_ORDER)
+                .uid(seq * 7)
+                .symbol((int) (seq % 5))
+                .orderId(seq + 1_000_000)
+                .price(10_000 + seq)
+                .reserveBidPrice(10_000 + seq)
+                .size(seq % 100 + 1)
+                .action(seq % 2 == 0 ? OrderAction.ASK : OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .timestamp(seq * 1000)
+                .build();
+    }
+
+    private static void checkCommand(final long seq, final OrderCommand cmd) {
+        assertThat(cmd.command, is(OrderCommandType.PLACE_ORDER));
+        assertThat(cmd.uid, is(seq * 7));
+        assertThat(cmd.orderId, is(seq + 1_000_000));
+        assertThat(cmd.price, is(10_000 + seq));
+        assertThat(cmd.timestamp, is(seq * 1000));
+        assertThat(cmd.action, is(seq % 2 == 0 ? OrderAction.ASK : OrderAction.BID));
+    }
+
+    private static byte[] raw(final ByteBuffer buffer) {
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    private byte[] compressed(final ByteBuffer buffer) {
+        final int originalLength = buffer.remaining();
+        final ByteBuffer lz4 = ByteBuffer.allocate(9 + lz4Compressor.maxCompressedLength(originalLength));
+        lz4.put(OrderCommandType.RESERVED_COMPRESSED.getCode());
+        lz4.putInt(0);
+        lz4.putInt(originalLength);
+        lz4Compressor.compress(buffer, lz4);
+        lz4.putInt(1, lz4.position() - 9);
+        lz4.flip();
+        return raw(lz4);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.utils;
+
+import exchange.core2.core.utils.CpuTopology.LogicalCpu;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class ThreadPlacementPlanTest {
+
+    @TempDir
+    Path sysfs;
+
+    private CpuTopology topology;
+
+    /*
+     * 2 sockets (NUMA nodes) x 4 cores x 2 hyper-threads:
+     * cpu0-3 socket 0, cpu4-7 socket 1, cpu8-15 are siblings of cpu0-7.
+     * L2 is per core, L3 is per socket.
+     */
+    @BeforeEach
+    public void before() throws IOException {
+        write("cpu/online", "0-15");
+        for (int cpu = 0; cpu < 16; cpu++) {
+            final int physical = cpu % 8;
+            final int socket = physical / 4;
+            final String dir = "cpu/cpu" + cpu;
+            write(dir + "/topology/physical_package_id", String.valueOf(socket));
+            write(dir + "/topology/core_id", String.valueOf(physical % 4));
+            write(dir + "/cache/index0/level", "1");
+            write(dir + "/cache/index0/shared_cpu_list", physical + "," + (physical + 8));
+            write(dir + "/cache/index1/level", "2");
+            write(dir + "/cache/index1/shared_cpu_list", physical + "," + (physical + 8));
+            write(dir + "/cache/index2/level", "3");
+            write(dir + "/cache/index2/shared_cpu_list", socket == 0 ? "0-3,8-11" : "4-7,12-15");
+        }
+        write("node/node0/cpulist", "0-3,8-11");
+        write("node/node1/cpulist", "4-7,12-15");
+
+        topology = CpuTopology.readSysfs(sysfs);
+    }
+
+    @Test
+    public void shouldReadTopology() {
+        assertThat(topology.getCpus().size(), is(16));
+
+        final LogicalCpu cpu13 = topology.getCpu(13).orElseThrow();
+        assertThat(cpu13.getPackageId(), is(1));
+        assertThat(cpu13.getCoreId(), is(1));
+        assertThat(cpu13.getNumaNode(), is(1));
+        assertThat(cpu13.getL2Group(), is(5));
+        assertThat(cpu13.getL3Group(), is(4));
+    }
+
+    @Test
+    public void shouldParseCpuList() {
+        final BitSet expected = new BitSet();
+        expected.set(0, 4);
+        expected.set(8);
+        expected.set(10, 12);
+        assertThat(CpuTopology.parseCpuList("0-3,8,10-11\n"), is(expected));
+    }
+
+    @Test
+    public void shouldPlaceStagesOnSeparateCoresOfOneNode() {
+
+        final ThreadPlacementPlan plan = ThreadPlacementPlan.create(
+                topology,
+                List.of("G", "R1_0", "ME_0", "J"),
+                Map.of("R2_0", "R1_0"),
+                Map.of(),
+                Set.of(0));
+
+        // pipeline on fully available cores of node 0 in locality order
+        assertThat(plan.getCpu("G"), is(1));
+        assertThat(plan.getCpu("R1_0"), is(2));
+        assertThat(plan.getCpu("ME_0"), is(3));
+
+        // R2 is running in R1 thread
+        assertThat(plan.getCpu("R2_0"), is(2));
+
+        // journal is isolated on remaining core (shared with reserved cpu0)
+        assertThat(plan.getCpu("J"), is(8));
+
+        assertThat(plan.getRingCpu(), is(1));
+        assertThat(plan.getRingNode(), is(0));
+        assertThat(plan.getSpareCpus(), is(CpuTopology.parseCpuList("9-11")));
+    }
+
+    @Test
+    public void shouldUseSiblingsBeforeOtherNode() {
+
+        final ThreadPlacementPlan plan = ThreadPlacementPlan.create(
+                topology,
+                List.of("G", "R1_0", "R1_1", "ME_0", "ME_1", "E", "J"),
+                Map.of(),
+                Map.of(),
+                Set.of());
+
+        assertThat(plan.getCpu("G"), is(0));
+        assertThat(plan.getCpu("R1_0"), is(1));
+        assertThat(plan.getCpu("R1_1"), is(2));
+        assertThat(plan.getCpu("ME_0"), is(3));
+        assertThat(plan.getCpu("ME_1"), is(8));
+        assertThat(plan.getCpu("E"), is(9));
+
+        // no spare physical core for journal
+        assertThat(plan.getCpu("J"), is(ThreadPlacementPlan.NOT_PINNED));
+    }
+
+    @Test
+    public void shouldApplyOverrides() {
+
+        final ThreadPlacementPlan plan = ThreadPlacementPlan.create(
+                topology,
+                List.of("G", "R1_0", "ME_0", "E"),
+                Map.of("R2_0", "R1_0"),
+                Map.of("G", 4, "ME_0", 12, "E", ThreadPlacementPlan.NOT_PINNED),
+                Set.of(0));
+
+        assertThat(plan.getCpu("G"), is(4));
+        assertThat(plan.getCpu("ME_0"), is(12));
+        assertThat(plan.getCpu("E"), is(ThreadPlacementPlan.NOT_PINNED));
+
+        // remaining stages are following grouping processor node
+        assertThat(plan.getCpu("R1_0"), is(5));
+        assertThat(plan.getCpu("R2_0"), is(5));
+        assertThat(plan.getRingNode(), is(1));
+    }
+
+    @Test
+    public void shouldRejectUnknownCpuOverride() {
+        assertThrows(IllegalArgumentException.class, () -> ThreadPlacementPlan.create(
+                topology,
+                List.of("G", "R1_0", "ME_0", "E"),
+                Map.of(),
+                Map.of("ME_0", 99),
+                Set.of()));
+    }
+
+    private void write(final String file, final String content) throws IOException {
+        final Path path = sysfs.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content + "\n");
+    }
+}
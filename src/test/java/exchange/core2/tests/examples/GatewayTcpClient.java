@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.examples;
+
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of {@link GatewayTcpServer} example.
+ * Not thread-safe, but sending and polling can be done by two different threads.
+ */
+public final class GatewayTcpClient implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final UnsafeBuffer sendView = new UnsafeBuffer(sendBuffer);
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final UnsafeBuffer receiveView = new UnsafeBuffer(receiveBuffer);
+
+    public GatewayTcpClient(final int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * @return buffer for encoding requests (followed by {@link #send(int)})
+     */
+    public MutableDirectBuffer sendBuffer() {
+        return sendView;
+    }
+
+    /**
+     * Sends requests encoded at the beginning of send buffer
+     *
+     * @param length - total length of encoded requests
+     */
+    public void send(final int length) throws IOException {
+        sendBuffer.clear().limit(length);
+        while (sendBuffer.hasRemaining()) {
+            channel.write(sendBuffer);
+        }
+    }
+
+    /**
+     * Reads available data (blocks until at least some data received) and decodes all complete messages
+     *
+     * @param handler - results handler
+     * @return number of decoded messages
+     */
+    public int poll(final IIpcResultsHandler handler) throws IOException {
+
+        if (channel.read(receiveBuffer) < 0) {
+            throw new IOException("Connection closed");
+        }
+
+        final int available = receiveBuffer.position();
+        int ptr = 0;
+        int messages = 0;
+        while (available - ptr >= GatewayCodec.HEADER_LENGTH && available - ptr >= GatewayCodec.messageLength(receiveView, ptr)) {
+            ptr += GatewayCodec.decodeResponse(receiveView, ptr, handler);
+            messages++;
+        }
+
+        receiveBuffer.flip().position(ptr);
+        receiveBuffer.compact();
+        return messages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
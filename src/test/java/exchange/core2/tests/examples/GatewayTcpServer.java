@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.examples;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.utils.SlotCorrelationTable;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Example of allocation-free loopback TCP gateway (single client connection).
+ * <p>
+ * Reader thread reads request messages into direct buffer and decodes all complete messages directly into
+ * ring buffer slots ({@link ExchangeApi#submitGatewayMessages}). Results of gateway commands are encoded
+ * into outbound direct buffer and written into the socket by results handler thread ({@link #onResult}).
+ * <p>
+ * Should be registered as results consumer (or fan-out consumer) of the exchange core.
+ */
+@Slf4j
+public final class GatewayTcpServer implements AutoCloseable {
+
+    private static final int IN_BUFFER_SIZE = 256 * 1024;
+    private static final int OUT_BUFFER_SIZE = 256 * 1024;
+
+    private final SlotCorrelationTable correlations;
+
+    private final ByteBuffer inBuffer = ByteBuffer.allocateDirect(IN_BUFFER_SIZE);
+    private final UnsafeBuffer inView = new UnsafeBuffer(inBuffer);
+
+    private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(OUT_BUFFER_SIZE);
+    private final UnsafeBuffer outView = new UnsafeBuffer(outBuffer);
+
+    private ServerSocketChannel serverChannel;
+    private volatile SocketChannel clientChannel;
+    private volatile boolean running;
+    private Thread reader;
+
+    public GatewayTcpServer(final int ringBufferSize) {
+        this.correlations = new SlotCorrelationTable(ringBufferSize);
+    }
+
+    /**
+     * Binds server to loopback ephemeral port and starts reader thread (waits for one client connection)
+     *
+     * @param api - exchange API
+     * @return port number
+     */
+    public synchronized int start(final ExchangeApi api) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        running = true;
+        reader = new Thread(() -> readLoop(api), "GatewayTcpReader");
+        reader.setDaemon(true);
+        reader.start();
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void readLoop(final ExchangeApi api) {
+        try (final SocketChannel channel = serverChannel.accept()) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            clientChannel = channel;
+            log.debug("Gateway client connected: {}", channel.getRemoteAddress());
+
+            while (running && channel.read(inBuffer) >= 0) {
+                final int consumed = api.submitGatewayMessages(inView, 0, inBuffer.position(), correlations);
+                // keep incomplete message at the beginning of the buffer
+                inBuffer.flip().position(consumed);
+                inBuffer.compact();
+            }
+        } catch (final ClosedChannelException ex) {
+            // closed by server
+        } catch (final IOException ex) {
+            log.warn("Gateway connection failed", ex);
+        } finally {
+            clientChannel = null;
+        }
+    }
+
+    /**
+     * Writes result of the gateway command into the socket (results handler thread)
+     *
+     * @param cmd - processed command
+     * @param seq - ring buffer sequence
+     */
+    public void onResult(final OrderCommand cmd, final long seq) {
+
+        final SocketChannel channel = clientChannel;
+        if (channel == null || !correlations.contains(seq)) {
+            return;
+        }
+
+        final int length = GatewayCodec.encodeResult(cmd, correlations.get(seq), outView, 0);
+        outBuffer.clear().limit(length);
+        try {
+            while (outBuffer.hasRemaining()) {
+                channel.write(outBuffer);
+            }
+        } catch (final IOException ex) {
+            log.warn("Can not write gateway result", ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException, InterruptedException {
+        running = false;
+        final SocketChannel channel = clientChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        serverChannel.close();
+        reader.join();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.examples;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.MutableDirectBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@Slf4j
+public class ITGatewayTcpExample {
+
+    @Test
+    public void sampleTest() throws Exception {
+
+        // default exchange configuration
+        final ExchangeConfiguration conf = ExchangeConfiguration.defaultBuilder().build();
+
+        // loopback gateway server, remembers correlation ids per ring buffer slot
+        final GatewayTcpServer server = new GatewayTcpServer(conf.getPerformanceCfg().getRingBufferSize());
+
+        // results of gateway commands are written back into TCP connection
+        final ExchangeCore exchangeCore = ExchangeCore.builder()
+                .resultsConsumer(server::onResult)
+                .exchangeConfiguration(conf)
+                .build();
+
+        exchangeCore.startup();
+        final ExchangeApi api = exchangeCore.getApi();
+
+        final int currencyCodeXbt = 11;
+        final int currencyCodeLtc = 15;
+        final int symbolXbtLtc = 241;
+
+        // symbols and users are created through regular API
+        final CoreSymbolSpecification symbolSpecXbtLtc = CoreSymbolSpecification.builder()
+                .symbolId(symbolXbtLtc)
+                .type(SymbolType.CURRENCY_EXCHANGE_PAIR)
+                .baseCurrency(currencyCodeXbt)
+                .quoteCurrency(currencyCodeLtc)
+                .baseScaleK(1_000_000L)
+                .quoteScaleK(10_000L)
+                .takerFee(1900L)
+                .makerFee(700L)
+                .build();
+
+        assertThat(api.submitBinaryDataAsync(new BatchAddSymbolsCommand(symbolSpecXbtLtc)).get(), is(CommandResultCode.SUCCESS));
+        assertThat(api.submitCommandAsync(ApiAddUser.builder().uid(301L).build()).get(), is(CommandResultCode.SUCCESS));
+        assertThat(api.submitCommandAsync(ApiAddUser.builder().uid(302L).build()).get(), is(CommandResultCode.SUCCESS));
+
+        final int port = server.start(api);
+
+        final List<String> results = new ArrayList<>();
+        final IIpcResultsHandler handler = new IIpcResultsHandler() {
+            @Override
+            public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+                System.out.println("Result: " + correlationId + " " + command + " " + resultCode + " events=" + eventsNum);
+                results.add(correlationId + " " + command + " " + resultCode);
+            }
+
+            @Override
+            public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                     boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+                System.out.println("Trade event: " + correlationId + " " + eventType + " matchedOrderId=" + matchedOrderId + " price=" + price + " size=" + size);
+                results.add(correlationId + " " + eventType + " " + matchedOrderId + " " + price + " " + size);
+            }
+        };
+
+        try (final GatewayTcpClient client = new GatewayTcpClient(port)) {
+
+            final MutableDirectBuffer buf = client.sendBuffer();
+            final long ts = System.currentTimeMillis();
+
+            // several requests are sent in one write
+            int len = 0;
+            len += GatewayCodec.encodeAdjustBalance(buf, len, 1, ts, 301L, 1L, currencyCodeLtc, 2_000_000_000L, BalanceAdjustmentType.ADJUSTMENT);
+            len += GatewayCodec.encodeAdjustBalance(buf, len, 2, ts, 302L, 2L, currencyCodeXbt, 10_000_000L, BalanceAdjustmentType.ADJUSTMENT);
+            len += GatewayCodec.encodePlaceOrder(buf, len, 3, ts, 301L, 5001L, symbolXbtLtc, 15_400L, 15_600L, 12L, OrderAction.BID, OrderType.GTC, 0);
+            len += GatewayCodec.encodePlaceOrder(buf, len, 4, ts, 302L, 5002L, symbolXbtLtc, 15_250L, 0L, 10L, OrderAction.ASK, OrderType.IOC, 0);
+            len += GatewayCodec.encodeMoveOrder(buf, len, 5, ts, 301L, 5001L, symbolXbtLtc, 15_300L);
+            len += GatewayCodec.encodeReduceOrder(buf, len, 6, ts, 301L, 5001L, symbolXbtLtc, 1L);
+            len += GatewayCodec.encodeCancelOrder(buf, len, 7, ts, 301L, 5001L, symbolXbtLtc);
+            client.send(len);
+
+            while (results.size() < 10) {
+                client.poll(handler);
+            }
+        }
+
+        assertThat(results, is(List.of(
+                "1 BALANCE_ADJUSTMENT SUCCESS",
+                "2 BALANCE_ADJUSTMENT SUCCESS",
+                "3 PLACE_ORDER SUCCESS",
+                "4 PLACE_ORDER SUCCESS",
+                "4 TRADE 5001 15400 10",
+                "5 MOVE_ORDER SUCCESS",
+                "6 REDUCE_ORDER SUCCESS",
+                "6 REDUCE 0 15300 1",
+                "7 CANCEL_ORDER SUCCESS",
+                "7 REDUCE 0 15300 1")));
+
+        server.close();
+        exchangeCore.shutdown();
+    }
+}
@@ -0,0 +1,16 @@
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+
+public final class ITExchangeCoreIntegrationPhasedBackoff extends ITExchangeCoreIntegration {
+
+    @Override
+    public PerformanceConfiguration getPerformanceConfiguration() {
+        return PerformanceConfiguration.baseBuilder()
+                .waitStrategy(CoreWaitStrategy.PHASED_BACKOFF)
+                .waitBackoffCfg(WaitBackoffConfiguration.allStages(WaitBackoffConfiguration.LOW_CPU).build())
+                .build();
+    }
+}
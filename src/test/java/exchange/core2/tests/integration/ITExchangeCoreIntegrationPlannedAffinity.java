@@ -0,0 +1,18 @@
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.utils.CpuTopology;
+import exchange.core2.core.utils.PlannedAffinityThreadFactory;
+
+import java.util.Map;
+import java.util.Set;
+
+public final class ITExchangeCoreIntegrationPlannedAffinity extends ITExchangeCoreIntegration {
+
+    @Override
+    public PerformanceConfiguration getPerformanceConfiguration() {
+        return PerformanceConfiguration.baseBuilder()
+                .threadFactory(new PlannedAffinityThreadFactory(CpuTopology::readSystem, Map.of(), Set.of()))
+                .build();
+    }
+}
@@ -0,0 +1,13 @@
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+
+public class ITExchangeCoreIntegrationStressColdUsers extends ITExchangeCoreIntegrationStress {
+
+    @Override
+    public PerformanceConfiguration getPerformanceConfiguration() {
+        return PerformanceConfiguration.baseBuilder()
+                .userProfilesIdleEvictionThreshold(2_000)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
+
+public class ITExchangeCoreIntegrationStressPhasedBackoff extends ITExchangeCoreIntegrationStress {
+
+    @Override
+    public PerformanceConfiguration getPerformanceConfiguration() {
+        return PerformanceConfiguration.baseBuilder()
+                .riskEnginesNum(2)
+                .riskPreCheckWorkersNum(2)
+                .waitStrategy(CoreWaitStrategy.PHASED_BACKOFF)
+                .waitBackoffCfg(WaitBackoffConfiguration.allStages(WaitBackoffConfiguration.LOW_CPU)
+                        .matchingEngine(WaitBackoffConfiguration.BALANCED)
+                        .build())
+                .build();
+    }
+}
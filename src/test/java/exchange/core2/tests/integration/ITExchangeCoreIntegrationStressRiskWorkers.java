@@ -0,0 +1,14 @@
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+
+public class ITExchangeCoreIntegrationStressRiskWorkers extends ITExchangeCoreIntegrationStress {
+
+    @Override
+    public PerformanceConfiguration getPerformanceConfiguration() {
+        return PerformanceConfiguration.baseBuilder()
+                .riskEnginesNum(2)
+                .riskPreCheckWorkersNum(4)
+                .build();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.nasdaq;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiNop;
+import exchange.core2.core.common.api.ApiReset;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.OrdersProcessingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.utils.SlotCorrelationTable;
+import exchange.core2.tests.util.LatencyTools;
+import exchange.core2.tests.util.TestConstants;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Drives exchange core with commands of ITCH replay file (see {@link ITCH50ReplayConverter}).
+ * <p>
+ * Commands are decoded directly into ring buffer slots. Replay runs either at max rate, or at recorded pacing
+ * (ITCH timestamps scaled by speed factor). Latency of each command is measured from its send time
+ * (intended send time for paced replay, so publisher delays are included) until result is handled,
+ * and reported per command type.
+ * <p>
+ * Risk processing is disabled - ITCH data has no accounts information, book shapes and orders flow are replayed only
+ * (accounts balances still change by settlement of executions and can become negative).
+ */
+@Slf4j
+public final class ITCH50ReplayBenchmark implements AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // stocks are replayed as exchange pairs (shares/USD), margin positions are not required
+    private static final int STOCK_CURRENCY = 1;
+
+    private static final OrderCommandType[] COMMAND_TYPES = {
+            OrderCommandType.PLACE_ORDER,
+            OrderCommandType.MOVE_ORDER,
+            OrderCommandType.REDUCE_ORDER,
+            OrderCommandType.CANCEL_ORDER};
+
+    private final ExchangeCore exchangeCore;
+    private final ExchangeApi api;
+
+    private final SlotCorrelationTable correlations;
+
+    // send time of in-flight commands by message number (twice bigger than ring buffer - entry is reused when result is handled)
+    private final long[] sendTimes;
+    private final int sendTimesMask;
+
+    // written by results handler thread only
+    private final Map<OrderCommandType, Histogram> histograms = new EnumMap<>(OrderCommandType.class);
+    private final Map<OrderCommandType, long[]> counters = new EnumMap<>(OrderCommandType.class);
+
+    public ITCH50ReplayBenchmark(final PerformanceConfiguration perfCfg) {
+
+        final int ringBufferSize = perfCfg.getRingBufferSize();
+        this.correlations = new SlotCorrelationTable(ringBufferSize);
+        this.sendTimes = new long[ringBufferSize * 2];
+        this.sendTimesMask = sendTimes.length - 1;
+
+        for (OrderCommandType type : COMMAND_TYPES) {
+            histograms.put(type, new Histogram(Integer.MAX_VALUE, 3));
+            counters.put(type, new long[2]);
+        }
+
+        final ExchangeConfiguration exchangeConfiguration = ExchangeConfiguration.defaultBuilder()
+                .performanceCfg(perfCfg)
+                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .ordersProcessingCfg(OrdersProcessingConfiguration.builder()
+                        .riskProcessingMode(OrdersProcessingConfiguration.RiskProcessingMode.NO_RISK_PROCESSING)
+                        .marginTradingMode(OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_DISABLED)
+                        .build())
+                .build();
+
+        this.exchangeCore = ExchangeCore.builder()
+                .resultsConsumer(this::onResult)
+                .exchangeConfiguration(exchangeConfiguration)
+                .build();
+
+        this.exchangeCore.startup();
+        this.api = exchangeCore.getApi();
+    }
+
+    public ExchangeApi getApi() {
+        return api;
+    }
+
+    private void onResult(final OrderCommand cmd, final long seq) {
+        if (!correlations.contains(seq)) {
+            return;
+        }
+        final long latency = System.nanoTime() - sendTimes[(int) correlations.get(seq) & sendTimesMask];
+        final Histogram histogram = histograms.get(cmd.command);
+        if (histogram != null) {
+            histogram.recordValue(Math.min(latency, Integer.MAX_VALUE));
+            counters.get(cmd.command)[cmd.resultCode == CommandResultCode.SUCCESS ? 0 : 1]++;
+        }
+    }
+
+    /**
+     * Creates symbols and users required by replay file
+     */
+    public void loadSymbolsAndUsers(final Path replayFile) throws IOException {
+
+        try (final FileChannel channel = FileChannel.open(replayFile, StandardOpenOption.READ)) {
+
+            final ByteBuffer header = readFully(channel, 0, ITCH50ReplayConverter.HEADER_LENGTH);
+            if (header.getInt(ITCH50ReplayConverter.HDR_MAGIC) != ITCH50ReplayConverter.MAGIC
+                    || header.getInt(ITCH50ReplayConverter.HDR_VERSION) != ITCH50ReplayConverter.VERSION) {
+                throw new IllegalStateException("Unknown replay file format: " + replayFile);
+            }
+
+            final int numUsers = header.getInt(ITCH50ReplayConverter.HDR_NUM_USERS);
+            final int symbolsNum = header.getInt(ITCH50ReplayConverter.HDR_SYMBOLS_NUM);
+            final long dataLength = header.getLong(ITCH50ReplayConverter.HDR_DATA_LENGTH);
+
+            final ByteBuffer symbolsBuffer = readFully(channel, ITCH50ReplayConverter.HEADER_LENGTH + dataLength, symbolsNum * 4);
+            final List<CoreSymbolSpecification> symbols = new ArrayList<>(symbolsNum);
+            for (int i = 0; i < symbolsNum; i++) {
+                symbols.add(CoreSymbolSpecification.builder()
+                        .symbolId(symbolsBuffer.getInt(i * 4))
+                        .type(SymbolType.CURRENCY_EXCHANGE_PAIR)
+                        .baseCurrency(STOCK_CURRENCY)
+                        .quoteCurrency(TestConstants.CURRENECY_USD)
+                        .baseScaleK(1)
+                        .quoteScaleK(1)
+                        .build());
+            }
+
+            log.info("Loading {} symbols and {} users...", symbolsNum, numUsers);
+            for (int i = 0; i < symbols.size(); i += 10_000) {
+                final CommandResultCode res = api.submitBinaryDataAsync(new BatchAddSymbolsCommand(symbols.subList(i, Math.min(i + 10_000, symbols.size())))).join();
+                if (res != CommandResultCode.SUCCESS) {
+                    throw new IllegalStateException("Can not add symbols: " + res);
+                }
+            }
+
+            LongStream.rangeClosed(1, numUsers).forEach(uid -> api.submitCommand(ApiAddUser.builder().uid(uid).build()));
+            api.submitCommandAsync(ApiNop.builder().build()).join();
+        }
+    }
+
+    /**
+     * Replays commands of the replay file
+     *
+     * @param replayFile - replay file
+     * @param speed      - pacing speed factor (1.0 - recorded pacing), or 0 for max rate
+     * @return replay report
+     */
+    public ReplayReport replay(final Path replayFile, final double speed) throws IOException {
+
+        for (OrderCommandType type : COMMAND_TYPES) {
+            histograms.get(type).reset();
+            counters.get(type)[0] = 0;
+            counters.get(type)[1] = 0;
+        }
+
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        final UnsafeBuffer view = new UnsafeBuffer(readBuffer);
+        final boolean paced = speed > 0;
+
+        long messageNum = 0;
+        long firstTimestamp = -1;
+        final long startNs = System.nanoTime();
+
+        try (final FileChannel channel = FileChannel.open(replayFile, StandardOpenOption.READ)) {
+
+            final long dataLength = readFully(channel, 0, ITCH50ReplayConverter.HEADER_LENGTH).getLong(ITCH50ReplayConverter.HDR_DATA_LENGTH);
+            long position = ITCH50ReplayConverter.HEADER_LENGTH;
+            final long dataEnd = position + dataLength;
+
+            while (position < dataEnd) {
+
+                readBuffer.limit((int) Math.min(readBuffer.capacity(), readBuffer.position() + dataEnd - position));
+                final int read = channel.read(readBuffer, position);
+                if (read <= 0) {
+                    throw new IllegalStateException("Unexpected end of replay file at " + position);
+                }
+                position += read;
+
+                final int available = readBuffer.position();
+                int ptr = 0;
+                while (available - ptr >= GatewayCodec.HEADER_LENGTH) {
+                    final int msgLength = GatewayCodec.messageLength(view, ptr);
+                    if (available - ptr < msgLength) {
+                        break;
+                    }
+
+                    final long sendTime;
+                    if (paced) {
+                        final long timestamp = view.getLong(ptr + GatewayCodec.HEADER_LENGTH + GatewayCodec.REQ_TIMESTAMP, GatewayCodec.BYTE_ORDER);
+                        if (firstTimestamp < 0) {
+                            firstTimestamp = timestamp;
+                        }
+                        sendTime = startNs + (long) ((timestamp - firstTimestamp) / speed);
+                        while (System.nanoTime() < sendTime) {
+                            Thread.onSpinWait();
+                        }
+                    } else {
+                        sendTime = System.nanoTime();
+                    }
+
+                    sendTimes[(int) messageNum & sendTimesMask] = sendTime;
+                    api.submitGatewayMessages(view, ptr, msgLength, correlations);
+                    messageNum++;
+                    ptr += msgLength;
+                }
+
+                readBuffer.flip().position(ptr);
+                readBuffer.compact();
+            }
+        }
+
+        api.submitCommandAsync(ApiNop.builder().build()).join();
+        final long durationNs = System.nanoTime() - startNs;
+
+        final Map<OrderCommandType, Map<String, String>> latencies = new EnumMap<>(OrderCommandType.class);
+        final Map<OrderCommandType, Long> commands = new EnumMap<>(OrderCommandType.class);
+        final Map<OrderCommandType, Long> rejected = new EnumMap<>(OrderCommandType.class);
+        for (OrderCommandType type : COMMAND_TYPES) {
+            final long[] cnt = counters.get(type);
+            commands.put(type, cnt[0] + cnt[1]);
+            rejected.put(type, cnt[1]);
+            latencies.put(type, LatencyTools.createLatencyReportFast(histograms.get(type)));
+        }
+
+        final ReplayReport report = new ReplayReport(messageNum, durationNs, speed, commands, rejected, latencies);
+        report.log();
+        return report;
+    }
+
+    /**
+     * Removes all orders, symbols and users
+     */
+    public void reset() {
+        final CommandResultCode res = api.submitCommandAsync(ApiReset.builder().build()).join();
+        if (res != CommandResultCode.SUCCESS) {
+            throw new IllegalStateException("Reset failed: " + res);
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalStateException("Unexpected end of replay file");
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() {
+        exchangeCore.shutdown(3000, TimeUnit.MILLISECONDS);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class ReplayReport {
+        private final long messagesNum;
+        private final long durationNs;
+        private final double speed;
+        private final Map<OrderCommandType, Long> commands;
+        private final Map<OrderCommandType, Long> rejected;
+        private final Map<OrderCommandType, Map<String, String>> latencies;
+
+        public float getMtps() {
+            return messagesNum * 1000f / durationNs;
+        }
+
+        void log() {
+            log.info("Replayed {} messages in {}ms ({}): {} MT/s",
+                    messagesNum, durationNs / 1_000_000, speed > 0 ? "speed x" + speed : "max rate", String.format("%.3f", getMtps()));
+            commands.forEach((type, num) -> {
+                if (num != 0) {
+                    log.info("  {} num={} rejected={} latency {}", type, num, rejected.get(type), latencies.get(type));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.nasdaq;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50;
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50Listener;
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50Parser;
+import com.paritytrading.nassau.util.BinaryFILE;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.gateway.GatewayCodec;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.BitUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * Converts NASDAQ TotalView-ITCH 5.0 file into compact replay file of binary gateway messages (see {@link GatewayCodec}).
+ * <p>
+ * Order events are mapped to exchange commands keeping original book shape:
+ * <ul>
+ * <li>Add Order (A, F) - GTC order placement (uid is derived from order reference number)</li>
+ * <li>Order Executed (E, C), Order Cancel (X) - reduce by executed/canceled shares
+ * (aggressors are not published in ITCH, so executions only remove liquidity)</li>
+ * <li>Order Delete (D) - cancel</li>
+ * <li>Order Replace (U) - move to the new price, followed by reduce if shares decreased;
+ * cancel and new order placement if shares increased</li>
+ * </ul>
+ * Replay file layout (little-endian): 32-bytes header, gateway messages (correlation id is message number,
+ * timestamp is ITCH nanoseconds since midnight), list of used stock locate codes (symbol ids).
+ */
+@Slf4j
+public final class ITCH50ReplayConverter implements ITCH50Listener {
+
+    public static final int MAGIC = 0x50524349; // "ICRP"
+    public static final int VERSION = 1;
+
+    public static final int HDR_MAGIC = 0;
+    public static final int HDR_VERSION = 4;
+    public static final int HDR_NUM_USERS = 8;
+    public static final int HDR_SYMBOLS_NUM = 12;
+    public static final int HDR_MESSAGES_NUM = 16;
+    public static final int HDR_DATA_LENGTH = 24;
+    public static final int HEADER_LENGTH = 32;
+
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // ITCH price field is limited to 200000.0000 - bids can be moved anywhere below it
+    private static final long MAX_BID_RESERVE_PRICE = 2_000_000_000L;
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final UnsafeBuffer writeView = new UnsafeBuffer(writeBuffer);
+    private int writePosition = 0;
+
+    private final int numUsersMask;
+    private final Predicate<String> stockFilter;
+
+    // accepted stock locate codes
+    private final IntHashSet acceptedStocks = new IntHashSet();
+    // stock locate codes having at least one command
+    private final IntHashSet usedSymbols = new IntHashSet();
+
+    // remaining shares of active orders: positive for BID, negative for ASK
+    private final LongLongHashMap remainingShares = new LongLongHashMap();
+    // replaced order reference number -> core order id
+    private final LongLongHashMap aliases = new LongLongHashMap();
+
+    // commands number per ITCH message type
+    private final IntLongHashMap itchCounters = new IntLongHashMap();
+
+    private long messagesNum = 0;
+    private long dataLength = 0;
+    private long skippedNum = 0;
+
+    private ITCH50ReplayConverter(final FileChannel channel, final int numUsers, final Predicate<String> stockFilter) {
+        this.channel = channel;
+        this.numUsersMask = numUsers - 1;
+        this.stockFilter = stockFilter;
+    }
+
+    /**
+     * Converts ITCH file into replay file
+     *
+     * @param itchFile          - NASDAQ ITCH 5.0 file
+     * @param replayFile        - output replay file
+     * @param numUsersSuggested - number of users (rounded up to power of two)
+     * @param stockFilter       - accepted stock tickers (trimmed)
+     * @return conversion result
+     */
+    public static ConversionResult convert(final Path itchFile,
+                                           final Path replayFile,
+                                           final int numUsersSuggested,
+                                           final Predicate<String> stockFilter) throws IOException {
+
+        final int numUsers = BitUtil.findNextPositivePowerOfTwo(numUsersSuggested);
+
+        try (final FileChannel channel = FileChannel.open(replayFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            final ITCH50ReplayConverter converter = new ITCH50ReplayConverter(channel, numUsers, stockFilter);
+            channel.position(HEADER_LENGTH);
+
+            BinaryFILE.read(itchFile.toFile(), new ITCH50Parser(converter));
+
+            return converter.finish(numUsers);
+        } catch (final UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private ConversionResult finish(final int numUsers) throws IOException {
+
+        flush();
+
+        final int[] symbols = usedSymbols.toSortedArray();
+        final ByteBuffer symbolsBuffer = ByteBuffer.allocate(symbols.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int symbol : symbols) {
+            symbolsBuffer.putInt(symbol);
+        }
+        symbolsBuffer.flip();
+        writeFully(symbolsBuffer, HEADER_LENGTH + dataLength);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(HDR_MAGIC, MAGIC);
+        header.putInt(HDR_VERSION, VERSION);
+        header.putInt(HDR_NUM_USERS, numUsers);
+        header.putInt(HDR_SYMBOLS_NUM, symbols.length);
+        header.putLong(HDR_MESSAGES_NUM, messagesNum);
+        header.putLong(HDR_DATA_LENGTH, dataLength);
+        writeFully(header, 0);
+        channel.force(true);
+
+        final ConversionResult result = new ConversionResult(messagesNum, symbols.length, numUsers, skippedNum, itchCounters);
+        log.info("Converted: {}", result);
+        return result;
+    }
+
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    private void flush() {
+        writeBuffer.clear().limit(writePosition);
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        writePosition = 0;
+    }
+
+    private void ensureCapacity() {
+        if (writePosition + GatewayCodec.MAX_REQUEST_LENGTH > WRITE_BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void written(final int length, final int symbol, final byte itchMessageType) {
+        writePosition += length;
+        dataLength += length;
+        messagesNum++;
+        usedSymbols.add(symbol);
+        itchCounters.addToValue(itchMessageType, 1);
+    }
+
+    private int uid(final long orderId) {
+        return NasdaqReader.hashToUid(orderId, numUsersMask);
+    }
+
+    private void placeOrder(final int stockLocate, final long timestamp, final long orderId, final byte side, final long price, final long shares, final byte itchType) {
+        if (!acceptedStocks.contains(stockLocate)) {
+            return;
+        }
+        final OrderAction action = side == ITCH50.BUY ? OrderAction.BID : OrderAction.ASK;
+        ensureCapacity();
+        final int len = GatewayCodec.encodePlaceOrder(writeView, writePosition, messagesNum, timestamp, uid(orderId), orderId, stockLocate,
+                price, action == OrderAction.BID ? MAX_BID_RESERVE_PRICE : price, shares, action, OrderType.GTC, 0);
+        written(len, stockLocate, itchType);
+        remainingShares.put(orderId, action == OrderAction.BID ? shares : -shares);
+    }
+
+    private void reduceOrder(final int stockLocate, final long timestamp, final long orderRef, final long shares, final byte itchType) {
+        if (!acceptedStocks.contains(stockLocate)) {
+            return;
+        }
+        final long orderId = aliases.getIfAbsent(orderRef, orderRef);
+        final long remaining = remainingShares.getIfAbsent(orderId, 0L);
+        if (remaining == 0) {
+            skippedNum++;
+            return;
+        }
+        ensureCapacity();
+        final int len = GatewayCodec.encodeReduceOrder(writeView, writePosition, messagesNum, timestamp, uid(orderId), orderId, stockLocate, shares);
+        written(len, stockLocate, itchType);
+
+        final long left = Math.abs(remaining) - shares;
+        if (left > 0) {
+            remainingShares.put(orderId, remaining > 0 ? left : -left);
+        } else {
+            removeOrder(orderRef, orderId);
+        }
+    }
+
+    private void cancelOrder(final int stockLocate, final long timestamp, final long orderRef, final byte itchType) {
+        if (!acceptedStocks.contains(stockLocate)) {
+            return;
+        }
+        final long orderId = aliases.getIfAbsent(orderRef, orderRef);
+        if (!remainingShares.containsKey(orderId)) {
+            skippedNum++;
+            return;
+        }
+        ensureCapacity();
+        final int len = GatewayCodec.encodeCancelOrder(writeView, writePosition, messagesNum, timestamp, uid(orderId), orderId, stockLocate);
+        written(len, stockLocate, itchType);
+        removeOrder(orderRef, orderId);
+    }
+
+    private void removeOrder(final long orderRef, final long orderId) {
+        remainingShares.remove(orderId);
+        aliases.remove(orderRef);
+    }
+
+    private static long timestamp(final int high, final long low) {
+        return NasdaqReader.convertTime(high, low);
+    }
+
+    @Override
+    public void stockDirectory(final ITCH50.StockDirectory message) {
+        final String stock = ASCII.unpackLong(message.stock).trim();
+        if (stockFilter.test(stock)) {
+            acceptedStocks.add(message.stockLocate);
+        }
+    }
+
+    @Override
+    public void addOrder(final ITCH50.AddOrder message) {
+        placeOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                message.buySellIndicator, message.price, message.shares, ITCH50.MESSAGE_TYPE_ADD_ORDER);
+    }
+
+    @Override
+    public void addOrderMPID(final ITCH50.AddOrderMPID message) {
+        placeOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                message.buySellIndicator, message.price, message.shares, ITCH50.MESSAGE_TYPE_ADD_ORDER_MPID);
+    }
+
+    @Override
+    public void orderExecuted(final ITCH50.OrderExecuted message) {
+        reduceOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                message.executedShares, ITCH50.MESSAGE_TYPE_ORDER_EXECUTED);
+    }
+
+    @Override
+    public void orderExecutedWithPrice(final ITCH50.OrderExecutedWithPrice message) {
+        reduceOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                message.executedShares, ITCH50.MESSAGE_TYPE_ORDER_EXECUTED_WITH_PRICE);
+    }
+
+    @Override
+    public void orderCancel(final ITCH50.OrderCancel message) {
+        reduceOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                message.canceledShares, ITCH50.MESSAGE_TYPE_ORDER_CANCEL);
+    }
+
+    @Override
+    public void orderDelete(final ITCH50.OrderDelete message) {
+        cancelOrder(message.stockLocate, timestamp(message.timestampHigh, message.timestampLow), message.orderReferenceNumber,
+                ITCH50.MESSAGE_TYPE_ORDER_DELETE);
+    }
+
+    @Override
+    public void orderReplace(final ITCH50.OrderReplace message) {
+
+        final int stockLocate = message.stockLocate;
+        if (!acceptedStocks.contains(stockLocate)) {
+            return;
+        }
+
+        final long timestamp = timestamp(message.timestampHigh, message.timestampLow);
+        final long orderRef = message.originalOrderReferenceNumber;
+        final long orderId = aliases.getIfAbsent(orderRef, orderRef);
+        final long remaining = remainingShares.getIfAbsent(orderId, 0L);
+        if (remaining == 0) {
+            skippedNum++;
+            return;
+        }
+
+        final long shares = message.shares;
+        final long remainingAbs = Math.abs(remaining);
+
+        if (shares > remainingAbs) {
+            // size can not be increased - cancel and place new order
+            cancelOrder(stockLocate, timestamp, orderRef, ITCH50.MESSAGE_TYPE_ORDER_REPLACE);
+            placeOrder(stockLocate, timestamp, message.newOrderReferenceNumber, remaining > 0 ? ITCH50.BUY : ITCH50.SELL,
+                    message.price, shares, ITCH50.MESSAGE_TYPE_ORDER_REPLACE);
+            return;
+        }
+
+        ensureCapacity();
+        final int len = GatewayCodec.encodeMoveOrder(writeView, writePosition, messagesNum, timestamp, uid(orderId), orderId, stockLocate, message.price);
+        written(len, stockLocate, ITCH50.MESSAGE_TYPE_ORDER_REPLACE);
+
+        // new reference number refers to the same core order
+        aliases.remove(orderRef);
+        aliases.put(message.newOrderReferenceNumber, orderId);
+
+        if (shares < remainingAbs) {
+            reduceOrder(stockLocate, timestamp, message.newOrderReferenceNumber, remainingAbs - shares, ITCH50.MESSAGE_TYPE_ORDER_REPLACE);
+        }
+    }
+
+    // ---------- messages not affecting order books --------------
+
+    @Override
+    public void systemEvent(final ITCH50.SystemEvent message) {
+    }
+
+    @Override
+    public void stockTradingAction(final ITCH50.StockTradingAction message) {
+    }
+
+    @Override
+    public void regSHORestriction(final ITCH50.RegSHORestriction message) {
+    }
+
+    @Override
+    public void marketParticipantPosition(final ITCH50.MarketParticipantPosition message) {
+    }
+
+    @Override
+    public void mwcbDeclineLevel(final ITCH50.MWCBDeclineLevel message) {
+    }
+
+    @Override
+    public void mwcbStatus(final ITCH50.MWCBStatus message) {
+    }
+
+    @Override
+    public void ipoQuotingPeriodUpdate(final ITCH50.IPOQuotingPeriodUpdate message) {
+    }
+
+    @Override
+    public void luldAuctionCollar(final ITCH50.LULDAuctionCollar message) {
+    }
+
+    @Override
+    public void operationalHalt(final ITCH50.OperationalHalt message) {
+    }
+
+    @Override
+    public void trade(final ITCH50.Trade message) {
+    }
+
+    @Override
+    public void crossTrade(final ITCH50.CrossTrade message) {
+    }
+
+    @Override
+    public void brokenTrade(final ITCH50.BrokenTrade message) {
+    }
+
+    @Override
+    public void noii(final ITCH50.NOII message) {
+    }
+
+    @Override
+    public void rpii(final ITCH50.RPII message) {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static final class ConversionResult {
+        private final long messagesNum;
+        private final int symbolsNum;
+        private final int numUsers;
+        // order events referring unknown orders
+        private final long skippedNum;
+        // commands number per ITCH message type
+        private final IntLongHashMap itchCounters;
+    }
+}
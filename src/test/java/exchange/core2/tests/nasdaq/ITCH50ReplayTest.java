@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.nasdaq;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50;
+import com.paritytrading.nassau.binaryfile.BinaryFILEWriter;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class ITCH50ReplayTest {
+
+    private static final int LOCATE_TEST = 7;
+    private static final int LOCATE_SKIP = 8;
+
+    @TempDir
+    Path folder;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private long timestamp = 34_200_000_000_000L;
+
+    @Test
+    public void shouldConvertAndReplayItchFile() throws IOException {
+
+        final Path itchFile = folder.resolve("test.ITCH50");
+        final Path replayFile = folder.resolve("test.replay");
+
+        try (final BinaryFILEWriter writer = BinaryFILEWriter.open(itchFile.toFile())) {
+            stockDirectory(writer, LOCATE_TEST, "TEST");
+            stockDirectory(writer, LOCATE_SKIP, "SKIP");
+
+            addOrder(writer, LOCATE_TEST, 1L, ITCH50.BUY, 100, 1_000_000L);
+            addOrder(writer, LOCATE_TEST, 2L, ITCH50.SELL, 200, 1_010_000L);
+            addOrder(writer, LOCATE_TEST, 3L, ITCH50.BUY, 50, 990_000L);
+            addOrder(writer, LOCATE_SKIP, 4L, ITCH50.BUY, 10, 500_000L);
+
+            final ITCH50.OrderExecuted executed = new ITCH50.OrderExecuted();
+            timestamp += 1_000;
+            executed.timestampHigh = timestampHigh();
+            executed.timestampLow = timestampLow();
+            executed.stockLocate = LOCATE_TEST;
+            executed.orderReferenceNumber = 1L;
+            executed.executedShares = 30;
+            write(writer, executed::put);
+
+            final ITCH50.OrderCancel cancel = new ITCH50.OrderCancel();
+            timestamp += 1_000;
+            cancel.timestampHigh = timestampHigh();
+            cancel.timestampLow = timestampLow();
+            cancel.stockLocate = LOCATE_TEST;
+            cancel.orderReferenceNumber = 2L;
+            cancel.canceledShares = 20;
+            write(writer, cancel::put);
+
+            // move and reduce
+            replace(writer, 3L, 5L, 40, 995_000L);
+
+            // size increased - cancel and place
+            replace(writer, 1L, 6L, 100, 1_000_000L);
+
+            delete(writer, 5L);
+
+            final ITCH50.OrderExecutedWithPrice executedWithPrice = new ITCH50.OrderExecutedWithPrice();
+            timestamp += 1_000;
+            executedWithPrice.timestampHigh = timestampHigh();
+            executedWithPrice.timestampLow = timestampLow();
+            executedWithPrice.stockLocate = LOCATE_TEST;
+            executedWithPrice.orderReferenceNumber = 2L;
+            executedWithPrice.executedShares = 80;
+            executedWithPrice.executionPrice = 1_010_000L;
+            write(writer, executedWithPrice::put);
+
+            // unknown order
+            delete(writer, 99L);
+        }
+
+        final ITCH50ReplayConverter.ConversionResult conversionResult = ITCH50ReplayConverter.convert(itchFile, replayFile, 100, stock -> !stock.equals("SKIP"));
+        assertThat(conversionResult.getMessagesNum(), is(11L));
+        assertThat(conversionResult.getSymbolsNum(), is(1));
+        assertThat(conversionResult.getNumUsers(), is(128));
+        assertThat(conversionResult.getSkippedNum(), is(1L));
+        assertThat(conversionResult.getItchCounters().get(ITCH50.MESSAGE_TYPE_ORDER_REPLACE), is(4L));
+
+        try (final ITCH50ReplayBenchmark benchmark = new ITCH50ReplayBenchmark(PerformanceConfiguration.DEFAULT)) {
+
+            // max rate, then recorded pacing
+            for (double speed : new double[]{0, 1.0}) {
+
+                benchmark.loadSymbolsAndUsers(replayFile);
+                final ITCH50ReplayBenchmark.ReplayReport report = benchmark.replay(replayFile, speed);
+
+                assertThat(report.getMessagesNum(), is(11L));
+                assertThat(report.getCommands().get(OrderCommandType.PLACE_ORDER), is(4L));
+                assertThat(report.getCommands().get(OrderCommandType.REDUCE_ORDER), is(4L));
+                assertThat(report.getCommands().get(OrderCommandType.MOVE_ORDER), is(1L));
+                assertThat(report.getCommands().get(OrderCommandType.CANCEL_ORDER), is(2L));
+                report.getRejected().values().forEach(rejected -> assertThat(rejected, is(0L)));
+
+                final L2MarketData orderBook = benchmark.getApi().requestOrderBookAsync(LOCATE_TEST, 10).join();
+                assertThat(orderBook, is(new L2MarketData(
+                        new long[]{1_010_000L}, new long[]{100L}, new long[]{1L},
+                        new long[]{1_000_000L}, new long[]{100L}, new long[]{1L})));
+
+                benchmark.reset();
+            }
+        }
+    }
+
+    private void stockDirectory(final BinaryFILEWriter writer, final int locate, final String stock) throws IOException {
+        final ITCH50.StockDirectory message = new ITCH50.StockDirectory();
+        timestamp += 1_000;
+        message.timestampHigh = timestampHigh();
+        message.timestampLow = timestampLow();
+        message.stockLocate = locate;
+        message.stock = ASCII.packLong(String.format("%-8s", stock));
+        message.roundLotSize = 100;
+        write(writer, message::put);
+    }
+
+    private void addOrder(final BinaryFILEWriter writer, final int locate, final long orderRef, final byte side, final long shares, final long price) throws IOException {
+        final ITCH50.AddOrder message = new ITCH50.AddOrder();
+        timestamp += 1_000;
+        message.timestampHigh = timestampHigh();
+        message.timestampLow = timestampLow();
+        message.stockLocate = locate;
+        message.orderReferenceNumber = orderRef;
+        message.buySellIndicator = side;
+        message.shares = shares;
+        message.price = price;
+        write(writer, message::put);
+    }
+
+    private void replace(final BinaryFILEWriter writer, final long orderRef, final long newOrderRef, final long shares, final long price) throws IOException {
+        final ITCH50.OrderReplace message = new ITCH50.OrderReplace();
+        timestamp += 1_000;
+        message.timestampHigh = timestampHigh();
+        message.timestampLow = timestampLow();
+        message.stockLocate = LOCATE_TEST;
+        message.originalOrderReferenceNumber = orderRef;
+        message.newOrderReferenceNumber = newOrderRef;
+        message.shares = shares;
+        message.price = price;
+        write(writer, message::put);
+    }
+
+    private void delete(final BinaryFILEWriter writer, final long orderRef) throws IOException {
+        final ITCH50.OrderDelete message = new ITCH50.OrderDelete();
+        timestamp += 1_000;
+        message.timestampHigh = timestampHigh();
+        message.timestampLow = timestampLow();
+        message.stockLocate = LOCATE_TEST;
+        message.orderReferenceNumber = orderRef;
+        write(writer, message::put);
+    }
+
+    private int timestampHigh() {
+        return (int) (timestamp >>> 32);
+    }
+
+    private long timestampLow() {
+        return timestamp & 0xFFFFFFFFL;
+    }
+
+    private void write(final BinaryFILEWriter writer, final Consumer<ByteBuffer> encoder) throws IOException {
+        buffer.clear();
+        encoder.accept(buffer);
+        buffer.flip();
+        writer.write(buffer);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.utils.AffinityThreadFactory;
+import exchange.core2.tests.util.PerformanceAutoTuner;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs calibration on current box and prints tuned configuration.
+ * Parameters: tuner.users, tuner.symbols, tuner.orders, tuner.latencyP99Us, tuner.cores
+ */
+@Slf4j
+public final class PerfAutoTuner {
+
+    @Test
+    public void testAutoTune() {
+
+        final PerformanceAutoTuner.TuningResult result = PerformanceAutoTuner.defaultBuilder()
+                .expectedUsers(Integer.getInteger("tuner.users", 10_000))
+                .expectedSymbols(Integer.getInteger("tuner.symbols", 100))
+                .expectedOrdersTotal(Integer.getInteger("tuner.orders", 10_000))
+                .targetLatencyP99Ns(Integer.getInteger("tuner.latencyP99Us", 1_000) * 1000L)
+                .availableCores(Integer.getInteger("tuner.cores", Runtime.getRuntime().availableProcessors()))
+                .template(() -> PerformanceConfiguration.throughputPerformanceBuilder()
+                        .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE)))
+                .build()
+                .tune();
+
+        result.getMeasurementsRanked().forEach(m -> log.info("{}", m));
+        log.info("Tuned configuration: {}", result.getConfiguration());
+    }
+}
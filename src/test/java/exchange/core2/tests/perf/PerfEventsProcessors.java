@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.FlyweightEventsProcessor;
+import exchange.core2.core.IEventsHandler;
+import exchange.core2.core.IFlyweightEventsHandler;
+import exchange.core2.core.SimpleEventsProcessor;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ObjLongConsumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+
+/**
+ * Results processing: SimpleEventsProcessor (immutable events objects) vs FlyweightEventsProcessor (reusable views).
+ * Both handlers read the same data, allocated bytes are measured for the calling thread.
+ * Commands mix: placed orders with several trades (and sometimes reject), cancels, moves and order book requests.
+ */
+@Slf4j
+public final class PerfEventsProcessors {
+
+    private static final int NUM_COMMANDS = 10_000;
+    private static final int ROUNDS = 200;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void testEventsProcessors() {
+        for (int maxTrades : new int[]{1, 4, 16}) {
+            compare(maxTrades);
+        }
+    }
+
+    private void compare(final int maxTrades) {
+
+        final List<OrderCommand> commands = generateCommands(maxTrades);
+
+        final SimpleSumHandler simpleHandler = new SimpleSumHandler();
+        final FlyweightSumHandler flyweightHandler = new FlyweightSumHandler();
+        final SimpleEventsProcessor simpleProcessor = new SimpleEventsProcessor(simpleHandler);
+        final FlyweightEventsProcessor flyweightProcessor = new FlyweightEventsProcessor(flyweightHandler);
+
+        long[] simple = null;
+        long[] flyweight = null;
+        for (int j = 0; j < ITERATIONS; j++) {
+            simple = measure(simpleProcessor, commands);
+            flyweight = measure(flyweightProcessor, commands);
+        }
+
+        final long total = (long) ROUNDS * NUM_COMMANDS;
+        log.info("maxTrades={}: simple {}ns {}B per command, flyweight {}ns {}B per command",
+                maxTrades,
+                String.format("%.1f", (double) simple[0] / total), String.format("%.1f", (double) simple[1] / total),
+                String.format("%.1f", (double) flyweight[0] / total), String.format("%.3f", (double) flyweight[1] / total));
+
+        assertThat(flyweightHandler.sum, is(simpleHandler.sum));
+        assertThat((double) flyweight[1] / total, lessThan(1.0));
+    }
+
+    // returns duration (ns) and allocated bytes
+    private static long[] measure(final ObjLongConsumer<OrderCommand> processor, final List<OrderCommand> commands) {
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long t = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (int j = 0; j < NUM_COMMANDS; j++) {
+                processor.accept(commands.get(j), j);
+            }
+        }
+        final long duration = System.nanoTime() - t;
+        return new long[]{duration, threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore};
+    }
+
+    private static List<OrderCommand> generateCommands(final int maxTrades) {
+
+        final Random rand = new Random(1L);
+        final List<OrderCommand> commands = new ArrayList<>(NUM_COMMANDS);
+
+        for (int i = 0; i < NUM_COMMANDS; i++) {
+            final int type = rand.nextInt(10);
+            final OrderCommand cmd;
+            if (type < 6) {
+                cmd = command(OrderCommandType.PLACE_ORDER, i, rand);
+                final int trades = rand.nextInt(maxTrades + 1);
+                MatcherTradeEvent tail = null;
+                for (int t = 0; t < trades; t++) {
+                    final MatcherTradeEvent evt = event(MatcherEventType.TRADE, rand);
+                    evt.activeOrderCompleted = t == trades - 1;
+                    tail = append(cmd, tail, evt);
+                }
+                if (rand.nextInt(4) == 0) {
+                    append(cmd, tail, event(MatcherEventType.REJECT, rand));
+                }
+            } else if (type < 8) {
+                cmd = command(OrderCommandType.CANCEL_ORDER, i, rand);
+                append(cmd, null, event(MatcherEventType.REDUCE, rand));
+            } else if (type < 9) {
+                cmd = command(OrderCommandType.MOVE_ORDER, i, rand);
+            } else {
+                cmd = command(OrderCommandType.ORDER_BOOK_REQUEST, i, rand);
+                cmd.marketData = marketData(rand);
+            }
+            commands.add(cmd);
+        }
+        return commands;
+    }
+
+    private static OrderCommand command(final OrderCommandType commandType, final long orderId, final Random rand) {
+        return OrderCommand.builder()
+                .command(commandType)
+                .orderId(orderId)
+                .symbol(rand.nextInt(100))
+                .price(10_000 + rand.nextInt(1000))
+                .size(1 + rand.nextInt(100))
+                .action(rand.nextBoolean() ? OrderAction.ASK : OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .uid(1 + rand.nextInt(10_000))
+                .timestamp(1578930983745201L + orderId)
+                .resultCode(CommandResultCode.SUCCESS)
+                .build();
+    }
+
+    private static MatcherTradeEvent event(final MatcherEventType type, final Random rand) {
+        return MatcherTradeEvent.builder()
+                .eventType(type)
+                .matchedOrderId(rand.nextInt(1_000_000))
+                .matchedOrderUid(1 + rand.nextInt(10_000))
+                .matchedOrderCompleted(rand.nextBoolean())
+                .price(10_000 + rand.nextInt(1000))
+                .size(1 + rand.nextInt(100))
+                .build();
+    }
+
+    private static MatcherTradeEvent append(final OrderCommand cmd, final MatcherTradeEvent tail, final MatcherTradeEvent evt) {
+        if (tail == null) {
+            cmd.matcherEvent = evt;
+        } else {
+            tail.nextEvent = evt;
+        }
+        return evt;
+    }
+
+    private static L2MarketData marketData(final Random rand) {
+        final int depth = 10;
+        final L2MarketData marketData = new L2MarketData(depth, depth);
+        for (int i = 0; i < depth; i++) {
+            marketData.askPrices[i] = 10_500 + i;
+            marketData.askVolumes[i] = 1 + rand.nextInt(1000);
+            marketData.askOrders[i] = 1 + rand.nextInt(10);
+            marketData.bidPrices[i] = 10_499 - i;
+            marketData.bidVolumes[i] = 1 + rand.nextInt(1000);
+            marketData.bidOrders[i] = 1 + rand.nextInt(10);
+        }
+        marketData.askSize = depth;
+        marketData.bidSize = depth;
+        return marketData;
+    }
+
+    private static final class SimpleSumHandler implements IEventsHandler {
+
+        long sum = 0;
+
+        @Override
+        public void commandResult(ApiCommandResult commandResult) {
+            sum += commandResult.seq + commandResult.resultCode.ordinal();
+        }
+
+        @Override
+        public void tradeEvent(TradeEvent tradeEvent) {
+            sum += tradeEvent.totalVolume;
+            for (Trade trade : tradeEvent.trades) {
+                sum += trade.makerOrderId + trade.price * trade.volume;
+            }
+        }
+
+        @Override
+        public void rejectEvent(RejectEvent rejectEvent) {
+            sum += rejectEvent.rejectedVolume;
+        }
+
+        @Override
+        public void reduceEvent(ReduceEvent reduceEvent) {
+            sum += reduceEvent.reducedVolume;
+        }
+
+        @Override
+        public void orderBook(OrderBook orderBook) {
+            for (OrderBookRecord record : orderBook.asks) {
+                sum += record.price * record.volume + record.orders;
+            }
+            for (OrderBookRecord record : orderBook.bids) {
+                sum += record.price * record.volume + record.orders;
+            }
+        }
+    }
+
+    private static final class FlyweightSumHandler implements IFlyweightEventsHandler {
+
+        long sum = 0;
+
+        @Override
+        public void commandResult(CommandResultView commandResult) {
+            sum += commandResult.seq() + commandResult.resultCode().ordinal();
+        }
+
+        @Override
+        public void tradeEvent(TradeEventView tradeEvent) {
+            sum += tradeEvent.totalVolume();
+            while (tradeEvent.nextTrade()) {
+                sum += tradeEvent.makerOrderId() + tradeEvent.price() * tradeEvent.volume();
+            }
+        }
+
+        @Override
+        public void rejectEvent(OrderEventView rejectEvent) {
+            sum += rejectEvent.volume();
+        }
+
+        @Override
+        public void reduceEvent(OrderEventView reduceEvent) {
+            sum += reduceEvent.volume();
+        }
+
+        @Override
+        public void orderBook(OrderBookView orderBook) {
+            for (int i = 0; i < orderBook.askSize(); i++) {
+                sum += orderBook.askPrice(i) * orderBook.askVolume(i) + orderBook.askOrders(i);
+            }
+            for (int i = 0; i < orderBook.bidSize(); i++) {
+                sum += orderBook.bidPrice(i) * orderBook.bidVolume(i) + orderBook.bidOrders(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.GatewayTestsModule;
+import exchange.core2.tests.util.TestDataParameters;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Binary gateway protocol: zero-allocation decoding into ring buffer slots compared with ApiCommand objects,
+ * and loopback TCP gateway example throughput.
+ */
+@Slf4j
+public final class PerfGateway {
+
+    @Test
+    public void testCodecDecode() {
+        GatewayTestsModule.codecBenchmarkImpl(
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                20);
+    }
+
+    @Test
+    public void testThroughputGatewayMessages() {
+        GatewayTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                20);
+    }
+
+    @Test
+    public void testThroughputTcpLoopback() throws Exception {
+        GatewayTestsModule.tcpLoopbackTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                10);
+    }
+}
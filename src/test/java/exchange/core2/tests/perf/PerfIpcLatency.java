@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.ExchangeCore;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.IpcLatencyClientProcess;
+import exchange.core2.tests.util.TestConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Round-trip latency between gateway process and exchange core process through shared memory IPC channel.
+ * Gateway process is started by the test, exchange core is running in the test JVM.
+ */
+@Slf4j
+public final class PerfIpcLatency {
+
+    @Test
+    public void testIpcRoundTripLatency() throws Exception {
+
+        final IpcConfiguration ipcCfg = IpcConfiguration.defaultBuilder()
+                .channelName("perf-latency")
+                .build();
+
+        final ExchangeCore exchangeCore = ExchangeCore.builder()
+                .resultsConsumer((cmd, seq) -> {
+                })
+                .exchangeConfiguration(ExchangeConfiguration.defaultBuilder()
+                        .performanceCfg(PerformanceConfiguration.latencyPerformanceBuilder()
+                                .ringBufferSize(2 * 1024)
+                                .matchingEnginesNum(1)
+                                .riskEnginesNum(1)
+                                .msgsInGroupLimit(256)
+                                .build())
+                        .build())
+                .ipcCfg(ipcCfg)
+                .build();
+
+        exchangeCore.startup();
+
+        try {
+            final long uid = TestConstants.UID_1;
+            assertThat(exchangeCore.getApi().submitBinaryDataAsync(new BatchAddSymbolsCommand(TestConstants.SYMBOLSPEC_EUR_USD)).join(), is(CommandResultCode.SUCCESS));
+            assertThat(exchangeCore.getApi().submitCommandAsync(ApiAddUser.builder().uid(uid).build()).join(), is(CommandResultCode.SUCCESS));
+            assertThat(exchangeCore.getApi().submitCommandAsync(ApiAdjustUserBalance.builder()
+                    .uid(uid).currency(TestConstants.CURRENECY_USD).amount(1_000_000_000L).transactionId(1L).build()).join(), is(CommandResultCode.SUCCESS));
+
+            final Process process = new ProcessBuilder(
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    IpcLatencyClientProcess.class.getName(),
+                    ipcCfg.getFolder(),
+                    ipcCfg.getChannelName(),
+                    String.valueOf(uid),
+                    String.valueOf(TestConstants.SYMBOL_MARGIN),
+                    "100000",
+                    "1000000")
+                    .redirectErrorStream(true)
+                    .start();
+
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(IpcLatencyClientProcess.REPORT_PREFIX)) {
+                        log.info("Round-trip latency: {}", line.substring(IpcLatencyClientProcess.REPORT_PREFIX.length()));
+                    } else {
+                        log.debug("gateway: {}", line);
+                    }
+                }
+            }
+            assertThat(process.waitFor(), is(0));
+
+        } finally {
+            exchangeCore.shutdown();
+        }
+    }
+}
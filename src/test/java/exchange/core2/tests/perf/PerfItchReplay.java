@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.nasdaq.ITCH50ReplayBenchmark;
+import exchange.core2.tests.nasdaq.ITCH50ReplayConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Replays NASDAQ TotalView-ITCH 5.0 day file: first at max rate, then at recorded pacing.
+ * ITCH file location can be provided by -Ditch.file=... (test is skipped if file not found),
+ * pacing speed factor by -Ditch.speed=... (recorded pacing of the full trading day takes hours).
+ */
+@Slf4j
+public final class PerfItchReplay {
+
+    private static final String ITCH_FILE = System.getProperty("itch.file", "../../nasdaq/01302020.NASDAQ_ITCH50");
+    private static final double ITCH_SPEED = Double.parseDouble(System.getProperty("itch.speed", "1.0"));
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testReplayItchFile() throws Exception {
+
+        final Path itchFile = Paths.get(ITCH_FILE);
+        assumeTrue(Files.exists(itchFile), "ITCH file not found: " + itchFile.toAbsolutePath());
+
+        final Path replayFile = folder.resolve("itch.replay");
+        ITCH50ReplayConverter.convert(itchFile, replayFile, 1_000_000, stock -> true);
+
+        try (final ITCH50ReplayBenchmark benchmark = new ITCH50ReplayBenchmark(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(64 * 1024)
+                        .matchingEnginesNum(4)
+                        .riskEnginesNum(2)
+                        .build())) {
+
+            for (double speed : new double[]{0, ITCH_SPEED}) {
+                benchmark.loadSymbolsAndUsers(replayFile);
+                benchmark.replay(replayFile, speed);
+                benchmark.reset();
+            }
+        }
+    }
+}
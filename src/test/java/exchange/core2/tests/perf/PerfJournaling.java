@@ -16,6 +16,7 @@
 package exchange.core2.tests.perf;
 
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
 import exchange.core2.tests.util.*;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
@@ -50,6 +51,48 @@ public final class PerfJournaling {
                 10);
     }
 
+    @Test
+    public void testJournalingExchangePipelined() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_PIPELINED,
+                10);
+    }
+
+    @Test
+    public void testJournalingExchangeDurableAck() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_DURABLE_ACK,
+                10);
+    }
+
+    @Test
+    public void testJournalingExchangeDurableAckIoUring() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_DURABLE_ACK_IO_URING,
+                10);
+    }
+
     @Test
     public void testJournalingMultiSymbolSmall() throws Exception {
         JournalingTestsModule.journalingTestImpl(
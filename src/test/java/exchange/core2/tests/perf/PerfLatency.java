@@ -15,13 +15,18 @@
  */
 package exchange.core2.tests.perf;
 
+import exchange.core2.core.common.CoreWaitStrategy;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.common.config.WaitBackoffConfiguration;
 import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.WorkloadFile;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+
 import static exchange.core2.tests.util.LatencyTestsModule.latencyTestImpl;
 
 @Slf4j
@@ -71,6 +76,49 @@ public final class PerfLatency {
                 16);
     }
 
+    /**
+     * Same as testLatencyExchange, but with phased backoff wait strategy instead of busy spinning.
+     * Compare latency and "cpu" (cores used) values in the report with testLatencyExchange:
+     * - BALANCED thresholds: spinning covers typical gaps between commands at high rates, threads are sleeping when idle
+     * - LOW_CPU thresholds: minimal CPU usage, wake-up latency is added to most of commands at low rates
+     */
+    @Test
+    public void testLatencyExchangePhasedBackoff() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .waitStrategy(CoreWaitStrategy.PHASED_BACKOFF)
+                        .waitBackoffCfg(WaitBackoffConfiguration.DEFAULT)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                16);
+    }
+
+    @Test
+    public void testLatencyExchangePhasedBackoffLowCpu() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .waitStrategy(CoreWaitStrategy.PHASED_BACKOFF)
+                        .waitBackoffCfg(WaitBackoffConfiguration.allStages(WaitBackoffConfiguration.LOW_CPU)
+                                // matching engine is usually most loaded stage
+                                .matchingEngine(WaitBackoffConfiguration.BALANCED)
+                                .build())
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                16);
+    }
+
     /**
      * This is medium load latency test for verifying "triple million" capability:
      * - 1M active users (3M currency accounts)
@@ -142,4 +190,25 @@ public final class PerfLatency {
                 2);
     }
 
+    /**
+     * Same as testLatencyExchange, but commands are replayed from pre-generated workload file
+     * (generated once into {@link WorkloadFile#DEFAULT_FOLDER}, then reused by following runs).
+     */
+    @Test
+    public void testLatencyExchangeWorkloadFile() throws IOException {
+        try (final WorkloadFile workloadFile = WorkloadFile.openOrGenerate(WorkloadFile.DEFAULT_FOLDER, TestDataParameters.singlePairExchangeBuilder().build(), 1)) {
+            latencyTestImpl(
+                    PerformanceConfiguration.latencyPerformanceBuilder()
+                            .ringBufferSize(2 * 1024)
+                            .matchingEnginesNum(1)
+                            .riskEnginesNum(1)
+                            .msgsInGroupLimit(256)
+                            .build(),
+                    workloadFile,
+                    InitialStateConfiguration.CLEAN_TEST,
+                    SerializationConfiguration.DEFAULT,
+                    16);
+        }
+    }
+
 }
\ No newline at end of file
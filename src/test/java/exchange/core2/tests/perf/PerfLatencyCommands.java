@@ -66,6 +66,43 @@ public final class PerfLatencyCommands {
     }
 
 
+    /**
+     * Same as testLatencyMargin, but cancel/move/reduce commands are waiting for risk engine pre-processing
+     * (baseline for cancel fast lane comparison).
+     */
+    @Test
+    public void testLatencyMarginNoFastLane() {
+        individualLatencyTest(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .cancelFastLaneEnabled(false)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST);
+    }
+
+    /**
+     * Same as testLatencyExchange, but cancel/move/reduce commands are waiting for risk engine pre-processing
+     * (baseline for cancel fast lane comparison).
+     */
+    @Test
+    public void testLatencyExchangeNoFastLane() {
+        individualLatencyTest(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .cancelFastLaneEnabled(false)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST);
+    }
+
+
     /**
      * - 1M active users (3M currency accounts)
      * - 1M pending limit-orders
@@ -18,6 +18,8 @@ package exchange.core2.tests.perf;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode;
 import exchange.core2.tests.util.ExchangeTestContainer;
 import exchange.core2.tests.util.TestDataParameters;
 import lombok.extern.slf4j.Slf4j;
@@ -64,6 +66,80 @@ public final class PerfLatencyJournaling {
                 6);
     }
 
+    /*
+     * Journal written by separate writer thread - acknowledgements are not waiting for disk
+     */
+    @Test
+    public void testLatencyExchangeJournalingPipelined() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_PIPELINED,
+                6);
+    }
+
+    /*
+     * Journal written by separate writer thread with group commit - acknowledgements are waiting for durable sequence
+     */
+    @Test
+    public void testLatencyExchangeJournalingDurableAck() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_DURABLE_ACK,
+                6);
+    }
+
+    /*
+     * Durable acknowledgements, journal written through io_uring (AsynchronousFileChannel if io_uring is not supported)
+     */
+    @Test
+    public void testLatencyExchangeJournalingDurableAckIoUring() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_DURABLE_ACK_IO_URING,
+                6);
+    }
+
+    /*
+     * Durable acknowledgements, journal written through AsynchronousFileChannel
+     */
+    @Test
+    public void testLatencyExchangeJournalingDurableAckAsyncChannel() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.diskJournaling(
+                        JournalDurabilityMode.PIPELINED_DURABLE_ACK,
+                        DiskSerializationProcessorConfiguration.IO_ASYNC_FILE_CHANNEL),
+                6);
+    }
+
     @Test
     public void testLatencyMultiSymbolMediumJournaling() {
         latencyTestImpl(
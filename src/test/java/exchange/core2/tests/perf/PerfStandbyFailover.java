@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.tests.util.StandbyFailoverTestsModule;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.TestOrdersGeneratorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode.INLINE_SYNC;
+import static exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration.JournalDurabilityMode.PIPELINED_ASYNC;
+
+@Slf4j
+public final class PerfStandbyFailover {
+
+    @Test
+    public void testStandbyFailoverExchange() throws Exception {
+        StandbyFailoverTestsModule.failoverTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER),
+                INLINE_SYNC,
+                10);
+    }
+
+    @Test
+    public void testStandbyFailoverMarginPipelined() throws Exception {
+        StandbyFailoverTestsModule.failoverTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER),
+                PIPELINED_ASYNC,
+                10);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.processors.DenseSymbolMap;
+import exchange.core2.tests.util.TestConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Symbol specification lookup: IntObjectHashMap vs DenseSymbolMap (flat array).
+ * Lookup pattern is random (commands for different symbols are interleaved).
+ */
+@Slf4j
+public final class PerfSymbolLookup {
+
+    private static final int LOOKUPS = 10_000_000;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void testSymbolLookup() {
+        for (int numSymbols : new int[]{10, 100, 1_000, 10_000, 100_000}) {
+            compare(numSymbols);
+        }
+    }
+
+    private void compare(final int numSymbols) {
+
+        final IntObjectHashMap<CoreSymbolSpecification> hashMap = new IntObjectHashMap<>();
+        final DenseSymbolMap<CoreSymbolSpecification> denseMap = new DenseSymbolMap<>(200_000);
+
+        for (int i = 0; i < numSymbols; i++) {
+            final int symbolId = TestConstants.SYMBOL_AUTOGENERATED_RANGE_START + i;
+            final CoreSymbolSpecification spec = CoreSymbolSpecification.builder()
+                    .symbolId(symbolId)
+                    .type(SymbolType.FUTURES_CONTRACT)
+                    .marginBuy(i)
+                    .build();
+            hashMap.put(symbolId, spec);
+            denseMap.put(symbolId, spec);
+        }
+
+        final Random rand = new Random(1L);
+        final int[] symbols = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            symbols[i] = TestConstants.SYMBOL_AUTOGENERATED_RANGE_START + rand.nextInt(numSymbols);
+        }
+
+        float hashNs = 0;
+        float denseNs = 0;
+        for (int j = 0; j < ITERATIONS; j++) {
+            hashNs = measure(hashMap::get, symbols, "hash", numSymbols);
+            denseNs = measure(denseMap::get, symbols, "dense", numSymbols);
+        }
+
+        log.info("symbols={}: hash map {}ns dense array {}ns per lookup",
+                numSymbols, String.format("%.2f", hashNs), String.format("%.2f", denseNs));
+    }
+
+    private static float measure(final IntFunction<CoreSymbolSpecification> lookup, final int[] symbols, final String name, final int numSymbols) {
+
+        final long t = System.nanoTime();
+        long sum = 0;
+        for (int symbol : symbols) {
+            sum += lookup.apply(symbol).marginBuy;
+        }
+        final long duration = System.nanoTime() - t;
+
+        // checksum
+        long expected = 0;
+        for (int symbol : symbols) {
+            expected += symbol - TestConstants.SYMBOL_AUTOGENERATED_RANGE_START;
+        }
+        assertThat(name + " " + numSymbols, sum, is(expected));
+
+        return (float) duration / symbols.length;
+    }
+}
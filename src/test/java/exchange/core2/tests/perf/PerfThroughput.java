@@ -22,6 +22,8 @@ import exchange.core2.tests.util.*;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+
 @Slf4j
 public final class PerfThroughput {
 
@@ -85,6 +87,68 @@ public final class PerfThroughput {
                 50);
     }
 
+    /**
+     * Same as testThroughputExchange, but commands are replayed from pre-generated workload file
+     * (generated once into {@link WorkloadFile#DEFAULT_FOLDER}, then reused by following runs).
+     */
+    @Test
+    public void testThroughputExchangeWorkloadFile() throws IOException {
+        try (final WorkloadFile workloadFile = WorkloadFile.openOrGenerate(WorkloadFile.DEFAULT_FOLDER, TestDataParameters.singlePairExchangeBuilder().build(), 1)) {
+            ThroughputTestsModule.throughputTestImpl(
+                    PerformanceConfiguration.throughputPerformanceBuilder()
+                            .ringBufferSize(32 * 1024)
+                            .matchingEnginesNum(1)
+                            .riskEnginesNum(1)
+                            .build(),
+                    workloadFile,
+                    InitialStateConfiguration.CLEAN_TEST,
+                    SerializationConfiguration.DEFAULT,
+                    50);
+        }
+    }
+
+    /**
+     * Risk pre-check (R1) scaling within single risk engine shard: 1, 2 and 4 R1 threads.
+     * Same load as testThroughputPeak, but only one risk engine, so R1 stage is a bottleneck.
+     */
+    @Test
+    public void testThroughputRiskPreCheck1Worker() {
+        throughputRiskPreCheckWorkers(1);
+    }
+
+    @Test
+    public void testThroughputRiskPreCheck2Workers() {
+        throughputRiskPreCheckWorkers(2);
+    }
+
+    @Test
+    public void testThroughputRiskPreCheck4Workers() {
+        throughputRiskPreCheckWorkers(4);
+    }
+
+    private void throughputRiskPreCheckWorkers(final int workersNum) {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(4)
+                        .riskEnginesNum(1)
+                        .riskPreCheckWorkersNum(workersNum)
+                        .msgsInGroupLimit(1536)
+                        .build(),
+                TestDataParameters.builder()
+                        .totalTransactionsNumber(3_000_000)
+                        .targetOrderBookOrdersTotal(10_000)
+                        .numAccounts(10_000)
+                        .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                        .numSymbols(100)
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                        .build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                50);
+    }
+
     /**
      * This is medium load throughput test for verifying "triple million" capability:
      * * - 1M active users (3M currency accounts)
@@ -144,4 +208,19 @@ public final class PerfThroughput {
                 25);
     }
 
+    /**
+     * Same as testThroughputMultiSymbolLarge, but commands are replayed from pre-generated workload file.
+     */
+    @Test
+    public void testThroughputMultiSymbolLargeWorkloadFile() throws IOException {
+        try (final WorkloadFile workloadFile = WorkloadFile.openOrGenerate(WorkloadFile.DEFAULT_FOLDER, TestDataParameters.largeBuilder().build(), 1)) {
+            ThroughputTestsModule.throughputTestImpl(
+                    PerformanceConfiguration.throughputPerformanceBuilder().build(),
+                    workloadFile,
+                    InitialStateConfiguration.CLEAN_TEST,
+                    SerializationConfiguration.DEFAULT,
+                    25);
+        }
+    }
+
 }
\ No newline at end of file
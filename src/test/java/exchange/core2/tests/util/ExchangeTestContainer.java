@@ -54,6 +54,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 @Slf4j
 public final class ExchangeTestContainer implements AutoCloseable {
 
+    @Getter
     private final ExchangeCore exchangeCore;
 
     @Getter
@@ -78,13 +79,22 @@ public final class ExchangeTestContainer implements AutoCloseable {
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg) {
         return new ExchangeTestContainer(perfCfg,
                 InitialStateConfiguration.CLEAN_TEST,
-                SerializationConfiguration.DEFAULT);
+                SerializationConfiguration.DEFAULT,
+                OrdersProcessingConfiguration.DEFAULT);
+    }
+
+    public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
+                                               final OrdersProcessingConfiguration ordersProcessingCfg) {
+        return new ExchangeTestContainer(perfCfg,
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                ordersProcessingCfg);
     }
 
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
                                                final InitialStateConfiguration initStateCfg,
                                                final SerializationConfiguration serializationCfg) {
-        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg);
+        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg, OrdersProcessingConfiguration.DEFAULT);
     }
 
     public static TestDataFutures prepareTestDataAsync(TestDataParameters parameters, int seed) {
@@ -125,7 +135,8 @@ public final class ExchangeTestContainer implements AutoCloseable {
 
     private ExchangeTestContainer(final PerformanceConfiguration perfCfg,
                                   final InitialStateConfiguration initStateCfg,
-                                  final SerializationConfiguration serializationCfg) {
+                                  final SerializationConfiguration serializationCfg,
+                                  final OrdersProcessingConfiguration ordersProcessingCfg) {
 
         //log.debug("CREATING exchange container");
 
@@ -135,7 +146,7 @@ public final class ExchangeTestContainer implements AutoCloseable {
                 .initStateCfg(initStateCfg)
                 .performanceCfg(perfCfg)
                 .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
-                .ordersProcessingCfg(OrdersProcessingConfiguration.DEFAULT)
+                .ordersProcessingCfg(ordersProcessingCfg)
                 .loggingCfg(LoggingConfiguration.DEFAULT)
                 .serializationCfg(serializationCfg)
                 .build();
@@ -411,6 +422,18 @@ public final class ExchangeTestContainer implements AutoCloseable {
         getApi().submitCommandsSync(testDataFutures.genResult.join().getApiCommandsFill().join());
     }
 
+    public void loadSymbolsUsersAndPrefillOrders(final WorkloadFile workloadFile) {
+
+        // load symbols
+        addSymbols(workloadFile.getCoreSymbolSpecifications());
+
+        // create accounts and deposit initial funds
+        userAccountsInit(workloadFile.readUsersAccounts());
+
+        workloadFile.submitFillCommands(api);
+        api.submitCommandAsync(ApiNop.builder().build()).join();
+    }
+
 
     /**
      * Run test using threads factory.
@@ -448,6 +471,14 @@ public final class ExchangeTestContainer implements AutoCloseable {
         return apiCommandsBenchmark.size() / (float) tDuration / 1000.0f;
     }
 
+    public float benchmarkMtps(final WorkloadFile workloadFile) {
+        final long tStart = System.currentTimeMillis();
+        workloadFile.submitBenchmarkCommands(api);
+        api.submitCommandAsync(ApiNop.builder().build()).join();
+        final long tDuration = System.currentTimeMillis() - tStart;
+        return workloadFile.getBenchmarkCommandsNum() / (float) tDuration / 1000.0f;
+    }
+
     @Override
     public void close() {
         exchangeCore.shutdown(3000, TimeUnit.MILLISECONDS);
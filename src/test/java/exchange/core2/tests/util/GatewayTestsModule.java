@@ -0,0 +1,298 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import exchange.core2.tests.examples.GatewayTcpClient;
+import exchange.core2.tests.examples.GatewayTcpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Binary gateway protocol benchmarks: codec itself, decoding into ring buffer slots, and loopback TCP gateway.
+ */
+@Slf4j
+public class GatewayTestsModule {
+
+    /**
+     * Compares decoding requests directly into OrderCommand with decoding into ApiCommand objects (allocating network edge)
+     */
+    public static void codecBenchmarkImpl(final TestDataParameters testDataParameters, final int iterations) {
+
+        final List<ApiCommand> commands = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1)
+                .getGenResult().join().getApiCommandsBenchmark().join();
+        final UnsafeBuffer buffer = new UnsafeBuffer(new byte[commands.size() * GatewayCodec.MAX_REQUEST_LENGTH]);
+        final int length = encodeCommands(commands, buffer);
+        final int n = commands.size();
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final OrderCommand slot = new OrderCommand();
+        long checksum = 0;
+
+        for (int j = 0; j < iterations; j++) {
+
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            long t = System.nanoTime();
+            for (int ptr = 0; ptr < length; ptr += GatewayCodec.messageLength(buffer, ptr)) {
+                checksum += GatewayCodec.decodeCommand(buffer, ptr, slot) + slot.orderId;
+            }
+            final float slotNs = (System.nanoTime() - t) / (float) n;
+            final long slotBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            t = System.nanoTime();
+            for (int ptr = 0; ptr < length; ptr += GatewayCodec.messageLength(buffer, ptr)) {
+                final ApiCommand apiCommand = decodeApiCommand(buffer, ptr);
+                checksum += apiCommand.timestamp;
+            }
+            final float apiNs = (System.nanoTime() - t) / (float) n;
+            final long apiBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            log.info("{}. decode into slot: {}ns/msg {}B/msg, decode into ApiCommand: {}ns/msg {}B/msg",
+                    j, String.format("%.1f", slotNs), slotBytes / n, String.format("%.1f", apiNs), apiBytes / n);
+        }
+
+        log.debug("checksum={}", checksum);
+    }
+
+    /**
+     * Compares exchange throughput of pre-encoded gateway messages with ApiCommand objects submission
+     */
+    public static void throughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                          final TestDataParameters testDataParameters,
+                                          final int iterations) {
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+        final List<ApiCommand> commands = testDataFutures.getGenResult().join().getApiCommandsBenchmark().join();
+        final UnsafeBuffer buffer = new UnsafeBuffer(new byte[commands.size() * GatewayCodec.MAX_REQUEST_LENGTH]);
+        final int length = encodeCommands(commands, buffer);
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, InitialStateConfiguration.CLEAN_TEST, SerializationConfiguration.DEFAULT)) {
+
+            for (int j = 0; j < iterations; j++) {
+
+                container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+                final float gatewayMt = container.executeTestingThreadPerfMtps(() -> {
+                    assertEquals(length, container.getApi().submitGatewayMessages(buffer, 0, length, null));
+                    container.getApi().submitCommandAsync(ApiNop.builder().build()).join();
+                    return commands.size();
+                });
+                validateOrderBooks(container, testDataFutures);
+                container.resetExchangeCore();
+
+                container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+                final float apiMt = container.executeTestingThread(() -> container.benchmarkMtps(commands));
+                validateOrderBooks(container, testDataFutures);
+                container.resetExchangeCore();
+
+                log.info("{}. gateway messages: {} MT/s, ApiCommand objects: {} MT/s",
+                        j, String.format("%.3f", gatewayMt), String.format("%.3f", apiMt));
+                System.gc();
+            }
+        }
+    }
+
+    /**
+     * Throughput of loopback TCP gateway example (client sends pre-encoded messages and receives all results)
+     */
+    public static void tcpLoopbackTestImpl(final PerformanceConfiguration performanceCfg,
+                                           final TestDataParameters testDataParameters,
+                                           final int iterations) throws Exception {
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+        final List<ApiCommand> commands = testDataFutures.getGenResult().join().getApiCommandsBenchmark().join();
+        final UnsafeBuffer buffer = new UnsafeBuffer(new byte[commands.size() * GatewayCodec.MAX_REQUEST_LENGTH]);
+        final int length = encodeCommands(commands, buffer);
+        final int n = commands.size();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, InitialStateConfiguration.CLEAN_TEST, SerializationConfiguration.DEFAULT)) {
+
+            for (int j = 0; j < iterations; j++) {
+
+                container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+
+                final GatewayTcpServer server = new GatewayTcpServer(performanceCfg.getRingBufferSize());
+                container.setConsumer(server::onResult);
+                final int port = server.start(container.getApi());
+
+                try (final GatewayTcpClient client = new GatewayTcpClient(port)) {
+
+                    final ResultsCounter counter = new ResultsCounter();
+                    final CompletableFuture<Void> receiver = CompletableFuture.runAsync(() -> {
+                        try {
+                            while (counter.results < n) {
+                                client.poll(counter);
+                            }
+                        } catch (final Exception ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    });
+
+                    final long t = System.nanoTime();
+                    sendAll(client, buffer, length);
+                    receiver.join();
+                    final float mt = n / ((System.nanoTime() - t) / 1_000_000_000f) / 1_000_000f;
+
+                    assertEquals(n, counter.results);
+                    log.info("{}. TCP loopback gateway: {} MT/s, rejected={}", j, String.format("%.3f", mt), counter.failures);
+                }
+
+                server.close();
+                container.setConsumer((cmd, seq) -> {
+                });
+
+                validateOrderBooks(container, testDataFutures);
+                container.resetExchangeCore();
+                System.gc();
+            }
+        }
+    }
+
+    private static void sendAll(final GatewayTcpClient client, final DirectBuffer buffer, final int length) throws Exception {
+        final int capacity = client.sendBuffer().capacity();
+        int ptr = 0;
+        while (ptr < length) {
+            // send whole messages only
+            int chunk = 0;
+            while (ptr + chunk < length) {
+                final int msgLength = GatewayCodec.messageLength(buffer, ptr + chunk);
+                if (chunk + msgLength > capacity) {
+                    break;
+                }
+                chunk += msgLength;
+            }
+            client.sendBuffer().putBytes(0, buffer, ptr, chunk);
+            client.send(chunk);
+            ptr += chunk;
+        }
+    }
+
+    private static void validateOrderBooks(final ExchangeTestContainer container, final ExchangeTestContainer.TestDataFutures testDataFutures) {
+        assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+        testDataFutures.coreSymbolSpecifications.join().forEach(
+                symbol -> assertEquals(
+                        testDataFutures.getGenResult().join().getGenResults().get(symbol.symbolId).getFinalOrderBookSnapshot(),
+                        container.requestCurrentOrderBook(symbol.symbolId)));
+    }
+
+    private static int encodeCommands(final List<ApiCommand> commands, final UnsafeBuffer buffer) {
+        int ptr = 0;
+        long correlationId = 0;
+        for (final ApiCommand cmd : commands) {
+            ptr += GatewayCodec.encodeCommand(cmd, correlationId++, buffer, ptr);
+        }
+        return ptr;
+    }
+
+    // decoding into objects - as done by allocating network edge before submitting ApiCommand
+    private static ApiCommand decodeApiCommand(final DirectBuffer buffer, final int offset) {
+        final int block = offset + GatewayCodec.HEADER_LENGTH;
+        final long uid = buffer.getLong(block + GatewayCodec.REQ_UID, GatewayCodec.BYTE_ORDER);
+        final long timestamp = buffer.getLong(block + GatewayCodec.REQ_TIMESTAMP, GatewayCodec.BYTE_ORDER);
+        final ApiCommand apiCommand;
+        switch (GatewayCodec.templateId(buffer, offset)) {
+            case GatewayCodec.TEMPLATE_PLACE_ORDER:
+                apiCommand = ApiPlaceOrder.builder()
+                        .uid(uid)
+                        .orderId(buffer.getLong(block + GatewayCodec.PLACE_ORDER_ID, GatewayCodec.BYTE_ORDER))
+                        .price(buffer.getLong(block + GatewayCodec.PLACE_PRICE, GatewayCodec.BYTE_ORDER))
+                        .reservePrice(buffer.getLong(block + GatewayCodec.PLACE_RESERVE_PRICE, GatewayCodec.BYTE_ORDER))
+                        .size(buffer.getLong(block + GatewayCodec.PLACE_SIZE, GatewayCodec.BYTE_ORDER))
+                        .symbol(buffer.getInt(block + GatewayCodec.PLACE_SYMBOL, GatewayCodec.BYTE_ORDER))
+                        .userCookie(buffer.getInt(block + GatewayCodec.PLACE_USER_COOKIE, GatewayCodec.BYTE_ORDER))
+                        .action(OrderAction.of(buffer.getByte(block + GatewayCodec.PLACE_ACTION)))
+                        .orderType(OrderType.of(buffer.getByte(block + GatewayCodec.PLACE_ORDER_TYPE)))
+                        .build();
+                break;
+            case GatewayCodec.TEMPLATE_MOVE_ORDER:
+                apiCommand = ApiMoveOrder.builder()
+                        .uid(uid)
+                        .orderId(buffer.getLong(block + GatewayCodec.MOVE_ORDER_ID, GatewayCodec.BYTE_ORDER))
+                        .newPrice(buffer.getLong(block + GatewayCodec.MOVE_NEW_PRICE, GatewayCodec.BYTE_ORDER))
+                        .symbol(buffer.getInt(block + GatewayCodec.MOVE_SYMBOL, GatewayCodec.BYTE_ORDER))
+                        .build();
+                break;
+            case GatewayCodec.TEMPLATE_CANCEL_ORDER:
+                apiCommand = ApiCancelOrder.builder()
+                        .uid(uid)
+                        .orderId(buffer.getLong(block + GatewayCodec.CANCEL_ORDER_ID, GatewayCodec.BYTE_ORDER))
+                        .symbol(buffer.getInt(block + GatewayCodec.CANCEL_SYMBOL, GatewayCodec.BYTE_ORDER))
+                        .build();
+                break;
+            case GatewayCodec.TEMPLATE_REDUCE_ORDER:
+                apiCommand = ApiReduceOrder.builder()
+                        .uid(uid)
+                        .orderId(buffer.getLong(block + GatewayCodec.REDUCE_ORDER_ID, GatewayCodec.BYTE_ORDER))
+                        .reduceSize(buffer.getLong(block + GatewayCodec.REDUCE_SIZE, GatewayCodec.BYTE_ORDER))
+                        .symbol(buffer.getInt(block + GatewayCodec.REDUCE_SYMBOL, GatewayCodec.BYTE_ORDER))
+                        .build();
+                break;
+            case GatewayCodec.TEMPLATE_ADJUST_BALANCE:
+                apiCommand = ApiAdjustUserBalance.builder()
+                        .uid(uid)
+                        .transactionId(buffer.getLong(block + GatewayCodec.ADJUST_TRANSACTION_ID, GatewayCodec.BYTE_ORDER))
+                        .amount(buffer.getLong(block + GatewayCodec.ADJUST_AMOUNT, GatewayCodec.BYTE_ORDER))
+                        .currency(buffer.getInt(block + GatewayCodec.ADJUST_CURRENCY, GatewayCodec.BYTE_ORDER))
+                        .build();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected template " + GatewayCodec.templateId(buffer, offset));
+        }
+        apiCommand.timestamp = timestamp;
+        return apiCommand;
+    }
+
+    private static final class ResultsCounter implements IIpcResultsHandler {
+
+        private int results;
+        private int failures;
+
+        @Override
+        public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+            results++;
+            if (resultCode != CommandResultCode.SUCCESS) {
+                failures++;
+            }
+        }
+
+        @Override
+        public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                 boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+            // not counted
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.ipc.IIpcResultsHandler;
+import exchange.core2.core.ipc.IpcExchangeClient;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Gateway process for IPC round-trip latency benchmark.
+ * Places and cancels GTC order one command at a time, measuring time from submitting command until its result is received.
+ * <p>
+ * Arguments: folder channelName uid symbol warmupCycles cycles
+ */
+public final class IpcLatencyClientProcess {
+
+    public static final String REPORT_PREFIX = "IPC-RTT ";
+
+    public static void main(String[] args) {
+
+        final IpcConfiguration ipcCfg = IpcConfiguration.defaultBuilder()
+                .folder(args[0])
+                .channelName(args[1])
+                .build();
+        final long uid = Long.parseLong(args[2]);
+        final int symbol = Integer.parseInt(args[3]);
+        final int warmupCycles = Integer.parseInt(args[4]);
+        final int cycles = Integer.parseInt(args[5]);
+
+        final Histogram histogram = new Histogram(60_000_000_000L, 3);
+
+        try (final IpcExchangeClient client = IpcExchangeClient.attach(ipcCfg)) {
+
+            final ResultWaiter waiter = new ResultWaiter();
+
+            for (int i = 0; i < warmupCycles + cycles; i++) {
+                final long orderId = i + 1;
+                final ApiCommand place = ApiPlaceOrder.builder().uid(uid).orderId(orderId).symbol(symbol)
+                        .price(1000L + (i & 63)).size(1L).action(OrderAction.ASK).orderType(OrderType.GTC).build();
+                final ApiCommand cancel = ApiCancelOrder.builder().uid(uid).orderId(orderId).symbol(symbol).build();
+
+                final long placeNs = waiter.roundTrip(client, place);
+                final long cancelNs = waiter.roundTrip(client, cancel);
+                if (i >= warmupCycles) {
+                    histogram.recordValue(placeNs);
+                    histogram.recordValue(cancelNs);
+                }
+            }
+        }
+
+        System.out.println(REPORT_PREFIX + LatencyTools.createLatencyReportFast(histogram));
+    }
+
+    private static final class ResultWaiter implements IIpcResultsHandler {
+
+        private long expectedCorrelationId;
+        private boolean received;
+
+        long roundTrip(final IpcExchangeClient client, final ApiCommand cmd) {
+            final long t = System.nanoTime();
+            expectedCorrelationId = client.submitCommand(cmd);
+            received = false;
+            while (!received) {
+                client.pollResults(this, 16);
+            }
+            return System.nanoTime() - t;
+        }
+
+        @Override
+        public void onResult(long correlationId, OrderCommandType command, CommandResultCode resultCode, long uid, long orderId, int symbol, int eventsNum) {
+            if (correlationId == expectedCorrelationId) {
+                if (resultCode != CommandResultCode.SUCCESS) {
+                    throw new IllegalStateException("Unexpected result " + resultCode + " of " + command);
+                }
+                received = true;
+            }
+        }
+
+        @Override
+        public void onTradeEvent(long correlationId, MatcherEventType eventType, long matchedOrderId, long matchedOrderUid,
+                                 boolean activeOrderCompleted, boolean matchedOrderCompleted, long price, long size, long bidderHoldPrice) {
+            // cancel produces reduce event
+        }
+    }
+}
@@ -37,6 +37,14 @@ public class JournalingTestsModule {
                                           final TestDataParameters testDataParameters,
                                           final int iterations) throws InterruptedException, ExecutionException {
 
+        journalingTestImpl(performanceConfiguration, testDataParameters, SerializationConfiguration.DISK_JOURNALING, iterations);
+    }
+
+    public static void journalingTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                          final TestDataParameters testDataParameters,
+                                          final SerializationConfiguration serializationConfiguration,
+                                          final int iterations) throws InterruptedException, ExecutionException {
+
         for (int iteration = 0; iteration < iterations; iteration++) {
 
             log.debug(" ----------- journaling test --- iteration {} of {} ----", iteration, iterations);
@@ -52,7 +60,7 @@ public class JournalingTestsModule {
 
             final InitialStateConfiguration firstStartConfig = InitialStateConfiguration.cleanStartJournaling(exchangeId);
 
-            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, SerializationConfiguration.DISK_JOURNALING)) {
+            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, serializationConfiguration)) {
 
                 container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
 
@@ -80,7 +88,7 @@ public class JournalingTestsModule {
 
             log.debug("Creating new exchange from persisted state...");
             final long tLoad = System.currentTimeMillis();
-            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, SerializationConfiguration.DISK_JOURNALING)) {
+            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, serializationConfiguration)) {
 
                 // simple sync query in order to wait until core is started to respond
                 recreatedContainer.totalBalanceReport();
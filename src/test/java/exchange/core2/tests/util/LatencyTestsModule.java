@@ -38,6 +38,7 @@ import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -55,19 +56,95 @@ public class LatencyTestsModule {
 
     private static final boolean WRITE_HDR_HISTOGRAMS = false;
 
+    private static long processCpuTimeNs() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
     public static void latencyTestImpl(final PerformanceConfiguration performanceCfg,
                                        final TestDataParameters testDataParameters,
                                        final InitialStateConfiguration initialStateCfg,
                                        final SerializationConfiguration serializationCfg,
                                        final int warmupCycles) {
 
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        latencyTestImpl(performanceCfg, initialStateCfg, serializationCfg, warmupCycles, new LatencyWorkload() {
+            @Override
+            public void load(final ExchangeTestContainer container) {
+                container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+            }
+
+            @Override
+            public long benchmarkCommandsNum() {
+                return testDataFutures.genResult.join().getBenchmarkCommandsSize();
+            }
+
+            @Override
+            public void submitPaced(final ExchangeApi api, final int tps) {
+                final int nanosPerCmd = 1_000_000_000 / tps;
+                long plannedTimestamp = System.nanoTime();
+
+                for (ApiCommand cmd : testDataFutures.genResult.join().getApiCommandsBenchmark().join()) {
+                    while (System.nanoTime() < plannedTimestamp) {
+                        // spin until its time to send next command
+                    }
+                    cmd.timestamp = plannedTimestamp;
+                    api.submitCommand(cmd);
+                    plannedTimestamp += nanosPerCmd;
+                }
+            }
+
+            @Override
+            public void validateOrderBooks(final ExchangeTestContainer container) {
+                testDataFutures.coreSymbolSpecifications.join().forEach(
+                        symbol -> assertEquals(
+                                testDataFutures.getGenResult().join().getGenResults().get(symbol.symbolId).getFinalOrderBookSnapshot(),
+                                container.requestCurrentOrderBook(symbol.symbolId)));
+            }
+        });
+    }
+
+    public static void latencyTestImpl(final PerformanceConfiguration performanceCfg,
+                                       final WorkloadFile workloadFile,
+                                       final InitialStateConfiguration initialStateCfg,
+                                       final SerializationConfiguration serializationCfg,
+                                       final int warmupCycles) {
+
+        latencyTestImpl(performanceCfg, initialStateCfg, serializationCfg, warmupCycles, new LatencyWorkload() {
+            @Override
+            public void load(final ExchangeTestContainer container) {
+                container.loadSymbolsUsersAndPrefillOrders(workloadFile);
+            }
+
+            @Override
+            public long benchmarkCommandsNum() {
+                return workloadFile.getBenchmarkCommandsNum();
+            }
+
+            @Override
+            public void submitPaced(final ExchangeApi api, final int tps) {
+                workloadFile.submitBenchmarkCommandsPaced(api, tps);
+            }
+
+            @Override
+            public void validateOrderBooks(final ExchangeTestContainer container) {
+                workloadFile.getFinalOrderBooks().forEach(
+                        (symbol, orderBook) -> assertEquals(orderBook, container.requestCurrentOrderBook(symbol)));
+            }
+        });
+    }
+
+    private static void latencyTestImpl(final PerformanceConfiguration performanceCfg,
+                                        final InitialStateConfiguration initialStateCfg,
+                                        final SerializationConfiguration serializationCfg,
+                                        final int warmupCycles,
+                                        final LatencyWorkload workload) {
+
         final int targetTps = 200_000; // transactions per second
         final int targetTpsStep = 100_000;
 
         final int warmupTps = 1_000_000;
 
-        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
-
         try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, initialStateCfg, serializationCfg)) {
 
             final ExchangeApi api = container.getApi();
@@ -77,11 +154,10 @@ public class LatencyTestsModule {
 
             final BiFunction<Integer, Boolean, Boolean> testIteration = (tps, warmup) -> {
                 try {
-                    container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
-
-                    final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.genResult.join();
+                    workload.load(container);
 
-                    final CountDownLatch latchBenchmark = new CountDownLatch(genResult.getBenchmarkCommandsSize());
+                    final long benchmarkCommandsNum = workload.benchmarkCommandsNum();
+                    final CountDownLatch latchBenchmark = new CountDownLatch((int) benchmarkCommandsNum);
 
                     container.setConsumer((cmd, seq) -> {
                         final long latency = System.nanoTime() - cmd.timestamp;
@@ -89,35 +165,25 @@ public class LatencyTestsModule {
                         latchBenchmark.countDown();
                     });
 
-                    final int nanosPerCmd = 1_000_000_000 / tps;
                     final long startTimeMs = System.currentTimeMillis();
+                    final long startCpuTimeNs = processCpuTimeNs();
 
-                    long plannedTimestamp = System.nanoTime();
-
-                    for (ApiCommand cmd : genResult.getApiCommandsBenchmark().join()) {
-                        while (System.nanoTime() < plannedTimestamp) {
-                            // spin until its time to send next command
-                        }
-                        cmd.timestamp = plannedTimestamp;
-                        api.submitCommand(cmd);
-                        plannedTimestamp += nanosPerCmd;
-                    }
+                    workload.submitPaced(api, tps);
 
                     latchBenchmark.await();
                     container.setConsumer((cmd, seq) -> {
                     });
 
                     final long processingTimeMs = System.currentTimeMillis() - startTimeMs;
-                    final float perfMt = (float) genResult.getBenchmarkCommandsSize() / (float) processingTimeMs / 1000.0f;
-                    String tag = String.format("%.3f MT/s", perfMt);
+                    // CPU cores used by whole process (including publishing thread), helps to compare wait strategies
+                    final float cpuCores = (processCpuTimeNs() - startCpuTimeNs) / 1_000_000f / processingTimeMs;
+                    final float perfMt = (float) benchmarkCommandsNum / (float) processingTimeMs / 1000.0f;
+                    String tag = String.format("%.3f MT/s cpu=%.1f", perfMt, cpuCores);
                     final Histogram histogram = hdrRecorder.getIntervalHistogram();
                     log.info("{} {}", tag, LatencyTools.createLatencyReportFast(histogram));
 
                     // compare orderBook final state just to make sure all commands executed same way
-                    testDataFutures.coreSymbolSpecifications.join().forEach(
-                            symbol -> assertEquals(
-                                    testDataFutures.getGenResult().join().getGenResults().get(symbol.symbolId).getFinalOrderBookSnapshot(),
-                                    container.requestCurrentOrderBook(symbol.symbolId)));
+                    workload.validateOrderBooks(container);
 
                     // TODO compare events, balances, positions
 
@@ -418,6 +484,21 @@ public class LatencyTestsModule {
         }
     }
 
-}
 
+    /**
+     * Source of latency test commands: generated in memory or pre-generated workload file
+     */
+    private interface LatencyWorkload {
 
+        void load(ExchangeTestContainer container);
+
+        long benchmarkCommandsNum();
+
+        /**
+         * Publishes benchmark commands at constant rate, timestamp of each command is its planned send time
+         */
+        void submitPaced(ExchangeApi api, int tps);
+
+        void validateOrderBooks(ExchangeTestContainer container);
+    }
+}
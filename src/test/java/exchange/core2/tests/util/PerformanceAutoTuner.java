@@ -0,0 +1,351 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookDirectImpl;
+import exchange.core2.core.orderbook.OrderBookNaiveImpl;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Selects performance configuration for expected exchange size and available hardware.
+ * <p>
+ * Calibration workload is generated once by TestOrdersGenerator (expected users and symbols), then candidate
+ * configurations are measured one by one: throughput runs (commands submitted as fast as possible, best run is taken)
+ * and latency run (commands paced at half of measured throughput, but not faster than latencyTestTps).
+ * <p>
+ * Search is coordinate descent in order of expected impact: engines numbers, wait strategy, order book implementation,
+ * ring buffer size, group limit. Every step keeps the best value and continues with next dimension.
+ * Candidate meeting p99 latency target with highest throughput wins, if none meets the target - candidate with lowest p99.
+ */
+@Slf4j
+@Builder
+public final class PerformanceAutoTuner {
+
+    public static final Map<String, IOrderBook.OrderBookFactory> ORDER_BOOK_IMPLEMENTATIONS = orderBookImplementations();
+
+    // expected exchange size
+    private final int expectedUsers;
+    private final int expectedSymbols;
+    private final int expectedOrdersTotal;
+
+    // latency target (99th percentile) at calibration rate
+    private final long targetLatencyP99Ns;
+    private final int latencyTestTps;
+
+    private final int availableCores;
+    private final int calibrationTransactions;
+
+    // throughput runs per candidate (best is taken, first runs are warming up)
+    private final int throughputIterations;
+
+    // candidate values
+    private final List<Integer> ringBufferSizes;
+    private final List<Integer> msgsInGroupLimits;
+    private final List<CoreWaitStrategy> waitStrategies;
+    private final List<String> orderBookImpls;
+
+    // template for all other settings (thread factory, etc)
+    private final Supplier<PerformanceConfiguration.PerformanceConfigurationBuilder> template;
+
+    public static PerformanceAutoTuner.PerformanceAutoTunerBuilder defaultBuilder() {
+        return builder()
+                .expectedUsers(2_000)
+                .expectedSymbols(1)
+                .expectedOrdersTotal(1_000)
+                .targetLatencyP99Ns(1_000_000)
+                .latencyTestTps(200_000)
+                .availableCores(Runtime.getRuntime().availableProcessors())
+                .calibrationTransactions(300_000)
+                .throughputIterations(3)
+                .ringBufferSizes(List.of(2 * 1024, 16 * 1024, 64 * 1024))
+                .msgsInGroupLimits(List.of(256, 1_536, 4_096))
+                .waitStrategies(List.of(CoreWaitStrategy.BUSY_SPIN, CoreWaitStrategy.YIELDING, CoreWaitStrategy.PHASED_BACKOFF, CoreWaitStrategy.BLOCKING))
+                .orderBookImpls(new ArrayList<>(ORDER_BOOK_IMPLEMENTATIONS.keySet()))
+                .template(PerformanceConfiguration::baseBuilder);
+    }
+
+    public TuningResult tune() {
+
+        final TestDataParameters testDataParameters = expectedSymbols == 1
+                ? TestDataParameters.singlePairExchangeBuilder()
+                .totalTransactionsNumber(calibrationTransactions)
+                .targetOrderBookOrdersTotal(expectedOrdersTotal)
+                .numAccounts(expectedUsers)
+                .build()
+                : TestDataParameters.builder()
+                .totalTransactionsNumber(calibrationTransactions)
+                .targetOrderBookOrdersTotal(expectedOrdersTotal)
+                .numAccounts(expectedUsers)
+                .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                .numSymbols(expectedSymbols)
+                .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                .build();
+
+        log.info("Generating calibration workload: {}", testDataParameters);
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        final Map<Candidate, Measurement> measured = new LinkedHashMap<>();
+        final Function<Candidate, Measurement> measure = candidate -> measured.computeIfAbsent(candidate, c -> measure(c, testDataFutures));
+
+        final List<Function<Candidate, List<Candidate>>> dimensions = List.of(
+                this::enginesAlternatives,
+                c -> allowedWaitStrategies(c).stream().map(w -> c.toBuilder().waitStrategy(w).build()).collect(Collectors.toList()),
+                c -> orderBookImpls.stream().map(ob -> c.toBuilder().orderBookImpl(ob).build()).collect(Collectors.toList()),
+                c -> ringBufferSizes.stream().map(rs -> c.toBuilder().ringBufferSize(rs).build()).collect(Collectors.toList()),
+                c -> msgsInGroupLimits.stream().map(gl -> c.toBuilder().msgsInGroupLimit(gl).build()).collect(Collectors.toList()));
+
+        Measurement best = measure.apply(initialCandidate());
+
+        for (final Function<Candidate, List<Candidate>> dimension : dimensions) {
+            final Candidate current = best.getCandidate();
+            for (final Candidate alternative : dimension.apply(current)) {
+                if (isValid(alternative)) {
+                    final Measurement m = measure.apply(alternative);
+                    if (compare(m, best) < 0) {
+                        best = m;
+                    }
+                }
+            }
+        }
+
+        log.info("Best configuration: {}", best);
+        return new TuningResult(toConfiguration(best.getCandidate()), best, new ArrayList<>(measured.values()));
+    }
+
+    private Measurement measure(final Candidate candidate, final ExchangeTestContainer.TestDataFutures testDataFutures) {
+
+        log.debug("Measuring {}", candidate);
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                toConfiguration(candidate), InitialStateConfiguration.CLEAN_TEST, SerializationConfiguration.DEFAULT)) {
+
+            final List<ApiCommand> benchmarkCommands = testDataFutures.getGenResult().join().getApiCommandsBenchmark().join();
+
+            return container.executeTestingThread(() -> {
+
+                float throughputMtps = 0;
+                for (int i = 0; i < throughputIterations; i++) {
+                    container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+                    throughputMtps = Math.max(throughputMtps, container.benchmarkMtps(benchmarkCommands));
+                    container.resetExchangeCore();
+                }
+
+                final int tps = (int) Math.max(1_000, Math.min(latencyTestTps, throughputMtps * 500_000));
+                container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+                final Histogram latency = measureLatency(container, benchmarkCommands, tps);
+                container.resetExchangeCore();
+
+                final Measurement m = new Measurement(
+                        candidate,
+                        throughputMtps,
+                        tps,
+                        latency.getValueAtPercentile(50),
+                        latency.getValueAtPercentile(99),
+                        latency.getValueAtPercentile(99) <= targetLatencyP99Ns);
+
+                log.info("{}", m);
+                return m;
+            });
+        }
+    }
+
+    private static Histogram measureLatency(final ExchangeTestContainer container,
+                                            final List<ApiCommand> benchmarkCommands,
+                                            final int tps) throws InterruptedException {
+
+        final SingleWriterRecorder hdrRecorder = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
+        final CountDownLatch latch = new CountDownLatch(benchmarkCommands.size());
+
+        container.setConsumer((cmd, seq) -> {
+            hdrRecorder.recordValue(Math.min(System.nanoTime() - cmd.timestamp, Integer.MAX_VALUE));
+            latch.countDown();
+        });
+
+        final ExchangeApi api = container.getApi();
+        final int nanosPerCmd = 1_000_000_000 / tps;
+        long plannedTimestamp = System.nanoTime();
+
+        for (final ApiCommand cmd : benchmarkCommands) {
+            while (System.nanoTime() < plannedTimestamp) {
+                // spin until its time to send next command
+            }
+            cmd.timestamp = plannedTimestamp;
+            api.submitCommand(cmd);
+            plannedTimestamp += nanosPerCmd;
+        }
+
+        latch.await();
+        container.setConsumer((cmd, seq) -> {
+        });
+
+        return hdrRecorder.getIntervalHistogram();
+    }
+
+    /**
+     * Negative if m1 is better than m2
+     */
+    private static int compare(final Measurement m1, final Measurement m2) {
+        if (m1.isMeetsTarget() != m2.isMeetsTarget()) {
+            return m1.isMeetsTarget() ? -1 : 1;
+        }
+        return m1.isMeetsTarget()
+                ? Float.compare(m2.getThroughputMtps(), m1.getThroughputMtps())
+                : Long.compare(m1.getLatencyP99Ns(), m2.getLatencyP99Ns());
+    }
+
+    private Candidate initialCandidate() {
+        final Candidate c = Candidate.builder()
+                .matchingEnginesNum(1)
+                .riskEnginesNum(1)
+                .ringBufferSize(ringBufferSizes.get(0))
+                .msgsInGroupLimit(msgsInGroupLimits.get(0))
+                .orderBookImpl(orderBookImpls.get(0))
+                .waitStrategy(CoreWaitStrategy.BLOCKING)
+                .build();
+        final List<CoreWaitStrategy> allowed = allowedWaitStrategies(c);
+        return allowed.isEmpty() ? c : c.toBuilder().waitStrategy(allowed.get(0)).build();
+    }
+
+    /*
+     * Engines combinations up to available cores (only meaningful for multiple symbols)
+     */
+    private List<Candidate> enginesAlternatives(final Candidate c) {
+        final List<Candidate> alternatives = new ArrayList<>();
+        for (int me = 1; me <= Math.min(8, expectedSymbols); me *= 2) {
+            for (int re = 1; re <= me && re <= 4; re *= 2) {
+                if (me + re <= Math.max(2, availableCores)) {
+                    alternatives.add(c.toBuilder()
+                            .matchingEnginesNum(me)
+                            .riskEnginesNum(re)
+                            .waitStrategy(fitWaitStrategy(c.getWaitStrategy(), pipelineThreads(me, re)))
+                            .build());
+                }
+            }
+        }
+        return alternatives;
+    }
+
+    /*
+     * Spinning wait strategies are allowed only if every pipeline thread (and publisher) has own core
+     */
+    private List<CoreWaitStrategy> allowedWaitStrategies(final Candidate c) {
+        final boolean spinningAllowed = pipelineThreads(c.getMatchingEnginesNum(), c.getRiskEnginesNum()) + 1 <= availableCores;
+        return waitStrategies.stream()
+                .filter(w -> spinningAllowed || !isSpinning(w))
+                .collect(Collectors.toList());
+    }
+
+    private CoreWaitStrategy fitWaitStrategy(final CoreWaitStrategy waitStrategy, final int pipelineThreads) {
+        return isSpinning(waitStrategy) && pipelineThreads + 1 > availableCores ? CoreWaitStrategy.BLOCKING : waitStrategy;
+    }
+
+    private static boolean isSpinning(final CoreWaitStrategy waitStrategy) {
+        return waitStrategy == CoreWaitStrategy.BUSY_SPIN || waitStrategy == CoreWaitStrategy.YIELDING;
+    }
+
+    // G + R1 + R2 + ME + E
+    private static int pipelineThreads(final int matchingEnginesNum, final int riskEnginesNum) {
+        return 2 + 2 * riskEnginesNum + matchingEnginesNum;
+    }
+
+    private static boolean isValid(final Candidate c) {
+        return c.getMsgsInGroupLimit() <= c.getRingBufferSize() / 4;
+    }
+
+    private PerformanceConfiguration toConfiguration(final Candidate c) {
+        return template.get()
+                .ringBufferSize(c.getRingBufferSize())
+                .matchingEnginesNum(c.getMatchingEnginesNum())
+                .riskEnginesNum(c.getRiskEnginesNum())
+                .msgsInGroupLimit(c.getMsgsInGroupLimit())
+                .waitStrategy(c.getWaitStrategy())
+                .orderBookFactory(ORDER_BOOK_IMPLEMENTATIONS.get(c.getOrderBookImpl()))
+                .build();
+    }
+
+    private static Map<String, IOrderBook.OrderBookFactory> orderBookImplementations() {
+        final Map<String, IOrderBook.OrderBookFactory> impls = new LinkedHashMap<>();
+        impls.put("Direct", OrderBookDirectImpl::new);
+        impls.put("Naive", OrderBookNaiveImpl::new);
+        return impls;
+    }
+
+    @Data
+    @Builder(toBuilder = true)
+    public static final class Candidate {
+        private final int ringBufferSize;
+        private final int matchingEnginesNum;
+        private final int riskEnginesNum;
+        private final int msgsInGroupLimit;
+        private final CoreWaitStrategy waitStrategy;
+        private final String orderBookImpl;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Measurement {
+        private final Candidate candidate;
+        private final float throughputMtps;
+        private final int latencyTestTps;
+        private final long latencyP50Ns;
+        private final long latencyP99Ns;
+        private final boolean meetsTarget;
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.3f MT/s, at %d tps 50%%=%dus 99%%=%dus%s",
+                    candidate, throughputMtps, latencyTestTps, latencyP50Ns / 1000, latencyP99Ns / 1000, meetsTarget ? "" : " (above target)");
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class TuningResult {
+        private final PerformanceConfiguration configuration;
+        private final Measurement best;
+        private final List<Measurement> measurements;
+
+        public List<Measurement> getMeasurementsRanked() {
+            return measurements.stream()
+                    .sorted(((Comparator<Measurement>) PerformanceAutoTuner::compare))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+
+public final class PerformanceAutoTunerTest {
+
+    @Test
+    public void shouldSelectFastestCandidateMeetingTarget() {
+
+        final PerformanceAutoTuner.TuningResult result = PerformanceAutoTuner.defaultBuilder()
+                .expectedUsers(200)
+                .expectedSymbols(1)
+                .expectedOrdersTotal(100)
+                .calibrationTransactions(5_000)
+                .throughputIterations(1)
+                .latencyTestTps(20_000)
+                .targetLatencyP99Ns(Long.MAX_VALUE)
+                .availableCores(1)
+                .ringBufferSizes(List.of(4 * 1024))
+                .msgsInGroupLimits(List.of(256))
+                .waitStrategies(List.of(CoreWaitStrategy.BUSY_SPIN, CoreWaitStrategy.BLOCKING))
+                .build()
+                .tune();
+
+        // spinning is not allowed on single core, so only order book implementations are compared
+        assertThat(result.getMeasurements().size(), is(2));
+        result.getMeasurements().forEach(m -> {
+            assertThat(m.getCandidate().getWaitStrategy(), is(CoreWaitStrategy.BLOCKING));
+            assertThat(m.getThroughputMtps(), greaterThan(0f));
+            assertThat(m.isMeetsTarget(), is(true));
+        });
+
+        final PerformanceAutoTuner.Measurement best = result.getBest();
+        assertThat(result.getMeasurementsRanked().get(0), is(best));
+        assertThat(best.getThroughputMtps(), is((float) result.getMeasurements().stream().mapToDouble(PerformanceAutoTuner.Measurement::getThroughputMtps).max().orElse(0)));
+
+        final PerformanceConfiguration cfg = result.getConfiguration();
+        assertThat(cfg.getRingBufferSize(), is(4 * 1024));
+        assertThat(cfg.getMatchingEnginesNum(), is(1));
+        assertThat(cfg.getWaitStrategy(), is(CoreWaitStrategy.BLOCKING));
+        assertThat(cfg.getOrderBookFactory(), is(PerformanceAutoTuner.ORDER_BOOK_IMPLEMENTATIONS.get(best.getCandidate().getOrderBookImpl())));
+    }
+}
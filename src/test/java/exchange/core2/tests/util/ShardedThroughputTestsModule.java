@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.ShardedExchangeApi;
+import exchange.core2.core.ShardedExchangeCore;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.api.ApiReset;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportQuery;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput of sharded exchange: same workload is processed by different number of shards.
+ * Users funds are deposited into the funding shard and distributed to other shards using transfer protocol.
+ */
+@Slf4j
+public class ShardedThroughputTestsModule {
+
+    public static void scalingTestImpl(final PerformanceConfiguration performanceCfg,
+                                       final TestDataParameters testDataParameters,
+                                       final int maxShardsNum,
+                                       final int iterations) {
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        float singleShardMt = 0;
+        for (int shardsNum = 1; shardsNum <= maxShardsNum; shardsNum *= 2) {
+            final float avgMt = shardedThroughputTestImpl(performanceCfg, testDataFutures, shardsNum, iterations);
+            if (shardsNum == 1) {
+                singleShardMt = avgMt;
+            }
+            log.info("Shards: {} average: {} MT/s (scaling x{})", shardsNum, String.format("%.3f", avgMt), String.format("%.2f", avgMt / singleShardMt));
+        }
+    }
+
+    public static float shardedThroughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                                  final ExchangeTestContainer.TestDataFutures testDataFutures,
+                                                  final int shardsNum,
+                                                  final int iterations) {
+
+        final ShardedExchangeCore shardedCore = ShardedExchangeCore.builder()
+                .shardsNum(shardsNum)
+                .exchangeConfigurationFactory(shard -> shardConfiguration(performanceCfg, shard))
+                .build();
+
+        shardedCore.startup();
+        final ShardedExchangeApi api = shardedCore.getApi();
+
+        try {
+            final float avgMt = (float) IntStream.range(0, iterations)
+                    .mapToObj(j -> {
+                        loadSymbolsAndUsers(api, testDataFutures);
+                        api.submitCommandsSync(testDataFutures.getGenResult().join().getApiCommandsFill().join());
+
+                        final List<ApiCommand> apiCommandsBenchmark = testDataFutures.getGenResult().join().getApiCommandsBenchmark().join();
+                        final long tStart = System.currentTimeMillis();
+                        api.submitCommandsSync(apiCommandsBenchmark);
+                        final long tDuration = System.currentTimeMillis() - tStart;
+                        final float perfMt = apiCommandsBenchmark.size() / (float) tDuration / 1000.0f;
+                        log.info("{}. shards: {} {} MT/s", j, shardsNum, String.format("%.3f", perfMt));
+
+                        // each shard is balanced separately (transfers are adjustments in both shards)
+                        api.processReport(new TotalCurrencyBalanceReportQuery(), j).join()
+                                .forEach(report -> assertTrue(report.isGlobalBalancesAllZero()));
+
+                        // compare orderBook final state just to make sure all commands executed same way
+                        testDataFutures.getCoreSymbolSpecifications().join().forEach(
+                                symbol -> assertEquals(
+                                        testDataFutures.getGenResult().join().getGenResults().get(symbol.symbolId).getFinalOrderBookSnapshot(),
+                                        api.requestOrderBookAsync(symbol.symbolId, -1).join()));
+
+                        assertThat(api.submitCommandAsync(ApiReset.builder().build()).join(), is(CommandResultCode.SUCCESS));
+
+                        System.gc();
+
+                        return perfMt;
+                    })
+                    .mapToDouble(x -> x)
+                    .average().orElse(0);
+
+            log.info("Shards: {} average: {} MT/s", shardsNum, String.format("%.3f", avgMt));
+            return avgMt;
+
+        } finally {
+            shardedCore.shutdown(3000, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static ExchangeConfiguration shardConfiguration(final PerformanceConfiguration performanceCfg, final int shard) {
+        return ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStart("SHARD" + shard))
+                .performanceCfg(performanceCfg)
+                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .build();
+    }
+
+    /**
+     * Adds symbols and users to all shards, deposits funds to the funding shard and transfers equal parts to other shards.
+     */
+    public static void loadSymbolsAndUsers(final ShardedExchangeApi api, final ExchangeTestContainer.TestDataFutures testDataFutures) {
+
+        assertThat(api.submitBinaryDataAsync(new BatchAddSymbolsCommand(testDataFutures.getCoreSymbolSpecifications().join())).join(),
+                is(CommandResultCode.SUCCESS));
+
+        final List<BitSet> userCurrencies = testDataFutures.getUsersAccounts().join();
+
+        // calculate max amount can transfer to each account so that it is not possible to get long overflow
+        final IntLongHashMap accountsNumPerCurrency = new IntLongHashMap();
+        userCurrencies.forEach(accounts -> accounts.stream().forEach(currency -> accountsNumPerCurrency.addToValue(currency, 1)));
+        final IntLongHashMap amountPerAccount = new IntLongHashMap();
+        accountsNumPerCurrency.forEachKeyValue((currency, numAcc) -> amountPerAccount.put(currency, Long.MAX_VALUE / (numAcc + 1)));
+
+        final int shardsNum = api.getShardsNum();
+        final int fundingShard = api.getFundingShard();
+        final List<CompletableFuture<CommandResultCode>> transfers = new ArrayList<>();
+
+        for (int uid = 1; uid < userCurrencies.size(); uid++) {
+            final long userId = uid;
+            api.submitCommand(ApiAddUser.builder().uid(userId).build());
+
+            final int[] currencies = userCurrencies.get(uid).stream().toArray();
+
+            // transaction ids of each user are incrementing, so deposits go first
+            final AtomicLong transactionId = new AtomicLong();
+            for (final int currency : currencies) {
+                api.submitCommand(ApiAdjustUserBalance.builder()
+                        .uid(userId)
+                        .transactionId(transactionId.incrementAndGet())
+                        .amount(amountPerAccount.get(currency))
+                        .currency(currency)
+                        .build());
+            }
+
+            // transfers of the same user should not be concurrent, each transfer reserves one more id for refund
+            CompletableFuture<CommandResultCode> userTransfers = CompletableFuture.completedFuture(CommandResultCode.SUCCESS);
+            for (final int currency : currencies) {
+                final long amount = amountPerAccount.get(currency) / shardsNum;
+                for (int shard = 0; shard < shardsNum; shard++) {
+                    if (shard != fundingShard) {
+                        final int toShard = shard;
+                        final long txId = transactionId.addAndGet(2) - 1;
+                        userTransfers = userTransfers.thenCompose(r -> r != CommandResultCode.SUCCESS
+                                ? CompletableFuture.completedFuture(r)
+                                : api.transferBalance(userId, currency, amount, fundingShard, toShard, txId));
+                    }
+                }
+            }
+            transfers.add(userTransfers);
+        }
+
+        transfers.forEach(f -> assertThat(f.join(), is(CommandResultCode.SUCCESS)));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.StandbyReplica;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessor;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.core.processors.journaling.JournalTailer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Hot-standby failover harness: primary writes journal, standby replica follows it,
+ * primary is stopped and standby is promoted. Measures failover time and checks state hashes.
+ */
+@Slf4j
+public class StandbyFailoverTestsModule {
+
+    public static void failoverTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                        final TestDataParameters testDataParameters,
+                                        final Path folder,
+                                        final DiskSerializationProcessorConfiguration.JournalDurabilityMode durabilityMode,
+                                        final int iterations) throws InterruptedException, ExecutionException, IOException {
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+
+            log.debug(" ----------- standby failover test --- iteration {} of {} ----", iteration, iterations);
+
+            final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, iteration);
+
+            final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+            final Path primaryFolder = Files.createDirectories(folder.resolve("primary"));
+            final Path standbyFolder = Files.createDirectories(folder.resolve("standby"));
+
+            // leftover journal and main log record of some older snapshot should not be followed
+            Files.createFile(DiskSerializationProcessor.resolveJournalPath(primaryFolder, exchangeId, 7, 1));
+            Files.write(DiskSerializationProcessor.resolveMainLogPath(primaryFolder, exchangeId),
+                    "0 seq=1 timestampNs=1 snapshotId=7 type=RE instance=0\n".getBytes());
+
+            final AtomicLong standbyResults = new AtomicLong();
+
+            final StandbyReplica standby = StandbyReplica.builder()
+                    .resultsConsumer((cmd, seq) -> {
+                        if (cmd.command != OrderCommandType.GROUPING_CONTROL) {
+                            standbyResults.incrementAndGet();
+                        }
+                    })
+                    .exchangeConfiguration(standbyConfiguration(performanceConfiguration, InitialStateConfiguration.cleanStartJournaling(exchangeId), standbyFolder, durabilityMode))
+                    .journalTailer(new JournalTailer(primaryFolder, exchangeId, 0, 0))
+                    .build();
+
+            standby.start();
+
+            final int originalStateHash;
+
+            try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                    performanceConfiguration,
+                    InitialStateConfiguration.cleanStartJournaling(exchangeId),
+                    diskJournaling(primaryFolder, durabilityMode))) {
+
+                primary.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+                // primary journal continues in files of the new snapshot
+                final long stateId = System.currentTimeMillis() * 1000 + iteration;
+                final CommandResultCode resultCode = primary.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(stateId).build()).get();
+                assertThat(resultCode, is(CommandResultCode.SUCCESS));
+
+                log.info("Running commands on primary...");
+                primary.getApi().submitCommandsSync(testDataFutures.getGenResult().get().getApiCommandsBenchmark().join());
+
+                originalStateHash = primary.requestStateHash();
+                log.info("Primary stopped, standby replicated up to seq={}", standby.getLastAppliedSeq());
+            }
+
+            final long t = System.nanoTime();
+            final long lastSeq = standby.promote();
+            final float failoverMs = (System.nanoTime() - t) / 1_000_000f;
+            log.info("Failover time: {}ms (promoted at seq={})", String.format("%.3f", failoverMs), lastSeq);
+
+            assertThat("results of replicated commands are not published", standbyResults.get(), is(0L));
+
+            final int standbyStateHash = standby.getExchangeCore().getApi().processReport(new StateHashReportQuery(), 1).get().getStateHash();
+            assertThat(standbyStateHash, is(originalStateHash));
+
+            // promoted standby accepts commands and publishes results
+            final CommandResultCode addUserResult = standby.getExchangeCore().getApi().submitCommandAsync(ApiAddUser.builder().uid(Long.MAX_VALUE / 2).build()).get();
+            assertThat(addUserResult, is(CommandResultCode.SUCCESS));
+            assertThat(standbyResults.get(), is(2L));
+
+            standby.shutdown();
+            log.info("Standby state is valid");
+        }
+    }
+
+    public static ExchangeConfiguration standbyConfiguration(final PerformanceConfiguration performanceConfiguration,
+                                                             final InitialStateConfiguration initStateCfg,
+                                                             final Path folder,
+                                                             final DiskSerializationProcessorConfiguration.JournalDurabilityMode durabilityMode) {
+
+        return ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(initStateCfg)
+                .performanceCfg(performanceConfiguration)
+                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .serializationCfg(diskJournaling(folder, durabilityMode))
+                .build();
+    }
+
+    public static SerializationConfiguration diskJournaling(final Path folder,
+                                                            final DiskSerializationProcessorConfiguration.JournalDurabilityMode durabilityMode) {
+        return SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg,
+                        DiskSerializationProcessorConfiguration.createConfig(folder.toString(), durabilityMode, DiskSerializationProcessorConfiguration.IO_FILE_CHANNEL)))
+                .build();
+    }
+}
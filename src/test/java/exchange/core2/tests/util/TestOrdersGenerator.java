@@ -39,6 +39,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
@@ -61,35 +62,12 @@ public final class TestOrdersGenerator {
 
     public static MultiSymbolGenResult generateMultipleSymbols(final TestOrdersGeneratorConfig config) {
 
-        final List<CoreSymbolSpecification> coreSymbolSpecifications = config.coreSymbolSpecifications;
-        final int totalTransactionsNumber = config.totalTransactionsNumber;
-        final List<BitSet> usersAccounts = config.usersAccounts;
-        final int targetOrderBookOrdersTotal = config.targetOrderBookOrdersTotal;
-        final int seed = config.seed;
-
         final Map<Integer, GenResult> genResults = new HashMap<>();
 
         try (ExecutionTime ignore = new ExecutionTime(t -> log.debug("All test commands generated in {}", t))) {
 
-            final double[] distribution = createWeightedDistribution(coreSymbolSpecifications.size(), seed);
-            int quotaLeft = totalTransactionsNumber;
             final Map<Integer, CompletableFuture<GenResult>> futures = new HashMap<>();
-
-            final LongConsumer sharedProgressLogger = createAsyncProgressLogger(totalTransactionsNumber + targetOrderBookOrdersTotal);
-
-            for (int i = coreSymbolSpecifications.size() - 1; i >= 0; i--) {
-                final CoreSymbolSpecification spec = coreSymbolSpecifications.get(i);
-                final int orderBookSizeTarget = (int) (targetOrderBookOrdersTotal * distribution[i] + 0.5);
-                final int commandsNum = (i != 0) ? (int) (totalTransactionsNumber * distribution[i] + 0.5) : Math.max(quotaLeft, 1);
-                quotaLeft -= commandsNum;
-//                log.debug("{}. Generating symbol {} : commands={} orderBookSizeTarget={} (quotaLeft={})", i, spec.symbolId, commandsNum, orderBookSizeTarget, quotaLeft);
-                futures.put(spec.symbolId, CompletableFuture.supplyAsync(() -> {
-                    final int[] uidsAvailableForSymbol = UserCurrencyAccountsGenerator.createUserListForSymbol(usersAccounts, spec, commandsNum);
-                    final int numUsers = uidsAvailableForSymbol.length;
-                    final UnaryOperator<Integer> uidMapper = idx -> uidsAvailableForSymbol[idx];
-                    return generateCommands(commandsNum, orderBookSizeTarget, numUsers, uidMapper, spec.symbolId, false, config.avalancheIOC, sharedProgressLogger, seed);
-                }));
-            }
+            createSymbolGenerators(config).forEach((symbol, generator) -> futures.put(symbol, CompletableFuture.supplyAsync(generator)));
 
             futures.forEach((symbol, future) -> {
                 try {
@@ -114,6 +92,43 @@ public final class TestOrdersGenerator {
                 .build();
     }
 
+    /**
+     * Splits commands and order book orders between symbols (weighted random distribution).
+     *
+     * @param config - generator configuration
+     * @return independent commands generators for each symbol (in generation order)
+     */
+    public static Map<Integer, Supplier<GenResult>> createSymbolGenerators(final TestOrdersGeneratorConfig config) {
+
+        final List<CoreSymbolSpecification> coreSymbolSpecifications = config.coreSymbolSpecifications;
+        final int totalTransactionsNumber = config.totalTransactionsNumber;
+        final List<BitSet> usersAccounts = config.usersAccounts;
+        final int targetOrderBookOrdersTotal = config.targetOrderBookOrdersTotal;
+        final int seed = config.seed;
+
+        final double[] distribution = createWeightedDistribution(coreSymbolSpecifications.size(), seed);
+        int quotaLeft = totalTransactionsNumber;
+        final Map<Integer, Supplier<GenResult>> generators = new LinkedHashMap<>();
+
+        final LongConsumer sharedProgressLogger = createAsyncProgressLogger(totalTransactionsNumber + targetOrderBookOrdersTotal);
+
+        for (int i = coreSymbolSpecifications.size() - 1; i >= 0; i--) {
+            final CoreSymbolSpecification spec = coreSymbolSpecifications.get(i);
+            final int orderBookSizeTarget = (int) (targetOrderBookOrdersTotal * distribution[i] + 0.5);
+            final int commandsNum = (i != 0) ? (int) (totalTransactionsNumber * distribution[i] + 0.5) : Math.max(quotaLeft, 1);
+            quotaLeft -= commandsNum;
+//                log.debug("{}. Generating symbol {} : commands={} orderBookSizeTarget={} (quotaLeft={})", i, spec.symbolId, commandsNum, orderBookSizeTarget, quotaLeft);
+            generators.put(spec.symbolId, () -> {
+                final int[] uidsAvailableForSymbol = UserCurrencyAccountsGenerator.createUserListForSymbol(usersAccounts, spec, commandsNum);
+                final int numUsers = uidsAvailableForSymbol.length;
+                final UnaryOperator<Integer> uidMapper = idx -> uidsAvailableForSymbol[idx];
+                return generateCommands(commandsNum, orderBookSizeTarget, numUsers, uidMapper, spec.symbolId, false, config.avalancheIOC, sharedProgressLogger, seed);
+            });
+        }
+
+        return generators;
+    }
+
     private static CompletableFuture<List<ApiCommand>> mergeCommands(
             Map<Integer, GenResult> genResults,
             long seed,
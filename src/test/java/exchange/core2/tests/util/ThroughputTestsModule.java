@@ -70,4 +70,39 @@ public class ThroughputTestsModule {
         }
     }
 
+    public static void throughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                          final WorkloadFile workloadFile,
+                                          final InitialStateConfiguration initialStateCfg,
+                                          final SerializationConfiguration serializationCfg,
+                                          final int iterations) {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, initialStateCfg, serializationCfg)) {
+
+            final float avgMt = container.executeTestingThread(
+                    () -> (float) IntStream.range(0, iterations)
+                            .mapToObj(j -> {
+                                container.loadSymbolsUsersAndPrefillOrders(workloadFile);
+
+                                final float perfMt = container.benchmarkMtps(workloadFile);
+                                log.info("{}. {} MT/s", j, String.format("%.3f", perfMt));
+
+                                assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+
+                                // compare orderBook final state just to make sure all commands executed same way
+                                workloadFile.getFinalOrderBooks().forEach(
+                                        (symbol, orderBook) -> assertEquals(orderBook, container.requestCurrentOrderBook(symbol)));
+
+                                container.resetExchangeCore();
+
+                                System.gc();
+
+                                return perfMt;
+                            })
+                            .mapToDouble(x -> x)
+                            .average().orElse(0));
+
+            log.info("Average: {} MT/s", avgMt);
+        }
+    }
+
 }
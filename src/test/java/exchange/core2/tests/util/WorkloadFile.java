@@ -0,0 +1,540 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.gateway.GatewayCodec;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Pre-generated benchmark workload file.
+ * <p>
+ * Contains everything needed for throughput/latency benchmark run: symbols, users accounts, pre-fill and benchmark
+ * commands, and expected final order books. Commands are stored as gateway protocol messages (see {@link GatewayCodec}),
+ * so they are replayed via memory mapping straight into ring buffer slots - no command objects are created.
+ * Workload is generated once (per-symbol generation runs in fork-join pool), multiple benchmark runs reuse identical commands.
+ * <p>
+ * Layout: header, metadata (parameters description, seed, symbols, final order books, users accounts), pre-fill messages, benchmark messages.
+ */
+@Slf4j
+public final class WorkloadFile implements AutoCloseable {
+
+    public static final int MAGIC = 0x444C4B57; // "WKLD"
+    public static final int VERSION = 1;
+
+    private static final int HDR_MAGIC = 0;
+    private static final int HDR_VERSION = 4;
+    private static final int HDR_FILL_COMMANDS_NUM = 8;
+    private static final int HDR_BENCHMARK_COMMANDS_NUM = 16;
+    private static final int HDR_METADATA_OFFSET = 24;
+    private static final int HDR_FILL_OFFSET = 32;
+    private static final int HDR_BENCHMARK_OFFSET = 40;
+    private static final int HDR_END_OFFSET = 48;
+    private static final int HEADER_LENGTH = 56;
+
+    // can be changed by -Dworkloads.dir=...
+    public static final Path DEFAULT_FOLDER = Paths.get(System.getProperty("workloads.dir", "target/workloads"));
+
+    private static final int MAX_MAPPING_SIZE = 1 << 30;
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer metadataMapping;
+
+    @Getter
+    private final String description;
+    @Getter
+    private final int seed;
+    @Getter
+    private final List<CoreSymbolSpecification> coreSymbolSpecifications;
+    @Getter
+    private final Map<Integer, L2MarketData> finalOrderBooks;
+    @Getter
+    private final long fillCommandsNum;
+    @Getter
+    private final long benchmarkCommandsNum;
+
+    private final long usersPosition;
+    private final long fillOffset;
+    private final long benchmarkOffset;
+    private final long endOffset;
+
+    private WorkloadFile(final Path path) throws IOException {
+
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read header
+        }
+        if (header.hasRemaining() || header.getInt(HDR_MAGIC) != MAGIC || header.getInt(HDR_VERSION) != VERSION) {
+            channel.close();
+            throw new IllegalStateException("Not a workload file (or unsupported version): " + path);
+        }
+
+        this.fillCommandsNum = header.getLong(HDR_FILL_COMMANDS_NUM);
+        this.benchmarkCommandsNum = header.getLong(HDR_BENCHMARK_COMMANDS_NUM);
+        final long metadataOffset = header.getLong(HDR_METADATA_OFFSET);
+        this.fillOffset = header.getLong(HDR_FILL_OFFSET);
+        this.benchmarkOffset = header.getLong(HDR_BENCHMARK_OFFSET);
+        this.endOffset = header.getLong(HDR_END_OFFSET);
+
+        if (channel.size() != endOffset) {
+            channel.close();
+            throw new IllegalStateException("Workload file " + path + " is truncated: size " + channel.size() + " expected " + endOffset);
+        }
+
+        this.metadataMapping = channel.map(FileChannel.MapMode.READ_ONLY, metadataOffset, fillOffset - metadataOffset);
+        final Bytes<ByteBuffer> bytes = Bytes.wrapForRead(metadataMapping);
+
+        this.description = bytes.readUtf8();
+        this.seed = bytes.readInt();
+
+        final int symbolsNum = bytes.readInt();
+        this.coreSymbolSpecifications = new ArrayList<>(symbolsNum);
+        for (int i = 0; i < symbolsNum; i++) {
+            coreSymbolSpecifications.add(new CoreSymbolSpecification(bytes));
+        }
+
+        final int orderBooksNum = bytes.readInt();
+        this.finalOrderBooks = new HashMap<>(orderBooksNum * 2);
+        for (int i = 0; i < orderBooksNum; i++) {
+            final int symbolId = bytes.readInt();
+            final long[] askPrices = readLongs(bytes);
+            final long[] askVolumes = readLongs(bytes);
+            final long[] askOrders = readLongs(bytes);
+            final long[] bidPrices = readLongs(bytes);
+            final long[] bidVolumes = readLongs(bytes);
+            final long[] bidOrders = readLongs(bytes);
+            finalOrderBooks.put(symbolId, new L2MarketData(askPrices, askVolumes, askOrders, bidPrices, bidVolumes, bidOrders));
+        }
+
+        // users accounts can take a lot of heap - parsed on request only
+        this.usersPosition = bytes.readPosition();
+    }
+
+    /**
+     * Opens existing workload file
+     *
+     * @param path - workload file
+     * @return workload file (should be closed after use)
+     * @throws IOException if file can not be read
+     */
+    public static WorkloadFile open(final Path path) throws IOException {
+        final WorkloadFile workloadFile = new WorkloadFile(path);
+        log.info("Opened workload file {}: {} pre-fill commands, {} benchmark commands ({} MB)",
+                path, workloadFile.fillCommandsNum, workloadFile.benchmarkCommandsNum, workloadFile.endOffset >> 20);
+        return workloadFile;
+    }
+
+    /**
+     * Opens workload file for provided parameters from the folder, generates the file if it does not exist yet
+     *
+     * @param folder     - workloads folder
+     * @param parameters - test data parameters
+     * @param seed       - generator seed
+     * @return workload file (should be closed after use)
+     * @throws IOException if file can not be read or written
+     */
+    public static WorkloadFile openOrGenerate(final Path folder, final TestDataParameters parameters, final int seed) throws IOException {
+
+        final Path path = folder.resolve(String.format("workload-%08X-%d.bin", parameters.hashCode(), seed));
+
+        if (Files.exists(path)) {
+            try {
+                final WorkloadFile workloadFile = open(path);
+                if (workloadFile.description.equals(parameters.toString()) && workloadFile.seed == seed) {
+                    return workloadFile;
+                }
+                workloadFile.close();
+                log.warn("Workload file {} was generated for different parameters, regenerating...", path);
+            } catch (final IllegalStateException ex) {
+                log.warn("Can not use workload file {}, regenerating...", path, ex);
+            }
+        }
+
+        Files.createDirectories(folder);
+        generate(parameters, seed, path);
+        return open(path);
+    }
+
+    /**
+     * Generates workload file (same commands as generated by {@link ExchangeTestContainer#prepareTestDataAsync}).
+     * File is written into temporary file first, then moved to the target path.
+     *
+     * @param parameters - test data parameters
+     * @param seed       - generator seed
+     * @param path       - target file
+     * @throws IOException if file can not be written
+     */
+    public static void generate(final TestDataParameters parameters, final int seed, final Path path) throws IOException {
+
+        try (ExecutionTime ignore = new ExecutionTime(t -> log.info("Workload file {} generated in {}", path, t))) {
+
+            final List<CoreSymbolSpecification> coreSymbolSpecifications = ExchangeTestContainer.generateRandomSymbols(
+                    parameters.numSymbols, parameters.currenciesAllowed, parameters.allowedSymbolTypes);
+
+            final List<BitSet> usersAccounts = UserCurrencyAccountsGenerator.generateUsers(parameters.numAccounts, parameters.currenciesAllowed);
+
+            final TestOrdersGeneratorConfig config = TestOrdersGeneratorConfig.builder()
+                    .coreSymbolSpecifications(coreSymbolSpecifications)
+                    .totalTransactionsNumber(parameters.totalTransactionsNumber)
+                    .usersAccounts(usersAccounts)
+                    .targetOrderBookOrdersTotal(parameters.targetOrderBookOrdersTotal)
+                    .seed(seed)
+                    .preFillMode(parameters.preFillMode)
+                    .avalancheIOC(parameters.avalancheIOC)
+                    .build();
+
+            // symbols are generated and encoded in parallel, commands objects are released as soon as symbol is encoded
+            final List<Map.Entry<Integer, Supplier<TestOrdersGenerator.GenResult>>> generators = new ArrayList<>(TestOrdersGenerator.createSymbolGenerators(config).entrySet());
+            final List<SymbolWorkload> symbolWorkloads = ForkJoinPool.commonPool().invoke(new GenerateSymbolsTask(generators, 0, generators.size()));
+
+            // same maps filling sequence as for in-memory generated commands (iteration order defines merging order)
+            final Map<Integer, SymbolWorkload> byGenerator = new HashMap<>();
+            symbolWorkloads.forEach(w -> byGenerator.put(w.symbolId, w));
+            final Map<Integer, SymbolWorkload> bySymbol = new HashMap<>();
+            byGenerator.forEach(bySymbol::put);
+
+            final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (final FileChannel out = FileChannel.open(tmpPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+                out.position(HEADER_LENGTH);
+
+                final Bytes<ByteBuffer> metadata = Bytes.elasticHeapByteBuffer(1024 * 1024);
+                metadata.writeUtf8(parameters.toString());
+                metadata.writeInt(seed);
+                metadata.writeInt(coreSymbolSpecifications.size());
+                coreSymbolSpecifications.forEach(spec -> spec.writeMarshallable(metadata));
+                metadata.writeInt(bySymbol.size());
+                bySymbol.values().forEach(w -> {
+                    final L2MarketData ob = w.finalOrderBook;
+                    metadata.writeInt(w.symbolId);
+                    writeLongs(metadata, ob.askPrices, ob.askSize);
+                    writeLongs(metadata, ob.askVolumes, ob.askSize);
+                    writeLongs(metadata, ob.askOrders, ob.askSize);
+                    writeLongs(metadata, ob.bidPrices, ob.bidSize);
+                    writeLongs(metadata, ob.bidVolumes, ob.bidSize);
+                    writeLongs(metadata, ob.bidOrders, ob.bidSize);
+                });
+                metadata.writeInt(usersAccounts.size());
+                usersAccounts.forEach(accounts -> SerializationUtils.marshallBitSet(accounts, metadata));
+
+                final ByteBuffer metadataBuffer = metadata.underlyingObject();
+                metadataBuffer.limit((int) metadata.writePosition()).position(0);
+                writeFully(out, metadataBuffer);
+
+                header.putLong(HDR_METADATA_OFFSET, HEADER_LENGTH);
+                header.putLong(HDR_FILL_OFFSET, out.position());
+                final long fillNum = writeMergedMessages(out, bySymbol, seed, false);
+                header.putLong(HDR_FILL_COMMANDS_NUM, fillNum);
+
+                header.putLong(HDR_BENCHMARK_OFFSET, out.position());
+                final long benchmarkNum = writeMergedMessages(out, bySymbol, seed, true);
+                header.putLong(HDR_BENCHMARK_COMMANDS_NUM, benchmarkNum);
+                header.putLong(HDR_END_OFFSET, out.position());
+
+                header.putInt(HDR_MAGIC, MAGIC);
+                header.putInt(HDR_VERSION, VERSION);
+                out.position(0);
+                writeFully(out, header);
+                out.force(true);
+            }
+
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Parses users accounts (index is uid, uid=0 is not used)
+     *
+     * @return users accounts currencies
+     */
+    public List<BitSet> readUsersAccounts() {
+        final Bytes<ByteBuffer> bytes = Bytes.wrapForRead(metadataMapping.duplicate());
+        bytes.readPosition(usersPosition);
+        final int usersNum = bytes.readInt();
+        final List<BitSet> usersAccounts = new ArrayList<>(usersNum);
+        for (int i = 0; i < usersNum; i++) {
+            usersAccounts.add(SerializationUtils.readBitSet(bytes));
+        }
+        return usersAccounts;
+    }
+
+    /**
+     * Publishes all pre-fill commands at max rate (does not wait until commands are processed)
+     *
+     * @param api - exchange API
+     */
+    public void submitFillCommands(final ExchangeApi api) {
+        submitMessages(api, fillOffset, benchmarkOffset);
+    }
+
+    /**
+     * Publishes all benchmark commands at max rate (does not wait until commands are processed)
+     *
+     * @param api - exchange API
+     */
+    public void submitBenchmarkCommands(final ExchangeApi api) {
+        submitMessages(api, benchmarkOffset, endOffset);
+    }
+
+    /**
+     * Publishes benchmark commands one by one at constant rate.
+     * Timestamp of each command is set to its planned send time, so it can be used for latency measurement
+     * (message is copied into small buffer before publishing, file is not modified).
+     *
+     * @param api - exchange API
+     * @param tps - target rate (commands per second)
+     */
+    public void submitBenchmarkCommandsPaced(final ExchangeApi api, final int tps) {
+
+        final long nanosPerCmd = 1_000_000_000L / tps;
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[GatewayCodec.MAX_REQUEST_LENGTH]);
+        long plannedTimestamp = System.nanoTime();
+
+        long position = benchmarkOffset;
+        while (position < endOffset) {
+
+            final int size = (int) Math.min(endOffset - position, MAX_MAPPING_SIZE);
+            final MappedByteBuffer mapping = map(position, size);
+            final UnsafeBuffer buffer = new UnsafeBuffer(mapping);
+
+            int ptr = 0;
+            while (size - ptr >= GatewayCodec.HEADER_LENGTH && size - ptr >= GatewayCodec.messageLength(buffer, ptr)) {
+                final int msgLength = GatewayCodec.messageLength(buffer, ptr);
+                message.putBytes(0, buffer, ptr, msgLength);
+                while (System.nanoTime() < plannedTimestamp) {
+                    // spin until its time to send next command
+                }
+                message.putLong(GatewayCodec.HEADER_LENGTH + GatewayCodec.REQ_TIMESTAMP, plannedTimestamp, GatewayCodec.BYTE_ORDER);
+                api.submitGatewayMessages(message, 0, msgLength, null);
+                plannedTimestamp += nanosPerCmd;
+                ptr += msgLength;
+            }
+
+            IoUtil.unmap(mapping);
+            if (ptr == 0) {
+                throw new IllegalStateException("Corrupted workload file " + path + " at offset " + position);
+            }
+            position += ptr;
+        }
+    }
+
+    private void submitMessages(final ExchangeApi api, final long from, final long to) {
+
+        long position = from;
+        while (position < to) {
+            final int size = (int) Math.min(to - position, MAX_MAPPING_SIZE);
+            final MappedByteBuffer mapping = map(position, size);
+            final int consumed = api.submitGatewayMessages(new UnsafeBuffer(mapping), 0, size, null);
+            IoUtil.unmap(mapping);
+            if (consumed == 0) {
+                throw new IllegalStateException("Corrupted workload file " + path + " at offset " + position);
+            }
+            position += consumed;
+        }
+    }
+
+    private MappedByteBuffer map(final long position, final int size) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not map workload file " + path, ex);
+        }
+    }
+
+    private static long writeMergedMessages(final FileChannel out,
+                                            final Map<Integer, SymbolWorkload> bySymbol,
+                                            final int seed,
+                                            final boolean benchmark) throws IOException {
+
+        // merging order depends on chunk sizes only - merging symbol references instead of commands
+        final List<List<SymbolWorkload>> chunks = new ArrayList<>(bySymbol.size());
+        bySymbol.values().forEach(w -> {
+            w.readPosition = 0;
+            chunks.add(Collections.nCopies(benchmark ? w.benchmarkNum : w.fillNum, w));
+        });
+        final List<SymbolWorkload> merged = RandomCollectionsMerger.mergeCollections(chunks, seed);
+
+        final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        final UnsafeBuffer writeView = new UnsafeBuffer(writeBuffer);
+        int writePosition = 0;
+        long correlationId = 0;
+
+        for (final SymbolWorkload w : merged) {
+            final ExpandableArrayBuffer source = benchmark ? w.benchmarkMessages : w.fillMessages;
+            final int msgLength = GatewayCodec.messageLength(source, w.readPosition);
+
+            if (writePosition + msgLength > WRITE_BUFFER_SIZE) {
+                writeBuffer.limit(writePosition).position(0);
+                writeFully(out, writeBuffer);
+                writeBuffer.clear();
+                writePosition = 0;
+            }
+
+            writeView.putBytes(writePosition, source, w.readPosition, msgLength);
+            writeView.putLong(writePosition + GatewayCodec.HEADER_LENGTH + GatewayCodec.REQ_CORRELATION_ID, correlationId++, GatewayCodec.BYTE_ORDER);
+            writePosition += msgLength;
+            w.readPosition += msgLength;
+        }
+
+        writeBuffer.limit(writePosition).position(0);
+        writeFully(out, writeBuffer);
+
+        return correlationId;
+    }
+
+    private static int encodeCommand(final OrderCommand cmd, final MutableDirectBuffer buffer, final int offset) {
+        switch (cmd.command) {
+            case PLACE_ORDER:
+                return GatewayCodec.encodePlaceOrder(buffer, offset, 0, 0, cmd.uid, cmd.orderId, cmd.symbol,
+                        cmd.price, cmd.reserveBidPrice, cmd.size, cmd.action, cmd.orderType, cmd.userCookie);
+            case MOVE_ORDER:
+                return GatewayCodec.encodeMoveOrder(buffer, offset, 0, 0, cmd.uid, cmd.orderId, cmd.symbol, cmd.price);
+            case CANCEL_ORDER:
+                return GatewayCodec.encodeCancelOrder(buffer, offset, 0, 0, cmd.uid, cmd.orderId, cmd.symbol);
+            case REDUCE_ORDER:
+                return GatewayCodec.encodeReduceOrder(buffer, offset, 0, 0, cmd.uid, cmd.orderId, cmd.symbol, cmd.size);
+            default:
+                throw new IllegalStateException("unsupported type: " + cmd.command);
+        }
+    }
+
+    private static void writeFully(final FileChannel out, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void writeLongs(final Bytes<ByteBuffer> bytes, final long[] array, final int size) {
+        bytes.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            bytes.writeLong(array[i]);
+        }
+    }
+
+    private static long[] readLongs(final Bytes<ByteBuffer> bytes) {
+        final long[] array = new long[bytes.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = bytes.readLong();
+        }
+        return array;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IoUtil.unmap(metadataMapping);
+        channel.close();
+    }
+
+    /**
+     * Commands of one symbol encoded as gateway messages
+     */
+    private static final class SymbolWorkload {
+
+        private final int symbolId;
+        private final L2MarketData finalOrderBook;
+        private final ExpandableArrayBuffer fillMessages;
+        private final int fillNum;
+        private final ExpandableArrayBuffer benchmarkMessages;
+        private final int benchmarkNum;
+
+        // merging state
+        private int readPosition;
+
+        private SymbolWorkload(final int symbolId, final TestOrdersGenerator.GenResult genResult) {
+            this.symbolId = symbolId;
+            this.finalOrderBook = genResult.getFinalOrderBookSnapshot();
+            this.fillNum = genResult.getCommandsFill().size();
+            this.fillMessages = encode(genResult.getCommandsFill());
+            this.benchmarkNum = genResult.getCommandsBenchmark().size();
+            this.benchmarkMessages = encode(genResult.getCommandsBenchmark());
+        }
+
+        private static ExpandableArrayBuffer encode(final List<OrderCommand> commands) {
+            final ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(Math.max(commands.size(), 1) * GatewayCodec.MAX_REQUEST_LENGTH);
+            int ptr = 0;
+            for (final OrderCommand cmd : commands) {
+                ptr += encodeCommand(cmd, buffer, ptr);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Generates and encodes symbols of the range, splitting the range in halves until single symbol left
+     */
+    private static final class GenerateSymbolsTask extends RecursiveTask<List<SymbolWorkload>> {
+
+        private final List<Map.Entry<Integer, Supplier<TestOrdersGenerator.GenResult>>> generators;
+        private final int from;
+        private final int to;
+
+        private GenerateSymbolsTask(final List<Map.Entry<Integer, Supplier<TestOrdersGenerator.GenResult>>> generators, final int from, final int to) {
+            this.generators = generators;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<SymbolWorkload> compute() {
+
+            if (to - from == 1) {
+                final Map.Entry<Integer, Supplier<TestOrdersGenerator.GenResult>> generator = generators.get(from);
+                return Collections.singletonList(new SymbolWorkload(generator.getKey(), generator.getValue().get()));
+            }
+
+            final int middle = (from + to) >>> 1;
+            final GenerateSymbolsTask left = new GenerateSymbolsTask(generators, from, middle);
+            left.fork();
+            final List<SymbolWorkload> rightResult = new GenerateSymbolsTask(generators, middle, to).compute();
+
+            final List<SymbolWorkload> result = new ArrayList<>(left.join());
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.api.ApiNop;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class WorkloadFileTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void shouldGenerateAndReplayWorkloadFile() throws Exception {
+
+        final TestDataParameters parameters = TestDataParameters.builder()
+                .totalTransactionsNumber(20_000)
+                .targetOrderBookOrdersTotal(2_000)
+                .numAccounts(2_000)
+                .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                .numSymbols(20)
+                .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                .build();
+
+        // same workload as generated in memory
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(parameters, 1);
+        final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.getGenResult().join();
+
+        final Path path;
+        final FileTime generatedTime;
+
+        try (final WorkloadFile workloadFile = WorkloadFile.openOrGenerate(folder, parameters, 1)) {
+
+            assertThat(workloadFile.getCoreSymbolSpecifications(), is(testDataFutures.getCoreSymbolSpecifications().join()));
+            assertThat(workloadFile.readUsersAccounts(), is(testDataFutures.getUsersAccounts().join()));
+            assertThat(workloadFile.getFillCommandsNum(), is((long) genResult.getApiCommandsFill().join().size()));
+            assertThat(workloadFile.getBenchmarkCommandsNum(), is((long) genResult.getBenchmarkCommandsSize()));
+            genResult.getGenResults().forEach((symbol, symbolGenResult) ->
+                    assertThat(workloadFile.getFinalOrderBooks().get(symbol), is(symbolGenResult.getFinalOrderBookSnapshot())));
+
+            // validates balances and final order books
+            ThroughputTestsModule.throughputTestImpl(
+                    PerformanceConfiguration.DEFAULT,
+                    workloadFile,
+                    InitialStateConfiguration.CLEAN_TEST,
+                    SerializationConfiguration.DEFAULT,
+                    2);
+
+            // paced replay
+            try (final ExchangeTestContainer container = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT)) {
+                container.loadSymbolsUsersAndPrefillOrders(workloadFile);
+                workloadFile.submitBenchmarkCommandsPaced(container.getApi(), 100_000);
+                container.getApi().submitCommandAsync(ApiNop.builder().build()).join();
+                workloadFile.getFinalOrderBooks().forEach(
+                        (symbol, orderBook) -> assertThat(container.requestCurrentOrderBook(symbol), is(orderBook)));
+            }
+
+            path = folder.resolve(Files.list(folder).findFirst().orElseThrow().getFileName());
+            generatedTime = Files.getLastModifiedTime(path);
+        }
+
+        // existing file is reused
+        try (final WorkloadFile workloadFile = WorkloadFile.openOrGenerate(folder, parameters, 1)) {
+            assertThat(Files.getLastModifiedTime(path), is(generatedTime));
+            assertThat(workloadFile.getBenchmarkCommandsNum(), is((long) genResult.getBenchmarkCommandsSize()));
+        }
+    }
+}